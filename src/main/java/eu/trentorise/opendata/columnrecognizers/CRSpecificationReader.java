@@ -48,6 +48,10 @@ public class CRSpecificationReader extends SyntaxPatternLineReader {
 	final static int CONCEPT_ID_POSITION = 2;
 	final static int TYPE_POSITION = 3;
 	final static int MODEL_POSITION = 4;
+	final static String TF_IDF_TYPE = "TF_IDF";
+	final static String TF_IDF_HASHED_TYPE = "TF_IDF_HASHED";
+	final static String TF_IDF_INDEX_ID_PREFIX = "tf_idf_index_";
+	final static String TF_IDF_HASHED_INDEX_ID_PREFIX = "tf_idf_hashed_index_";
 	
 	/**
 	 * List of directories containing recognizer models.
@@ -58,6 +62,18 @@ public class CRSpecificationReader extends SyntaxPatternLineReader {
 	Table table = null;
 	RowTable sample = null;
 	
+	/**
+	 * The recognizer that collects the prototypes of the current run of 
+	 * consecutive TF_IDF lines, or null
+	 */
+	TFIDFIndexCR tfidfIndexCR = null;
+	
+	/**
+	 * The recognizer that collects the prototypes of the current run of 
+	 * consecutive TF_IDF_HASHED lines, or null
+	 */
+	TFIDFIndexCR hashedTFIDFIndexCR = null;
+	
 	/**
 	 * Constructs the reader
 	 * 
@@ -127,6 +143,49 @@ public class CRSpecificationReader extends SyntaxPatternLineReader {
 		String type = matcher.group(TYPE_POSITION);
 		String model = matcher.group(MODEL_POSITION);
 		
+		// Each run of consecutive TF_IDF lines shares one inverted index over 
+		// its prototypes, and so does each run of TF_IDF_HASHED lines. Any 
+		// other line ends the run, so the candidates come out in the order 
+		// of the lines.
+		if (!type.equals(TF_IDF_TYPE)) {
+			tfidfIndexCR = null;
+		}
+		if (!type.equals(TF_IDF_HASHED_TYPE)) {
+			hashedTFIDFIndexCR = null;
+		}
+		if (type.equals(TF_IDF_TYPE)) {
+			if (tfidfIndexCR == null) {
+				tfidfIndexCR = ColumnRecognizerFactory.makeTFIDFIndexRecognizer(
+						TF_IDF_INDEX_ID_PREFIX + compositeCR.getComponentCount(), 
+						modelDirectories, 
+						table,
+						false);
+				compositeCR.add(tfidfIndexCR);
+			}
+			ColumnRecognizerFactory.addTFIDFPrototype(tfidfIndexCR, 
+					recognizerID, 
+					conceptID, 
+					model, 
+					modelDirectories);
+			return;
+		}
+		if (type.equals(TF_IDF_HASHED_TYPE)) {
+			if (hashedTFIDFIndexCR == null) {
+				hashedTFIDFIndexCR = ColumnRecognizerFactory.makeTFIDFIndexRecognizer(
+						TF_IDF_HASHED_INDEX_ID_PREFIX + compositeCR.getComponentCount(), 
+						modelDirectories, 
+						table,
+						true);
+				compositeCR.add(hashedTFIDFIndexCR);
+			}
+			ColumnRecognizerFactory.addTFIDFPrototype(hashedTFIDFIndexCR, 
+					recognizerID, 
+					conceptID, 
+					model, 
+					modelDirectories);
+			return;
+		}
+		
 		ColumnRecognizer newRecognizer 
 			= ColumnRecognizerFactory.makeRecognizer(recognizerID, 
 					conceptID, 
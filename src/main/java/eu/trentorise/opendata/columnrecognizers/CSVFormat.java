@@ -0,0 +1,268 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CSVFormat holds the characters that structure a CSV file: the column
+ * separator, the quote character and the escape character used inside
+ * quoted fields.
+ *
+ * The format follows RFC 4180, with the escape character equal to the quote
+ * character (a quote in a quoted field is written as two quotes). Setting a
+ * different escape character, such as a backslash, makes it escape the
+ * character that follows it. A quote opens a quoted field only at the start
+ * of the field, possibly after white space; elsewhere it is an ordinary
+ * character. Text after the closing quote is kept. A format whose quote
+ * character is its column separator has no quoting at all: it is used for
+ * rows joined from values that are already unescaped.
+ *
+ * The class also provides the state machine for records that are already
+ * strings. The CSVRecordReader applies the same rules to the input bytes.
+ *
+ * @author Simon
+ *
+ */
+public class CSVFormat {
+	/**
+	 * The default quote character
+	 */
+	public static final char DEFAULT_QUOTE_CHAR = '"';
+
+	/**
+	 * The character used to separate columns
+	 */
+	private final char columnSeparator;
+
+	/**
+	 * The character that encloses fields
+	 */
+	private final char quoteChar;
+
+	/**
+	 * The character that escapes the following character in quoted fields
+	 */
+	private final char escapeChar;
+
+	/**
+	 * Constructs an RFC 4180 format with a custom column separator.
+	 *
+	 * @param columnSeparator	The column separator character
+	 */
+	public CSVFormat(char columnSeparator) {
+		this(columnSeparator, DEFAULT_QUOTE_CHAR, DEFAULT_QUOTE_CHAR);
+	}
+
+	/**
+	 * Constructs the format.
+	 *
+	 * @param columnSeparator	The column separator character
+	 * @param quoteChar			The quote character
+	 * @param escapeChar		The escape character (equal to quoteChar to
+	 * 							escape quotes by doubling them)
+	 */
+	public CSVFormat(char columnSeparator, char quoteChar, char escapeChar) {
+		super();
+		this.columnSeparator = columnSeparator;
+		this.quoteChar = quoteChar;
+		this.escapeChar = escapeChar;
+	}
+
+	/**
+	 * Constructs a format without quoting, for rows joined from values that
+	 * are already unescaped (such as database values): fields are split at
+	 * every column separator and their values are kept as they are.
+	 *
+	 * @param columnSeparator	The column separator character
+	 * @return					The format
+	 */
+	public static CSVFormat makeUnquotedFormat(char columnSeparator) {
+		return new CSVFormat(columnSeparator, columnSeparator, columnSeparator);
+	}
+
+	/**
+	 * Returns the column separator character.
+	 *
+	 * @return	The separator
+	 */
+	public char getColumnSeparator() {
+		return columnSeparator;
+	}
+
+	/**
+	 * Returns the quote character.
+	 *
+	 * @return	The quote character
+	 */
+	public char getQuoteChar() {
+		return quoteChar;
+	}
+
+	/**
+	 * Returns the escape character.
+	 *
+	 * @return	The escape character
+	 */
+	public char getEscapeChar() {
+		return escapeChar;
+	}
+
+	/**
+	 * Returns a format that differs from this one only in the separator.
+	 *
+	 * @param columnSeparator	The column separator character
+	 * @return					The new format
+	 */
+	public CSVFormat withColumnSeparator(char columnSeparator) {
+		return new CSVFormat(columnSeparator, quoteChar, escapeChar);
+	}
+
+	/**
+	 * Computes the positions of the column boundaries (separator characters)
+	 * in a record.
+	 *
+	 * @param record	The record
+	 * @return			The column boundaries
+	 */
+	public int[] findColumnBoundaries(CharSequence record) {
+		int[] boundaries = new int[8];
+		int boundaryCount = 0;
+		int fieldStart = 0;
+		boolean inQuotedField = false;
+		boolean fieldWasQuoted = false;
+		int length = record.length();
+		for (int position = 0; position < length; position++) {
+			char c = record.charAt(position);
+			if (inQuotedField) {
+				if (c == quoteChar) {
+					if (escapeChar == quoteChar && position + 1 < length
+							&& record.charAt(position + 1) == quoteChar) {
+						position++;
+					} else {
+						inQuotedField = false;
+					}
+				} else if (c == escapeChar) {
+					position++;
+				}
+			} else if (c == columnSeparator) {
+				if (boundaryCount == boundaries.length) {
+					int[] newBoundaries = new int[boundaryCount * 2];
+					System.arraycopy(boundaries, 0, newBoundaries, 0, boundaryCount);
+					boundaries = newBoundaries;
+				}
+				boundaries[boundaryCount++] = position;
+				fieldStart = position + 1;
+				fieldWasQuoted = false;
+			} else if (c == quoteChar && !fieldWasQuoted && isBlank(record, fieldStart, position)) {
+				inQuotedField = true;
+				fieldWasQuoted = true;
+			}
+		}
+		int[] result = new int[boundaryCount];
+		System.arraycopy(boundaries, 0, result, 0, boundaryCount);
+		return result;
+	}
+
+	/**
+	 * Splits a record into its raw fields, as they appear in the record.
+	 *
+	 * @param record	The record
+	 * @return			The fields
+	 */
+	public List<String> splitRecord(String record) {
+		int[] boundaries = findColumnBoundaries(record);
+		List<String> fields = new ArrayList<String>(boundaries.length + 1);
+		int fieldStart = 0;
+		for (int boundary : boundaries) {
+			fields.add(record.substring(fieldStart, boundary));
+			fieldStart = boundary + 1;
+		}
+		fields.add(record.substring(fieldStart));
+		return fields;
+	}
+
+	/**
+	 * Computes the value of a raw field: the quotes of a quoted field are
+	 * removed and its escape sequences are resolved. Unquoted fields are
+	 * returned as they are.
+	 *
+	 * @param text		The text containing the field
+	 * @param start		The start of the field
+	 * @param end		The end of the field (exclusive)
+	 * @return			The field value
+	 */
+	public String unescape(CharSequence text, int start, int end) {
+		if (quoteChar == columnSeparator) {
+			return text.subSequence(start, end).toString();
+		}
+		int position = start;
+		while (position < end && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+		if (position == end || text.charAt(position) != quoteChar) {
+			return text.subSequence(start, end).toString();
+		}
+		StringBuilder value = new StringBuilder(end - position);
+		position++;
+		boolean closed = false;
+		while (position < end && !closed) {
+			char c = text.charAt(position);
+			if (c == quoteChar) {
+				if (escapeChar == quoteChar && position + 1 < end
+						&& text.charAt(position + 1) == quoteChar) {
+					value.append(quoteChar);
+					position++;
+				} else {
+					closed = true;
+				}
+			} else if (c == escapeChar && position + 1 < end) {
+				value.append(text.charAt(position + 1));
+				position++;
+			} else {
+				value.append(c);
+			}
+			position++;
+		}
+		// Keep any text after the closing quote
+		value.append(text, position, end);
+		return value.toString();
+	}
+
+	/**
+	 * Resolves the escape sequences in the contents of a quoted field (the
+	 * text between the quotes).
+	 *
+	 * @param contents	The contents of the quoted field
+	 * @return			The field value
+	 */
+	String unescapeQuotedContents(String contents) {
+		StringBuilder value = new StringBuilder(contents.length());
+		int length = contents.length();
+		for (int position = 0; position < length; position++) {
+			char c = contents.charAt(position);
+			if (c == escapeChar && position + 1 < length) {
+				position++;
+				c = contents.charAt(position);
+			}
+			value.append(c);
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Checks that a range of text contains only white space.
+	 *
+	 * @param text		The text
+	 * @param start		The start of the range
+	 * @param end		The end of the range (exclusive)
+	 * @return			True if all characters are white space
+	 */
+	private static boolean isBlank(CharSequence text, int start, int end) {
+		for (int position = start; position < end; position++) {
+			if (!Character.isWhitespace(text.charAt(position))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -2,26 +2,38 @@ package eu.trentorise.opendata.columnrecognizers;
 import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 /**
  * 
  * The class reads CSV files and processes CSV data.
  * It handles quote-delimited fields that can contain quotes (represented by
- * two quotes together) and line breaks.
+ * two quotes together, or as configured by the CSVFormat) and line breaks.
  * 
- * Multi-line records are identified using the fact that a record is complete
- * iff the number of quote characters in the record is even.
+ * The records are parsed by CSVRecordReader and appended to a RowTable
+ * together with their column boundaries, so that the table doesn't need to
+ * parse the rows again.
  * 
  * @author Simon
  *
  */
-public class CSVProcessor extends LineReader {
+public class CSVProcessor extends CSVRecordReader {
 	private RowTable table = null;
-	private String csvRecord = null;
-	private int csvRecordQuoteParity = 0;
-	private static final char QUOTE_CHAR = '"';
+
+	/**
+	 * The columns to keep, or null to keep all columns
+	 */
+	private ColumnProjection projection = null;
+
+	/**
+	 * The largest number of records to read, or -1 to read them all
+	 */
+	private int recordLimit = -1;
+
+	/**
+	 * The number of records read so far
+	 */
+	private int recordCount = 0;
 	
 	/**
 	 * Constructs the CSV processor.
@@ -30,81 +42,78 @@ public class CSVProcessor extends LineReader {
 	 * @param table		The table to which the records will be appended
 	 */
 	public CSVProcessor(File file, RowTable table) {
-		super(file);
+		super(file, table.getFormat());
 		this.table = table;
 	}
 
 	public CSVProcessor(InputStream stream, RowTable table) {
-		super(stream);
+		super(stream, table.getFormat());
 		this.table = table;
 	}
 
-	/* (non-Javadoc)
-	 * @see LineReader#processLine(java.lang.String)
-	 */
-	@Override
-	protected void processLine(String line) {
-		assert(csvRecordQuoteParity == 1 && csvRecord != null 
-				|| csvRecordQuoteParity == 0 && csvRecord == null);
-		if (hasIncompleteRecord()) {
-			appendToRecord(line);
-		} else {
-			csvRecord = line;
-			csvRecordQuoteParity = quoteParity(line);
-		}
-		
-		if (recordIsComplete()) {
-			table.appendRow(csvRecord);
-			resetCSVRecord();
-		}
-	}
-		
 	/**
-	 * Removes the CSV record after completion.
-	 */
-	private void resetCSVRecord() {
-		csvRecord = null;
-		csvRecordQuoteParity = 0;
-	}
-
-	/**
-	 * Returns true if the record has been completed.
+	 * Selects the columns to keep. The fields of the other columns are
+	 * skipped without being decoded, and the rows appended to the table hold
+	 * the selected columns only.
 	 * 
-	 * @return	True if the record has been completed
+	 * @param projection	The columns to keep, or null to keep all columns
 	 */
-	private boolean recordIsComplete() {
-		assert(csvRecord != null);
-		return csvRecordQuoteParity == 0;
+	public void setColumnProjection(ColumnProjection projection) {
+		this.projection = projection;
 	}
 
 	/**
-	 * Returns true if there is an incomplete CSV record in progress.
+	 * Limits the number of records that are read. The rest of the input is
+	 * not parsed.
 	 * 
-	 * @return	True if there is an incomplete record
+	 * @param recordLimit	The largest number of records, or -1 for no limit
 	 */
-	private boolean hasIncompleteRecord() {
-		return csvRecordQuoteParity == 1;
+	public void setRecordLimit(int recordLimit) {
+		this.recordLimit = recordLimit;
 	}
 
-	/**
-	 * Returns the parity (even or odd) of the number of quote characters in 
-	 * the string.
-	 * 
-	 * @param string	The string where we count the quotes
-	 * @return			The parity (0 or 1)
+	/* (non-Javadoc)
+	 * @see CSVRecordReader#processRecord(CSVRecord)
 	 */
-	private int quoteParity(String string) {
-		return CRStringUtils.countOccurrences(string, '"') % 2;
+	@Override
+	protected void processRecord(CSVRecord record) {
+		if (projection != null) {
+			processProjectedRecord(record);
+		} else {
+			int[] columnBoundaries = new int[record.getColumnCount() - 1];
+			String row = record.decode(columnBoundaries);
+			table.appendRow(row, columnBoundaries);
+		}
+		recordCount++;
+		if (recordCount == recordLimit) {
+			stopReading();
+		}
 	}
-	
+
 	/**
-	 * Appends the line to the CSV record being built.
+	 * Appends the selected fields of a record to the table. The fields keep
+	 * their quotes, so the row can still be split by the table format.
+	 * Selected columns missing from the record are empty.
 	 * 
-	 * @param line	The line read from the CSV file
+	 * @param record	The CSV record
 	 */
-	private void appendToRecord(String line) {
-		csvRecord = String.format("%s%n%s", csvRecord, line);
-		csvRecordQuoteParity = (csvRecordQuoteParity + quoteParity(line)) % 2;
+	private void processProjectedRecord(CSVRecord record) {
+		final int INITIAL_ROW_SIZE = 100;
+
+		int columnCount = projection.getColumnCount();
+		int[] columnBoundaries = new int[Math.max(columnCount - 1, 0)];
+		StringBuilder row = new StringBuilder(INITIAL_ROW_SIZE);
+		for (int projectedNumber = 1; projectedNumber <= columnCount; projectedNumber++) {
+			if (projectedNumber > 1) {
+				columnBoundaries[projectedNumber - 2] = row.length();
+				row.append(table.getColumnSeparator());
+			}
+			int columnNumber = projection.getColumnNumber(projectedNumber);
+			if (columnNumber <= record.getColumnCount()) {
+				row.append(record.getField(columnNumber));
+			}
+		}
+		table.appendRow(row.toString(), columnBoundaries);
 	}
 	
 	/**
@@ -116,76 +125,12 @@ public class CSVProcessor extends LineReader {
 	 * @return			A list of column boundaries
 	 */
 	public static List<Integer> findColumnBoundaries(String record, char columnSeparator) {
-		ArrayList<Integer> columnBoundaries = new ArrayList<Integer>();
-		int separatorPosition = 0;
-		int fromIndex = 0;
-		boolean foundBoundary = false;
-		
-		do {
-			separatorPosition = scanToBoundary(record, columnSeparator, fromIndex);
-			foundBoundary = separatorPosition != -1;
-			if (foundBoundary) {
-				columnBoundaries.add(separatorPosition);
-				fromIndex = separatorPosition + 1;
-			}			
-		} while (foundBoundary);
-		
-		return columnBoundaries;
-	}
-	
-	/**
-	 * Finds the next column boundary in a record.
-	 * 
-	 * @param record				The csv record
-	 * @param columnSeparator		The column separator character
-	 * @param fromIndex				The place to start
-	 * @return						The position of the next column separator or -1 if none
-	 */
-	private static int scanToBoundary(String record, char columnSeparator, int fromIndex) {
-		int position = scanPastWhiteSpace(record, fromIndex);
-		boolean isQuotedField = (position < record.length() && record.charAt(position) == QUOTE_CHAR);
-		if (isQuotedField) {
-			position++;
-			position = scanPastClosingQuote(record, position);
-		}
-		return record.indexOf(columnSeparator, position);
-	}
-
-	/**
-	 * Skips white space.
-	 * 
-	 * @param record		The text being scanned
-	 * @param position		The starting position
-	 * @return				The new position
-	 */
-	private static int scanPastWhiteSpace(String record, int position) {
-		while (position < record.length() && Character.isWhitespace(record.charAt(position))) {
-			position++;
+		int[] boundaries = new CSVFormat(columnSeparator).findColumnBoundaries(record);
+		List<Integer> columnBoundaries = new ArrayList<Integer>(boundaries.length);
+		for (int boundary : boundaries) {
+			columnBoundaries.add(boundary);
 		}
-		return position;
-	}
-	
-	/**
-	 * In a quoted field, finds the position after the closing quote.
-	 * 
-	 * @param record		The text being scanned
-	 * @param position		The starting position
-	 * @return				The new position
-	 */
-	private static int scanPastClosingQuote(String record, int position) {
-		boolean foundClosingQuote = false;
-		do {
-			position = record.indexOf(QUOTE_CHAR, position);
-			int nextPosition = position + 1;
-			boolean isEscapedQuote 
-				= (nextPosition < record.length() && record.charAt(nextPosition) == QUOTE_CHAR);
-			if (isEscapedQuote) {
-				position += 2;
-			} else {
-				foundClosingQuote = true;
-			}
-		} while (!foundClosingQuote);
-		return position;
+		return columnBoundaries;
 	}
 
 	/**
@@ -196,20 +141,8 @@ public class CSVProcessor extends LineReader {
 	 * @return					The fields
 	 */
 	public static String[] splitRecord(String record, char columnSeparator) {
-		List<Integer> columnBoundaries = findColumnBoundaries(record, columnSeparator);
-		String[] fields = new String[columnBoundaries.size() + 1];
-		int lastSeparatorPosition = -1;
-		int fieldIndex = 0;
-		Iterator<Integer> it = columnBoundaries.iterator();
-		while (it.hasNext()) {
-			int newSeparatorPosition = it.next();
-			fields[fieldIndex] = record.substring(lastSeparatorPosition + 1, newSeparatorPosition);
-			lastSeparatorPosition = newSeparatorPosition;
-			fieldIndex++;
-		}
-		fields[fieldIndex] = record.substring(lastSeparatorPosition + 1);
-		
-		return fields;
+		List<String> fields = new CSVFormat(columnSeparator).splitRecord(record);
+		return fields.toArray(new String[fields.size()]);
 	}
 
 	/**
@@ -220,7 +153,7 @@ public class CSVProcessor extends LineReader {
 	 * @return					The number of columns
 	 */
 	public static int computeColumnCount(String record, char columnSeparator) {
-		return findColumnBoundaries(record, columnSeparator).size() + 1;
+		return new CSVFormat(columnSeparator).findColumnBoundaries(record).length + 1;
 	}
 	
 }
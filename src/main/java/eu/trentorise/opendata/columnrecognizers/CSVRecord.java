@@ -0,0 +1,305 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A CSVRecord is a view of a single record inside the buffer of a
+ * CSVRecordReader. It knows where the record and its fields are located, and
+ * where the quotes of each field are, but it doesn't decode any bytes until a
+ * consumer asks for a value. Positions and lengths are therefore measured in
+ * bytes.
+ *
+ * The reader reuses the same object for every record, so the record is only
+ * valid during the call to CSVRecordReader.processRecord. Consumers that need
+ * to keep data must materialize it with toString, decode, getField or
+ * getValue.
+ *
+ * @author Simon
+ *
+ */
+public class CSVRecord {
+	/**
+	 * The buffer holding the record
+	 */
+	private byte[] data = null;
+
+	/**
+	 * The encoding of the buffer
+	 */
+	private Charset charset = null;
+
+	/**
+	 * True if every character of the encoding is a single byte
+	 */
+	private boolean singleByteCharset = false;
+
+	/**
+	 * Decodes records field by field (for multi-byte encodings)
+	 */
+	private CharsetDecoder decoder = null;
+
+	/**
+	 * The decoder output, reused for every record
+	 */
+	private CharBuffer decodedChars = null;
+
+	/**
+	 * The CSV format
+	 */
+	private CSVFormat format = null;
+
+	/**
+	 * The position of the first byte of the record in the buffer
+	 */
+	private int start = 0;
+
+	/**
+	 * The position after the last byte of the record in the buffer
+	 */
+	private int end = 0;
+
+	/**
+	 * The positions of the column separators, relative to the record start
+	 */
+	private int[] columnBoundaries = null;
+
+	/**
+	 * The number of valid entries in columnBoundaries
+	 */
+	private int boundaryCount = 0;
+
+	/**
+	 * The positions of the opening quotes of the fields, relative to the
+	 * record start (-1 for unquoted fields)
+	 */
+	private int[] openingQuotes = null;
+
+	/**
+	 * The positions of the closing quotes of quoted fields, relative to the
+	 * record start
+	 */
+	private int[] closingQuotes = null;
+
+	/**
+	 * True for quoted fields that contain escape sequences
+	 */
+	private boolean[] escapedFields = null;
+
+	/**
+	 * Points the record to a new location in the reader buffer.
+	 *
+	 * @param data				The buffer
+	 * @param start				The start of the record
+	 * @param end				The end of the record (exclusive)
+	 * @param columnBoundaries	The separator positions relative to start
+	 * @param boundaryCount		The number of separators
+	 */
+	void set(byte[] data, int start, int end, int[] columnBoundaries, int boundaryCount) {
+		this.data = data;
+		this.start = start;
+		this.end = end;
+		this.columnBoundaries = columnBoundaries;
+		this.boundaryCount = boundaryCount;
+	}
+
+	/**
+	 * Sets the positions of the quotes of the fields.
+	 *
+	 * @param openingQuotes		The opening quotes, -1 for unquoted fields
+	 * @param closingQuotes		The closing quotes of quoted fields
+	 * @param escapedFields		True for quoted fields with escape sequences
+	 */
+	void setQuotes(int[] openingQuotes, int[] closingQuotes, boolean[] escapedFields) {
+		this.openingQuotes = openingQuotes;
+		this.closingQuotes = closingQuotes;
+		this.escapedFields = escapedFields;
+	}
+
+	/**
+	 * Sets the format used to unescape values.
+	 *
+	 * @param format	The CSV format
+	 */
+	void setFormat(CSVFormat format) {
+		this.format = format;
+	}
+
+	/**
+	 * Sets the encoding used to decode values.
+	 *
+	 * @param charset	The charset
+	 */
+	void setCharset(Charset charset) {
+		this.charset = charset;
+		singleByteCharset = charset.newEncoder().maxBytesPerChar() == 1;
+		decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Returns the encoding used to decode values.
+	 *
+	 * @return	The charset
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Returns the number of bytes in the record.
+	 *
+	 * @return	The record length
+	 */
+	public int length() {
+		return end - start;
+	}
+
+	/**
+	 * Returns the number of columns in the record.
+	 *
+	 * @return	The number of columns
+	 */
+	public int getColumnCount() {
+		return boundaryCount + 1;
+	}
+
+	/**
+	 * Returns the position where a field starts, relative to the start of
+	 * the record.
+	 *
+	 * @param columnNumber	The one-based column number
+	 * @return				The start of the field
+	 */
+	public int getFieldStart(int columnNumber) {
+		return columnNumber == 1 ? 0 : columnBoundaries[columnNumber - 2] + 1;
+	}
+
+	/**
+	 * Returns the position after the end of a field, relative to the start of
+	 * the record.
+	 *
+	 * @param columnNumber	The one-based column number
+	 * @return				The end of the field (exclusive)
+	 */
+	public int getFieldEnd(int columnNumber) {
+		return columnNumber <= boundaryCount ? columnBoundaries[columnNumber - 1] : length();
+	}
+
+	/**
+	 * Returns true if the field is enclosed in quotes.
+	 *
+	 * @param columnNumber	The one-based column number
+	 * @return				True if the field is quoted
+	 */
+	public boolean isQuoted(int columnNumber) {
+		return openingQuotes[columnNumber - 1] >= 0;
+	}
+
+	/**
+	 * Decodes the raw text of a field. As with CSVProcessor.splitRecord the
+	 * field is returned as it appears in the record, with any quotes.
+	 *
+	 * @param columnNumber	The one-based column number
+	 * @return				The field contents
+	 */
+	public String getField(int columnNumber) {
+		int fieldStart = getFieldStart(columnNumber);
+		return new String(data, start + fieldStart, getFieldEnd(columnNumber) - fieldStart, charset);
+	}
+
+	/**
+	 * Decodes the value of a field: the quotes of a quoted field are removed
+	 * and its escape sequences are resolved, as with CSVFormat.unescape.
+	 * The parser has already located the quotes, so the field is not scanned
+	 * again.
+	 *
+	 * @param columnNumber	The one-based column number
+	 * @return				The field value
+	 */
+	public String getValue(int columnNumber) {
+		int fieldIndex = columnNumber - 1;
+		int openingQuote = openingQuotes[fieldIndex];
+		if (openingQuote < 0) {
+			return getField(columnNumber);
+		}
+		int closingQuote = closingQuotes[fieldIndex];
+		String value = new String(data, start + openingQuote + 1,
+				closingQuote - openingQuote - 1, charset);
+		if (escapedFields[fieldIndex]) {
+			value = format.unescapeQuotedContents(value);
+		}
+		int fieldEnd = getFieldEnd(columnNumber);
+		if (closingQuote + 1 < fieldEnd) {
+			// Keep any text after the closing quote
+			value += new String(data, start + closingQuote + 1, fieldEnd - closingQuote - 1, charset);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the positions of the column boundaries (separator characters)
+	 * relative to the start of the record, in bytes.
+	 *
+	 * @return	The column boundaries
+	 */
+	public List<Integer> getColumnBoundaries() {
+		List<Integer> boundaries = new ArrayList<Integer>(boundaryCount);
+		for (int i = 0; i < boundaryCount; i++) {
+			boundaries.add(columnBoundaries[i]);
+		}
+		return boundaries;
+	}
+
+	/**
+	 * Decodes the text of the whole record together with the positions of
+	 * its column boundaries in the decoded text, so that the boundaries can
+	 * be kept with the text.
+	 *
+	 * @param charBoundaries	Receives the column boundaries; the array must
+	 * 							have getColumnCount() - 1 entries
+	 * @return					The record text
+	 */
+	public String decode(int[] charBoundaries) {
+		if (singleByteCharset) {
+			System.arraycopy(columnBoundaries, 0, charBoundaries, 0, boundaryCount);
+			return toString();
+		}
+		// A byte never decodes to more than one character
+		if (decodedChars == null || decodedChars.capacity() < length()) {
+			int capacity = decodedChars == null ? 0 : decodedChars.capacity();
+			decodedChars = CharBuffer.allocate(Math.max(length(), 2 * capacity));
+		}
+		decodedChars.clear();
+		ByteBuffer bytes = ByteBuffer.wrap(data);
+		for (int columnNumber = 1; columnNumber <= getColumnCount(); columnNumber++) {
+			if (columnNumber > 1) {
+				charBoundaries[columnNumber - 2] = decodedChars.position();
+				decodedChars.put(format.getColumnSeparator());
+			}
+			bytes.limit(start + getFieldEnd(columnNumber));
+			bytes.position(start + getFieldStart(columnNumber));
+			decoder.reset();
+			decoder.decode(bytes, decodedChars, true);
+			decoder.flush(decodedChars);
+		}
+		return new String(decodedChars.array(), 0, decodedChars.position());
+	}
+
+	/**
+	 * Decodes the text of the whole record.
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return new String(data, start, length(), charset);
+	}
+
+}
@@ -0,0 +1,735 @@
+package eu.trentorise.opendata.columnrecognizers;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The CSVRecordReader is an abstract class for reading CSV records.
+ *
+ * Records are parsed on the undecoded bytes of the input, in a reusable
+ * byte buffer: files are memory-mapped and copied window by window into
+ * the buffer, and streams and byte regions are read into it. The parse
+ * itself is not zero-copy: the scanner and CSVRecord work on a byte array,
+ * so every input byte is copied once into the buffer, in bulk. No string
+ * is built for the lines of the file. A single pass of a state machine finds the end of the
+ * record, the column boundaries and the quotes and escapes of each field, so
+ * that consumers never need to scan the record again. Subclasses receive
+ * each record as a CSVRecord and decode only the values they need.
+ *
+ * Unless it is set explicitly, the encoding is detected from the start of
+ * the input by CharsetDetector. Parsing on bytes requires an ASCII-compatible
+ * encoding and ASCII format characters (see CSVFormat).
+ *
+ * A line break ends the record unless it is in a quoted field, so quoted
+ * fields can contain line breaks.
+ *
+ * @author Simon
+ *
+ */
+public abstract class CSVRecordReader {
+	/**
+	 * The initial size (in bytes) of the buffer. The buffer grows if a record
+	 * doesn't fit. It is also the largest prefix used to detect the encoding.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = CharsetDetector.PREFIX_SIZE;
+
+	/**
+	 * The initial number of fields for which space is reserved
+	 */
+	private static final int INITIAL_FIELD_CAPACITY = 16;
+
+	/**
+	 * The largest part of a file that is mapped at one time
+	 */
+	private static final long MAPPED_WINDOW_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * The input file
+	 */
+	private File file = null;
+
+	/**
+	 * The input stream (if no file is given)
+	 */
+	private InputStream inputStream = null;
+
+	/**
+	 * The input bytes (if neither a file nor a stream is given)
+	 */
+	private ByteBuffer inputBytes = null;
+
+	/**
+	 * The CSV format
+	 */
+	private CSVFormat format = null;
+
+	/**
+	 * The column separator of the format
+	 */
+	private byte columnSeparator = ';';
+
+	/**
+	 * The quote character of the format
+	 */
+	private byte quoteChar = CSVFormat.DEFAULT_QUOTE_CHAR;
+
+	/**
+	 * The escape character of the format
+	 */
+	private byte escapeChar = CSVFormat.DEFAULT_QUOTE_CHAR;
+
+	/**
+	 * The encoding of the input, or null to detect it
+	 */
+	private Charset charset = null;
+
+	/**
+	 * The byte buffer, reused for the whole input
+	 */
+	private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+	/**
+	 * The buffer seen as little endian words by the scanner
+	 */
+	private ByteBuffer bufferWords = CSVScanner.wordView(buffer.array());
+
+	/**
+	 * Finds the special bytes in the buffer
+	 */
+	private CSVScanner scanner = null;
+
+	/**
+	 * The column boundaries of the current record
+	 */
+	private int[] columnBoundaries = new int[INITIAL_FIELD_CAPACITY];
+
+	/**
+	 * For each field of the current record, the position of the opening
+	 * quote relative to the record start, or -1 if the field isn't quoted
+	 */
+	private int[] openingQuotes = new int[INITIAL_FIELD_CAPACITY];
+
+	/**
+	 * For each quoted field of the current record, the position of the
+	 * closing quote relative to the record start (the field end if the
+	 * quote is missing)
+	 */
+	private int[] closingQuotes = new int[INITIAL_FIELD_CAPACITY];
+
+	/**
+	 * For each quoted field of the current record, true if it contains
+	 * escape sequences
+	 */
+	private boolean[] escapedFields = new boolean[INITIAL_FIELD_CAPACITY];
+
+	/**
+	 * True if the input ended right after a complete record
+	 */
+	private boolean endedOnRecordBoundary = false;
+
+	/**
+	 * True if more input may follow the input given (see readMore)
+	 */
+	private boolean moreInputFollows = false;
+
+	/**
+	 * True if the subclass doesn't want more records
+	 */
+	private boolean stopped = false;
+
+	/**
+	 * The view of the current record passed to processRecord
+	 */
+	private final CSVRecord record = new CSVRecord();
+
+	/**
+	 * Creates the CSVRecordReader.
+	 *
+	 * @param file				The input file
+	 * @param columnSeparator	The column separator character
+	 */
+	public CSVRecordReader(File file, char columnSeparator) {
+		this(file, new CSVFormat(columnSeparator));
+	}
+
+	/**
+	 * Creates the CSVRecordReader.
+	 *
+	 * @param file		The input file
+	 * @param format	The CSV format
+	 */
+	public CSVRecordReader(File file, CSVFormat format) {
+		super();
+		this.file = file;
+		setFormat(format);
+	}
+
+	/**
+	 * Creates the CSVRecordReader.
+	 *
+	 * @param stream			The input stream
+	 * @param columnSeparator	The column separator character
+	 */
+	public CSVRecordReader(InputStream stream, char columnSeparator) {
+		this(stream, new CSVFormat(columnSeparator));
+	}
+
+	/**
+	 * Creates the CSVRecordReader.
+	 *
+	 * @param stream	The input stream
+	 * @param format	The CSV format
+	 */
+	public CSVRecordReader(InputStream stream, CSVFormat format) {
+		super();
+		this.inputStream = stream;
+		setFormat(format);
+	}
+
+	/**
+	 * Creates the CSVRecordReader for a region of bytes, for example part of
+	 * a memory-mapped file, which is copied into the buffer as it is parsed.
+	 * The region must start at the beginning of a record.
+	 *
+	 * @param bytes		The encoded input
+	 * @param format	The CSV format
+	 */
+	CSVRecordReader(ByteBuffer bytes, CSVFormat format) {
+		super();
+		this.inputBytes = bytes;
+		setFormat(format);
+	}
+
+	/**
+	 * Sets the format and prepares the scanner for it.
+	 *
+	 * @param format	The CSV format
+	 */
+	private void setFormat(CSVFormat format) {
+		this.format = format;
+		scanner = new CSVScanner(format);
+		columnSeparator = (byte)format.getColumnSeparator();
+		quoteChar = (byte)format.getQuoteChar();
+		escapeChar = (byte)format.getEscapeChar();
+		record.setFormat(format);
+	}
+
+	/**
+	 * Returns the column separator character.
+	 *
+	 * @return	The separator
+	 */
+	public char getColumnSeparator() {
+		return format.getColumnSeparator();
+	}
+
+	/**
+	 * Returns the CSV format.
+	 *
+	 * @return	The format
+	 */
+	public CSVFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Sets the encoding of the input. By default the encoding is detected.
+	 *
+	 * @param charset	The charset, which must be ASCII-compatible
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Returns the encoding of the input. Unless it was set, it is known
+	 * only once reading has started.
+	 *
+	 * @return	The charset, or null if it has not been detected yet
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Makes the reader use a buffer left by an earlier reader, so that a
+	 * thread reading many inputs in turn doesn't allocate (and grow) a new
+	 * buffer for each of them.
+	 *
+	 * @param buffer	The buffer of the earlier reader, see getBuffer
+	 */
+	void setBuffer(ByteBuffer buffer) {
+		this.buffer = buffer;
+		bufferWords = CSVScanner.wordView(buffer.array());
+	}
+
+	/**
+	 * Returns the buffer of the reader, which may have grown while reading.
+	 *
+	 * @return	The buffer
+	 */
+	ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Processes the input, calling processRecord for each record.
+	 */
+	public void read() {
+		ByteSource source = null;
+		try {
+			if (file != null) {
+				source = new MappedFileSource(file);
+			} else if (inputBytes != null) {
+				source = new ByteBufferSource(inputBytes);
+			} else {
+				source = new StreamSource(inputStream);
+			}
+			read(source, true);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (source != null) {
+				try {
+					source.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tells the reader that its input may be followed by more input, as
+	 * when a file is parsed in chunks. An incomplete record at the end of
+	 * the input is then kept, not processed, until readMore completes it.
+	 *
+	 * @param moreInputFollows	True if readMore may be called after read
+	 */
+	void setMoreInputFollows(boolean moreInputFollows) {
+		this.moreInputFollows = moreInputFollows;
+	}
+
+	/**
+	 * Continues reading with the input that follows the input already
+	 * read. Parsing resumes at the start of the incomplete record kept at
+	 * the end of the earlier input, so only that record and the new input
+	 * are parsed.
+	 *
+	 * @param bytes		The encoded input that follows
+	 */
+	void readMore(ByteBuffer bytes) {
+		try {
+			read(new ByteBufferSource(bytes), false);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Stops reading after the current record. Subclasses can call this from
+	 * processRecord when they have seen enough of the input; the rest of the
+	 * input is then neither read nor parsed.
+	 */
+	protected void stopReading() {
+		stopped = true;
+	}
+
+	/**
+	 * Fills the buffer from the source and parses the records until the
+	 * source is exhausted. An incomplete record at the end of the buffer is
+	 * moved to the front before refilling.
+	 *
+	 * @param source		The source of bytes
+	 * @param startOfInput	False to continue after the incomplete record
+	 * 						kept from the earlier input
+	 * @throws IOException
+	 */
+	private void read(ByteSource source, boolean startOfInput) throws IOException {
+		if (startOfInput) {
+			buffer.clear();
+		}
+		stopped = false;
+		boolean endOfInput = false;
+		while (!endOfInput && !stopped) {
+			if (!buffer.hasRemaining()) {
+				growBuffer();
+			}
+			endOfInput = source.fill(buffer) < 0;
+			buffer.flip();
+			if (startOfInput) {
+				startInput(endOfInput);
+				startOfInput = false;
+			}
+			int consumed = parseRecords(buffer.array(), buffer.position(), buffer.limit(), endOfInput);
+			buffer.position(consumed);
+			buffer.compact();
+		}
+	}
+
+	/**
+	 * Detects the encoding from the first buffer of input, if it wasn't set,
+	 * and skips the UTF-8 byte order mark.
+	 *
+	 * @param endOfInput	True if the buffer holds the whole input
+	 */
+	private void startInput(boolean endOfInput) {
+		byte[] data = buffer.array();
+		if (charset == null) {
+			charset = CharsetDetector.detect(data, 0, buffer.limit(), endOfInput);
+		}
+		if (charset.equals(CharsetDetector.UTF_8)) {
+			buffer.position(CharsetDetector.getBOMLength(data, 0, buffer.limit()));
+		}
+		record.setCharset(charset);
+	}
+
+	/**
+	 * Doubles the capacity of the buffer, keeping its contents.
+	 */
+	private void growBuffer() {
+		ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+		buffer.flip();
+		newBuffer.put(buffer);
+		buffer = newBuffer;
+		bufferWords = CSVScanner.wordView(buffer.array());
+	}
+
+	/**
+	 * Parses the complete records in a region of the buffer.
+	 * 
+	 * The scanner reports the positions of separators, quotes, escapes and
+	 * line breaks a block at a time; all other bytes are skipped without
+	 * being examined by the parser. The state of the parser is whether it is
+	 * in a quoted field. A decision that depends on the byte after the end
+	 * of the region (an escaped quote or \r\n) is postponed by reparsing the
+	 * record once more input is available.
+	 *
+	 * @param data			The buffer contents
+	 * @param start			The start of the region
+	 * @param limit			The end of the region (exclusive)
+	 * @param endOfInput	True if no more input follows the region
+	 * @return				The position of the first unparsed byte
+	 */
+	private int parseRecords(byte[] data, int start, int limit, boolean endOfInput) {
+		int recordStart = start;
+		int fieldStart = start;
+		int fieldIndex = 0;
+		boolean inQuotedField = false;
+		int openingQuote = -1;
+		int closingQuote = -1;
+		boolean escaped = false;
+		boolean needMoreInput = false;
+		int position = start;
+
+		scanning:
+		while (position < limit) {
+			int blockStart = position;
+			long specials = scanner.scan(data, bufferWords, blockStart, limit);
+			position += CSVScanner.blockLength(blockStart, limit);
+
+			while (specials != 0) {
+				int specialPosition = blockStart + Long.numberOfTrailingZeros(specials);
+				specials &= specials - 1;
+				int next = specialPosition + 1;
+				byte c = data[specialPosition];
+
+				if (inQuotedField) {
+					if (c == quoteChar || c == escapeChar) {
+						boolean escapes = c == escapeChar
+								&& (escapeChar != quoteChar || (next < limit && data[next] == quoteChar));
+						if (next == limit && !endOfInput) {
+							// We need to see the next byte to know if it is escaped
+							needMoreInput = true;
+							break scanning;
+						}
+						if (escapes && next < limit) {
+							escaped = true;
+							next++;
+						} else if (c == quoteChar) {
+							inQuotedField = false;
+							closingQuote = specialPosition;
+						}
+					}
+				} else if (c == columnSeparator) {
+					endField(fieldIndex, recordStart, openingQuote, closingQuote, escaped);
+					addColumnBoundary(fieldIndex++, specialPosition - recordStart);
+					fieldStart = next;
+					openingQuote = -1;
+					escaped = false;
+				} else if (c == '\r' || c == '\n') {
+					if (c == '\r') {
+						if (next == limit && !endOfInput) {
+							// We need to see the next byte to know if it is \n
+							needMoreInput = true;
+							break scanning;
+						}
+						if (next < limit && data[next] == '\n') {
+							next++;
+						}
+					}
+					endField(fieldIndex, recordStart, openingQuote, closingQuote, escaped);
+					emitRecord(data, recordStart, specialPosition, fieldIndex);
+					recordStart = next;
+					fieldStart = next;
+					fieldIndex = 0;
+					openingQuote = -1;
+					escaped = false;
+					if (stopped) {
+						break scanning;
+					}
+				} else if (c == quoteChar && openingQuote < 0 && isBlank(data, fieldStart, specialPosition)) {
+					// Quotes elsewhere in an unquoted field are ordinary characters
+					inQuotedField = true;
+					openingQuote = specialPosition;
+				}
+
+				// Skip any bytes consumed together with the special one
+				int skippedOffset = next - blockStart;
+				if (skippedOffset >= CSVScanner.BLOCK_SIZE) {
+					position = next;
+					continue scanning;
+				}
+				specials &= -1L << skippedOffset;
+			}
+		}
+
+		endedOnRecordBoundary = recordStart == limit;
+		if (!needMoreInput && !stopped && endOfInput && !moreInputFollows && recordStart < limit) {
+			// The last record is not followed by a line break
+			if (inQuotedField) {
+				closingQuote = limit;
+			}
+			endField(fieldIndex, recordStart, openingQuote, closingQuote, escaped);
+			emitRecord(data, recordStart, limit, fieldIndex);
+			recordStart = limit;
+		}
+
+		return recordStart;
+	}
+
+	/**
+	 * Returns true if the input ended right after a complete record, that
+	 * is, not in the middle of a record or a quoted field. Valid after read.
+	 *
+	 * @return	True if the input ended on a record boundary
+	 */
+	boolean endedOnRecordBoundary() {
+		return endedOnRecordBoundary;
+	}
+
+	/**
+	 * Checks that a range of the buffer contains only white space.
+	 *
+	 * @param data		The buffer contents
+	 * @param start		The start of the range
+	 * @param end		The end of the range (exclusive)
+	 * @return			True if all characters are white space
+	 */
+	private static boolean isBlank(byte[] data, int start, int end) {
+		for (int position = start; position < end; position++) {
+			if (!Character.isWhitespace(data[position])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records the quotes of a field of the current record.
+	 *
+	 * @param index			The index of the field
+	 * @param recordStart	The start of the record
+	 * @param openingQuote	The position of the opening quote, or -1
+	 * @param closingQuote	The position of the closing quote
+	 * @param escaped		True if the field contains escape sequences
+	 */
+	private void endField(int index, int recordStart, int openingQuote, int closingQuote,
+			boolean escaped) {
+		if (index == openingQuotes.length) {
+			growFieldArrays();
+		}
+		if (openingQuote < 0) {
+			openingQuotes[index] = -1;
+		} else {
+			openingQuotes[index] = openingQuote - recordStart;
+			closingQuotes[index] = closingQuote - recordStart;
+			escapedFields[index] = escaped;
+		}
+	}
+
+	/**
+	 * Records a column boundary of the current record.
+	 *
+	 * @param index		The index of the boundary
+	 * @param offset	The separator position relative to the record start
+	 */
+	private void addColumnBoundary(int index, int offset) {
+		if (index == columnBoundaries.length) {
+			growFieldArrays();
+		}
+		columnBoundaries[index] = offset;
+	}
+
+	/**
+	 * Doubles the number of fields that can be recorded.
+	 */
+	private void growFieldArrays() {
+		int capacity = openingQuotes.length * 2;
+		columnBoundaries = Arrays.copyOf(columnBoundaries, capacity);
+		openingQuotes = Arrays.copyOf(openingQuotes, capacity);
+		closingQuotes = Arrays.copyOf(closingQuotes, capacity);
+		escapedFields = Arrays.copyOf(escapedFields, capacity);
+	}
+
+	/**
+	 * Passes a complete record to the subclass.
+	 *
+	 * @param data			The buffer contents
+	 * @param start			The start of the record
+	 * @param end			The end of the record (exclusive)
+	 * @param boundaryCount	The number of column boundaries
+	 */
+	private void emitRecord(byte[] data, int start, int end, int boundaryCount) {
+		record.set(data, start, end, columnBoundaries, boundaryCount);
+		record.setQuotes(openingQuotes, closingQuotes, escapedFields);
+		processRecord(record);
+	}
+
+	/**
+	 * Processes a record. Subclasses must implement this method. The record
+	 * is only valid until the method returns.
+	 *
+	 * @param record	The CSV record
+	 */
+	protected abstract void processRecord(CSVRecord record);
+
+	/**
+	 * A source of bytes for the reader buffer.
+	 */
+	private interface ByteSource {
+		/**
+		 * Puts bytes into the buffer, until it is full or the input ends.
+		 *
+		 * @param buffer	The buffer (in write mode)
+		 * @return			The number of bytes added, -1 at end of input
+		 * @throws IOException
+		 */
+		int fill(ByteBuffer buffer) throws IOException;
+
+		/**
+		 * Releases the source.
+		 *
+		 * @throws IOException
+		 */
+		void close() throws IOException;
+	}
+
+	/**
+	 * Copies as many bytes as fit from one buffer to another.
+	 *
+	 * @param from		The source buffer
+	 * @param to		The destination buffer (backed by an array)
+	 * @return			The number of bytes copied
+	 */
+	private static int transfer(ByteBuffer from, ByteBuffer to) {
+		int count = Math.min(from.remaining(), to.remaining());
+		from.get(to.array(), to.arrayOffset() + to.position(), count);
+		to.position(to.position() + count);
+		return count;
+	}
+
+	/**
+	 * Reads a memory-mapped file, one window at a time, copying the window
+	 * into the reader buffer. The mapping saves the read calls of a stream,
+	 * not the copy.
+	 */
+	private static class MappedFileSource implements ByteSource {
+		private FileInputStream fileStream = null;
+		private FileChannel channel = null;
+		private long fileSize = 0;
+		private long windowStart = 0;
+		private MappedByteBuffer window = null;
+
+		MappedFileSource(File file) throws IOException {
+			fileStream = new FileInputStream(file);
+			channel = fileStream.getChannel();
+			fileSize = channel.size();
+		}
+
+		public int fill(ByteBuffer buffer) throws IOException {
+			int added = 0;
+			while (buffer.hasRemaining() && windowStart < fileSize) {
+				if (window == null) {
+					long windowSize = Math.min(MAPPED_WINDOW_SIZE, fileSize - windowStart);
+					window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+				}
+				added += transfer(window, buffer);
+				if (!window.hasRemaining()) {
+					windowStart += window.capacity();
+					window = null;
+				}
+			}
+			return added == 0 && windowStart >= fileSize ? -1 : added;
+		}
+
+		public void close() throws IOException {
+			window = null;
+			fileStream.close();
+		}
+	}
+
+	/**
+	 * Reads a buffer of bytes.
+	 */
+	private static class ByteBufferSource implements ByteSource {
+		private ByteBuffer bytes = null;
+
+		ByteBufferSource(ByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+
+		public int fill(ByteBuffer buffer) throws IOException {
+			return bytes.hasRemaining() ? transfer(bytes, buffer) : -1;
+		}
+
+		public void close() throws IOException {
+			bytes = null;
+		}
+	}
+
+	/**
+	 * Reads an input stream.
+	 */
+	private static class StreamSource implements ByteSource {
+		private InputStream stream = null;
+
+		StreamSource(InputStream stream) {
+			this.stream = stream;
+		}
+
+		public int fill(ByteBuffer buffer) throws IOException {
+			int added = 0;
+			while (buffer.hasRemaining()) {
+				int count = stream.read(buffer.array(), buffer.arrayOffset() + buffer.position(),
+						buffer.remaining());
+				if (count < 0) {
+					return added == 0 ? -1 : added;
+				}
+				buffer.position(buffer.position() + count);
+				added += count;
+			}
+			return added;
+		}
+
+		public void close() throws IOException {
+			stream.close();
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The CSVScanner finds the bytes that matter to the CSV parser (column
+ * separators, quotes, escapes and line breaks) in blocks of up to 64 bytes
+ * and returns their positions as a bitmap. The parser then visits only the
+ * set bits instead of branching on every byte.
+ *
+ * Bytes are compared eight at a time by loading them into the 8-bit lanes of
+ * a long (SWAR: SIMD within a register). This works for any ASCII-compatible
+ * encoding as long as the special characters are ASCII, because no byte of
+ * a multi-byte character is in the ASCII range.
+ *
+ * @author Simon
+ *
+ */
+final class CSVScanner {
+	/**
+	 * The largest number of bytes scanned in one block
+	 */
+	static final int BLOCK_SIZE = 64;
+
+	/**
+	 * A one in the lowest bit of each 8-bit lane
+	 */
+	private static final long LANE_ONES = 0x0101010101010101L;
+
+	/**
+	 * All bits of each lane except the highest
+	 */
+	private static final long LANE_LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	/**
+	 * Multiplying by this moves bit 8i to bit 56 + i, for each lane i
+	 */
+	private static final long GATHER_MULTIPLIER = 0x0102040810204080L;
+
+	/**
+	 * The column separator in every lane
+	 */
+	private final long separatorPattern;
+
+	/**
+	 * The quote character in every lane
+	 */
+	private final long quotePattern;
+
+	/**
+	 * The escape character in every lane
+	 */
+	private final long escapePattern;
+
+	/**
+	 * The line feed in every lane
+	 */
+	private final long lineFeedPattern;
+
+	/**
+	 * The carriage return in every lane
+	 */
+	private final long carriageReturnPattern;
+
+	/**
+	 * The column separator
+	 */
+	private final byte columnSeparator;
+
+	/**
+	 * The quote character
+	 */
+	private final byte quoteChar;
+
+	/**
+	 * The escape character
+	 */
+	private final byte escapeChar;
+
+	/**
+	 * Constructs the scanner.
+	 *
+	 * @param format	The CSV format, whose characters must be ASCII
+	 */
+	CSVScanner(CSVFormat format) {
+		columnSeparator = toASCII(format.getColumnSeparator());
+		quoteChar = toASCII(format.getQuoteChar());
+		escapeChar = toASCII(format.getEscapeChar());
+		separatorPattern = columnSeparator * LANE_ONES;
+		quotePattern = quoteChar * LANE_ONES;
+		escapePattern = escapeChar * LANE_ONES;
+		lineFeedPattern = '\n' * LANE_ONES;
+		carriageReturnPattern = '\r' * LANE_ONES;
+	}
+
+	/**
+	 * Converts a format character to a byte.
+	 *
+	 * @param c		The character
+	 * @return		The byte
+	 */
+	private static byte toASCII(char c) {
+		if (c > 0x7F) {
+			throw new IllegalArgumentException("CSV format characters must be ASCII: " + c);
+		}
+		return (byte)c;
+	}
+
+	/**
+	 * Returns a view for reading words from a buffer. The words are little
+	 * endian, so the byte at the lowest position is in the lowest lane.
+	 *
+	 * @param data		The buffer
+	 * @return			The view
+	 */
+	static ByteBuffer wordView(byte[] data) {
+		return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Finds the special bytes in a block of the buffer.
+	 *
+	 * @param data		The buffer
+	 * @param words		The word view of the buffer, see wordView
+	 * @param start		The start of the block
+	 * @param limit		The end of the buffer region (exclusive)
+	 * @return			Bit i is set iff data[start + i] is a special byte
+	 */
+	long scan(byte[] data, ByteBuffer words, int start, int limit) {
+		int end = Math.min(start + BLOCK_SIZE, limit);
+		long bitmap = 0;
+		int position = start;
+		for (; position + 8 <= end; position += 8) {
+			long word = words.getLong(position);
+			long matches = zeroLanes(word ^ separatorPattern)
+					| zeroLanes(word ^ quotePattern)
+					| zeroLanes(word ^ escapePattern)
+					| zeroLanes(word ^ lineFeedPattern)
+					| zeroLanes(word ^ carriageReturnPattern);
+			if (matches != 0) {
+				bitmap |= gatherLaneBits(matches) << (position - start);
+			}
+		}
+		for (; position < end; position++) {
+			if (isSpecial(data[position])) {
+				bitmap |= 1L << (position - start);
+			}
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Returns the number of bytes covered by a call to scan.
+	 *
+	 * @param start		The start of the block
+	 * @param limit		The end of the buffer region (exclusive)
+	 * @return			The block length
+	 */
+	static int blockLength(int start, int limit) {
+		return Math.min(BLOCK_SIZE, limit - start);
+	}
+
+	/**
+	 * Returns true for the bytes reported by scan.
+	 *
+	 * @param b		The byte
+	 * @return		True if the byte is special
+	 */
+	boolean isSpecial(byte b) {
+		return b == columnSeparator || b == quoteChar || b == escapeChar || b == '\n' || b == '\r';
+	}
+
+	/**
+	 * Sets the highest bit of every 8-bit lane that is zero, and clears all
+	 * other bits. Unlike the usual has-zero expression it has no false
+	 * positives caused by borrows between lanes.
+	 *
+	 * @param word	Eight packed bytes
+	 * @return		The lane mask
+	 */
+	private static long zeroLanes(long word) {
+		return ~(((word & LANE_LOW_BITS) + LANE_LOW_BITS) | word | LANE_LOW_BITS);
+	}
+
+	/**
+	 * Moves the highest bits of the eight lanes to bits 0..7.
+	 *
+	 * @param laneMask	The output of zeroLanes
+	 * @return			The eight-bit mask
+	 */
+	private static long gatherLaneBits(long laneMask) {
+		return ((laneMask >>> 7) * GATHER_MULTIPLIER) >>> 56;
+	}
+}
@@ -0,0 +1,168 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.nio.charset.Charset;
+
+/**
+ * The CharsetDetector guesses the encoding of CSV input from its first bytes.
+ *
+ * Only ASCII-compatible encodings are considered, since the CSV parser works
+ * on bytes:
+ * <ul>
+ * <li>a UTF-8 byte order mark, or a prefix that is valid UTF-8, gives UTF-8
+ * (pure ASCII is valid UTF-8);</li>
+ * <li>otherwise the input is assumed to be Windows-1252, the usual encoding
+ * of files exported on Western European systems, unless it contains bytes
+ * that are undefined in Windows-1252, which gives ISO-8859-1.</li>
+ * </ul>
+ *
+ * @author Simon
+ *
+ */
+public class CharsetDetector {
+	/**
+	 * The number of bytes examined by the detector
+	 */
+	public static final int PREFIX_SIZE = 64 * 1024;
+
+	/**
+	 * The UTF-8 charset
+	 */
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * The Windows-1252 charset
+	 */
+	public static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+	/**
+	 * The ISO-8859-1 charset
+	 */
+	public static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	/**
+	 * The UTF-8 byte order mark
+	 */
+	private static final byte[] UTF_8_BOM = { (byte)0xEF, (byte)0xBB, (byte)0xBF };
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private CharsetDetector() {
+	}
+
+	/**
+	 * Guesses the encoding of the input.
+	 *
+	 * @param data			The buffer holding the first bytes of the input
+	 * @param start			The position of the first byte
+	 * @param length		The number of bytes available (only the first
+	 * 						PREFIX_SIZE are examined)
+	 * @param endOfInput	True if the bytes available are the whole input;
+	 * 						otherwise a character cut off at the end of the
+	 * 						bytes examined is not an error
+	 * @return				The charset
+	 */
+	public static Charset detect(byte[] data, int start, int length, boolean endOfInput) {
+		if (getBOMLength(data, start, length) > 0) {
+			return UTF_8;
+		}
+		int end = start + Math.min(length, PREFIX_SIZE);
+		if (isValidUTF8(data, start, end, endOfInput && length <= PREFIX_SIZE)) {
+			return UTF_8;
+		}
+		for (int position = start; position < end; position++) {
+			if (isUndefinedInWindows1252(data[position])) {
+				return ISO_8859_1;
+			}
+		}
+		return WINDOWS_1252;
+	}
+
+	/**
+	 * Returns the length of the UTF-8 byte order mark at the start of the
+	 * input, if there is one.
+	 *
+	 * @param data		The buffer holding the first bytes of the input
+	 * @param start		The position of the first byte
+	 * @param length	The number of bytes available
+	 * @return			The length of the mark, or 0
+	 */
+	public static int getBOMLength(byte[] data, int start, int length) {
+		if (length < UTF_8_BOM.length) {
+			return 0;
+		}
+		for (int i = 0; i < UTF_8_BOM.length; i++) {
+			if (data[start + i] != UTF_8_BOM[i]) {
+				return 0;
+			}
+		}
+		return UTF_8_BOM.length;
+	}
+
+	/**
+	 * Checks that a range of bytes is well-formed UTF-8.
+	 *
+	 * @param data				The buffer
+	 * @param start				The start of the range
+	 * @param end				The end of the range (exclusive)
+	 * @param endOfInput		False if the range may end in the middle of a
+	 * 							character, which is then not an error
+	 * @return					True if the bytes are valid UTF-8
+	 */
+	private static boolean isValidUTF8(byte[] data, int start, int end, boolean endOfInput) {
+		int position = start;
+		while (position < end) {
+			int lead = data[position] & 0xFF;
+			int continuationCount;
+			if (lead < 0x80) {
+				position++;
+				continue;
+			} else if (lead >= 0xC2 && lead <= 0xDF) {
+				continuationCount = 1;
+			} else if (lead >= 0xE0 && lead <= 0xEF) {
+				continuationCount = 2;
+			} else if (lead >= 0xF0 && lead <= 0xF4) {
+				continuationCount = 3;
+			} else {
+				return false;
+			}
+			if (position + continuationCount >= end) {
+				// The character is cut off by the end of the range
+				return !endOfInput && allContinuationBytes(data, position + 1, end);
+			}
+			if (!allContinuationBytes(data, position + 1, position + 1 + continuationCount)) {
+				return false;
+			}
+			position += 1 + continuationCount;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that all bytes of a range have the form 10xxxxxx.
+	 *
+	 * @param data		The buffer
+	 * @param start		The start of the range
+	 * @param end		The end of the range (exclusive)
+	 * @return			True if all bytes are continuation bytes
+	 */
+	private static boolean allContinuationBytes(byte[] data, int start, int end) {
+		for (int position = start; position < end; position++) {
+			if ((data[position] & 0xC0) != 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks for the five byte values that Windows-1252 leaves undefined.
+	 *
+	 * @param b		The byte
+	 * @return		True if the byte has no Windows-1252 character
+	 */
+	private static boolean isUndefinedInWindows1252(byte b) {
+		int value = b & 0xFF;
+		return value == 0x81 || value == 0x8D || value == 0x8F || value == 0x90 || value == 0x9D;
+	}
+}
@@ -2,6 +2,7 @@ package eu.trentorise.opendata.columnrecognizers;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -32,6 +33,12 @@ public class ClassifierFusionCR extends FusionColumnRecognizer {
 	 */
 	Set<String> inputRecognizers = null;
 	
+	/**
+	 * The read-only candidate map with a zero score for each input 
+	 * recognizer, shared by all the columns that have no input candidate
+	 */
+	private Map<String, Double> zeroCandidateMap = null;
+	
 	/**
 	 * Constructs the ClassifierFusionCR.
 	 * 
@@ -51,6 +58,7 @@ public class ClassifierFusionCR extends FusionColumnRecognizer {
 		columnCount = table.getColumnCount();
 		List<List<Double>> columnFeatures = table.getColumnFeatures(); 
 		this.inputRecognizers = inputRecognizers;
+		zeroCandidateMap = Collections.unmodifiableMap(makeNewCandidateMap());
 		classifier = new FusionClassifier(modelFile, columnFeatures, conceptID, inputRecognizers);
 	}
 
@@ -103,18 +111,41 @@ public class ClassifierFusionCR extends FusionColumnRecognizer {
 	}
 
 	/**
-	 * Creates a new list of candidate maps.
+	 * Creates a new list of candidate maps. All columns start out with the 
+	 * shared zero map; a column gets a map of its own only when an input 
+	 * candidate for it arrives (see getWritableCandidateMap). On wide tables
+	 * most columns never do.
 	 * 
 	 * @return		The new list
 	 */
 	private List<Map<String, Double>> makeNewCandidateMapList() {
-		List<Map<String, Double>> candidateMapList = new ArrayList<Map<String, Double>>();
+		List<Map<String, Double>> candidateMapList 
+			= new ArrayList<Map<String, Double>>(columnCount);
 		for (int columnNumber = 1; columnNumber <= columnCount; columnNumber++) {
-			candidateMapList.add(makeNewCandidateMap());
+			candidateMapList.add(zeroCandidateMap);
 		}
 		return candidateMapList;
 	}
 
+	/**
+	 * Gets the candidate map of a column for updating, replacing the shared
+	 * zero map with a new map if necessary.
+	 * 
+	 * @param candidateMapList	The list of candidate maps
+	 * @param columnNumber		The column number (1, ..)
+	 * @return					The writable map of the column
+	 */
+	private Map<String, Double> getWritableCandidateMap(
+			List<Map<String, Double>> candidateMapList, 
+			int columnNumber) {
+		Map<String, Double> candidateMap = candidateMapList.get(columnNumber - 1);
+		if (candidateMap == zeroCandidateMap) {
+			candidateMap = makeNewCandidateMap();
+			candidateMapList.set(columnNumber - 1, candidateMap);
+		}
+		return candidateMap;
+	}
+
 	/**
 	 * Creates a new map of input recognizer ID to score.
 	 * 
@@ -368,9 +399,11 @@ public class ClassifierFusionCR extends FusionColumnRecognizer {
 				double score = candidate.getScore();
 				
 				if (isSupporting) {
-					supportingCandidates.get(columnNumber - 1).put(originator, score);
+					getWritableCandidateMap(supportingCandidates, columnNumber)
+						.put(originator, score);
 				} else {
-					Map<String, Double> map = competingCandidates.get(columnNumber - 1);
+					Map<String, Double> map 
+						= getWritableCandidateMap(competingCandidates, columnNumber);
 //					if (map.containsKey(originator)) {
 					double currentScore = map.get(originator);
 					if (candidate.getScore() > currentScore) {
@@ -1,8 +1,8 @@
 package eu.trentorise.opendata.columnrecognizers;
 
 import java.io.File;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -13,6 +13,11 @@ import eu.trentorise.opendata.nlprise.DataTypeGuess.Datatype;
 
 /**
  * The Column class represents a table column.
+ * 
+ * The values are read through a ColumnSource. A column built from a list of
+ * strings uses the list as its source; a column built field by field stores
+ * its fields in a SparseColumnSource, which keeps only the non-empty values;
+ * a column built from another source wraps it without copying.
  *
  * @author Simon
  *
@@ -24,9 +29,19 @@ public class Column {
 	private static final int NUMBER_OF_DATATYPES = Datatype.values().length;
 	
 	/**
-	 * The fields in the column
+	 * The fields in the column, if the column is backed by a list
 	 */
 	private List<String> fields = null;
+
+	/**
+	 * The fields in the column, if the column is built field by field
+	 */
+	private SparseColumnSource sparseFields = null;
+
+	/**
+	 * The source of the values
+	 */
+	private ColumnSource source = null;
 	
 	/**
 	 * The column features are cached for efficiency
@@ -34,15 +49,17 @@ public class Column {
 	private List<Double> cachedFeatures = null;
 	
 	/**
-	 * The datatype of the column
+	 * What the recognizers compute from the contents, shared between them;
+	 * null until it is first asked for, and again after a field is appended
 	 */
-	private Datatype columnType = null;
+	private volatile ColumnAnalysis analysis = null;
 	
 	/**
 	 * Constructs the column.
 	 */
 	public Column() {
-		fields = new ArrayList<String>();
+		sparseFields = new SparseColumnSource();
+		source = sparseFields;
 	}
 	
 	/**
@@ -52,6 +69,17 @@ public class Column {
 	 */
 	public Column(List<String> fields) {
 		this.fields = fields;
+		source = new ListSource(fields);
+	}
+
+	/**
+	 * Constructs a column that reads its values from a source. The values are
+	 * not copied, and fields can't be appended.
+	 * 
+	 * @param source	The column data
+	 */
+	public Column(ColumnSource source) {
+		this.source = source;
 	}
 	
 	/**
@@ -75,17 +103,10 @@ public class Column {
 	/**
 	 * Gets the set of values that exist in a single column.
 	 * 
-	 * @return	The value set
+	 * @return	The value set (read-only)
 	 */
 	public Set<String> getValueSet() {
-		Set<String> valueSet = new HashSet<String>();
-		
-		Iterator<String> it = getFieldIterator();
-		while (it.hasNext()) {
-			valueSet.add(it.next());
-		}
-		
-		return valueSet;
+		return getAnalysis().getValueSet();
 	}
 	
 	/**
@@ -95,12 +116,10 @@ public class Column {
 	 * @return	The normalized value sets
 	 */
 	private Set<String> getNormalizedValueSet() {
-		Set<String> valueSet = new HashSet<String>();
-		Iterator<String> it = getFieldIterator();
-		while (it.hasNext()) {
-			valueSet.add(CRStringUtils.normalize(it.next()));
+		Set<String> valueSet = new HashSet<String>(getAnalysis().getNormalizedValueCounts().keySet());
+		if (getEmptyCount() > 0) {
+			valueSet.add("");
 		}
-		
 		return valueSet;
 	}
 
@@ -111,7 +130,7 @@ public class Column {
 	 * @return		The uniqueness value
 	 */
 	public double getUniqueness() {
-		return ((double)getValueSet().size()) / fields.size();
+		return ((double)getValueSet().size()) / size();
 	}
 
 	/**
@@ -130,7 +149,56 @@ public class Column {
 	 * @param field		The contents of the field
 	 */
 	public void appendField(String field) {
-		fields.add(field);
+		if (analysis != null) {
+			analysis = null;
+		}
+		if (sparseFields != null) {
+			sparseFields.append(field);
+		} else if (fields != null) {
+			fields.add(field);
+		} else {
+			throw new UnsupportedOperationException("Column is backed by a read-only source");
+		}
+	}
+
+	/**
+	 * Returns the non-empty fields of the column. Recognizers that iterate
+	 * over these instead of all the fields skip the empty cells of sparse
+	 * columns; getEmptyCount tells how many cells were skipped.
+	 * 
+	 * @return	The non-empty fields, in row order
+	 */
+	public List<String> getNonEmptyValues() {
+		if (sparseFields != null) {
+			return sparseFields.getNonEmptyValues();
+		}
+		List<String> values = new ArrayList<String>();
+		for (int rowIndex = 0; rowIndex < size(); rowIndex++) {
+			CharSequence value = source.get(rowIndex);
+			if (value != null && value.length() > 0) {
+				values.add(value.toString());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the number of empty or null fields in the column.
+	 * 
+	 * @return	The number of empty fields
+	 */
+	public int getEmptyCount() {
+		if (sparseFields != null) {
+			return sparseFields.getEmptyCount();
+		}
+		int emptyCount = 0;
+		for (int rowIndex = 0; rowIndex < size(); rowIndex++) {
+			CharSequence value = source.get(rowIndex);
+			if (value == null || value.length() == 0) {
+				emptyCount++;
+			}
+		}
+		return emptyCount;
 	}
 	
 	/**
@@ -139,78 +207,56 @@ public class Column {
 	 * @return	The iterator
 	 */
 	public Iterator<String> getFieldIterator() {
-		return fields.iterator();
+		return getContents().iterator();
 	}
 	
 	/**
 	 * Extracts a list of the words occurring in the table, preserving their
 	 * order.
 	 * 
-	 * @return	The word list
+	 * @return	The word list (read-only)
 	 */
 	public List<String> extractWords() {
-		List<String> words = new ArrayList<String>();
-		Iterator<String> it = getFieldIterator();
-		while (it.hasNext()) {
-			String row = it.next();
-			String[] rowWords = row.split("\\W+");
-			for (int i = 0; i < rowWords.length; i++) {
-				String word = CRStringUtils.normalize(rowWords[i]);
-				if (!word.isEmpty()) {
-					words.add(word);
-				}
-			}
-		}
-		return words;
+		return getAnalysis().getWords();
 	}
 	
 	/**
 	 * Gets the set of terms in the table
 	 * 
-	 * @return	The set of terms
+	 * @return	The set of terms (read-only)
 	 */
 	public Set<String> extractWordSet() {
-		// Suppress the shortest words
-		final int MINIMAL_WORD_LENGTH = 3;
-	
-		Set<String> words = new HashSet<String>();
-		Iterator<String> it = getFieldIterator();
-		while (it.hasNext()) {
-			String row = it.next();
-			String[] rowWords = row.split("\\W+");
-			for (int i = 0; i < rowWords.length; i++) {
-				String word = CRStringUtils.normalize(rowWords[i]);
-				if (word.length() >= MINIMAL_WORD_LENGTH) {
-					words.add(word);
-				}
-			}
-		}
-		return words;
+		return getAnalysis().getWordSet();
 	}
 
 	/**
 	 * Computes the frequencies of words in the table.
 	 * 
-	 * @return	The word frequencies
+	 * @return	The word frequencies (read-only)
 	 */
 	public Map<String, Integer> computeWordFrequencies () {
-		// Suppress the shortest words
-		final int MINIMAL_WORD_LENGTH = 3;
-		
-		Map<String, Integer> frequencies = new HashMap<String, Integer>();
-		List<String> words = extractWords();
-		Iterator<String> it = words.iterator();
-		while (it.hasNext()) {
-			String word = it.next();
-			if (word.length() >= MINIMAL_WORD_LENGTH) {
-				if (frequencies.containsKey(word)) {
-					frequencies.put(word, frequencies.get(word) + 1);
-				} else {
-					frequencies.put(word, 1);
+		return getAnalysis().getTermFrequencies();
+	}
+
+	/**
+	 * Returns the analysis of the column contents, which the recognizers 
+	 * working on this column share. Appending a field starts a new analysis,
+	 * which is created when it is next asked for.
+	 * 
+	 * @return	The analysis
+	 */
+	public ColumnAnalysis getAnalysis() {
+		ColumnAnalysis result = analysis;
+		if (result == null) {
+			synchronized (this) {
+				result = analysis;
+				if (result == null) {
+					result = new ColumnAnalysis(this);
+					analysis = result;
 				}
 			}
 		}
-		return frequencies;
+		return result;
 	}
 
 	/**
@@ -219,7 +265,7 @@ public class Column {
 	 * @return	The column size
 	 */
 	public int size() {
-		return fields.size();
+		return source.size();
 	}
 
 	/**
@@ -229,16 +275,26 @@ public class Column {
 	 * @return		The field contents
 	 */
 	public String getFieldAt(int index) {
-		return fields.get(index);
+		return source.get(index).toString();
 	}
 
 	/**
-	 * Retrieves the contents of the column.
+	 * Retrieves the contents of the column. For a column backed by a source
+	 * other than a list, the list is a read-only view of the source.
 	 * 
 	 * @return	The column data
 	 */
 	public List<String> getContents() {
-		return fields;
+		return fields != null ? fields : new SourceList(source);
+	}
+
+	/**
+	 * Returns the source of the column values.
+	 * 
+	 * @return	The source
+	 */
+	public ColumnSource getSource() {
+		return source;
 	}
 
 	/**
@@ -291,10 +347,47 @@ public class Column {
 	 * @return
 	 */
 	public Datatype getType() {
-		if (columnType == null) {
-			columnType = TypeDetector.guessType(this);
+		return getAnalysis().getType();
+	}
+
+	/**
+	 * Reads the values of a column from a list of strings.
+	 */
+	private static class ListSource implements ColumnSource {
+		private final List<String> fields;
+
+		ListSource(List<String> fields) {
+			this.fields = fields;
+		}
+
+		public int size() {
+			return fields.size();
+		}
+
+		public CharSequence get(int index) {
+			return fields.get(index);
+		}
+	}
+
+	/**
+	 * A read-only list view of a column source.
+	 */
+	private static class SourceList extends AbstractList<String> {
+		private final ColumnSource source;
+
+		SourceList(ColumnSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public String get(int index) {
+			return source.get(index).toString();
+		}
+
+		@Override
+		public int size() {
+			return source.size();
 		}
-		return columnType;
 	}
 
 
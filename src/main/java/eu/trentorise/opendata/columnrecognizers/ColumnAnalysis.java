@@ -0,0 +1,389 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.trentorise.opendata.nlprise.DataTypeGuess.Datatype;
+
+/**
+ * A ColumnAnalysis holds what the recognizers compute from the contents of a
+ * column: its words, term frequencies, distinct values and type. Each part
+ * is computed the first time a recognizer asks for it and then shared by all
+ * the recognizers that work on the same Column object, so that, for example,
+ * twenty TF-IDF recognizers tokenize a column once rather than twenty times.
+ *
+ * The analysis is thread-safe: each part is computed at most once, even when
+ * recognizers run in parallel. The results are read-only.
+ *
+ * The number of requests answered from the analysis (hits) and of parts
+ * computed (misses) are counted over all columns.
+ *
+ * The term frequencies of large columns can be estimated instead of
+ * counted (see setApproximateTermFrequencies): only the most frequent terms
+ * are kept, with the estimates of a TermFrequencySketch, so that the memory
+ * taken doesn't grow with the number of rows.
+ *
+ * @author Simon
+ *
+ */
+public class ColumnAnalysis {
+	/**
+	 * The shortest words counted as terms
+	 */
+	static final int MINIMAL_WORD_LENGTH = 3;
+
+	/**
+	 * The number of requests answered with a part already computed
+	 */
+	private static final AtomicLong hitCount = new AtomicLong();
+
+	/**
+	 * The number of parts computed
+	 */
+	private static final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * The settings of the estimated term frequencies, or null to count them
+	 * exactly
+	 */
+	private static volatile SketchSettings sketchSettings = null;
+
+	/**
+	 * The analyzed column
+	 */
+	private final Column column;
+
+	/**
+	 * The normalized words of the column, in order
+	 */
+	private final LazyPart<List<String>> words = new LazyPart<List<String>>() {
+		@Override
+		protected List<String> compute() {
+			return Collections.unmodifiableList(computeWords());
+		}
+	};
+
+	/**
+	 * The distinct terms of the column
+	 */
+	private final LazyPart<Set<String>> wordSet = new LazyPart<Set<String>>() {
+		@Override
+		protected Set<String> compute() {
+			return Collections.unmodifiableSet(computeWordSet());
+		}
+	};
+
+	/**
+	 * The number of occurrences of each term
+	 */
+	private final LazyPart<Map<String, Integer>> termFrequencies
+		= new LazyPart<Map<String, Integer>>() {
+		@Override
+		protected Map<String, Integer> compute() {
+			return Collections.unmodifiableMap(computeTermFrequencies());
+		}
+	};
+
+	/**
+	 * The distinct values of the column
+	 */
+	private final LazyPart<Set<String>> valueSet = new LazyPart<Set<String>>() {
+		@Override
+		protected Set<String> compute() {
+			return Collections.unmodifiableSet(computeValueSet());
+		}
+	};
+
+	/**
+	 * The number of non-empty cells with each normalized value
+	 */
+	private final LazyPart<Map<String, Integer>> normalizedValueCounts
+		= new LazyPart<Map<String, Integer>>() {
+		@Override
+		protected Map<String, Integer> compute() {
+			return Collections.unmodifiableMap(computeNormalizedValueCounts());
+		}
+	};
+
+	/**
+	 * The datatype of the column
+	 */
+	private final LazyPart<Datatype> type = new LazyPart<Datatype>() {
+		@Override
+		protected Datatype compute() {
+			return TypeDetector.guessType(column);
+		}
+	};
+
+	/**
+	 * Constructs the analysis. Nothing is computed until it is asked for.
+	 *
+	 * @param column	The column
+	 */
+	ColumnAnalysis(Column column) {
+		super();
+		this.column = column;
+	}
+
+	/**
+	 * Returns the normalized words of the column, in order.
+	 *
+	 * @return	The word list
+	 */
+	public List<String> getWords() {
+		return words.get();
+	}
+
+	/**
+	 * Returns the distinct terms of the column, leaving out the shortest
+	 * words. The set is complete even when the term frequencies are 
+	 * estimated.
+	 *
+	 * @return	The set of terms
+	 */
+	public Set<String> getWordSet() {
+		return wordSet.get();
+	}
+
+	/**
+	 * Returns the number of occurrences of each term, leaving out the
+	 * shortest words. For a column estimated with a sketch, only the most
+	 * frequent terms are returned, with their estimated frequencies.
+	 *
+	 * @return	The term frequencies
+	 */
+	public Map<String, Integer> getTermFrequencies() {
+		return termFrequencies.get();
+	}
+
+	/**
+	 * Returns the distinct values of the column, as they are.
+	 *
+	 * @return	The value set; it holds the empty string if a cell is empty
+	 */
+	public Set<String> getValueSet() {
+		return valueSet.get();
+	}
+
+	/**
+	 * Returns the distinct normalized values of the non-empty cells, with
+	 * the number of cells that have each of them.
+	 *
+	 * @return	The value counts
+	 */
+	public Map<String, Integer> getNormalizedValueCounts() {
+		return normalizedValueCounts.get();
+	}
+
+	/**
+	 * Returns the datatype of the column.
+	 *
+	 * @return	The datatype
+	 */
+	public Datatype getType() {
+		return type.get();
+	}
+
+	/**
+	 * Returns the number of requests, over all columns, that found the part
+	 * of the analysis already computed.
+	 *
+	 * @return	The number of hits
+	 */
+	public static long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of parts of analyses computed, over all columns.
+	 *
+	 * @return	The number of misses
+	 */
+	public static long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Sets the hit and miss counts back to zero.
+	 */
+	public static void resetStatistics() {
+		hitCount.set(0);
+		missCount.set(0);
+	}
+
+	/**
+	 * Makes the analyses computed from now on estimate the term frequencies
+	 * of large columns with a TermFrequencySketch.
+	 *
+	 * @param minRowCount		The number of rows from which a column is
+	 * 							estimated
+	 * @param epsilon			The error of the estimates, as a fraction of
+	 * 							the number of terms of the column
+	 * @param delta				The probability that an estimate exceeds the
+	 * 							error
+	 * @param heavyHitterCount	The number of most frequent terms kept
+	 */
+	public static void setApproximateTermFrequencies(int minRowCount,
+			double epsilon, double delta, int heavyHitterCount) {
+		// Fails early on invalid parameters
+		new TermFrequencySketch(epsilon, delta, heavyHitterCount);
+		sketchSettings = new SketchSettings(minRowCount, epsilon, delta, heavyHitterCount);
+	}
+
+	/**
+	 * Makes the analyses computed from now on count the term frequencies of
+	 * every column exactly (the default).
+	 */
+	public static void setExactTermFrequencies() {
+		sketchSettings = null;
+	}
+
+	private List<String> computeWords() {
+		final List<String> words = new ArrayList<String>();
+		final TokenInterner interner = new TokenInterner();
+		Tokenizer tokenizer = new Tokenizer();
+		Tokenizer.TokenHandler handler = new Tokenizer.TokenHandler() {
+			public void handleToken(char[] buffer, int length) {
+				// Repeated words share one string
+				words.add(interner.getToken(interner.intern(buffer, length)));
+			}
+		};
+		for (String field : column.getNonEmptyValues()) {
+			tokenizer.tokenize(field, handler);
+		}
+		return words;
+	}
+
+	private Set<String> computeWordSet() {
+		// Not taken from the term frequencies, which only keep the most 
+		// frequent terms when they are estimated
+		TermCounter counter = new TermCounter();
+		Tokenizer tokenizer = new Tokenizer();
+		for (String field : column.getNonEmptyValues()) {
+			tokenizer.tokenize(field, counter);
+		}
+		return counter.getTerms();
+	}
+
+	private Map<String, Integer> computeTermFrequencies() {
+		SketchSettings settings = sketchSettings;
+		if (settings != null && column.size() >= settings.minRowCount) {
+			TermFrequencySketch sketch = new TermFrequencySketch(
+					settings.epsilon, settings.delta, settings.heavyHitterCount);
+			sketch.addColumn(column);
+			return sketch.getHeavyHitters();
+		}
+		TermCounter counter = new TermCounter();
+		Tokenizer tokenizer = new Tokenizer();
+		for (String field : column.getNonEmptyValues()) {
+			tokenizer.tokenize(field, counter);
+		}
+		return counter.getFrequencies();
+	}
+
+	private Set<String> computeValueSet() {
+		Set<String> values = new HashSet<String>(column.getNonEmptyValues());
+		if (column.getEmptyCount() > 0) {
+			values.add("");
+		}
+		return values;
+	}
+
+	private Map<String, Integer> computeNormalizedValueCounts() {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (String value : column.getNonEmptyValues()) {
+			incrementCount(CRStringUtils.normalize(value), counts);
+		}
+		return counts;
+	}
+
+	private static void incrementCount(String key, Map<String, Integer> counts) {
+		Integer count = counts.get(key);
+		counts.put(key, count == null ? 1 : count + 1);
+	}
+
+	/**
+	 * Counts the occurrences of the terms of a column by token ID, so that 
+	 * a string is allocated only once per distinct term.
+	 */
+	private static class TermCounter implements Tokenizer.TokenHandler {
+		private final TokenInterner interner = new TokenInterner();
+		private int[] counts = new int[64];
+
+		public void handleToken(char[] buffer, int length) {
+			if (length >= MINIMAL_WORD_LENGTH) {
+				int id = interner.intern(buffer, length);
+				if (id == counts.length) {
+					counts = Arrays.copyOf(counts, counts.length * 2);
+				}
+				counts[id]++;
+			}
+		}
+
+		Set<String> getTerms() {
+			Set<String> terms = new HashSet<String>(interner.size() * 2);
+			for (int id = 0; id < interner.size(); id++) {
+				terms.add(interner.getToken(id));
+			}
+			return terms;
+		}
+
+		Map<String, Integer> getFrequencies() {
+			Map<String, Integer> frequencies = new HashMap<String, Integer>(interner.size() * 2);
+			for (int id = 0; id < interner.size(); id++) {
+				frequencies.put(interner.getToken(id), counts[id]);
+			}
+			return frequencies;
+		}
+	}
+
+	/**
+	 * The parameters of estimated term frequencies.
+	 */
+	private static class SketchSettings {
+		final int minRowCount;
+		final double epsilon;
+		final double delta;
+		final int heavyHitterCount;
+
+		SketchSettings(int minRowCount, double epsilon, double delta, int heavyHitterCount) {
+			this.minRowCount = minRowCount;
+			this.epsilon = epsilon;
+			this.delta = delta;
+			this.heavyHitterCount = heavyHitterCount;
+		}
+	}
+
+	/**
+	 * A part of the analysis, computed once on first use.
+	 */
+	private static abstract class LazyPart<T> {
+		private volatile T value = null;
+
+		T get() {
+			T result = value;
+			if (result == null) {
+				synchronized (this) {
+					result = value;
+					if (result == null) {
+						result = compute();
+						value = result;
+						missCount.incrementAndGet();
+						return result;
+					}
+				}
+			}
+			hitCount.incrementAndGet();
+			return result;
+		}
+
+		protected abstract T compute();
+	}
+}
@@ -139,5 +139,14 @@ public class ColumnConceptCandidate {
 	public int getColumnNumber () {
 		return columnNumber;
 	}
+
+	/**
+	 * Assigns a column number to this candidate.
+	 *
+	 * @param itsColumnNumber	The column number (1, ..)
+	 */
+	void setColumnNumber(int itsColumnNumber) {
+		columnNumber = itsColumnNumber;
+	}
 	
 }
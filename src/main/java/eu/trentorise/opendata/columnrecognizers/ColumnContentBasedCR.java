@@ -32,11 +32,25 @@ public abstract class ColumnContentBasedCR extends ContentBasedCR {
 	 */
 	@Override
 	public void computeScoredCandidates(List<ColumnConceptCandidate> candidates) {
-		List<Column> columns = getTable().extractColumns();
-		int columnNumber = 1;
+		computeScoredCandidates(getTable().extractColumns(), 1, candidates);
+	}
+	
+	/**
+	 * Computes the candidates for a run of consecutive columns of the table.
+	 * The CompositeColumnRecognizer uses this to run several recognizers on 
+	 * one batch of columns at a time.
+	 * 
+	 * @param columns				The columns
+	 * @param firstColumnNumber		The column number (1, ..) of the first column
+	 * @param candidates			The candidate list
+	 */
+	void computeScoredCandidates(List<Column> columns, 
+			int firstColumnNumber, 
+			List<ColumnConceptCandidate> candidates) {
+		int columnNumber = firstColumnNumber;
 		for (Column column : columns) {
 			if (isApplicableType(column.getType())) {
-			double score = computeColumnScore(column);
+				double score = computeColumnScore(column);
 				if (score > 0) {
 					ColumnConceptCandidate newCandidate 
 						= new ColumnConceptCandidate(columnNumber, getConceptID(), score, getId());
@@ -47,6 +61,33 @@ public abstract class ColumnContentBasedCR extends ContentBasedCR {
 		}
 	}
 	
+	/**
+	 * Returns the number of candidate lists filled by 
+	 * computeGroupedCandidates. A recognizer that does the work of several 
+	 * recognizers fills one list for each of them.
+	 * 
+	 * @return	The number of candidate lists, 1 by default
+	 */
+	int getCandidateGroupCount() {
+		return 1;
+	}
+	
+	/**
+	 * Computes the candidates for a run of consecutive columns into separate 
+	 * lists (see getCandidateGroupCount). Running this on consecutive 
+	 * batches of columns and then concatenating the lists gives the 
+	 * candidates of the whole table in the order of computeScoredCandidates.
+	 * 
+	 * @param columns				The columns
+	 * @param firstColumnNumber		The column number (1, ..) of the first column
+	 * @param groups				The candidate lists
+	 */
+	void computeGroupedCandidates(List<Column> columns, 
+			int firstColumnNumber, 
+			List<List<ColumnConceptCandidate>> groups) {
+		computeScoredCandidates(columns, firstColumnNumber, groups.get(0));
+	}
+	
 	/**
 	 * Returns true if the recognizer can operate on this column data type. 
 	 * True by default. Override if your recognizer doesn't apply to all types.
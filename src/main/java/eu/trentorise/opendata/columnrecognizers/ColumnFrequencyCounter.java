@@ -0,0 +1,186 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ColumnFrequencyCounter counts the columns each word occurs in over a
+ * corpus of CSV files, to build an InverseColumnFrequency table.
+ *
+ * The files are read in parallel, one file per thread at a time. Each file
+ * is streamed record by record rather than loaded into a table: only the
+ * distinct words of each of its columns are kept until the end of the file.
+ * Each thread counts into its own ColumnFrequencyCounts, and the counts of
+ * the threads are merged at the end.
+ *
+ * @author Simon
+ *
+ */
+public class ColumnFrequencyCounter {
+	/**
+	 * The files of the corpus
+	 */
+	private final List<File> files = new ArrayList<File>();
+
+	/**
+	 * The CSV format of each file
+	 */
+	private final List<CSVFormat> formats = new ArrayList<CSVFormat>();
+
+	/**
+	 * True if the first record of each file holds the column headers
+	 */
+	private boolean hasHeaderRow = true;
+
+	/**
+	 * The number of worker threads
+	 */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Adds a CSV file to the corpus.
+	 *
+	 * @param file		The CSV file
+	 * @param format	The CSV format of the file
+	 */
+	public void addFile(File file, CSVFormat format) {
+		files.add(file);
+		formats.add(format);
+	}
+
+	/**
+	 * Sets whether the first record of each file holds the headers, which
+	 * are then left out of the counts. The default is true.
+	 *
+	 * @param hasHeaderRow	True if the files have a header row
+	 */
+	public void setHasHeaderRow(boolean hasHeaderRow) {
+		this.hasHeaderRow = hasHeaderRow;
+	}
+
+	/**
+	 * Sets the number of worker threads. The default is the number of
+	 * available processors.
+	 *
+	 * @param threadCount	The number of threads
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Counts the column frequencies over all the files.
+	 *
+	 * @return	The counts
+	 */
+	public ColumnFrequencyCounts count() {
+		final AtomicInteger nextFile = new AtomicInteger();
+		int workerCount = Math.max(1, Math.min(threadCount, files.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		try {
+			List<Future<ColumnFrequencyCounts>> results
+				= new ArrayList<Future<ColumnFrequencyCounts>>(workerCount);
+			for (int i = 0; i < workerCount; i++) {
+				results.add(executor.submit(new Callable<ColumnFrequencyCounts>() {
+					public ColumnFrequencyCounts call() {
+						return countFiles(nextFile);
+					}
+				}));
+			}
+			ColumnFrequencyCounts counts = new ColumnFrequencyCounts();
+			for (Future<ColumnFrequencyCounts> result : results) {
+				counts.merge(result.get());
+			}
+			return counts;
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Column frequency counting interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failure counting column frequencies", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Counts files, taking them in turn from the shared list until there
+	 * are none left.
+	 *
+	 * @param nextFile	The index of the next file to count
+	 * @return			The counts of the files counted by this thread
+	 */
+	private ColumnFrequencyCounts countFiles(AtomicInteger nextFile) {
+		ColumnFrequencyCounts counts = new ColumnFrequencyCounts();
+		Tokenizer tokenizer = new Tokenizer();
+		ByteBuffer buffer = null;
+		int fileIndex;
+		while ((fileIndex = nextFile.getAndIncrement()) < files.size()) {
+			FileCounter fileCounter = new FileCounter(files.get(fileIndex),
+					formats.get(fileIndex), hasHeaderRow, tokenizer);
+			if (buffer != null) {
+				fileCounter.setBuffer(buffer);
+			}
+			fileCounter.read();
+			buffer = fileCounter.getBuffer();
+			for (TokenInterner columnWords : fileCounter.columnWords) {
+				counts.addColumn(columnWords);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Collects the distinct words of each column of a file.
+	 */
+	private static class FileCounter extends CSVRecordReader {
+		/**
+		 * The distinct words of each column
+		 */
+		final List<TokenInterner> columnWords = new ArrayList<TokenInterner>();
+
+		private final Tokenizer tokenizer;
+
+		private boolean skipRecord;
+
+		private TokenInterner currentColumn = null;
+
+		private final Tokenizer.TokenHandler handler = new Tokenizer.TokenHandler() {
+			public void handleToken(char[] buffer, int length) {
+				if (length >= ColumnAnalysis.MINIMAL_WORD_LENGTH) {
+					currentColumn.intern(buffer, length);
+				}
+			}
+		};
+
+		FileCounter(File file, CSVFormat format, boolean hasHeaderRow, Tokenizer tokenizer) {
+			super(file, format);
+			this.skipRecord = hasHeaderRow;
+			this.tokenizer = tokenizer;
+		}
+
+		@Override
+		protected void processRecord(CSVRecord record) {
+			int recordColumnCount = record.getColumnCount();
+			while (columnWords.size() < recordColumnCount) {
+				columnWords.add(new TokenInterner());
+			}
+			if (skipRecord) {
+				skipRecord = false;
+				return;
+			}
+			for (int i = 0; i < recordColumnCount; i++) {
+				if (record.getFieldEnd(i + 1) > record.getFieldStart(i + 1)) {
+					currentColumn = columnWords.get(i);
+					tokenizer.tokenize(record.getValue(i + 1), handler);
+				}
+			}
+		}
+	}
+}
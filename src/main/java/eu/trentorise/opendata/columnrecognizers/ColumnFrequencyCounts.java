@@ -0,0 +1,195 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The ColumnFrequencyCounts are the raw statistics behind an
+ * InverseColumnFrequency table: the number of columns each word occurs in
+ * and the total number of columns in the corpus.
+ *
+ * Unlike the inverse frequencies, counts can be added up. Counts from
+ * separate threads, separate runs or separate parts of a corpus are merged
+ * into the counts of the whole corpus, so that new datasets can be added to
+ * a model without scanning the old ones again.
+ *
+ * The counts are not thread-safe; use one object per thread and merge them.
+ *
+ * @author Simon
+ *
+ */
+public class ColumnFrequencyCounts {
+	/**
+	 * The key to the extra entry in the count file holding the number of
+	 * columns
+	 */
+	private final static String COLUMN_COUNT_KEY = "___COLUMNS___";
+
+	/**
+	 * The number of columns each word occurs in
+	 */
+	private final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+
+	/**
+	 * The number of columns
+	 */
+	private long columnCount = 0;
+
+	/**
+	 * Adds a column.
+	 *
+	 * @param column	The column
+	 */
+	public void addColumn(Column column) {
+		addColumn(column.extractWordSet());
+	}
+
+	/**
+	 * Adds a column, given as the set of the words it contains.
+	 *
+	 * @param words		The distinct words of the column
+	 */
+	public void addColumn(Set<String> words) {
+		for (String word : words) {
+			addFrequency(word, 1);
+		}
+		columnCount++;
+	}
+
+	/**
+	 * Adds a column, given as the tokens of an interner.
+	 *
+	 * @param words		The interner holding the distinct words of the column
+	 */
+	void addColumn(TokenInterner words) {
+		for (int id = 0; id < words.size(); id++) {
+			addFrequency(words.getToken(id), 1);
+		}
+		columnCount++;
+	}
+
+	/**
+	 * Adds the counts of another corpus to these.
+	 *
+	 * @param counts	The counts of the other corpus
+	 */
+	public void merge(ColumnFrequencyCounts counts) {
+		for (Entry<String, Integer> frequency : counts.frequencies.entrySet()) {
+			addFrequency(frequency.getKey(), frequency.getValue());
+		}
+		columnCount += counts.columnCount;
+	}
+
+	/**
+	 * Returns the number of columns a word occurs in.
+	 *
+	 * @param word	The word
+	 * @return		The column frequency
+	 */
+	public int getFrequency(String word) {
+		Integer frequency = frequencies.get(word);
+		return frequency == null ? 0 : frequency;
+	}
+
+	/**
+	 * Returns the number of columns each word occurs in.
+	 *
+	 * @return	The column frequencies (read-only)
+	 */
+	public Map<String, Integer> getFrequencies() {
+		return Collections.unmodifiableMap(frequencies);
+	}
+
+	/**
+	 * Returns the number of columns.
+	 *
+	 * @return	The number of columns
+	 */
+	public long getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Returns the number of distinct words.
+	 *
+	 * @return	The number of words
+	 */
+	public int getWordCount() {
+		return frequencies.size();
+	}
+
+	/**
+	 * Computes the inverse frequencies from the counts.
+	 *
+	 * @return	The new InverseColumnFrequency table
+	 */
+	public InverseColumnFrequency toInverseColumnFrequency() {
+		return new InverseColumnFrequency(frequencies, columnCount);
+	}
+
+	/**
+	 * Writes out the counts to a text file, with the words in order.
+	 *
+	 * @param file	The output text file
+	 */
+	public void writeToFile(File file) {
+		final Iterator<Entry<String, Integer>> it
+			= new TreeMap<String, Integer>(frequencies).entrySet().iterator();
+		LineWriter writer = new LineWriter(file) {
+			private boolean columnCountWritten = false;
+
+			@Override
+			protected boolean hasNext() {
+				return !columnCountWritten || it.hasNext();
+			}
+
+			@Override
+			protected String next() {
+				if (!columnCountWritten) {
+					columnCountWritten = true;
+					return COLUMN_COUNT_KEY + " " + columnCount;
+				}
+				Entry<String, Integer> frequency = it.next();
+				return frequency.getKey() + " " + frequency.getValue();
+			}
+		};
+		writer.write();
+	}
+
+	/**
+	 * Loads counts from a file written by writeToFile.
+	 *
+	 * @param file	The input file
+	 * @return		The new ColumnFrequencyCounts object
+	 */
+	public static ColumnFrequencyCounts readFromFile(File file) {
+		WordScoreReader reader = new WordScoreReader(file);
+		reader.read();
+		ColumnFrequencyCounts counts = new ColumnFrequencyCounts();
+		for (Entry<String, Double> wordScore : reader.getWordScores().entrySet()) {
+			if (wordScore.getKey().equals(COLUMN_COUNT_KEY)) {
+				counts.columnCount = wordScore.getValue().longValue();
+			} else {
+				counts.frequencies.put(wordScore.getKey(), wordScore.getValue().intValue());
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Adds to the frequency of a word.
+	 *
+	 * @param word		The word
+	 * @param increment	The number of columns to add
+	 */
+	private void addFrequency(String word, int increment) {
+		Integer frequency = frequencies.get(word);
+		frequencies.put(word, frequency == null ? increment : frequency + increment);
+	}
+}
@@ -0,0 +1,136 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A ColumnProjection selects the columns of a table that should be
+ * recognized. The parsers materialize only the fields of the selected
+ * columns, and the recognizers see a table made of the selected columns
+ * only, numbered from one in their original order.
+ *
+ * Recognizers therefore work with projected column numbers. The projection
+ * maps the candidates they produce back to the original column numbers.
+ *
+ * @author Simon
+ *
+ */
+public class ColumnProjection {
+	/**
+	 * The original one-based column numbers, in increasing order
+	 */
+	private final int[] columnNumbers;
+
+	/**
+	 * The projected column number of each original column number, or 0 for
+	 * columns outside the projection
+	 */
+	private final int[] projectedNumbers;
+
+	/**
+	 * Constructs the projection.
+	 *
+	 * @param columnNumbers		The one-based numbers of the selected columns,
+	 * 							in any order
+	 */
+	public ColumnProjection(List<Integer> columnNumbers) {
+		super();
+		int[] numbers = new int[columnNumbers.size()];
+		for (int i = 0; i < numbers.length; i++) {
+			numbers[i] = columnNumbers.get(i);
+			if (numbers[i] < 1) {
+				throw new IllegalArgumentException("Invalid column number: " + numbers[i]);
+			}
+		}
+		Arrays.sort(numbers);
+		int count = 0;
+		for (int i = 0; i < numbers.length; i++) {
+			if (count == 0 || numbers[i] != numbers[count - 1]) {
+				numbers[count++] = numbers[i];
+			}
+		}
+		this.columnNumbers = Arrays.copyOf(numbers, count);
+		projectedNumbers = new int[count == 0 ? 1 : this.columnNumbers[count - 1] + 1];
+		for (int i = 0; i < count; i++) {
+			projectedNumbers[this.columnNumbers[i]] = i + 1;
+		}
+	}
+
+	/**
+	 * Returns the number of selected columns.
+	 *
+	 * @return	The number of columns in the projected table
+	 */
+	public int getColumnCount() {
+		return columnNumbers.length;
+	}
+
+	/**
+	 * Returns the original number of a projected column.
+	 *
+	 * @param projectedNumber	The one-based column number in the projection
+	 * @return					The one-based original column number
+	 */
+	public int getColumnNumber(int projectedNumber) {
+		return columnNumbers[projectedNumber - 1];
+	}
+
+	/**
+	 * Returns the projected number of an original column.
+	 *
+	 * @param columnNumber	The one-based original column number
+	 * @return				The one-based column number in the projection, or
+	 * 						0 if the column isn't selected
+	 */
+	public int getProjectedColumnNumber(int columnNumber) {
+		return columnNumber < projectedNumbers.length ? projectedNumbers[columnNumber] : 0;
+	}
+
+	/**
+	 * Returns true if a column is selected.
+	 *
+	 * @param columnNumber	The one-based original column number
+	 * @return				True if the column is in the projection
+	 */
+	public boolean contains(int columnNumber) {
+		return getProjectedColumnNumber(columnNumber) > 0;
+	}
+
+	/**
+	 * Selects the elements of a per-column list, such as the headers or the
+	 * column data of a table. Columns beyond the end of the list are skipped.
+	 *
+	 * @param list	The list with one element per original column
+	 * @return		The list with one element per selected column
+	 */
+	public <T> List<T> project(List<T> list) {
+		List<T> projectedList = new ArrayList<T>(columnNumbers.length);
+		for (int columnNumber : columnNumbers) {
+			if (columnNumber <= list.size()) {
+				projectedList.add(list.get(columnNumber - 1));
+			}
+		}
+		return projectedList;
+	}
+
+	/**
+	 * Replaces the projected column numbers of candidates with the original
+	 * column numbers.
+	 *
+	 * @param candidates	Candidates computed on the projected table
+	 */
+	public void restoreColumnNumbers(List<ColumnConceptCandidate> candidates) {
+		for (ColumnConceptCandidate candidate : candidates) {
+			candidate.setColumnNumber(getColumnNumber(candidate.getColumnNumber()));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(columnNumbers);
+	}
+}
@@ -17,6 +17,17 @@ import java.util.Set;
  *
  */
 public abstract class ColumnRecognizer {
+	/**
+	 * Tables with at least this many columns are recognized in wide-table 
+	 * mode, with column-batched execution
+	 */
+	private static final int WIDE_TABLE_COLUMN_COUNT = 256;
+	
+	/**
+	 * The number of columns per batch in wide-table mode
+	 */
+	private static final int WIDE_TABLE_BATCH_SIZE = 64;
+	
 	/** 
 	 * A unique name identifying this recognizer
 	 */
@@ -147,20 +158,164 @@ public abstract class ColumnRecognizer {
 			InputStream specificationFile, 
 			List<File> modelDirectories) {
 		ColumnTable columnTable = ColumnTable.makeColumnTableFromStringLists(columnHeaders, columnData);
-		RowTable rowSample = columnTable.extractRowSample();
+		return computeScoredCandidates(columnTable, specificationFile, modelDirectories);
+	}
+
+	/**
+	 * Static API method for computing column-concept candidates for columnar
+	 * data held by the caller. The recognizers read the values from the 
+	 * sources, without converting them to lists.
+	 * 
+	 * @param columnHeaders		The column headers
+	 * @param columnSources		The column contents
+	 * @param specificationFile	The specification file
+	 * @param modelDirectories	A list of directories containing model files
+	 * @return					The column-concept candidates
+	 */
+	public static List<ColumnConceptCandidate> computeScoredCandidatesFromSources(
+		    List<String> columnHeaders,
+		    List<? extends ColumnSource> columnSources,
+			InputStream specificationFile, 
+			List<File> modelDirectories) {
+		return computeScoredCandidates(
+				ColumnTable.makeColumnTableFromSources(columnHeaders, columnSources),
+				specificationFile,
+				modelDirectories);
+	}
+
+	/**
+	 * Static API method for computing column-concept candidates for any
+	 * table, such as a LazyCSVTable or a JDBCTable. Tables that load their
+	 * data lazily are read only as far as the recognizers need.
+	 * 
+	 * @param table				The table
+	 * @param specificationFile	The specification file
+	 * @param modelDirectories	A list of directories containing model files
+	 * @return					The column-concept candidates
+	 */
+	public static List<ColumnConceptCandidate> computeScoredCandidates(
+			Table table,
+			InputStream specificationFile, 
+			List<File> modelDirectories) {
+		RowTable rowSample = table.extractRowSample();
 		List<ColumnConceptCandidate> candidates = new ArrayList();
 		CompositeColumnRecognizer compositeCR = new CompositeColumnRecognizer("composite");
 		ColumnRecognizerFactory.attachRecognizers(
 				compositeCR, 
 				specificationFile, 
 				modelDirectories,
-				columnTable, 
+				table, 
 				rowSample);
+		if (table.getColumnCount() >= WIDE_TABLE_COLUMN_COUNT) {
+			compositeCR.setColumnBatchSize(WIDE_TABLE_BATCH_SIZE);
+		}
 		compositeCR.computeScoredCandidates(candidates);
 		
 		return candidates;
 	}
 	
+	/**
+	 * Static API method for computing column-concept candidates for some of
+	 * the columns of a table, using the default specification file.
+	 * 
+	 * @param columnHeaders	The column headers
+	 * @param columnData	The column contents
+	 * @param projection	The columns to recognize
+	 * @return				The column-concept candidates, with the original
+	 * 						column numbers
+	 */
+	public static List<ColumnConceptCandidate> computeScoredCandidates(
+		    List<String> columnHeaders,
+		    List<List<String>> columnData,
+		    ColumnProjection projection) {
+		return computeScoredCandidates(
+				columnHeaders, 
+				columnData, 
+				projection,
+				FileUtils.getDefaultSpecificationFile(),
+				/* model directories: */ null);
+	}
+
+	/**
+	 * Static API method for computing column-concept candidates for some of
+	 * the columns of a table. The recognizers only see the selected columns.
+	 * 
+	 * @param columnHeaders		The column headers
+	 * @param columnData		The column contents
+	 * @param projection		The columns to recognize
+	 * @param specificationFile	The specification file
+	 * @param modelDirectories	A list of directories containing model files
+	 * @return					The column-concept candidates, with the 
+	 * 							original column numbers
+	 */
+	public static List<ColumnConceptCandidate> computeScoredCandidates(
+		    List<String> columnHeaders,
+		    List<List<String>> columnData,
+		    ColumnProjection projection,
+			InputStream specificationFile, 
+			List<File> modelDirectories) {
+		List<ColumnConceptCandidate> candidates = computeScoredCandidates(
+				columnHeaders == null ? null : projection.project(columnHeaders),
+				projection.project(columnData),
+				specificationFile,
+				modelDirectories);
+		projection.restoreColumnNumbers(candidates);
+		
+		return candidates;
+	}
+	
+	/**
+	 * Static API method for computing column-concept candidates for a CSV 
+	 * file using the default specification file. The first record of the 
+	 * file holds the headers.
+	 * 
+	 * @param csvFile			The CSV file
+	 * @param columnSeparator	The column separator character
+	 * @return					The column-concept candidates
+	 */
+	public static List<ColumnConceptCandidate> computeScoredCandidates(
+			File csvFile,
+			char columnSeparator) {
+		return computeScoredCandidates(
+				csvFile, 
+				new CSVFormat(columnSeparator), 
+				/* projection: */ null,
+				FileUtils.getDefaultSpecificationFile(),
+				/* model directories: */ null);
+	}
+
+	/**
+	 * Static API method for computing column-concept candidates for a CSV 
+	 * file. The first record of the file holds the headers. The file is read 
+	 * only as far as the recognizers of the specification need: if none of 
+	 * them uses whole columns, only the headers and a sample of rows are 
+	 * read.
+	 * 
+	 * @param csvFile			The CSV file
+	 * @param format			The CSV format
+	 * @param projection		The columns to recognize, or null for all
+	 * @param specificationFile	The specification file
+	 * @param modelDirectories	A list of directories containing model files
+	 * @return					The column-concept candidates, with the 
+	 * 							original column numbers
+	 */
+	public static List<ColumnConceptCandidate> computeScoredCandidates(
+			File csvFile,
+			CSVFormat format,
+			ColumnProjection projection,
+			InputStream specificationFile, 
+			List<File> modelDirectories) {
+		LazyCSVTable table = new LazyCSVTable(csvFile, format, true);
+		table.setColumnProjection(projection);
+		List<ColumnConceptCandidate> candidates 
+			= computeScoredCandidates(table, specificationFile, modelDirectories);
+		if (projection != null) {
+			projection.restoreColumnNumbers(candidates);
+		}
+		
+		return candidates;
+	}
+	
 	/**
 	 * Run the NLP pipeline on a text and extract the highest-probability concept ID
 	 * 
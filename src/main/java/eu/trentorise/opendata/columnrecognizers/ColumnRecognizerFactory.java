@@ -1,6 +1,7 @@
 package eu.trentorise.opendata.columnrecognizers;
 import java.io.File;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -14,6 +15,7 @@ import java.util.Set;
  */
 public class ColumnRecognizerFactory {
 	private static final String INVERSE_FREQUENCIES_PATH = "inverse-frequencies.txt";
+	private static final String HASHED_INVERSE_FREQUENCIES_PATH = "hashed-inverse-frequencies.txt";
 	
 	/**
 	 * Constructs a ColumnRecognizer. The type indicates the class of the 
@@ -46,9 +48,15 @@ public class ColumnRecognizerFactory {
 		} else if (type.equals("VALUE_SET")) {
 			recognizer 
 				= makeValueSetRecognizer(recognizerID, conceptID, model, modelDirectories, table);
+		} else if (type.equals("VALUE_SET_DISK")) {
+			recognizer 
+				= makeDiskValueSetRecognizer(recognizerID, conceptID, model, modelDirectories, table);
 		} else if (type.equals("TF_IDF")) {
 			recognizer 
-				= makeTFIDFRecognizer(recognizerID, conceptID, model, modelDirectories, table);
+				= makeTFIDFRecognizer(recognizerID, conceptID, model, modelDirectories, table, false);
+		} else if (type.equals("TF_IDF_HASHED")) {
+			recognizer 
+				= makeTFIDFRecognizer(recognizerID, conceptID, model, modelDirectories, table, true);
 		} else if (type.equals("SUM_THRESHOLD")) {
 			double threshold = Double.parseDouble(model);
 			recognizer = new SumThresholdFusionCR(recognizerID, threshold);
@@ -101,7 +109,34 @@ public class ColumnRecognizerFactory {
 		InputStream modelFile = FileUtils.getModelFile(model, modelDirectories);
 		return new ValueSetCR(recognizerID, 
 				conceptID, 
-				RowTable.loadValueSet(modelFile), 
+				RowTable.loadCompactValueSet(modelFile), 
+				table);
+	}
+
+	/**
+	 * Constructs a ValueSetCR whose value set stays on disk (see 
+	 * DiskStringSet). The set file is opened once and shared.
+	 * 
+	 * @param recognizerID 		The identifier of the recognizer instance
+	 * @param conceptID			The knowledge base concept ID
+	 * @param model				The set file path
+	 * @param modelDirectories	A list of model directories
+	 * @param table				The entire data table (or largest possible sample)
+	 * @return					The recognizer
+	 */
+	private static ColumnRecognizer makeDiskValueSetRecognizer(
+			String recognizerID,
+			long conceptID, 
+			String model, 
+			List<File> modelDirectories, 
+			Table table) {
+		File modelFile = FileUtils.getModelDiskFile(model, modelDirectories);
+		if (modelFile == null) {
+			throw new RuntimeException("Value set file not found: " + model);
+		}
+		return new ValueSetCR(recognizerID, 
+				conceptID, 
+				DiskStringSet.getShared(modelFile), 
 				table);
 	}
 
@@ -113,6 +148,7 @@ public class ColumnRecognizerFactory {
 	 * @param model				The model file path
 	 * @param modelDirectories	A list of model directories
 	 * @param table				The entire data table (or largest possible sample)
+	 * @param hashed			True for a hashed model (TF_IDF_HASHED)
 	 * @return					The recognizer
 	 */
 	private static ColumnRecognizer makeTFIDFRecognizer(
@@ -120,25 +156,114 @@ public class ColumnRecognizerFactory {
 			long conceptID, 
 			String model, 
 			List<File> modelDirectories, 
-			Table table) {
-		InverseColumnFrequency inverseFrequencies = null;
-		
-		if (inverseFrequencies == null) {
-//			File idfFile = FileUtils.getModelFile(INVERSE_FREQUENCIES_PATH, modelDirectories);
-			InputStream idfFile = FileUtils.getModelFile(INVERSE_FREQUENCIES_PATH, modelDirectories);
-//			inverseFrequencies = InverseColumnFrequency.readFromFile(idfFile);
-			inverseFrequencies = InverseColumnFrequency.readFromStream(idfFile);
-		}
-//		File modelFile = FileUtils.getModelFile(model, modelDirectories);
-		InputStream modelFile = FileUtils.getModelFile(model, modelDirectories);
+			Table table,
+			boolean hashed) {
 		return new TFIDFColumnRecognizer(recognizerID,
 				conceptID, 
-//				TFIDFVector.readFromFile(modelFile),
-				TFIDFVector.readFromStream(modelFile),
-				inverseFrequencies,
+				getSharedPrototype(model, modelDirectories, hashed),
 				table);
 	}
 
+	/**
+	 * Constructs a TFIDFIndexCR, which scores columns against the prototypes
+	 * of several TF_IDF specification lines at once. The prototypes are added
+	 * with addTFIDFPrototype.
+	 * 
+	 * @param recognizerID 		The identifier of the recognizer instance
+	 * @param modelDirectories	A list of model directories
+	 * @param table				The entire data table (or largest possible sample)
+	 * @param hashed			True for hashed models (TF_IDF_HASHED)
+	 * @return					The recognizer
+	 */
+	public static TFIDFIndexCR makeTFIDFIndexRecognizer(
+			String recognizerID,
+			List<File> modelDirectories, 
+			Table table,
+			boolean hashed) {
+		return new TFIDFIndexCR(recognizerID, 
+				getInverseFrequencies(modelDirectories, hashed), 
+				table);
+	}
+
+	/**
+	 * Gets the inverse column frequencies. The file is parsed once and the
+	 * table shared by all the TF-IDF recognizers, until the file changes.
+	 * 
+	 * @param modelDirectories	A list of model directories
+	 * @param hashed			True for the hashed table
+	 * @return					The inverse column frequencies
+	 */
+	private static InverseColumnFrequency getInverseFrequencies(
+			List<File> modelDirectories, 
+			boolean hashed) {
+		String idfPath = hashed ? HASHED_INVERSE_FREQUENCIES_PATH : INVERSE_FREQUENCIES_PATH;
+		URL idfURL = FileUtils.getModelURL(idfPath, modelDirectories);
+		if (idfURL == null) {
+			throw new RuntimeException("Inverse frequency file not found: " + idfPath);
+		}
+		return InverseColumnFrequency.getShared(idfURL, hashed);
+	}
+
+	/**
+	 * Adds the prototype of a TF_IDF (or TF_IDF_HASHED) specification line 
+	 * to a TFIDFIndexCR.
+	 * 
+	 * @param indexRecognizer	The TFIDFIndexCR
+	 * @param recognizerID 		The identifier of the TF_IDF recognizer
+	 * @param conceptID			The knowledge base concept ID
+	 * @param model				The model file path
+	 * @param modelDirectories	A list of model directories
+	 */
+	public static void addTFIDFPrototype(
+			TFIDFIndexCR indexRecognizer,
+			String recognizerID,
+			long conceptID, 
+			String model, 
+			List<File> modelDirectories) {
+		indexRecognizer.addPrototype(recognizerID, 
+				conceptID, 
+				getSharedPrototype(model, modelDirectories, indexRecognizer.getInverseFrequencies()));
+	}
+
+	/**
+	 * Gets the prototype of a TF_IDF (or TF_IDF_HASHED) model file. The file
+	 * is parsed once and the prototype shared by all the recognizers built
+	 * from it, so that the labels confirmed through a PrototypeUpdater reach
+	 * them all.
+	 * 
+	 * @param model				The model file path
+	 * @param modelDirectories	A list of model directories
+	 * @param hashed			True for a hashed model (TF_IDF_HASHED)
+	 * @return					The shared prototype
+	 */
+	static TFIDFPrototype getSharedPrototype(
+			String model, 
+			List<File> modelDirectories, 
+			boolean hashed) {
+		return getSharedPrototype(model, 
+				modelDirectories, 
+				getInverseFrequencies(modelDirectories, hashed));
+	}
+
+	/**
+	 * Gets the prototype of a model file, as getSharedPrototype does.
+	 * 
+	 * @param model					The model file path
+	 * @param modelDirectories		A list of model directories
+	 * @param inverseFrequencies	The shared inverse column frequencies
+	 * @return						The shared prototype
+	 */
+	private static TFIDFPrototype getSharedPrototype(
+			String model, 
+			List<File> modelDirectories, 
+			InverseColumnFrequency inverseFrequencies) {
+		URL modelURL = FileUtils.getModelURL(model, modelDirectories);
+		if (modelURL == null) {
+			throw new RuntimeException("Model file not found: " + model);
+		}
+		return TFIDFPrototype.getShared(modelURL, inverseFrequencies);
+	}
+
 	/**
 	 * Constructs a RegExColumnRecognizer.
 	 * 
@@ -0,0 +1,31 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+/**
+ * A ColumnSource gives read access to the values of a column held by the
+ * caller in any form, for example the columnar buffers of a parser. A Column
+ * wraps the source without copying it, so the recognizers read the values
+ * where they are.
+ *
+ * Sources of numbers can also implement NumericColumnSource, so that the
+ * numbers don't need to be parsed back from text.
+ *
+ * @author Simon
+ *
+ */
+public interface ColumnSource {
+	/**
+	 * Returns the number of values in the column.
+	 *
+	 * @return	The column length
+	 */
+	public int size();
+
+	/**
+	 * Returns a value of the column as text. An empty sequence stands for a
+	 * missing value.
+	 *
+	 * @param index		The zero-based row number
+	 * @return			The value
+	 */
+	public CharSequence get(int index);
+}
@@ -63,6 +63,23 @@ public class ColumnTable implements Table {
 		return new ColumnTable(headers, columnList);
 	}
 	
+	/**
+	 * Creates a new ColumnTable over columnar data held by the caller. The
+	 * data is not copied.
+	 * 
+	 * @param headers			The column headers
+	 * @param columnSources		The column data
+	 * @return					The new table
+	 */
+	public static ColumnTable makeColumnTableFromSources(List<String> headers, 
+			List<? extends ColumnSource> columnSources) {
+		List<Column> columnList = new ArrayList<Column>(columnSources.size());
+		for (ColumnSource columnSource : columnSources) {
+			columnList.add(new Column(columnSource));
+		}
+		return new ColumnTable(headers, columnList);
+	}
+	
 	/**
 	 * Gets the column headers.
 	 * 
@@ -83,7 +100,7 @@ public class ColumnTable implements Table {
 	 * @see eu.trentorise.opendata.columnrecognizers.Table#getRowCount()
 	 */
 	public int getRowCount() {
-		return getColumnCount() == 0 ? 0 : extractColumn(1).size();
+		return getColumnCount() == 0 ? 0 : columns.get(0).size();
 	}
 
 	/* (non-Javadoc)
@@ -101,19 +118,22 @@ public class ColumnTable implements Table {
 		final int INITIAL_ROW_SIZE = 100;
 		final int SAMPLE_SIZE = 10;
 		
-		RowTable rowSample = new RowTable(NULL_CHAR);
+		RowTable rowSample = new RowTable(CSVFormat.makeUnquotedFormat(NULL_CHAR));
 		int rowCount = Math.min(SAMPLE_SIZE, getRowCount());
 		int columnCount = getColumnCount();
 		
 		for (int rowIndex = 0; rowIndex < rowCount; rowIndex++) {
 			StringBuilder sb = new StringBuilder(INITIAL_ROW_SIZE);
+			// The row is built from its fields, so its boundaries are known
+			int[] columnBoundaries = new int[Math.max(columnCount - 1, 0)];
 			for (int columnNumber = 1; columnNumber <= columnCount; columnNumber++) {
 				sb.append(columns.get(columnNumber - 1).getFieldAt(rowIndex));
 				if (columnNumber < columnCount) {
+					columnBoundaries[columnNumber - 1] = sb.length();
 					sb.append(NULL_CHAR);
 				}
 			}
-			rowSample.appendRow(sb.toString());
+			rowSample.appendRow(sb.toString(), columnBoundaries);
 		}
 		return rowSample;
 	}
@@ -0,0 +1,267 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The CompactStringSet is an immutable set of strings stored as a minimal
+ * acyclic automaton: a graph of states whose transitions are labeled with
+ * chars, where the strings of the set are the paths from the start state to
+ * the final states. Strings that share a prefix share the states of the
+ * prefix, and strings that share a suffix share those of the suffix, so a
+ * gazetteer of place names takes a fraction of the memory of a HashSet.
+ *
+ * The automaton is packed into a few arrays. The transitions of each state
+ * are stored together, sorted by label, and a membership test follows one
+ * transition per char of the string (found by binary search among the
+ * transitions of the state), without allocating anything.
+ *
+ * Sets are built with a CompactStringSetBuilder and can be saved to, and
+ * loaded from, a binary file. A value set CSV file is converted to a binary
+ * file with main.
+ *
+ * @author Simon
+ *
+ */
+public class CompactStringSet implements StringSet {
+	/**
+	 * The first four bytes of a binary set file. The first byte is zero, so
+	 * that a binary file can't be mistaken for a text file.
+	 */
+	static final int MAGIC = 0x00435353;
+
+	/**
+	 * The version of the binary file format
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The number of strings
+	 */
+	private final int size;
+
+	/**
+	 * The start of the transitions of each state; the transitions of state s
+	 * are at [stateStarts[s], stateStarts[s + 1]). The start state is 0.
+	 */
+	private final int[] stateStarts;
+
+	/**
+	 * The label of each transition
+	 */
+	private final char[] labels;
+
+	/**
+	 * The target state of each transition
+	 */
+	private final int[] targets;
+
+	/**
+	 * One bit per state, set for the final states
+	 */
+	private final long[] finalBits;
+
+	/**
+	 * Constructs the set from its packed automaton.
+	 *
+	 * @param size			The number of strings
+	 * @param stateStarts	The start of the transitions of each state
+	 * @param labels		The label of each transition
+	 * @param targets		The target state of each transition
+	 * @param finalBits		The final state bits
+	 */
+	CompactStringSet(int size, int[] stateStarts, char[] labels, int[] targets,
+			long[] finalBits) {
+		super();
+		this.size = size;
+		this.stateStarts = stateStarts;
+		this.labels = labels;
+		this.targets = targets;
+		this.finalBits = finalBits;
+	}
+
+	/**
+	 * Converts a value set file (see RowTable.loadValueSet) to a binary set
+	 * file.
+	 * <p>
+	 * The arguments:
+	 * 	<value_set_file> <output_file>
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.out.println("Usage: CompactStringSet <value_set_file> <output_file>");
+			System.exit(1);
+		}
+
+		CompactStringSet set = RowTable.loadCompactValueSet(new File(args[0]));
+		set.writeToFile(new File(args[1]));
+		System.out.println(set.size() + " strings, " + set.getStateCount() + " states, "
+				+ set.getTransitionCount() + " transitions");
+	}
+
+	/* (non-Javadoc)
+	 * @see StringSet#contains(CharSequence)
+	 */
+	public boolean contains(CharSequence value) {
+		int state = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			int transition = Arrays.binarySearch(labels,
+					stateStarts[state], stateStarts[state + 1], value.charAt(i));
+			if (transition < 0) {
+				return false;
+			}
+			state = targets[transition];
+		}
+		return isFinal(state);
+	}
+
+	/* (non-Javadoc)
+	 * @see StringSet#size()
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of states of the automaton.
+	 *
+	 * @return	The number of states
+	 */
+	public int getStateCount() {
+		return stateStarts.length - 1;
+	}
+
+	/**
+	 * Returns the number of transitions of the automaton.
+	 *
+	 * @return	The number of transitions
+	 */
+	public int getTransitionCount() {
+		return labels.length;
+	}
+
+	/**
+	 * Saves the set to a binary file.
+	 *
+	 * @param file	The output file
+	 */
+	public void writeToFile(File file) {
+		DataOutputStream stream = null;
+		try {
+			stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			stream.writeInt(MAGIC);
+			stream.writeInt(VERSION);
+			stream.writeInt(size);
+			stream.writeInt(getStateCount());
+			stream.writeInt(getTransitionCount());
+			for (int start : stateStarts) {
+				stream.writeInt(start);
+			}
+			for (char label : labels) {
+				stream.writeChar(label);
+			}
+			for (int target : targets) {
+				stream.writeInt(target);
+			}
+			for (long bits : finalBits) {
+				stream.writeLong(bits);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Failure writing string set file: " + file.getPath(), e);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads a set from a binary file.
+	 *
+	 * @param file	The input file
+	 * @return		The set
+	 */
+	public static CompactStringSet readFromFile(File file) {
+		InputStream stream = null;
+		try {
+			stream = new FileInputStream(file);
+			return readFromStream(stream);
+		} catch (FileNotFoundException e) {
+			throw new RuntimeException("String set file not found: " + file.getPath(), e);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads a set from a binary stream. The stream is not closed.
+	 *
+	 * @param stream	The input stream
+	 * @return			The set
+	 */
+	public static CompactStringSet readFromStream(InputStream stream) {
+		try {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				throw new RuntimeException("Not a string set file, or an unsupported version");
+			}
+			int size = input.readInt();
+			int stateCount = input.readInt();
+			int transitionCount = input.readInt();
+			int[] stateStarts = new int[stateCount + 1];
+			for (int i = 0; i < stateStarts.length; i++) {
+				stateStarts[i] = input.readInt();
+			}
+			char[] labels = new char[transitionCount];
+			for (int i = 0; i < transitionCount; i++) {
+				labels[i] = input.readChar();
+			}
+			int[] targets = new int[transitionCount];
+			for (int i = 0; i < transitionCount; i++) {
+				targets[i] = input.readInt();
+				if (targets[i] < 0 || targets[i] >= stateCount) {
+					throw new RuntimeException("Corrupt string set file");
+				}
+			}
+			long[] finalBits = new long[(stateCount + 63) >>> 6];
+			for (int i = 0; i < finalBits.length; i++) {
+				finalBits[i] = input.readLong();
+			}
+			return new CompactStringSet(size, stateStarts, labels, targets, finalBits);
+		} catch (IOException e) {
+			throw new RuntimeException("Failure reading string set", e);
+		}
+	}
+
+	/**
+	 * Returns true if a state is final.
+	 *
+	 * @param state		The state
+	 * @return			True if the path to the state spells a string of the set
+	 */
+	private boolean isFinal(int state) {
+		return (finalBits[state >>> 6] & (1L << state)) != 0;
+	}
+}
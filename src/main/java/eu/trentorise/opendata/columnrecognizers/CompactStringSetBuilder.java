@@ -0,0 +1,272 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CompactStringSetBuilder builds a CompactStringSet, adding the strings
+ * one at a time to a minimal automaton (the incremental algorithm of
+ * Daciuk et al., "Incremental construction of minimal acyclic finite-state
+ * automata", 2000).
+ *
+ * Strings added in sorted order (the order of String.compareTo) go straight
+ * into the automaton, and only the automaton is kept in memory. Once a
+ * string comes out of order, the strings are collected instead and sorted
+ * when the set is built.
+ *
+ * @author Simon
+ *
+ */
+public class CompactStringSetBuilder {
+	/**
+	 * The start state
+	 */
+	private State root = new State();
+
+	/**
+	 * The states whose transitions are final, by structure
+	 */
+	private Map<State, State> register = new HashMap<State, State>();
+
+	/**
+	 * The last string added to the automaton, or null
+	 */
+	private String previous = null;
+
+	/**
+	 * The number of strings in the automaton
+	 */
+	private int size = 0;
+
+	/**
+	 * The strings added out of order, or null while the order holds
+	 */
+	private List<String> unsortedValues = null;
+
+	/**
+	 * Adds a string to the set.
+	 *
+	 * @param value		The string
+	 */
+	public void add(CharSequence value) {
+		String string = value.toString();
+		if (unsortedValues != null) {
+			unsortedValues.add(string);
+		} else if (previous != null && string.compareTo(previous) < 0) {
+			unsortedValues = new ArrayList<String>();
+			unsortedValues.add(string);
+		} else {
+			addSorted(string);
+		}
+	}
+
+	/**
+	 * Builds the set. The builder can't be used afterwards.
+	 *
+	 * @return	The set of the strings added
+	 */
+	public CompactStringSet build() {
+		if (unsortedValues != null) {
+			List<String> values = unsortedValues;
+			collectStrings(root, new StringBuilder(), values);
+			Collections.sort(values);
+			root = new State();
+			register = new HashMap<State, State>();
+			previous = null;
+			size = 0;
+			unsortedValues = null;
+			for (String value : values) {
+				addSorted(value);
+			}
+		}
+		if (root.transitionCount > 0) {
+			replaceOrRegister(root);
+		}
+		register = null;
+		return pack();
+	}
+
+	/**
+	 * Adds a string that doesn't come before the previous one.
+	 *
+	 * @param value		The string
+	 */
+	private void addSorted(String value) {
+		if (value.equals(previous)) {
+			return;
+		}
+
+		// Follow the prefix shared with the previous string, whose states
+		// are still unregistered
+		int prefixLength = 0;
+		State state = root;
+		if (previous != null) {
+			int maxLength = Math.min(previous.length(), value.length());
+			while (prefixLength < maxLength
+					&& previous.charAt(prefixLength) == value.charAt(prefixLength)) {
+				state = state.getLastTarget();
+				prefixLength++;
+			}
+		}
+		// The rest of the previous string is complete: merge it into the
+		// register
+		if (state.transitionCount > 0) {
+			replaceOrRegister(state);
+		}
+		for (int i = prefixLength; i < value.length(); i++) {
+			State target = new State();
+			state.addTransition(value.charAt(i), target);
+			state = target;
+		}
+		state.isFinal = true;
+		previous = value;
+		size++;
+	}
+
+	/**
+	 * Replaces the states along the last transitions of a state with
+	 * equivalent registered states, or registers them.
+	 *
+	 * @param state		The state
+	 */
+	private void replaceOrRegister(State state) {
+		State child = state.getLastTarget();
+		if (child.transitionCount > 0) {
+			replaceOrRegister(child);
+		}
+		State registered = register.get(child);
+		if (registered != null) {
+			state.targets[state.transitionCount - 1] = registered;
+		} else {
+			register.put(child, child);
+		}
+	}
+
+	/**
+	 * Adds the strings of the automaton below a state to a list.
+	 *
+	 * @param state		The state
+	 * @param path		The labels on the path to the state
+	 * @param values	The list
+	 */
+	private static void collectStrings(State state, StringBuilder path, List<String> values) {
+		if (state.isFinal) {
+			values.add(path.toString());
+		}
+		for (int i = 0; i < state.transitionCount; i++) {
+			path.append(state.labels[i]);
+			collectStrings(state.targets[i], path, values);
+			path.setLength(path.length() - 1);
+		}
+	}
+
+	/**
+	 * Packs the automaton into arrays, numbering the states in depth-first
+	 * order from the start state.
+	 *
+	 * @return	The set
+	 */
+	private CompactStringSet pack() {
+		List<State> states = new ArrayList<State>();
+		List<State> stack = new ArrayList<State>();
+		root.id = 0;
+		states.add(root);
+		stack.add(root);
+		int transitionCount = 0;
+		while (!stack.isEmpty()) {
+			State state = stack.remove(stack.size() - 1);
+			transitionCount += state.transitionCount;
+			for (int i = state.transitionCount - 1; i >= 0; i--) {
+				State target = state.targets[i];
+				if (target.id < 0) {
+					target.id = states.size();
+					states.add(target);
+					stack.add(target);
+				}
+			}
+		}
+
+		int[] stateStarts = new int[states.size() + 1];
+		char[] labels = new char[transitionCount];
+		int[] targets = new int[transitionCount];
+		long[] finalBits = new long[(states.size() + 63) >>> 6];
+		int transition = 0;
+		for (int id = 0; id < states.size(); id++) {
+			State state = states.get(id);
+			stateStarts[id] = transition;
+			for (int i = 0; i < state.transitionCount; i++) {
+				labels[transition] = state.labels[i];
+				targets[transition] = state.targets[i].id;
+				transition++;
+			}
+			if (state.isFinal) {
+				finalBits[id >>> 6] |= 1L << id;
+			}
+		}
+		stateStarts[states.size()] = transition;
+		return new CompactStringSet(size, stateStarts, labels, targets, finalBits);
+	}
+
+	/**
+	 * A state of the automaton under construction. Registered states are
+	 * compared by structure: finality, labels and target states.
+	 */
+	private static class State {
+		private static final char[] NO_LABELS = new char[0];
+		private static final State[] NO_TARGETS = new State[0];
+
+		boolean isFinal = false;
+		char[] labels = NO_LABELS;
+		State[] targets = NO_TARGETS;
+		int transitionCount = 0;
+		int id = -1;
+
+		/**
+		 * Adds a transition after the others; its label must be the largest.
+		 */
+		void addTransition(char label, State target) {
+			if (transitionCount == labels.length) {
+				int capacity = Math.max(2, transitionCount * 2);
+				labels = Arrays.copyOf(labels, capacity);
+				targets = Arrays.copyOf(targets, capacity);
+			}
+			labels[transitionCount] = label;
+			targets[transitionCount] = target;
+			transitionCount++;
+		}
+
+		State getLastTarget() {
+			return targets[transitionCount - 1];
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = isFinal ? 1 : 0;
+			for (int i = 0; i < transitionCount; i++) {
+				hash = 31 * (31 * hash + labels[i]) + System.identityHashCode(targets[i]);
+			}
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof State)) {
+				return false;
+			}
+			State other = (State)object;
+			if (isFinal != other.isFinal || transitionCount != other.transitionCount) {
+				return false;
+			}
+			for (int i = 0; i < transitionCount; i++) {
+				if (labels[i] != other.labels[i] || targets[i] != other.targets[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
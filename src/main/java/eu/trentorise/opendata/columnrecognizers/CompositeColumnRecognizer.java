@@ -1,7 +1,6 @@
 package eu.trentorise.opendata.columnrecognizers;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +24,12 @@ public class CompositeColumnRecognizer extends ColumnRecognizer {
 	Map<String, ColumnRecognizer> componentRecognizersByName 
 		= new HashMap<String, ColumnRecognizer>();
 	
+	/**
+	 * The number of columns per batch in column-batched execution, or 0 if
+	 * the components run one after the other on the whole table
+	 */
+	private int columnBatchSize = 0;
+	
 	/**
 	 * Constructs the CompositeColumnRecognizer.
 	 * 
@@ -39,9 +44,97 @@ public class CompositeColumnRecognizer extends ColumnRecognizer {
 	 */
 	@Override
 	public void computeScoredCandidates(List<ColumnConceptCandidate> candidates) {
-		Iterator<ColumnRecognizer> it = componentRecognizers.iterator();
-		while (it.hasNext()) {
-			it.next().computeScoredCandidates(candidates);
+		int componentIndex = 0;
+		while (componentIndex < componentRecognizers.size()) {
+			int runEnd = findColumnContentRunEnd(componentIndex);
+			if (columnBatchSize > 0 && runEnd > componentIndex + 1) {
+				computeBatchedCandidates(
+						componentRecognizers.subList(componentIndex, runEnd), 
+						candidates);
+				componentIndex = runEnd;
+			} else {
+				componentRecognizers.get(componentIndex++).computeScoredCandidates(candidates);
+			}
+		}
+	}
+
+	/**
+	 * Enables column-batched execution, meant for wide tables. Consecutive 
+	 * column-content-based components on the same table then run together 
+	 * on one batch of columns at a time, so that each column and its 
+	 * analysis are used by all of them while they are in cache. The columns 
+	 * are extracted once per table, and shared with the other components 
+	 * through the table. The order of the output candidates doesn't change.
+	 * 
+	 * @param columnBatchSize	The number of columns per batch, or 0 to 
+	 * 							disable batching
+	 */
+	public void setColumnBatchSize(int columnBatchSize) {
+		this.columnBatchSize = columnBatchSize;
+	}
+
+	/**
+	 * Finds the end of the run of column-content-based components on the 
+	 * same table that starts at a given component.
+	 * 
+	 * @param start		The index of the first component
+	 * @return			The index after the last component of the run; start
+	 * 					if the first component isn't column-content-based
+	 */
+	private int findColumnContentRunEnd(int start) {
+		ColumnRecognizer first = componentRecognizers.get(start);
+		if (!(first instanceof ColumnContentBasedCR)) {
+			return start;
+		}
+		Table table = ((ColumnContentBasedCR)first).getTable();
+		int end = start + 1;
+		while (end < componentRecognizers.size()
+				&& componentRecognizers.get(end) instanceof ColumnContentBasedCR
+				&& ((ColumnContentBasedCR)componentRecognizers.get(end)).getTable() == table) {
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * Runs column-content-based components on their table one batch of 
+	 * columns at a time. The candidates of each component (and of each 
+	 * prototype of a TFIDFIndexCR) are collected separately and appended in 
+	 * component order, as in unbatched execution.
+	 * 
+	 * @param recognizers	The components, all on the same table
+	 * @param candidates	The candidate list
+	 */
+	private void computeBatchedCandidates(List<ColumnRecognizer> recognizers, 
+			List<ColumnConceptCandidate> candidates) {
+		Table table = ((ColumnContentBasedCR)recognizers.get(0)).getTable();
+		List<Column> columns = table.extractColumns();
+		int columnCount = columns.size();
+		List<List<List<ColumnConceptCandidate>>> componentCandidates 
+			= new ArrayList<List<List<ColumnConceptCandidate>>>(recognizers.size());
+		for (ColumnRecognizer recognizer : recognizers) {
+			int groupCount = ((ColumnContentBasedCR)recognizer).getCandidateGroupCount();
+			List<List<ColumnConceptCandidate>> groups 
+				= new ArrayList<List<ColumnConceptCandidate>>(groupCount);
+			for (int i = 0; i < groupCount; i++) {
+				groups.add(new ArrayList<ColumnConceptCandidate>());
+			}
+			componentCandidates.add(groups);
+		}
+		
+		for (int batchStart = 1; batchStart <= columnCount; batchStart += columnBatchSize) {
+			int batchEnd = Math.min(batchStart + columnBatchSize, columnCount + 1);
+			List<Column> batch = columns.subList(batchStart - 1, batchEnd - 1);
+			for (int i = 0; i < recognizers.size(); i++) {
+				((ColumnContentBasedCR)recognizers.get(i)).computeGroupedCandidates(
+						batch, batchStart, componentCandidates.get(i));
+			}
+		}
+		
+		for (List<List<ColumnConceptCandidate>> groups : componentCandidates) {
+			for (List<ColumnConceptCandidate> list : groups) {
+				candidates.addAll(list);
+			}
 		}
 	}
 
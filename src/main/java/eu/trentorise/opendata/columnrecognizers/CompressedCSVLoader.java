@@ -0,0 +1,191 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The CompressedCSVLoader loads row tables from gzip-compressed CSV files
+ * and from zip archives of CSV files, as published by many open data
+ * portals.
+ *
+ * The data is decompressed while it is parsed: the inflater writes straight
+ * into the buffer of the CSVRecordReader, so no temporary file or copy of
+ * the decompressed data is made. The entries of a zip archive are loaded in
+ * parallel; each worker thread keeps its parse buffer from one entry to the
+ * next, and the ZipFile pools its inflaters.
+ *
+ * @author Simon
+ *
+ */
+public class CompressedCSVLoader {
+	/**
+	 * The size of the buffer of the gzip stream (compressed data)
+	 */
+	private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The file name extension of CSV entries in archives
+	 */
+	private static final String CSV_EXTENSION = ".csv";
+
+	/**
+	 * Loads a new row table from a gzip-compressed CSV file.
+	 *
+	 * @param gzipFile			The compressed file
+	 * @param columnSeparator	The column separator character
+	 * @return					The new table
+	 */
+	public static RowTable loadFromGzip(File gzipFile, char columnSeparator) {
+		InputStream stream = null;
+		try {
+			stream = new FileInputStream(gzipFile);
+			return loadFromGzip(stream, columnSeparator);
+		} catch (IOException e) {
+			throw new RuntimeException("Failure reading CSV file: " + gzipFile.getPath(), e);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads a new row table from a gzip-compressed CSV stream. The stream is
+	 * closed at the end.
+	 *
+	 * @param stream			The compressed stream
+	 * @param columnSeparator	The column separator character
+	 * @return					The new table
+	 * @throws IOException
+	 */
+	public static RowTable loadFromGzip(InputStream stream, char columnSeparator)
+			throws IOException {
+		try {
+			return RowTable.loadFromCSV(new GZIPInputStream(stream, GZIP_BUFFER_SIZE),
+					columnSeparator);
+		} finally {
+			// Also closes the stream when it isn't gzip data
+			stream.close();
+		}
+	}
+
+	/**
+	 * Loads the CSV entries of a zip archive, in parallel on all available
+	 * cores.
+	 *
+	 * @param zipFile			The archive
+	 * @param columnSeparator	The column separator character
+	 * @return					The tables by entry name, in archive order
+	 */
+	public static Map<String, RowTable> loadFromZip(File zipFile, char columnSeparator) {
+		return loadFromZip(zipFile, columnSeparator, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Loads the CSV entries of a zip archive in parallel. Entries whose name
+	 * doesn't end with .csv are skipped.
+	 *
+	 * @param zipFile			The archive
+	 * @param columnSeparator	The column separator character
+	 * @param threadCount		The number of worker threads
+	 * @return					The tables by entry name, in archive order
+	 */
+	public static Map<String, RowTable> loadFromZip(File zipFile, final char columnSeparator,
+			int threadCount) {
+		ZipFile archive = null;
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			archive = new ZipFile(zipFile);
+			final List<ZipEntry> entries = findCSVEntries(archive);
+			final RowTable[] tables = new RowTable[entries.size()];
+			final AtomicInteger nextEntry = new AtomicInteger();
+			final ZipFile sharedArchive = archive;
+
+			// Each worker takes the next entry until none is left
+			List<Future<Void>> results = new ArrayList<Future<Void>>(threadCount);
+			for (int i = 0; i < threadCount; i++) {
+				results.add(executor.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						ByteBuffer buffer = null;
+						int index;
+						while ((index = nextEntry.getAndIncrement()) < entries.size()) {
+							InputStream stream = sharedArchive.getInputStream(entries.get(index));
+							RowTable table = new RowTable(columnSeparator);
+							CSVProcessor csv = new CSVProcessor(stream, table);
+							if (buffer != null) {
+								csv.setBuffer(buffer);
+							}
+							csv.read();
+							buffer = csv.getBuffer();
+							tables[index] = table;
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+
+			Map<String, RowTable> tablesByName = new LinkedHashMap<String, RowTable>();
+			for (int i = 0; i < tables.length; i++) {
+				tablesByName.put(entries.get(i).getName(), tables[i]);
+			}
+			return tablesByName;
+		} catch (IOException e) {
+			throw new RuntimeException("Failure reading zip file: " + zipFile.getPath(), e);
+		} catch (InterruptedException e) {
+			throw new RuntimeException("CSV loading interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failure reading zip file: " + zipFile.getPath(), e.getCause());
+		} finally {
+			executor.shutdown();
+			if (archive != null) {
+				try {
+					archive.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lists the CSV entries of an archive.
+	 *
+	 * @param archive	The archive
+	 * @return			The entries, in archive order
+	 */
+	private static List<ZipEntry> findCSVEntries(ZipFile archive) {
+		List<ZipEntry> entries = new ArrayList<ZipEntry>();
+		Enumeration<? extends ZipEntry> it = archive.entries();
+		while (it.hasMoreElements()) {
+			ZipEntry entry = it.nextElement();
+			if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(CSV_EXTENSION)) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,506 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The DiskStringSet is a set of strings that stays on disk, for value sets
+ * too large to keep in memory. The strings are stored sorted in a file that
+ * is mapped into memory, so that the operating system pages in only the
+ * parts that lookups touch, and shares them between processes.
+ *
+ * A Bloom filter, read into memory, rejects most strings that are not in
+ * the set before the file is touched. A string that passes the filter is
+ * looked up by binary search in the file, so the answer is always exact.
+ *
+ * The set counts its lookups: how many the filter rejected, how many went
+ * to disk, the strings compared on disk and the false positives of the
+ * filter (strings that passed it but are not in the set).
+ *
+ * The file starts with the filter, followed by the start of each string and
+ * the chars of the strings. Files are written with writeToFile, and a value
+ * set CSV file is converted to one with main. A file can't exceed 2 GB.
+ *
+ * A set is thread-safe.
+ *
+ * @author Simon
+ *
+ */
+public class DiskStringSet implements StringSet {
+	/**
+	 * The first four bytes of a set file
+	 */
+	private static final int MAGIC = 0x00445353;
+
+	/**
+	 * The version of the file format
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The size of the file header in bytes
+	 */
+	private static final int HEADER_SIZE = 20;
+
+	/**
+	 * The default false positive rate of the Bloom filter
+	 */
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	/**
+	 * The sets loaded with getShared, by file path
+	 */
+	private final static Map<String, SharedSet> sharedSets = new HashMap<String, SharedSet>();
+
+	/**
+	 * The number of strings
+	 */
+	private final int size;
+
+	/**
+	 * The number of hash functions of the Bloom filter
+	 */
+	private final int hashCount;
+
+	/**
+	 * The bits of the Bloom filter
+	 */
+	private final long[] filterBits;
+
+	/**
+	 * The number of bits of the Bloom filter
+	 */
+	private final long filterBitCount;
+
+	/**
+	 * The mapped file
+	 */
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * The position in the file of the string starts
+	 */
+	private final int startsPosition;
+
+	/**
+	 * The position in the file of the chars of the strings
+	 */
+	private final int charsPosition;
+
+	/**
+	 * The number of lookups
+	 */
+	private final AtomicLong lookupCount = new AtomicLong();
+
+	/**
+	 * The number of lookups rejected by the Bloom filter
+	 */
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * The number of lookups that went to disk
+	 */
+	private final AtomicLong diskLookupCount = new AtomicLong();
+
+	/**
+	 * The number of strings compared on disk
+	 */
+	private final AtomicLong probeCount = new AtomicLong();
+
+	/**
+	 * The number of lookups that passed the Bloom filter for a string not in
+	 * the set
+	 */
+	private final AtomicLong falsePositiveCount = new AtomicLong();
+
+	/**
+	 * Opens a set file.
+	 *
+	 * @param file	The set file
+	 */
+	public DiskStringSet(File file) {
+		super();
+		RandomAccessFile randomAccessFile = null;
+		try {
+			randomAccessFile = new RandomAccessFile(file, "r");
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new RuntimeException("String set file too large: " + file.getPath());
+			}
+			// The mapping stays valid after the file is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new RuntimeException("Failure opening string set file: " + file.getPath(), e);
+		} finally {
+			if (randomAccessFile != null) {
+				try {
+					randomAccessFile.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		if (buffer.capacity() < HEADER_SIZE
+				|| buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new RuntimeException("Not a string set file, or an unsupported version: "
+					+ file.getPath());
+		}
+		size = buffer.getInt(8);
+		hashCount = buffer.getInt(12);
+		int wordCount = buffer.getInt(16);
+		long charsEnd = HEADER_SIZE + wordCount * 8L + (size + 1L) * 4;
+		if (size < 0 || wordCount <= 0 || charsEnd > buffer.capacity()) {
+			throw new RuntimeException("Corrupt string set file: " + file.getPath());
+		}
+		filterBits = new long[wordCount];
+		filterBitCount = wordCount * 64L;
+		for (int i = 0; i < wordCount; i++) {
+			filterBits[i] = buffer.getLong(HEADER_SIZE + i * 8);
+		}
+		startsPosition = HEADER_SIZE + wordCount * 8;
+		charsPosition = startsPosition + (size + 1) * 4;
+		if (charsPosition + buffer.getInt(startsPosition + size * 4) * 2L > buffer.capacity()) {
+			throw new RuntimeException("Corrupt string set file: " + file.getPath());
+		}
+	}
+
+	/**
+	 * Returns the set stored in a file. A file is opened once and the set
+	 * shared by all the callers, until the file changes.
+	 *
+	 * @param file	The set file
+	 * @return		The set
+	 */
+	public static DiskStringSet getShared(File file) {
+		String key = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		synchronized (sharedSets) {
+			SharedSet shared = sharedSets.get(key);
+			if (shared == null || shared.lastModified != lastModified) {
+				shared = new SharedSet(new DiskStringSet(file), lastModified);
+				sharedSets.put(key, shared);
+			}
+			return shared.set;
+		}
+	}
+
+	/**
+	 * Converts a value set file (see RowTable.loadValueSet) to a set file.
+	 * <p>
+	 * The arguments:
+	 * 	[-fpr false_positive_rate] <value_set_file> <output_file>
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int argIndex = 0;
+		double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+		if (args.length == 4 && args[0].equals("-fpr")) {
+			falsePositiveRate = Double.parseDouble(args[1]);
+			argIndex = 2;
+		}
+		if (args.length - argIndex != 2) {
+			System.out.println("Usage: DiskStringSet [-fpr <false_positive_rate>] "
+					+ "<value_set_file> <output_file>");
+			System.exit(1);
+		}
+
+		File outputFile = new File(args[argIndex + 1]);
+		writeToFile(RowTable.loadValueSet(new File(args[argIndex])), falsePositiveRate, outputFile);
+		DiskStringSet set = new DiskStringSet(outputFile);
+		System.out.println(set.size() + " strings, " + set.filterBitCount + " filter bits, "
+				+ set.hashCount + " hash functions");
+	}
+
+	/**
+	 * Writes a set file.
+	 *
+	 * @param values				The strings
+	 * @param falsePositiveRate		The false positive rate of the Bloom filter
+	 * @param file					The output file
+	 */
+	public static void writeToFile(Collection<String> values, double falsePositiveRate, File file) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate out of range: "
+					+ falsePositiveRate);
+		}
+		TreeSet<String> sortedValues = new TreeSet<String>(values);
+		int size = sortedValues.size();
+
+		// The optimal number of bits is -n ln(p) / ln(2)^2, with ln(2) m / n
+		// hash functions
+		double ln2 = Math.log(2);
+		long bitCount = (long)Math.ceil(-Math.max(size, 1) * Math.log(falsePositiveRate) / (ln2 * ln2));
+		int wordCount = (int)Math.min(Integer.MAX_VALUE / 8, (bitCount + 63) / 64);
+		long[] filterBits = new long[wordCount];
+		int hashCount = Math.max(1, (int)Math.round((double)wordCount * 64 / Math.max(size, 1) * ln2));
+		for (String value : sortedValues) {
+			long hash = hash(value);
+			long step = step(hash);
+			for (int i = 0; i < hashCount; i++) {
+				long bit = ((hash + i * step) & Long.MAX_VALUE) % ((long)wordCount * 64);
+				filterBits[(int)(bit >>> 6)] |= 1L << bit;
+			}
+		}
+
+		DataOutputStream stream = null;
+		try {
+			stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			stream.writeInt(MAGIC);
+			stream.writeInt(VERSION);
+			stream.writeInt(size);
+			stream.writeInt(hashCount);
+			stream.writeInt(wordCount);
+			for (long bits : filterBits) {
+				stream.writeLong(bits);
+			}
+			int start = 0;
+			for (String value : sortedValues) {
+				stream.writeInt(start);
+				start += value.length();
+			}
+			stream.writeInt(start);
+			for (String value : sortedValues) {
+				stream.writeChars(value);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Failure writing string set file: " + file.getPath(), e);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see StringSet#contains(CharSequence)
+	 */
+	public boolean contains(CharSequence value) {
+		lookupCount.incrementAndGet();
+		if (!mayContain(value)) {
+			rejectedCount.incrementAndGet();
+			return false;
+		}
+		diskLookupCount.incrementAndGet();
+		int low = 0;
+		int high = size - 1;
+		int probes = 0;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			probes++;
+			int comparison = compareTo(middle, value);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				probeCount.addAndGet(probes);
+				return true;
+			}
+		}
+		probeCount.addAndGet(probes);
+		falsePositiveCount.incrementAndGet();
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see StringSet#size()
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of lookups.
+	 *
+	 * @return	The number of lookups
+	 */
+	public long getLookupCount() {
+		return lookupCount.get();
+	}
+
+	/**
+	 * Returns the number of lookups the Bloom filter rejected without going
+	 * to disk.
+	 *
+	 * @return	The number of rejected lookups
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Returns the number of lookups that searched the file.
+	 *
+	 * @return	The number of disk lookups
+	 */
+	public long getDiskLookupCount() {
+		return diskLookupCount.get();
+	}
+
+	/**
+	 * Returns the number of strings read from the file by the lookups.
+	 *
+	 * @return	The number of probes
+	 */
+	public long getProbeCount() {
+		return probeCount.get();
+	}
+
+	/**
+	 * Returns the number of lookups of strings not in the set that the
+	 * Bloom filter let through.
+	 *
+	 * @return	The number of false positives
+	 */
+	public long getFalsePositiveCount() {
+		return falsePositiveCount.get();
+	}
+
+	/**
+	 * Returns the observed false positive rate of the Bloom filter: the
+	 * fraction of lookups of strings not in the set that went to disk.
+	 *
+	 * @return	The false positive rate, or 0 before such lookups
+	 */
+	public double getFalsePositiveRate() {
+		long falsePositives = falsePositiveCount.get();
+		long negatives = falsePositives + rejectedCount.get();
+		return negatives == 0 ? 0 : ((double)falsePositives) / negatives;
+	}
+
+	/**
+	 * Returns the false positive rate the Bloom filter is expected to have,
+	 * (1 - e^(-k n / m))^k for k hash functions, n strings and m bits.
+	 *
+	 * @return	The expected false positive rate
+	 */
+	public double getExpectedFalsePositiveRate() {
+		return Math.pow(1 - Math.exp(-(double)hashCount * size / filterBitCount), hashCount);
+	}
+
+	/**
+	 * Sets the lookup statistics back to zero.
+	 */
+	public void resetStatistics() {
+		lookupCount.set(0);
+		rejectedCount.set(0);
+		diskLookupCount.set(0);
+		probeCount.set(0);
+		falsePositiveCount.set(0);
+	}
+
+	/**
+	 * Tests a string against the Bloom filter.
+	 *
+	 * @param value		The string
+	 * @return			False if the string is certainly not in the set
+	 */
+	private boolean mayContain(CharSequence value) {
+		long hash = hash(value);
+		long step = step(hash);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = ((hash + i * step) & Long.MAX_VALUE) % filterBitCount;
+			if ((filterBits[(int)(bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares a string of the file with another string, in the order of
+	 * String.compareTo.
+	 *
+	 * @param index		The position of the string in the file
+	 * @param value		The other string
+	 * @return			A negative number, zero or a positive number as the
+	 * 					string of the file comes before, equals or comes after
+	 * 					the other
+	 */
+	private int compareTo(int index, CharSequence value) {
+		int start = buffer.getInt(startsPosition + index * 4);
+		int length = buffer.getInt(startsPosition + index * 4 + 4) - start;
+		int position = charsPosition + start * 2;
+		int commonLength = Math.min(length, value.length());
+		for (int i = 0; i < commonLength; i++) {
+			int difference = buffer.getChar(position + i * 2) - value.charAt(i);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return length - value.length();
+	}
+
+	/**
+	 * Hashes a string for the Bloom filter (64-bit FNV-1a over the chars,
+	 * with the MurmurHash3 finalizer).
+	 *
+	 * @param value		The string
+	 * @return			The hash
+	 */
+	private static long hash(CharSequence value) {
+		long hash = 0xcbf29ce484222325L;
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+	/**
+	 * Derives the step between the bits of a string from its hash (double
+	 * hashing).
+	 *
+	 * @param hash	The hash
+	 * @return		The step, odd
+	 */
+	private static long step(long hash) {
+		return mix(hash ^ 0x9e3779b97f4a7c15L) | 1;
+	}
+
+	/**
+	 * Mixes the bits of a hash (the 64-bit finalizer of MurmurHash3).
+	 *
+	 * @param hash	The hash
+	 * @return		The mixed hash
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * A set opened with getShared and the modification time of its file.
+	 */
+	private static class SharedSet {
+		final DiskStringSet set;
+		final long lastModified;
+
+		SharedSet(DiskStringSet set, long lastModified) {
+			this.set = set;
+			this.lastModified = lastModified;
+		}
+	}
+}
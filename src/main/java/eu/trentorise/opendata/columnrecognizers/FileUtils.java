@@ -10,10 +10,13 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -74,6 +77,11 @@ public class FileUtils {
 	 * The folder with the SVM-Light executables
 	 */
 	private static File svmExecutablesFolder = null;
+	
+	/**
+	 * The model files copied out of jars by getModelDiskFile, by model URL
+	 */
+	private final static Map<String, File> copiedModelFiles = new HashMap<String, File>();
 
 	/**
 	 * Sets the folder with the SVM-Light executables. Use this if you want
@@ -344,6 +352,120 @@ public class FileUtils {
 		return modelStream;
 	}
 
+	/**
+	 * Locates a model file the same way as getModelFile, without opening it:
+	 * among the application resources, in the working directory, then in 
+	 * the model directories.
+	 * 
+	 * @param modelPath				The relative path to the model file
+	 * @param modelDirectories		A list of model directories (can be null)
+	 * @return						The URL of the file, or null if not found
+	 */
+	public static URL getModelURL(String modelPath, List<File> modelDirectories) {
+		URL url = getResourceURL(MODEL_RESOURCE_PATH + modelPath);
+		if (url == null) {
+			File modelFile = new File(modelPath);
+			if (!modelFile.exists() && modelDirectories != null) {
+				for (File modelDirectory : modelDirectories) {
+					File probe = new File(modelDirectory, modelPath);
+					if (probe.exists()) {
+						modelFile = probe;
+						break;
+					}
+				}
+			}
+			if (modelFile.exists()) {
+				try {
+					url = modelFile.toURI().toURL();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return url;
+	}
+
+	/**
+	 * Locates a model file as getModelURL does and returns it as a file on 
+	 * disk, for models that are memory-mapped rather than read. A model 
+	 * packaged in a jar is copied out the first time it is asked for, to a
+	 * temp file of this process: a copy is never shared with another 
+	 * process, so it is always the model this process loaded, and it is 
+	 * deleted when this process exits.
+	 * 
+	 * @param modelPath				The relative path to the model file
+	 * @param modelDirectories		A list of model directories (can be null)
+	 * @return						The file, or null if not found
+	 */
+	public static File getModelDiskFile(String modelPath, List<File> modelDirectories) {
+		URL url = getModelURL(modelPath, modelDirectories);
+		if (url == null) {
+			return null;
+		}
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return new File(url.toURI());
+			} catch (URISyntaxException e) {
+				throw new RuntimeException("Invalid model file URL: " + url, e);
+			}
+		}
+		synchronized (copiedModelFiles) {
+			File file = copiedModelFiles.get(url.toString());
+			if (file == null) {
+				file = copyModelFile(url, new File(modelPath).getName());
+				copiedModelFiles.put(url.toString(), file);
+			}
+			return file;
+		}
+	}
+
+	/**
+	 * Copies a model to a new temp file, which is deleted when the process
+	 * exits.
+	 * 
+	 * @param url		The model URL
+	 * @param name		The file name of the model, used as the prefix of
+	 * 					the temp file name
+	 * @return			The temp file
+	 */
+	private static File copyModelFile(URL url, String name) {
+		File file = null;
+		InputStream stream = null;
+		OutputStream fileStream = null;
+		boolean copied = false;
+		try {
+			file = File.createTempFile(name + ".", ".tmp", getTmpDirectory());
+			file.deleteOnExit();
+			stream = url.openStream();
+			fileStream = new FileOutputStream(file);
+			byte[] buffer = new byte[64 * 1024];
+			int count;
+			while ((count = stream.read(buffer)) > 0) {
+				fileStream.write(buffer, 0, count);
+			}
+			fileStream.close();
+			fileStream = null;
+			copied = true;
+			return file;
+		} catch (IOException e) {
+			throw new RuntimeException("Failure copying model file: " + url, e);
+		} finally {
+			try {
+				if (stream != null) {
+					stream.close();
+				}
+				if (fileStream != null) {
+					fileStream.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (!copied && file != null) {
+				file.delete();
+			}
+		}
+	}
+
 	/**
 	 * Gets a file from the application resources.
 	 * 
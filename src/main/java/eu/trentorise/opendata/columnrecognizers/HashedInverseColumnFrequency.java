@@ -0,0 +1,214 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The HashedInverseColumnFrequency is an InverseColumnFrequency table over
+ * the buckets of a HashedTermVocabulary rather than over words. Its size is
+ * fixed by the number of hash bits, whatever the size of the corpus
+ * vocabulary, and so is the size of the TF-IDF vectors built with it.
+ *
+ * The column frequency of a bucket is the sum of the column frequencies of
+ * the words hashed into it (at most the number of columns).
+ *
+ * @author Simon
+ *
+ */
+public class HashedInverseColumnFrequency extends InverseColumnFrequency {
+	/**
+	 * The key to the entry in the file holding the number of hash bits
+	 */
+	private final static String HASH_BITS_KEY = "___HASH_BITS___";
+
+	/**
+	 * The key to the entry in the file holding the inverse frequency of
+	 * the buckets no word of the corpus was hashed into
+	 */
+	private final static String UNSEEN_BUCKET_KEY = "___UNSEEN___";
+
+	/**
+	 * The number of hash bits
+	 */
+	private final int hashBits;
+
+	/**
+	 * The vocabulary hashing the words into buckets
+	 */
+	private final HashedTermVocabulary vocabulary;
+
+	/**
+	 * The inverse frequency of each bucket
+	 */
+	private final double[] inverseFrequencies;
+
+	/**
+	 * The inverse frequency of the buckets no word was hashed into
+	 */
+	private double unseenInverseFrequency = 0;
+
+	/**
+	 * Constructs the table from the column frequencies of a corpus.
+	 *
+	 * @param counts	The column frequencies
+	 * @param hashBits	The number of hash bits
+	 */
+	public HashedInverseColumnFrequency(ColumnFrequencyCounts counts, int hashBits) {
+		this(hashBits);
+		long columnCount = counts.getColumnCount();
+		long[] bucketFrequencies = new long[inverseFrequencies.length];
+		for (Entry<String, Integer> frequency : counts.getFrequencies().entrySet()) {
+			bucketFrequencies[vocabulary.getID(frequency.getKey())] += frequency.getValue();
+		}
+		unseenInverseFrequency = Math.log((double)columnCount);
+		for (int bucket = 0; bucket < inverseFrequencies.length; bucket++) {
+			long frequency = Math.min(bucketFrequencies[bucket], columnCount);
+			inverseFrequencies[bucket] = frequency == 0
+					? unseenInverseFrequency
+					: Math.log(((double)columnCount) / (frequency + 1));
+		}
+	}
+
+	/**
+	 * Constructs a table with no inverse frequencies set.
+	 *
+	 * @param hashBits	The number of hash bits
+	 */
+	private HashedInverseColumnFrequency(int hashBits) {
+		super();
+		this.hashBits = hashBits;
+		this.vocabulary = new HashedTermVocabulary(hashBits);
+		this.inverseFrequencies = new double[vocabulary.size()];
+	}
+
+	/**
+	 * Builds a hashed table from a column frequency file written by
+	 * InverseColumnFrequency.
+	 *
+	 * @param args	The arguments: counts_file, hash_bits, output_file
+	 */
+	public static void main(String[] args) {
+		final int ARG_COUNT = 3;
+
+		if (args.length != ARG_COUNT) {
+			System.out.println("Usage: HashedInverseColumnFrequency <counts_file> <hash_bits> <output_file>");
+			System.exit(1);
+		}
+		ColumnFrequencyCounts counts = ColumnFrequencyCounts.readFromFile(new File(args[0]));
+		int hashBits = Integer.parseInt(args[1]);
+		new HashedInverseColumnFrequency(counts, hashBits).writeToFile(new File(args[2]));
+	}
+
+	/**
+	 * Gets the inverse frequency of the bucket of a word.
+	 *
+	 * @param word	The word
+	 * @return		The inverse frequency
+	 */
+	@Override
+	public double getInverseFrequency(String word) {
+		return inverseFrequencies[vocabulary.getID(word)];
+	}
+
+	/**
+	 * Gets the inverse frequency of a bucket.
+	 *
+	 * @param bucket	The bucket number
+	 * @return			The inverse frequency
+	 */
+	double getBucketInverseFrequency(int bucket) {
+		return inverseFrequencies[bucket];
+	}
+
+	/**
+	 * Returns the vocabulary hashing the words into buckets. Vectors built
+	 * with one table can only be compared with each other.
+	 *
+	 * @return	The hashed vocabulary
+	 */
+	@Override
+	public HashedTermVocabulary getVocabulary() {
+		return vocabulary;
+	}
+
+	/**
+	 * Returns the number of hash bits.
+	 *
+	 * @return	The number of hash bits
+	 */
+	public int getHashBits() {
+		return hashBits;
+	}
+
+	/**
+	 * Writes out the table to a text file. Only the buckets with words are
+	 * listed.
+	 *
+	 * @param file	The output text file
+	 */
+	public void writeToFile(File file) {
+		Map<String, Double> bucketScores = new HashMap<String, Double>();
+		bucketScores.put(HASH_BITS_KEY, (double)hashBits);
+		bucketScores.put(UNSEEN_BUCKET_KEY, unseenInverseFrequency);
+		for (int bucket = 0; bucket < inverseFrequencies.length; bucket++) {
+			if (inverseFrequencies[bucket] != unseenInverseFrequency) {
+				bucketScores.put(Integer.toString(bucket), inverseFrequencies[bucket]);
+			}
+		}
+		WordScoreWriter writer = new WordScoreWriter(file, bucketScores);
+		writer.write();
+	}
+
+	/**
+	 * Loads a table from a file.
+	 *
+	 * @param file	The input file
+	 * @return		The new HashedInverseColumnFrequency object
+	 */
+	public static HashedInverseColumnFrequency readFromFile(File file) {
+		WordScoreReader reader = new WordScoreReader(file);
+		reader.read();
+		return fromBucketScores(reader.getWordScores());
+	}
+
+	/**
+	 * Loads a table from a stream.
+	 *
+	 * @param stream	The input stream
+	 * @return			The new HashedInverseColumnFrequency object
+	 */
+	public static HashedInverseColumnFrequency readFromStream(InputStream stream) {
+		WordScoreReader reader = new WordScoreReader(stream);
+		reader.read();
+		return fromBucketScores(reader.getWordScores());
+	}
+
+	/**
+	 * Constructs a table from the entries of a file.
+	 *
+	 * @param bucketScores	The entries
+	 * @return				The new table
+	 */
+	private static HashedInverseColumnFrequency fromBucketScores(Map<String, Double> bucketScores) {
+		Double hashBits = bucketScores.get(HASH_BITS_KEY);
+		Double unseenIDF = bucketScores.get(UNSEEN_BUCKET_KEY);
+		if (hashBits == null || unseenIDF == null) {
+			throw new IllegalArgumentException("Not a hashed inverse frequency file");
+		}
+		HashedInverseColumnFrequency table
+			= new HashedInverseColumnFrequency(hashBits.intValue());
+		table.unseenInverseFrequency = unseenIDF;
+		Arrays.fill(table.inverseFrequencies, unseenIDF);
+		for (Entry<String, Double> bucketScore : bucketScores.entrySet()) {
+			String key = bucketScore.getKey();
+			if (!key.equals(HASH_BITS_KEY) && !key.equals(UNSEEN_BUCKET_KEY)) {
+				table.inverseFrequencies[table.vocabulary.addStoredKey(key)] = bucketScore.getValue();
+			}
+		}
+		return table;
+	}
+}
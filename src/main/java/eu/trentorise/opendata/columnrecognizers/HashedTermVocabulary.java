@@ -0,0 +1,159 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+/**
+ * The HashedTermVocabulary maps terms to IDs by hashing them into a fixed
+ * number of buckets, instead of listing them. It never grows, whatever the
+ * number of distinct terms, at the cost of letting unrelated terms collide
+ * in the same bucket.
+ *
+ * Each term also gets a sign from its hash. The components of colliding
+ * terms are added with their signs, so that collisions cancel out on
+ * average rather than always inflating the inner products.
+ *
+ * Terms can't be recovered from their IDs: vector files store the bucket
+ * numbers.
+ *
+ * @author Simon
+ *
+ */
+public class HashedTermVocabulary extends TermVocabulary {
+	/**
+	 * The largest number of hash bits; the sign takes the top bit of the hash
+	 */
+	public static final int MAX_HASH_BITS = 30;
+
+	/**
+	 * The number of buckets, a power of two
+	 */
+	private final int dimension;
+
+	/**
+	 * Constructs the vocabulary.
+	 *
+	 * @param hashBits	The number of bits of the bucket numbers (1 to 30)
+	 */
+	public HashedTermVocabulary(int hashBits) {
+		super();
+		if (hashBits < 1 || hashBits > MAX_HASH_BITS) {
+			throw new IllegalArgumentException("Hash bits out of range: " + hashBits);
+		}
+		this.dimension = 1 << hashBits;
+	}
+
+	/**
+	 * Returns the bucket of a term.
+	 *
+	 * @param term	The term
+	 * @return		The bucket number
+	 */
+	@Override
+	public int getID(String term) {
+		return getBucket(hash(term));
+	}
+
+	/**
+	 * Returns the bucket of a term hash.
+	 *
+	 * @param hash	The hash of the term (see hash(char[], int))
+	 * @return		The bucket number
+	 */
+	int getBucket(int hash) {
+		return hash & (dimension - 1);
+	}
+
+	/**
+	 * Returns the bucket of a term. Nothing is added.
+	 *
+	 * @param term	The term
+	 * @return		The bucket number
+	 */
+	@Override
+	public int addTerm(String term) {
+		return getID(term);
+	}
+
+	/**
+	 * Returns the bucket number as a string, since the terms of a bucket
+	 * aren't kept.
+	 *
+	 * @param id	The bucket number
+	 * @return		The bucket number as a string
+	 */
+	@Override
+	public String getTerm(int id) {
+		return Integer.toString(id);
+	}
+
+	/**
+	 * Returns the number of buckets.
+	 *
+	 * @return	The dimension of the hashed vectors
+	 */
+	@Override
+	public int size() {
+		return dimension;
+	}
+
+	@Override
+	double getSign(String term) {
+		return hash(term) < 0 ? -1 : 1;
+	}
+
+	@Override
+	String getStoredKey(int id) {
+		return Integer.toString(id);
+	}
+
+	@Override
+	int addStoredKey(String key) {
+		int id = Integer.parseInt(key);
+		if (id < 0 || id >= dimension) {
+			throw new IllegalArgumentException("Bucket out of range: " + key);
+		}
+		return id;
+	}
+
+	/**
+	 * Hashes a term. String.hashCode is fixed by the language specification,
+	 * so the buckets don't change from one run to the next; the bits are
+	 * mixed so that the low bits depend on the whole term.
+	 *
+	 * @param term	The term
+	 * @return		The hash
+	 */
+	private static int hash(String term) {
+		return mix(term.hashCode());
+	}
+
+	/**
+	 * Hashes a term held in a buffer, as hash(String) would hash it as a
+	 * string. The sign of the term is the sign of the hash.
+	 *
+	 * @param buffer	The buffer
+	 * @param length	The length of the term
+	 * @return			The hash
+	 */
+	static int hash(char[] buffer, int length) {
+		// String.hashCode, without making the string
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + buffer[i];
+		}
+		return mix(hash);
+	}
+
+	/**
+	 * Mixes the bits of a string hash code.
+	 *
+	 * @param hash	The hash code
+	 * @return		The mixed hash
+	 */
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
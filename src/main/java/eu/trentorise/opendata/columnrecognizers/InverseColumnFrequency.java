@@ -1,11 +1,15 @@
 package eu.trentorise.opendata.columnrecognizers;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 
 
 /**
@@ -17,6 +21,9 @@ import java.util.Set;
  * When we use similarity of term frequency as a measure of the similarity
  * between database columns, terms can be weighted by their IDF. 
  * 
+ * Each table has its own TermVocabulary for the TF-IDF vectors built with 
+ * it, which goes away with the table.
+ * 
  * Consult the following Wikipedia articles for some theoretical background:
  * 
  * http://en.wikipedia.org/wiki/Vector_space_model
@@ -33,9 +40,20 @@ public class InverseColumnFrequency {
 	private final static String UNSEEN_WORD = "___UNSEEN___";
 	
 	/**
-	 * The inverse frequency for each word
+	 * The tables loaded with getShared, by URL
+	 */
+	private final static Map<String, SharedTable> sharedTables 
+		= new HashMap<String, SharedTable>();
+	
+	/**
+	 * The inverse frequency for each word (read-only)
 	 */
-	Map<String, Double> inverseFrequencies = null;
+	private Map<String, Double> inverseFrequencies = null;
+	
+	/**
+	 * The vocabulary of the TF-IDF vectors built with the table
+	 */
+	private final TermVocabulary vocabulary = new TermVocabulary();
 	
 	/**
 	 * Constructs the InverseColumnFrequency table from a corpus.
@@ -43,11 +61,19 @@ public class InverseColumnFrequency {
 	 * @param frequencies	The number of columns each word occurs in
 	 * @param columnCount	The total number of columns in the corpus
 	 */
-	public InverseColumnFrequency(Map<String, Integer> frequencies, int columnCount) {
+	public InverseColumnFrequency(Map<String, Integer> frequencies, long columnCount) {
 		super();
 		calculate(frequencies, columnCount);
 	}
 	
+	/**
+	 * Constructs an empty table, for subclasses that store the inverse 
+	 * frequencies in another form.
+	 */
+	InverseColumnFrequency() {
+		super();
+	}
+	
 	/**
 	 * Constructs the InverseColumnFrequency table from the inverse 
 	 * frequency map.
@@ -56,74 +82,55 @@ public class InverseColumnFrequency {
 	 */
 	private InverseColumnFrequency(Map<String, Double> inverseFrequencies) {
 		super();
-		this.inverseFrequencies = inverseFrequencies;
+		this.inverseFrequencies = Collections.unmodifiableMap(inverseFrequencies);
 	}
 
 	/**
 	 * Compute the inverse frequencies from a corpus consisting of the CSV 
-	 * tables given as arguments. The result is output to a file.
+	 * tables given as arguments. The result is output to a file, together
+	 * with the column frequencies it was computed from.
 	 * 
-	 * @param args	The arguments: file_path, column_separator, ...
+	 * Column frequency files from earlier runs given with -merge are added
+	 * to the counts, so that a model can be extended with new tables 
+	 * without reading the old ones again, or built in parts and merged.
+	 * 
+	 * @param args	The arguments: [-threads n] [-merge counts_file ...] 
+	 * 				file_path, column_separator, ...
 	 */
 	public static void main(String[] args) {
 		final String OUTPUT_FILE_NAME = "inverse-frequencies.txt";
-		final int NUMBER_OF_HEADER_ROWS = 1;
-		final int MIN_ARG_COUNT = 2;
-		
-		if (args.length < MIN_ARG_COUNT) {
-			System.out.println("Usage: InverseColumnFrequency <csv_file_path> <column_separator> ...");
-			System.exit(1);
-		}
+		final String COUNTS_FILE_NAME = "column-frequencies.txt";
 		
-		// The number of columns each word occurs in
-		Map<String, Integer> frequencies = new HashMap<String, Integer>();
-		// The number of columns
-		int columnCount = 0;
-		
-		// We assume that arguments are path, column_separator, ...
-		for (int i = 0; i < args.length; i += 2) {
-			String pathName = args[i];
-			char columnSeparator = args[i + 1].charAt(0);
-			File csvFile = new File(pathName);
-			RowTable table = RowTable.loadFromCSV(csvFile, columnSeparator);
-			table.removeHeaders(NUMBER_OF_HEADER_ROWS);
-			List<Column> columns = table.extractColumns();
-			for (Column column: columns) {
-				InverseColumnFrequency.addColumn(column, frequencies);
-				columnCount++;
+		ColumnFrequencyCounter counter = new ColumnFrequencyCounter();
+		List<File> countFiles = new ArrayList<File>();
+		int i = 0;
+		try {
+			while (i < args.length) {
+				if (args[i].equals("-threads")) {
+					counter.setThreadCount(Integer.parseInt(args[i + 1]));
+				} else if (args[i].equals("-merge")) {
+					countFiles.add(new File(args[i + 1]));
+				} else {
+					// Otherwise arguments are path, column_separator, ...
+					counter.addFile(new File(args[i]), new CSVFormat(args[i + 1].charAt(0)));
+				}
+				i += 2;
 			}
+		} catch (RuntimeException e) {
+			// A missing or malformed argument value
+			i = -1;
 		}
-		
-		InverseColumnFrequency inverseFrequencies 
-			= new InverseColumnFrequency(frequencies, columnCount);
-		inverseFrequencies.writeToFile(new File(OUTPUT_FILE_NAME));
-	}
-
-	/**
-	 * Adds the words of a column to the column frequencies.
-	 * 
-	 * @param column		The column
-	 * @param frequencies	The number of columns each word occurs in
-	 */
-	private static void addColumn(Column column, Map<String, Integer> frequencies) {
-		Set<String> words = column.extractWordSet();
-		for (String word: words) {
-			incrementCount(word, frequencies);
+		if (i != args.length || args.length == 0) {
+			System.out.println("Usage: InverseColumnFrequency [-threads <n>] [-merge <counts_file>] ... <csv_file_path> <column_separator> ...");
+			System.exit(1);
 		}
-	}
-
-	/**
-	 * Adds a word occurrence.
-	 * 
-	 * @param word			The word
-	 * @param frequencies	The number of columns each word occurs in
-	 */
-	private static void incrementCount(String word, Map<String, Integer> frequencies) {
-		if (frequencies.containsKey(word)) {
-			frequencies.put(word, frequencies.get(word) + 1);
-		} else {
-			frequencies.put(word, 1);
+		
+		ColumnFrequencyCounts counts = counter.count();
+		for (File countFile : countFiles) {
+			counts.merge(ColumnFrequencyCounts.readFromFile(countFile));
 		}
+		counts.writeToFile(new File(COUNTS_FILE_NAME));
+		counts.toInverseColumnFrequency().writeToFile(new File(OUTPUT_FILE_NAME));
 	}
 
 	/**
@@ -133,7 +140,7 @@ public class InverseColumnFrequency {
 	 * @param frequencies	The number of columns each word occurs in
 	 * @param columnCount	The total number of columns in the corpus
 	 */
-	private void calculate(Map<String, Integer> frequencies, int columnCount) {
+	private void calculate(Map<String, Integer> frequencies, long columnCount) {
 		inverseFrequencies = new HashMap<String, Double>();
 		for (Entry<String, Integer> wordFrequency: frequencies.entrySet()) {
 			String word = wordFrequency.getKey();
@@ -142,6 +149,7 @@ public class InverseColumnFrequency {
 			inverseFrequencies.put(word, Math.log(inverseCount));
 		}
 		inverseFrequencies.put(UNSEEN_WORD, getZeroFrequencyIDF(columnCount));
+		inverseFrequencies = Collections.unmodifiableMap(inverseFrequencies);
 	}
 
 	/**
@@ -161,7 +169,7 @@ public class InverseColumnFrequency {
 	 * @param columnCount	The total number of columns in the corpus
 	 * @return				The inverse frequency for unseen words
 	 */
-	private double getZeroFrequencyIDF(int columnCount) {
+	private double getZeroFrequencyIDF(long columnCount) {
 		return Math.log((double)columnCount);
 	}
 
@@ -181,6 +189,17 @@ public class InverseColumnFrequency {
 		return inverseFrequency;
 	}
 
+	/**
+	 * Returns the vocabulary in which the TF-IDF vectors built with the 
+	 * table store their terms. Prototypes must be read in it to be compared
+	 * with columns.
+	 * 
+	 * @return	The vocabulary
+	 */
+	public TermVocabulary getVocabulary() {
+		return vocabulary;
+	}
+
 	/**
 	 * Loads an InverseColumnFrequency table from a file.
 	 * 
@@ -205,4 +224,84 @@ public class InverseColumnFrequency {
 		return new InverseColumnFrequency(reader.getWordScores());
 	}
 
+	/**
+	 * Returns the table stored at a URL, loading it only the first time or
+	 * when the file has changed since it was loaded. Tables are read-only, 
+	 * so all recognizers share one instance per file. Resources inside a 
+	 * jar are taken not to change.
+	 * 
+	 * @param url	The location of the table file
+	 * @return		The table
+	 */
+	public static InverseColumnFrequency getShared(URL url) {
+		return getShared(url, false);
+	}
+
+	/**
+	 * Returns the table stored at a URL, as getShared(URL).
+	 * 
+	 * @param url		The location of the table file
+	 * @param hashed	True if the file holds a hashed table
+	 * @return			The table
+	 */
+	static InverseColumnFrequency getShared(URL url, boolean hashed) {
+		long lastModified = getLastModified(url);
+		String key = (hashed ? "hashed:" : "") + url.toExternalForm();
+		synchronized (sharedTables) {
+			SharedTable shared = sharedTables.get(key);
+			if (shared == null || shared.lastModified != lastModified) {
+				InputStream stream = null;
+				try {
+					stream = url.openStream();
+					InverseColumnFrequency table = hashed
+							? HashedInverseColumnFrequency.readFromStream(stream)
+							: readFromStream(stream);
+					shared = new SharedTable(table, lastModified);
+				} catch (IOException e) {
+					throw new RuntimeException("Failure reading inverse frequencies: " + key, e);
+				} finally {
+					if (stream != null) {
+						try {
+							stream.close();
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				}
+				sharedTables.put(key, shared);
+			}
+			return shared.table;
+		}
+	}
+
+	/**
+	 * Returns the modification time of a file given by URL.
+	 * 
+	 * @param url	The URL
+	 * @return		The modification time, or 0 for URLs other than files
+	 */
+	static long getLastModified(URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return 0;
+		}
+		try {
+			return new File(url.toURI()).lastModified();
+		} catch (URISyntaxException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * A table loaded with getShared and the modification time of its file.
+	 */
+	private static class SharedTable {
+		final InverseColumnFrequency table;
+		final long lastModified;
+
+		SharedTable(InverseColumnFrequency table, long lastModified) {
+			this.table = table;
+			this.lastModified = lastModified;
+		}
+	}
+
 }
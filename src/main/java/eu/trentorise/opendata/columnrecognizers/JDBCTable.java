@@ -0,0 +1,444 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A JDBCTable is a table backed by a database table (or view). Like the
+ * LazyCSVTable it queries the database only as far as the recognizers need:
+ * <ul>
+ * <li>the headers and the row sample come from a query limited to the
+ * sample rows;</li>
+ * <li>the columns come from a second query whose result set is streamed,
+ * with a bounded fetch size, into one accumulator per column.</li>
+ * </ul>
+ * The data is never copied into an intermediate list of rows. The query for
+ * the columns can itself be limited to a number of rows, or to a random
+ * percentage of the table (TABLESAMPLE) where the dialect supports it.
+ * Limits are written in the SQL of the dialect, so that the database doesn't
+ * compute rows that are not fetched.
+ *
+ * Some drivers only stream the result set under conditions that this class
+ * doesn't change, such as a connection with auto-commit disabled
+ * (PostgreSQL); otherwise they may buffer the whole result set.
+ *
+ * @author Simon
+ *
+ */
+public class JDBCTable implements Table {
+	/**
+	 * The number of rows in the row sample
+	 */
+	private static final int SAMPLE_SIZE = 10;
+
+	/**
+	 * The default number of rows fetched in one round trip
+	 */
+	private static final int DEFAULT_FETCH_SIZE = 1000;
+
+	/**
+	 * The SQL dialects that differ in how results are limited or sampled.
+	 */
+	public enum Dialect {
+		/** Standard SQL:2008 (FETCH FIRST), no sampling */
+		STANDARD,
+		/** LIMIT, no sampling (H2, HSQLDB, MySQL, MariaDB, SQLite) */
+		LIMIT,
+		/** LIMIT and TABLESAMPLE SYSTEM */
+		POSTGRESQL,
+		/** TOP and TABLESAMPLE */
+		SQL_SERVER,
+		/** FETCH FIRST and SAMPLE */
+		ORACLE;
+
+		/**
+		 * Guesses the dialect from the name of the database product.
+		 *
+		 * @param productName	The name reported by the driver
+		 * @return				The dialect
+		 */
+		public static Dialect fromProductName(String productName) {
+			String name = productName.toLowerCase(Locale.ENGLISH);
+			if (name.contains("postgres")) {
+				return POSTGRESQL;
+			} else if (name.contains("microsoft sql server")) {
+				return SQL_SERVER;
+			} else if (name.contains("oracle")) {
+				return ORACLE;
+			} else if (name.contains("h2") || name.contains("hsql") || name.contains("mysql")
+					|| name.contains("mariadb") || name.contains("sqlite")) {
+				return LIMIT;
+			}
+			return STANDARD;
+		}
+
+		/**
+		 * Returns true if the dialect can sample a percentage of a table.
+		 *
+		 * @return	True if sampling is supported
+		 */
+		public boolean supportsSampling() {
+			return this == POSTGRESQL || this == SQL_SERVER || this == ORACLE;
+		}
+
+		/**
+		 * Writes a query for the rows of a table.
+		 *
+		 * @param columns			The select list
+		 * @param table				The table name
+		 * @param rowLimit			The largest number of rows, or -1
+		 * @param samplePercentage	The percentage of the table to sample, or
+		 * 							-1 to read all of it
+		 * @return					The query
+		 */
+		String makeQuery(String columns, String table, int rowLimit, double samplePercentage) {
+			StringBuilder query = new StringBuilder("SELECT ");
+			if (this == SQL_SERVER && rowLimit >= 0) {
+				query.append("TOP ").append(rowLimit).append(' ');
+			}
+			query.append(columns).append(" FROM ").append(table);
+			if (samplePercentage >= 0 && supportsSampling()) {
+				String percentage = String.format(Locale.US, "%f", samplePercentage);
+				if (this == POSTGRESQL) {
+					query.append(" TABLESAMPLE SYSTEM (").append(percentage).append(')');
+				} else if (this == SQL_SERVER) {
+					query.append(" TABLESAMPLE (").append(percentage).append(" PERCENT)");
+				} else {
+					query.append(" SAMPLE (").append(percentage).append(')');
+				}
+			}
+			if (rowLimit >= 0) {
+				if (this == LIMIT || this == POSTGRESQL) {
+					query.append(" LIMIT ").append(rowLimit);
+				} else if (this == STANDARD || this == ORACLE) {
+					query.append(" FETCH FIRST ").append(rowLimit).append(" ROWS ONLY");
+				}
+			}
+			return query.toString();
+		}
+	}
+
+	/**
+	 * The database connection
+	 */
+	private Connection connection = null;
+
+	/**
+	 * The table name, as written in queries
+	 */
+	private String tableName = null;
+
+	/**
+	 * The select list
+	 */
+	private String columns = "*";
+
+	/**
+	 * The SQL dialect
+	 */
+	private Dialect dialect = null;
+
+	/**
+	 * The number of rows fetched in one round trip
+	 */
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+
+	/**
+	 * The largest number of rows loaded into the columns, or -1 for all
+	 */
+	private int rowLimit = -1;
+
+	/**
+	 * The percentage of the table loaded into the columns, or -1 for all
+	 */
+	private double samplePercentage = -1;
+
+	/**
+	 * The column headers, once the sample is loaded
+	 */
+	private List<String> headers = null;
+
+	/**
+	 * The row sample, once loaded
+	 */
+	private RowTable rowSample = null;
+
+	/**
+	 * The columns, once loaded
+	 */
+	private ColumnTable columnTable = null;
+
+	/**
+	 * Constructs the table. The database isn't queried until the table is
+	 * used.
+	 *
+	 * @param connection	The database connection
+	 * @param tableName		The name of the table or view, as written in SQL
+	 * @throws SQLException
+	 */
+	public JDBCTable(Connection connection, String tableName) throws SQLException {
+		super();
+		this.connection = connection;
+		this.tableName = tableName;
+		dialect = Dialect.fromProductName(connection.getMetaData().getDatabaseProductName());
+	}
+
+	/**
+	 * Selects the columns of the database table to recognize. By default all
+	 * the columns are selected.
+	 *
+	 * @param columnNames	The column names
+	 * @throws SQLException
+	 */
+	public void setColumnNames(List<String> columnNames) throws SQLException {
+		String quote = connection.getMetaData().getIdentifierQuoteString().trim();
+		StringBuilder selectList = new StringBuilder();
+		for (String columnName : columnNames) {
+			if (selectList.length() > 0) {
+				selectList.append(", ");
+			}
+			selectList.append(quote).append(columnName).append(quote);
+		}
+		columns = selectList.toString();
+	}
+
+	/**
+	 * Sets the SQL dialect, if the one guessed from the database product
+	 * name is wrong.
+	 *
+	 * @param dialect	The dialect
+	 */
+	public void setDialect(Dialect dialect) {
+		this.dialect = dialect;
+	}
+
+	/**
+	 * Sets the number of rows fetched from the database in one round trip,
+	 * which bounds the memory used by the driver.
+	 *
+	 * @param fetchSize		The fetch size
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Limits the number of rows loaded into the columns.
+	 *
+	 * @param rowLimit	The largest number of rows, or -1 for all
+	 */
+	public void setRowLimit(int rowLimit) {
+		this.rowLimit = rowLimit;
+	}
+
+	/**
+	 * Loads only a random sample of the rows into the columns, if the
+	 * dialect supports it (see Dialect.supportsSampling). The sample is
+	 * usually made of whole database pages, so it is fast but not uniform.
+	 *
+	 * @param samplePercentage	The percentage of rows, or -1 for all
+	 */
+	public void setSamplePercentage(double samplePercentage) {
+		this.samplePercentage = samplePercentage;
+	}
+
+	/**
+	 * Returns true if the columns have been loaded.
+	 *
+	 * @return	True if the columns are loaded
+	 */
+	public boolean areColumnsLoaded() {
+		return columnTable != null;
+	}
+
+	/**
+	 * Loads the headers and the row sample.
+	 */
+	private void loadSample() {
+		if (rowSample != null) {
+			return;
+		}
+		final char NULL_CHAR = '\0';
+
+		String query = dialect.makeQuery(columns, tableName, SAMPLE_SIZE, -1);
+		Statement statement = null;
+		try {
+			statement = createStatement();
+			statement.setMaxRows(SAMPLE_SIZE);
+			ResultSet resultSet = statement.executeQuery(query);
+			headers = readHeaders(resultSet.getMetaData());
+			int columnCount = headers.size();
+			RowTable sample = new RowTable(CSVFormat.makeUnquotedFormat(NULL_CHAR));
+			while (resultSet.next()) {
+				StringBuilder row = new StringBuilder();
+				int[] columnBoundaries = new int[Math.max(columnCount - 1, 0)];
+				for (int columnNumber = 1; columnNumber <= columnCount; columnNumber++) {
+					if (columnNumber > 1) {
+						columnBoundaries[columnNumber - 2] = row.length();
+						row.append(NULL_CHAR);
+					}
+					row.append(getValue(resultSet, columnNumber));
+				}
+				sample.appendRow(row.toString(), columnBoundaries);
+			}
+			rowSample = sample;
+		} catch (SQLException e) {
+			throw new RuntimeException("Failure querying the database: " + query, e);
+		} finally {
+			close(statement);
+		}
+	}
+
+	/**
+	 * Streams the rows into the columns.
+	 *
+	 * @return	The column table
+	 */
+	private ColumnTable loadColumns() {
+		if (columnTable != null) {
+			return columnTable;
+		}
+		String query = dialect.makeQuery(columns, tableName, rowLimit, samplePercentage);
+		Statement statement = null;
+		try {
+			statement = createStatement();
+			if (rowLimit >= 0) {
+				statement.setMaxRows(rowLimit);
+			}
+			ResultSet resultSet = statement.executeQuery(query);
+			List<String> columnHeaders = readHeaders(resultSet.getMetaData());
+			int columnCount = columnHeaders.size();
+			List<Column> columnList = new ArrayList<Column>(columnCount);
+			for (int i = 0; i < columnCount; i++) {
+				columnList.add(new Column());
+			}
+			while (resultSet.next()) {
+				for (int columnNumber = 1; columnNumber <= columnCount; columnNumber++) {
+					columnList.get(columnNumber - 1).appendField(getValue(resultSet, columnNumber));
+				}
+			}
+			columnTable = new ColumnTable(columnHeaders, columnList);
+		} catch (SQLException e) {
+			throw new RuntimeException("Failure querying the database: " + query, e);
+		} finally {
+			close(statement);
+		}
+		return columnTable;
+	}
+
+	/**
+	 * Creates a forward-only, read-only statement with the fetch size.
+	 *
+	 * @return	The statement
+	 * @throws SQLException
+	 */
+	private Statement createStatement() throws SQLException {
+		Statement statement = connection.createStatement(
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		statement.setFetchSize(fetchSize);
+		return statement;
+	}
+
+	/**
+	 * Reads the column labels of a result set.
+	 *
+	 * @param metaData	The result set metadata
+	 * @return			The labels
+	 * @throws SQLException
+	 */
+	private static List<String> readHeaders(ResultSetMetaData metaData) throws SQLException {
+		int columnCount = metaData.getColumnCount();
+		List<String> labels = new ArrayList<String>(columnCount);
+		for (int columnNumber = 1; columnNumber <= columnCount; columnNumber++) {
+			labels.add(metaData.getColumnLabel(columnNumber));
+		}
+		return labels;
+	}
+
+	/**
+	 * Reads a value of the current row as a string. SQL NULL is read as an
+	 * empty field, as in a CSV file.
+	 *
+	 * @param resultSet		The result set
+	 * @param columnNumber	The one-based column number
+	 * @return				The value
+	 * @throws SQLException
+	 */
+	private static String getValue(ResultSet resultSet, int columnNumber) throws SQLException {
+		String value = resultSet.getString(columnNumber);
+		return value == null ? "" : value;
+	}
+
+	/**
+	 * Closes a statement and its result set.
+	 *
+	 * @param statement		The statement, or null
+	 */
+	private static void close(Statement statement) {
+		if (statement != null) {
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#getHeaders()
+	 */
+	public List<String> getHeaders() {
+		loadSample();
+		return headers;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#getColumnCount()
+	 */
+	public int getColumnCount() {
+		return getHeaders().size();
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#getRowCount()
+	 */
+	public int getRowCount() {
+		return loadColumns().getRowCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#extractRowSample()
+	 */
+	public RowTable extractRowSample() {
+		loadSample();
+		return rowSample.extractRowSample();
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#extractColumns()
+	 */
+	public List<Column> extractColumns() {
+		return loadColumns().extractColumns();
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#extractColumn(int)
+	 */
+	public Column extractColumn(int columnNumber) {
+		return loadColumns().extractColumn(columnNumber);
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#getColumnFeatures()
+	 */
+	public List<List<Double>> getColumnFeatures() {
+		return loadColumns().getColumnFeatures();
+	}
+
+}
@@ -0,0 +1,193 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A LazyCSVTable is a table backed by a CSV file that reads only as much of
+ * the file as its users ask for. The recognizers need the table at three
+ * levels:
+ * <ul>
+ * <li>header-based recognizers need only the headers;</li>
+ * <li>row-based recognizers need only the row sample;</li>
+ * <li>column-content recognizers need the full columns.</li>
+ * </ul>
+ * The headers and the row sample come from a short read of the first
+ * records. The file is parsed completely, with a ParallelCSVParser, only
+ * when the columns are first requested. If the active recognizers never ask
+ * for columns, the rest of the file is never read.
+ *
+ * @author Simon
+ *
+ */
+public class LazyCSVTable implements Table {
+	/**
+	 * The number of rows in the row sample
+	 */
+	private static final int SAMPLE_SIZE = 10;
+
+	/**
+	 * The CSV file
+	 */
+	private File file = null;
+
+	/**
+	 * The CSV format
+	 */
+	private CSVFormat format = null;
+
+	/**
+	 * True if the first record holds the column headers
+	 */
+	private boolean hasHeaderRow = true;
+
+	/**
+	 * The columns to keep, or null to keep all columns
+	 */
+	private ColumnProjection projection = null;
+
+	/**
+	 * The column headers, once the first records are read
+	 */
+	private List<String> headers = null;
+
+	/**
+	 * The first data rows, once the first records are read
+	 */
+	private RowTable rowSample = null;
+
+	/**
+	 * The number of columns in the first record
+	 */
+	private int columnCount = 0;
+
+	/**
+	 * The whole table, once the columns are requested
+	 */
+	private ColumnTable columnTable = null;
+
+	/**
+	 * Constructs the table. The file isn't read until the table is used.
+	 *
+	 * @param file				The CSV file
+	 * @param format			The CSV format
+	 * @param hasHeaderRow		True if the first record holds the headers
+	 */
+	public LazyCSVTable(File file, CSVFormat format, boolean hasHeaderRow) {
+		super();
+		this.file = file;
+		this.format = format;
+		this.hasHeaderRow = hasHeaderRow;
+	}
+
+	/**
+	 * Selects the columns to keep; see ColumnProjection. The projection must
+	 * be set before the table is used.
+	 *
+	 * @param projection	The columns to keep, or null to keep all columns
+	 */
+	public void setColumnProjection(ColumnProjection projection) {
+		assert(rowSample == null && columnTable == null);
+		this.projection = projection;
+	}
+
+	/**
+	 * Returns true if the whole file has been parsed into columns.
+	 *
+	 * @return	True if the columns are loaded
+	 */
+	public boolean areColumnsLoaded() {
+		return columnTable != null;
+	}
+
+	/**
+	 * Reads the headers and the row sample from the first records.
+	 */
+	private void loadFirstRecords() {
+		if (rowSample != null) {
+			return;
+		}
+		RowTable firstRows = new RowTable(format);
+		CSVProcessor csv = new CSVProcessor(file, firstRows);
+		csv.setColumnProjection(projection);
+		csv.setRecordLimit(SAMPLE_SIZE + (hasHeaderRow ? 1 : 0));
+		csv.read();
+		if (firstRows.getRowCount() > 0) {
+			columnCount = firstRows.getColumnCount();
+			if (hasHeaderRow) {
+				headers = firstRows.popHeaders();
+			}
+		}
+		rowSample = firstRows;
+	}
+
+	/**
+	 * Parses the whole file into columns.
+	 *
+	 * @return	The column table
+	 */
+	private ColumnTable loadColumns() {
+		if (columnTable == null) {
+			ParallelCSVParser parser = new ParallelCSVParser(file, format, hasHeaderRow);
+			parser.setColumnProjection(projection);
+			columnTable = parser.parse();
+		}
+		return columnTable;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#getHeaders()
+	 */
+	public List<String> getHeaders() {
+		loadFirstRecords();
+		return headers;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#getColumnCount()
+	 */
+	public int getColumnCount() {
+		if (columnTable != null) {
+			return columnTable.getColumnCount();
+		}
+		loadFirstRecords();
+		return columnCount;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#getRowCount()
+	 */
+	public int getRowCount() {
+		return loadColumns().getRowCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#extractRowSample()
+	 */
+	public RowTable extractRowSample() {
+		loadFirstRecords();
+		return rowSample.extractRowSample();
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#extractColumns()
+	 */
+	public List<Column> extractColumns() {
+		return loadColumns().extractColumns();
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#extractColumn(int)
+	 */
+	public Column extractColumn(int columnNumber) {
+		return loadColumns().extractColumn(columnNumber);
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.Table#getColumnFeatures()
+	 */
+	public List<List<Double>> getColumnFeatures() {
+		return loadColumns().getColumnFeatures();
+	}
+
+}
@@ -0,0 +1,34 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+/**
+ * A NumericColumnSource is a ColumnSource of numbers that gives access to
+ * the numbers themselves, so that the type of the column can be found
+ * without parsing its text.
+ *
+ * @author Simon
+ *
+ */
+public interface NumericColumnSource extends ColumnSource {
+	/**
+	 * Returns true if all the numbers in the column are integers.
+	 *
+	 * @return	True for integer columns
+	 */
+	public boolean isIntegral();
+
+	/**
+	 * Returns true if a value is missing.
+	 *
+	 * @param index		The zero-based row number
+	 * @return			True if there is no number in the row
+	 */
+	public boolean isMissing(int index);
+
+	/**
+	 * Returns a value of the column as a number.
+	 *
+	 * @param index		The zero-based row number
+	 * @return			The number (undefined if the value is missing)
+	 */
+	public double getDouble(int index);
+}
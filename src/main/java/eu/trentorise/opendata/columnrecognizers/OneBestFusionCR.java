@@ -1,11 +1,6 @@
 package eu.trentorise.opendata.columnrecognizers;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 /**
  * The OneBestFusionCR culls the candidate list, leaving only one candidate per
@@ -30,77 +25,50 @@ public class OneBestFusionCR extends ColumnRecognizer {
 	 */
 	@Override
 	public void computeScoredCandidates(List<ColumnConceptCandidate> candidates) {
-		Map<Integer, List<ColumnConceptCandidate>> columnMap
-			= buildColumnMap(candidates);
-		rebuildCandidateList(columnMap, candidates);
+		ColumnConceptCandidate[] maxCandidates = findMaxCandidates(candidates);
+		rebuildCandidateList(maxCandidates, candidates);
 	}
 
 	/**
-	 * Creates a map of column numbers to lists of candidates corresponding to 
-	 * each column. The input candidate list is emptied in the process.
+	 * Finds the highest-scoring candidate for each column. The best candidates
+	 * are kept in an array indexed by column number rather than in a map of
+	 * per-column lists, so wide tables cost one slot per column. The input 
+	 * candidate list is emptied in the process.
 	 * 
 	 * @param candidates	The candidate list
-	 * @return				The column number - candidate list map
+	 * @return				The best candidate for each column number, or null
 	 */
-	private Map<Integer, List<ColumnConceptCandidate>> buildColumnMap(
+	private ColumnConceptCandidate[] findMaxCandidates(
 			List<ColumnConceptCandidate> candidates) {
-		Map<Integer, List<ColumnConceptCandidate>> columnMap
-			= new HashMap<Integer, List<ColumnConceptCandidate>>();
-		Iterator<ColumnConceptCandidate> it = candidates.iterator();
-		while (it.hasNext()) {
-			ColumnConceptCandidate candidate = it.next();
+		int maxColumnNumber = 0;
+		for (ColumnConceptCandidate candidate : candidates) {
+			maxColumnNumber = Math.max(maxColumnNumber, candidate.getColumnNumber());
+		}
+		ColumnConceptCandidate[] maxCandidates = new ColumnConceptCandidate[maxColumnNumber + 1];
+		for (ColumnConceptCandidate candidate : candidates) {
 			int columnNumber = candidate.getColumnNumber();
-			if (columnMap.containsKey(columnNumber)) {
-				columnMap.get(columnNumber).add(candidate);
-			} else {
-				List<ColumnConceptCandidate> columnCandidateList 
-					= new ArrayList<ColumnConceptCandidate>();
-				columnCandidateList.add(candidate);
-				columnMap.put(columnNumber, columnCandidateList);
-			}
-			it.remove();
+			ColumnConceptCandidate maxCandidate = maxCandidates[columnNumber];
+			maxCandidates[columnNumber] = maxCandidate == null 
+					? candidate : pickMaxCandidate(maxCandidate, candidate);
 		}
-		return columnMap;
+		candidates.clear();
+		return maxCandidates;
 	}
 
 	/**
 	 * Rebuilds the candidate list by adding to it the highest-scoring 
 	 * candidate for each column.
 	 * 
-	 * @param columnMap		The map of columns and candidates
-	 * @param candidates	The candidate list
+	 * @param maxCandidates		The best candidate for each column number
+	 * @param candidates		The candidate list
 	 */
-	private void rebuildCandidateList(Map<Integer, List<ColumnConceptCandidate>> columnMap,
+	private void rebuildCandidateList(ColumnConceptCandidate[] maxCandidates,
 			List<ColumnConceptCandidate> candidates) {
-		Collection<List<ColumnConceptCandidate>> candidateLists = columnMap.values();
-		Iterator<List<ColumnConceptCandidate>> it = candidateLists.iterator();
-		while (it.hasNext()) {
-			List<ColumnConceptCandidate> candidateList = it.next();
-			candidates.add(getMaxCandidate(candidateList));
-		}
-	}
-
-	/**
-	 * Find the highest-scoring candidate in a list of candidates.
-	 * 
-	 * @param candidateList	The list of candidates
-	 * @return				The highest-scoring candidate
-	 */
-	private ColumnConceptCandidate getMaxCandidate(List<ColumnConceptCandidate> candidateList) {
-		ColumnConceptCandidate maxCandidate = null;
-		Iterator<ColumnConceptCandidate> it = candidateList.iterator();
-		while (it.hasNext()) {
-			ColumnConceptCandidate candidate = it.next();
-//			if (maxCandidate == null || candidate.getScore() > maxCandidate.getScore()) {
-//				maxCandidate = candidate;
-//			}
-			if (maxCandidate == null) {
-				maxCandidate = candidate;
-			} else {
-				maxCandidate = pickMaxCandidate(maxCandidate, candidate);
+		for (ColumnConceptCandidate maxCandidate : maxCandidates) {
+			if (maxCandidate != null) {
+				candidates.add(maxCandidate);
 			}
 		}
-		return maxCandidate;
 	}
 
 	/**
@@ -0,0 +1,532 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The ParallelCSVParser reads a large CSV file on all available cores.
+ *
+ * The file is split into byte ranges (chunks) that are processed in two
+ * parallel passes:
+ * <ol>
+ * <li>Each chunk is scanned for quote characters and line breaks. In well
+ * formed CSV a record ends at a line break iff the number of quotes before
+ * it is even, so each chunk remembers its quote parity and the first line
+ * break for either parity at the chunk start. A cheap sequential fix-up then
+ * propagates the parity from the start of the file and guesses where the
+ * first record of every chunk begins.</li>
+ * <li>Each chunk, moved to its first record boundary, is parsed with a
+ * CSVRecordReader into columns of its own.</li>
+ * </ol>
+ * The guesses are then checked in order: the first chunk starts on a record
+ * boundary, and each following one does iff the parser of the previous chunk
+ * ended on a record boundary. If it didn't (for example because of stray
+ * quotes or a distinct escape character), the parser of the previous chunk
+ * goes on over the next one, from the start of its last, incomplete record,
+ * and the result of the next chunk is dropped. Finally the columnar chunks
+ * are concatenated in order.
+ *
+ * Quote characters and line breaks are ASCII, so the first pass works on
+ * the undecoded bytes and, in an ASCII-compatible encoding, every chunk
+ * starts on a character boundary. The encoding is detected once from the
+ * start of the file and shared by all chunks.
+ *
+ * @author Simon
+ *
+ */
+public class ParallelCSVParser {
+	/**
+	 * The default number of bytes in a chunk
+	 */
+	private static final long DEFAULT_CHUNK_SIZE = 16L * 1024 * 1024;
+
+	/**
+	 * The size of the buffer used to scan a chunk
+	 */
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The input file
+	 */
+	private File file = null;
+
+	/**
+	 * The CSV format
+	 */
+	private CSVFormat format = null;
+
+	/**
+	 * True if the first record holds the column headers
+	 */
+	private boolean hasHeaderRow = true;
+
+	/**
+	 * The number of worker threads
+	 */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The number of bytes in a chunk
+	 */
+	private long chunkSize = DEFAULT_CHUNK_SIZE;
+
+	/**
+	 * The columns to keep, or null to keep all columns
+	 */
+	private ColumnProjection projection = null;
+
+	/**
+	 * Constructs the parser.
+	 *
+	 * @param file				The CSV file
+	 * @param columnSeparator	The column separator character
+	 * @param hasHeaderRow		True if the first record holds the headers
+	 */
+	public ParallelCSVParser(File file, char columnSeparator, boolean hasHeaderRow) {
+		this(file, new CSVFormat(columnSeparator), hasHeaderRow);
+	}
+
+	/**
+	 * Constructs the parser.
+	 *
+	 * @param file				The CSV file
+	 * @param format			The CSV format
+	 * @param hasHeaderRow		True if the first record holds the headers
+	 */
+	public ParallelCSVParser(File file, CSVFormat format, boolean hasHeaderRow) {
+		super();
+		this.file = file;
+		this.format = format;
+		this.hasHeaderRow = hasHeaderRow;
+	}
+
+	/**
+	 * Sets the number of worker threads. The default is the number of
+	 * available processors.
+	 *
+	 * @param threadCount	The number of threads
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Sets the number of bytes in a chunk. There are usually more chunks than
+	 * threads, which keeps the threads busy when the chunks take different
+	 * times to parse.
+	 *
+	 * @param chunkSize		The chunk size
+	 */
+	public void setChunkSize(long chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Selects the columns to keep. The fields of the other columns are
+	 * skipped without being decoded, and the table holds the selected
+	 * columns only.
+	 *
+	 * @param projection	The columns to keep, or null to keep all columns
+	 */
+	public void setColumnProjection(ColumnProjection projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Parses the file into a ColumnTable. As with RowTable, the number of
+	 * columns is given by the first record, or by the projection if one is
+	 * set; missing fields are empty.
+	 *
+	 * @return	The table
+	 */
+	public ColumnTable parse() {
+		FileInputStream fileStream = null;
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			fileStream = new FileInputStream(file);
+			FileChannel channel = fileStream.getChannel();
+			long[] chunkStarts = findChunkStarts(channel, executor);
+			Charset charset = detectCharset(channel);
+			List<ChunkParser> chunks = parseChunks(channel, chunkStarts, charset, executor);
+			return concatenateChunks(chunks);
+		} catch (IOException e) {
+			throw new RuntimeException("Failure reading CSV file: " + file.getPath(), e);
+		} catch (InterruptedException e) {
+			throw new RuntimeException("CSV parsing interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failure parsing CSV file: " + file.getPath(), e.getCause());
+		} finally {
+			executor.shutdown();
+			if (fileStream != null) {
+				try {
+					fileStream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads a new column table from a CSV file, parsing it in parallel.
+	 *
+	 * @param csvFile			The input file
+	 * @param columnSeparator	The column separator character
+	 * @return					The new table, with the first record as headers
+	 */
+	public static ColumnTable loadFromCSV(File csvFile, char columnSeparator) {
+		return new ParallelCSVParser(csvFile, columnSeparator, true).parse();
+	}
+
+	/**
+	 * Scans the chunks in parallel and resynchronizes them on record
+	 * boundaries.
+	 *
+	 * @param channel		The file channel
+	 * @param executor		The executor running the scans
+	 * @return				The start of the first record of each chunk,
+	 * 						followed by the file size
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	private long[] findChunkStarts(FileChannel channel, ExecutorService executor)
+			throws IOException, InterruptedException, ExecutionException {
+		long fileSize = channel.size();
+		int chunkCount = (int)Math.max(1, (fileSize + chunkSize - 1) / chunkSize);
+
+		List<Future<ChunkScan>> scans = new ArrayList<Future<ChunkScan>>(chunkCount);
+		for (int i = 0; i < chunkCount; i++) {
+			long start = i * chunkSize;
+			long end = Math.min(start + chunkSize, fileSize);
+			scans.add(executor.submit(new ChunkScanner(channel, start, end, format.getQuoteChar())));
+		}
+
+		long[] chunkStarts = new long[chunkCount + 1];
+		chunkStarts[chunkCount] = fileSize;
+		int quoteParity = 0;
+		for (int i = 0; i < chunkCount; i++) {
+			ChunkScan scan = scans.get(i).get();
+			if (i == 0) {
+				chunkStarts[i] = 0;
+			} else {
+				long lineBreak = scan.firstLineBreak[quoteParity];
+				chunkStarts[i] = lineBreak < 0 ? -1 : skipLineBreak(channel, lineBreak);
+			}
+			quoteParity ^= scan.quoteParity;
+		}
+
+		// A chunk without a record boundary joins the following chunk
+		for (int i = chunkCount - 1; i > 0; i--) {
+			if (chunkStarts[i] < 0 || chunkStarts[i] > chunkStarts[i + 1]) {
+				chunkStarts[i] = chunkStarts[i + 1];
+			}
+		}
+		return chunkStarts;
+	}
+
+	/**
+	 * Returns the position after a line break, treating \r\n as one line
+	 * break.
+	 *
+	 * @param channel		The file channel
+	 * @param position		The position of the line break
+	 * @return				The start of the next record
+	 * @throws IOException
+	 */
+	private static long skipLineBreak(FileChannel channel, long position) throws IOException {
+		ByteBuffer pair = ByteBuffer.allocate(2);
+		while (pair.hasRemaining() && channel.read(pair, position + pair.position()) > 0) {
+			// Read both bytes unless the file ends
+		}
+		if (pair.position() == 2 && pair.get(0) == '\r' && pair.get(1) == '\n') {
+			return position + 2;
+		}
+		return position + 1;
+	}
+
+	/**
+	 * Detects the encoding from the start of the file.
+	 *
+	 * @param channel		The file channel
+	 * @return				The charset
+	 * @throws IOException
+	 */
+	private static Charset detectCharset(FileChannel channel) throws IOException {
+		ByteBuffer prefix = ByteBuffer.allocate(CharsetDetector.PREFIX_SIZE);
+		while (prefix.hasRemaining() && channel.read(prefix, prefix.position()) > 0) {
+			// Read the whole prefix unless the file is shorter
+		}
+		boolean endOfInput = prefix.position() >= channel.size();
+		return CharsetDetector.detect(prefix.array(), 0, prefix.position(), endOfInput);
+	}
+
+	/**
+	 * Parses the resynchronized chunks in parallel, then checks that the
+	 * chunks really start on record boundaries.
+	 *
+	 * @param channel		The file channel
+	 * @param chunkStarts	The chunk boundaries
+	 * @param charset		The encoding of the file
+	 * @param executor		The executor running the parsers
+	 * @return				The parsed chunks, in file order
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	private List<ChunkParser> parseChunks(FileChannel channel, long[] chunkStarts,
+			Charset charset, ExecutorService executor)
+			throws IOException, InterruptedException, ExecutionException {
+		int chunkCount = chunkStarts.length - 1;
+		List<ChunkParser> chunks = new ArrayList<ChunkParser>(chunkCount);
+		List<Future<ChunkParser>> results = new ArrayList<Future<ChunkParser>>(chunkCount);
+		for (int i = 0; i < chunkCount; i++) {
+			final ChunkParser chunk = makeChunkParser(channel, chunkStarts[i], chunkStarts[i + 1], charset);
+			// The incomplete record at the end of a misaligned chunk is kept
+			chunk.setMoreInputFollows(i + 1 < chunkCount);
+			results.add(executor.submit(new Callable<ChunkParser>() {
+				public ChunkParser call() {
+					chunk.read();
+					return chunk;
+				}
+			}));
+		}
+
+		ChunkParser chunk = results.get(0).get();
+		for (int i = 1; i <= chunkCount; i++) {
+			// The chunk covers the bytes from a record boundary to chunkStarts[i]
+			if (i == chunkCount || chunk.endedOnRecordBoundary()) {
+				chunks.add(chunk);
+				if (i < chunkCount) {
+					chunk = results.get(i).get();
+				}
+			} else {
+				// The next chunk was misaligned: parse it as the continuation 
+				// of this one, which kept its state at its last record boundary
+				results.get(i).cancel(false);
+				chunk.setMoreInputFollows(i + 1 < chunkCount);
+				chunk.readMore(map(channel, chunkStarts[i], chunkStarts[i + 1]));
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * Creates the parser for a region of the file.
+	 *
+	 * @param channel		The file channel
+	 * @param start			The start of the region
+	 * @param end			The end of the region (exclusive)
+	 * @param charset		The encoding of the file
+	 * @return				The parser
+	 * @throws IOException
+	 */
+	private ChunkParser makeChunkParser(FileChannel channel, long start, long end, Charset charset)
+			throws IOException {
+		ChunkParser chunk = new ChunkParser(map(channel, start, end), format, projection);
+		chunk.setCharset(charset);
+		return chunk;
+	}
+
+	/**
+	 * Maps a region of the file.
+	 *
+	 * @param channel		The file channel
+	 * @param start			The start of the region
+	 * @param end			The end of the region (exclusive)
+	 * @return				The mapped bytes
+	 * @throws IOException
+	 */
+	private static MappedByteBuffer map(FileChannel channel, long start, long end)
+			throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+	}
+
+	/**
+	 * Concatenates the columns of the chunks.
+	 *
+	 * @param chunks	The parsed chunks, in file order
+	 * @return			The table
+	 */
+	private ColumnTable concatenateChunks(List<ChunkParser> chunks) {
+		ChunkParser firstChunk = chunks.get(0);
+		int columnCount = firstChunk.firstRecordColumnCount;
+		int headerRows = hasHeaderRow && firstChunk.rowCount > 0 ? 1 : 0;
+		List<String> headers = null;
+		if (headerRows > 0) {
+			headers = new ArrayList<String>(columnCount);
+			for (int i = 0; i < columnCount; i++) {
+				headers.add(firstChunk.columns.get(i).get(0));
+			}
+		}
+
+		List<Column> columns = new ArrayList<Column>(columnCount);
+		for (int i = 0; i < columnCount; i++) {
+			Column column = new Column();
+			for (ChunkParser chunk : chunks) {
+				List<String> chunkFields = i < chunk.columns.size() ? chunk.columns.get(i) : null;
+				int firstRow = chunk == firstChunk ? headerRows : 0;
+				if (chunkFields != null) {
+					for (int row = firstRow; row < chunkFields.size(); row++) {
+						column.appendField(chunkFields.get(row));
+					}
+					// Let the chunk's fields go as soon as they are copied
+					chunk.columns.set(i, null);
+				} else {
+					// The records of this chunk are all shorter than the first
+					for (int row = firstRow; row < chunk.rowCount; row++) {
+						column.appendField("");
+					}
+				}
+			}
+			columns.add(column);
+		}
+		return new ColumnTable(headers, columns);
+	}
+
+	/**
+	 * The result of scanning a chunk.
+	 */
+	private static class ChunkScan {
+		/**
+		 * The parity of the number of quotes in the chunk
+		 */
+		int quoteParity = 0;
+
+		/**
+		 * The position of the first line break preceded (within the chunk) by
+		 * an even, respectively odd, number of quotes; -1 if there is none
+		 */
+		long[] firstLineBreak = { -1, -1 };
+	}
+
+	/**
+	 * Scans a chunk for quotes and line breaks.
+	 */
+	private static class ChunkScanner implements Callable<ChunkScan> {
+		private FileChannel channel = null;
+		private long start = 0;
+		private long end = 0;
+		private byte quoteChar = CSVFormat.DEFAULT_QUOTE_CHAR;
+
+		ChunkScanner(FileChannel channel, long start, long end, char quoteChar) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.quoteChar = (byte)quoteChar;
+		}
+
+		public ChunkScan call() throws IOException {
+			ChunkScan scan = new ChunkScan();
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			byte[] block = new byte[SCAN_BUFFER_SIZE];
+			long blockStart = start;
+			int quoteParity = 0;
+			int lineBreaksToFind = 2;
+			while (bytes.hasRemaining()) {
+				int length = Math.min(block.length, bytes.remaining());
+				bytes.get(block, 0, length);
+				for (int i = 0; i < length; i++) {
+					byte b = block[i];
+					if (b == quoteChar) {
+						quoteParity ^= 1;
+					} else if ((b == '\n' || b == '\r') && lineBreaksToFind > 0
+							&& scan.firstLineBreak[quoteParity] < 0) {
+						scan.firstLineBreak[quoteParity] = blockStart + i;
+						lineBreaksToFind--;
+					}
+				}
+				blockStart += length;
+			}
+			scan.quoteParity = quoteParity;
+			return scan;
+		}
+	}
+
+	/**
+	 * Parses a chunk into columns.
+	 */
+	private static class ChunkParser extends CSVRecordReader {
+		/**
+		 * The fields of the chunk, by column
+		 */
+		List<List<String>> columns = new ArrayList<List<String>>();
+
+		/**
+		 * The number of records in the chunk
+		 */
+		int rowCount = 0;
+
+		/**
+		 * The number of columns in the first record of the chunk (or in the
+		 * projection)
+		 */
+		int firstRecordColumnCount = 0;
+
+		/**
+		 * The columns to keep, or null to keep all columns
+		 */
+		private final ColumnProjection projection;
+
+		ChunkParser(ByteBuffer bytes, CSVFormat format, ColumnProjection projection) {
+			super(bytes, format);
+			this.projection = projection;
+			if (projection != null) {
+				firstRecordColumnCount = projection.getColumnCount();
+				for (int i = 0; i < firstRecordColumnCount; i++) {
+					columns.add(new ArrayList<String>());
+				}
+			}
+		}
+
+		@Override
+		protected void processRecord(CSVRecord record) {
+			if (projection != null) {
+				processProjectedRecord(record);
+				return;
+			}
+			int recordColumnCount = record.getColumnCount();
+			if (rowCount == 0) {
+				firstRecordColumnCount = recordColumnCount;
+			}
+			while (columns.size() < recordColumnCount) {
+				// Earlier records had fewer columns
+				List<String> column = new ArrayList<String>();
+				for (int i = 0; i < rowCount; i++) {
+					column.add("");
+				}
+				columns.add(column);
+			}
+			for (int i = 0; i < columns.size(); i++) {
+				columns.get(i).add(i < recordColumnCount ? record.getValue(i + 1) : "");
+			}
+			rowCount++;
+		}
+
+		/**
+		 * Adds the selected fields of a record to the columns.
+		 *
+		 * @param record	The CSV record
+		 */
+		private void processProjectedRecord(CSVRecord record) {
+			int recordColumnCount = record.getColumnCount();
+			for (int i = 0; i < columns.size(); i++) {
+				int columnNumber = projection.getColumnNumber(i + 1);
+				columns.get(i).add(columnNumber <= recordColumnCount ? record.getValue(columnNumber) : "");
+			}
+			rowCount++;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+/**
+ * A PrototypeHolder is a recognizer whose TF-IDF prototypes can learn from
+ * labeled columns while it is in use. An update replaces the prototype with
+ * a new vector (see TFIDFVector.foldIn) in a single step, so a concurrent
+ * scoring sees either the old prototype or the new one, never a mixture.
+ *
+ * @author Simon
+ *
+ */
+public interface PrototypeHolder {
+	/**
+	 * Returns the current prototype of a recognizer.
+	 *
+	 * @param recognizerID	The recognizer ID of the prototype
+	 * @return				The prototype, or null if there is none
+	 */
+	TFIDFVector getPrototype(String recognizerID);
+
+	/**
+	 * Folds a column labeled with the concept of a prototype into the
+	 * prototype.
+	 *
+	 * @param recognizerID	The recognizer ID of the prototype
+	 * @param column		The labeled column
+	 * @param decay			The weight (0 to 1) of the current prototype
+	 * @return				False if there is no such prototype
+	 */
+	boolean foldIntoPrototype(String recognizerID, Column column, double decay);
+}
@@ -0,0 +1,280 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * The PrototypeUpdater lets the TF-IDF prototypes learn from columns whose
+ * concept a user has confirmed, without retraining. Each confirmed column
+ * is folded into the prototype of its recognizer as a running centroid:
+ * the prototype keeps the given decay of its weight and the column gets the
+ * rest (see TFIDFVector.foldIn). The recognizer publishes the new prototype
+ * in one step, so columns can be scored meanwhile.
+ *
+ * The prototypes of a specification file are registered with
+ * registerSpecification. These are the prototypes the recognizers built
+ * from the specification share (see TFIDFPrototype.getShared), so a label
+ * confirmed on one table changes the scores of the tables recognized next.
+ *
+ * The prototypes that have changed are written back to their model files
+ * by persist, which can also run periodically in the background. A file is
+ * written next to the model file and then moved over it, so a reader never
+ * finds a half-written model.
+ *
+ * @author Simon
+ *
+ */
+public class PrototypeUpdater {
+	/**
+	 * The extension of the file a model is written to before it is moved
+	 */
+	private static final String TMP_FILE_EXTENSION = ".tmp";
+
+	/**
+	 * The weight (0 to 1) of a prototype when a column is folded into it
+	 */
+	private final double decay;
+
+	/**
+	 * The holder and model file of each registered prototype, by
+	 * recognizer ID
+	 */
+	private final Map<String, Registration> registrations
+		= new ConcurrentHashMap<String, Registration>();
+
+	/**
+	 * The recognizer IDs of the prototypes changed since they were last
+	 * written
+	 */
+	private final Set<String> changedIDs
+		= Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * The executor of the periodic writes, or null
+	 */
+	private ScheduledExecutorService scheduler = null;
+
+	/**
+	 * Constructs the updater.
+	 *
+	 * @param decay		The weight (0 to 1) a prototype keeps when a column is
+	 * 					folded into it; the closer to 1, the slower the
+	 * 					prototypes drift
+	 */
+	public PrototypeUpdater(double decay) {
+		super();
+		if (decay < 0 || decay > 1) {
+			throw new IllegalArgumentException("Decay out of range: " + decay);
+		}
+		this.decay = decay;
+	}
+
+	/**
+	 * Registers a prototype for updates.
+	 *
+	 * @param recognizerID	The recognizer ID of the prototype
+	 * @param holder		The recognizer that holds the prototype
+	 * @param modelFile		The file the prototype is written to, or null to
+	 * 						keep the updates in memory only
+	 */
+	public void register(String recognizerID, PrototypeHolder holder, File modelFile) {
+		if (holder.getPrototype(recognizerID) == null) {
+			throw new IllegalArgumentException("No prototype with recognizer ID " + recognizerID);
+		}
+		registrations.put(recognizerID, new Registration(holder, modelFile));
+	}
+
+	/**
+	 * Registers the shared prototypes of the TF_IDF and TF_IDF_HASHED lines
+	 * of a specification file. The prototypes of model files on disk are
+	 * written back to them; the others are updated in memory only.
+	 *
+	 * @param specificationFile	An input stream to the specification file
+	 * @param modelDirectories	List of model directories (can be null)
+	 * @return					The number of prototypes registered
+	 */
+	public int registerSpecification(InputStream specificationFile,
+			final List<File> modelDirectories) {
+		final int[] registeredCount = new int[1];
+		new SyntaxPatternLineReader(specificationFile, CRSpecificationReader.LINE_SYNTAX) {
+			@Override
+			protected void processMatch(Matcher matcher) {
+				String type = matcher.group(CRSpecificationReader.TYPE_POSITION);
+				boolean hashed = type.equals(CRSpecificationReader.TF_IDF_HASHED_TYPE);
+				if (!hashed && !type.equals(CRSpecificationReader.TF_IDF_TYPE)) {
+					return;
+				}
+				TFIDFPrototype prototype = ColumnRecognizerFactory.getSharedPrototype(
+						matcher.group(CRSpecificationReader.MODEL_POSITION),
+						modelDirectories,
+						hashed);
+				register(matcher.group(CRSpecificationReader.RECOGNIZER_ID_POSITION),
+						prototype,
+						getDiskFile(prototype.getURL()));
+				registeredCount[0]++;
+			}
+		}.read();
+		return registeredCount[0];
+	}
+
+	/**
+	 * Folds a column whose concept has been confirmed into the prototype of
+	 * the recognizer that stands for the concept.
+	 *
+	 * @param recognizerID	The recognizer ID of the prototype
+	 * @param column		The labeled column
+	 * @return				False if no such prototype is registered
+	 */
+	public boolean confirmLabel(String recognizerID, Column column) {
+		Registration registration = registrations.get(recognizerID);
+		if (registration == null
+				|| !registration.holder.foldIntoPrototype(recognizerID, column, decay)) {
+			return false;
+		}
+		if (registration.modelFile != null) {
+			changedIDs.add(recognizerID);
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the prototypes changed since they were last written to their
+	 * model files. A prototype that fails to be written is tried again the
+	 * next time.
+	 *
+	 * @return	The number of prototypes written
+	 */
+	public synchronized int persist() {
+		int writtenCount = 0;
+		for (String recognizerID : new ArrayList<String>(changedIDs)) {
+			// Removed first, so that an update arriving during the write
+			// marks the prototype again
+			changedIDs.remove(recognizerID);
+			Registration registration = registrations.get(recognizerID);
+			try {
+				writeModel(registration.holder.getPrototype(recognizerID), registration.modelFile);
+				writtenCount++;
+			} catch (IOException e) {
+				e.printStackTrace();
+				changedIDs.add(recognizerID);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				changedIDs.add(recognizerID);
+			}
+		}
+		return writtenCount;
+	}
+
+	/**
+	 * Starts writing the changed prototypes periodically, in a background
+	 * thread.
+	 *
+	 * @param period	The time between writes
+	 * @param unit		The unit of the period
+	 */
+	public synchronized void startPersisting(long period, TimeUnit unit) {
+		if (scheduler != null) {
+			throw new IllegalStateException("Already persisting");
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "prototype-persister");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				persist();
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Stops the periodic writes, after writing any prototypes still
+	 * changed.
+	 */
+	public void stopPersisting() {
+		ScheduledExecutorService stoppedScheduler;
+		synchronized (this) {
+			stoppedScheduler = scheduler;
+			scheduler = null;
+		}
+		if (stoppedScheduler != null) {
+			stoppedScheduler.shutdown();
+			try {
+				stoppedScheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		persist();
+	}
+
+	/**
+	 * Writes a prototype to a model file, replacing the file in one step
+	 * where the file system allows it.
+	 *
+	 * @param prototype		The prototype
+	 * @param modelFile		The model file
+	 * @throws IOException
+	 */
+	private static void writeModel(TFIDFVector prototype, File modelFile) throws IOException {
+		File tmpFile = new File(modelFile.getPath() + TMP_FILE_EXTENSION);
+		prototype.writeToFile(tmpFile);
+		try {
+			Files.move(tmpFile.toPath(), modelFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmpFile.toPath(), modelFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Returns the file at a URL, if the URL points to a file on disk.
+	 *
+	 * @param url	The URL
+	 * @return		The file, or null if it isn't on disk (in a jar, for
+	 * 				example)
+	 */
+	private static File getDiskFile(URL url) {
+		if (!url.getProtocol().equals("file")) {
+			return null;
+		}
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return new File(url.getPath());
+		}
+	}
+
+	/**
+	 * The recognizer holding a prototype and the file it is written to.
+	 */
+	private static class Registration {
+		final PrototypeHolder holder;
+		final File modelFile;
+
+		Registration(PrototypeHolder holder, File modelFile) {
+			this.holder = holder;
+			this.modelFile = modelFile;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+/**
+ * QuantizedWeights store the component values of a compacted TF-IDF vector
+ * in 8 or 16 bits each instead of the 64 of a double.
+ *
+ * With 8 bits the values are signed integer codes times a scale factor
+ * shared by the vector, chosen so that the largest value is 127 times the
+ * scale. With 16 bits the values are IEEE half-precision floats, whose
+ * relative precision doesn't depend on the other values.
+ *
+ * The decoded values are floats, the same wherever they are decoded.
+ *
+ * @author Simon
+ *
+ */
+final class QuantizedWeights {
+	/**
+	 * The largest 8-bit code
+	 */
+	private static final int MAX_INT8_CODE = 127;
+
+	/**
+	 * The number of bits per value: 8 or 16
+	 */
+	private final int bits;
+
+	/**
+	 * The scale factor of the 8-bit codes
+	 */
+	private final float scale;
+
+	/**
+	 * The 8-bit codes, or null
+	 */
+	private final byte[] int8Codes;
+
+	/**
+	 * The 16-bit codes (half-precision floats), or null
+	 */
+	private final short[] float16Codes;
+
+	private QuantizedWeights(int bits, float scale, byte[] int8Codes, short[] float16Codes) {
+		super();
+		this.bits = bits;
+		this.scale = scale;
+		this.int8Codes = int8Codes;
+		this.float16Codes = float16Codes;
+	}
+
+	/**
+	 * Quantizes values.
+	 *
+	 * @param values	The values
+	 * @param bits		The number of bits per value: 8 or 16
+	 * @return			The quantized values
+	 */
+	static QuantizedWeights quantize(double[] values, int bits) {
+		if (bits == 8) {
+			double maxAbs = 0;
+			for (double value : values) {
+				maxAbs = Math.max(maxAbs, Math.abs(value));
+			}
+			float scale = (float)(maxAbs / MAX_INT8_CODE);
+			byte[] codes = new byte[values.length];
+			if (scale > 0) {
+				for (int i = 0; i < values.length; i++) {
+					long code = Math.round(values[i] / scale);
+					codes[i] = (byte)Math.max(-MAX_INT8_CODE, Math.min(MAX_INT8_CODE, code));
+				}
+			}
+			return new QuantizedWeights(bits, scale, codes, null);
+		} else if (bits == 16) {
+			short[] codes = new short[values.length];
+			for (int i = 0; i < values.length; i++) {
+				codes[i] = floatToHalf((float)values[i]);
+			}
+			return new QuantizedWeights(bits, 0, null, codes);
+		}
+		throw new IllegalArgumentException("Unsupported number of bits: " + bits);
+	}
+
+	/**
+	 * Rebuilds quantized values from their codes, as read from a file.
+	 *
+	 * @param bits		The number of bits per value: 8 or 16
+	 * @param scale		The scale factor of 8-bit codes
+	 * @param codes		The codes
+	 * @return			The quantized values
+	 */
+	static QuantizedWeights fromCodes(int bits, float scale, int[] codes) {
+		if (bits == 8) {
+			byte[] int8Codes = new byte[codes.length];
+			for (int i = 0; i < codes.length; i++) {
+				int8Codes[i] = (byte)codes[i];
+			}
+			return new QuantizedWeights(bits, scale, int8Codes, null);
+		} else if (bits == 16) {
+			short[] float16Codes = new short[codes.length];
+			for (int i = 0; i < codes.length; i++) {
+				float16Codes[i] = (short)codes[i];
+			}
+			return new QuantizedWeights(bits, 0, null, float16Codes);
+		}
+		throw new IllegalArgumentException("Unsupported number of bits: " + bits);
+	}
+
+	/**
+	 * Returns a decoded value.
+	 *
+	 * @param i		The position of the value
+	 * @return		The value
+	 */
+	float get(int i) {
+		return bits == 8 ? int8Codes[i] * scale : halfToFloat(float16Codes[i]);
+	}
+
+	/**
+	 * Returns the code of a value, as stored in files (16-bit codes are
+	 * unsigned).
+	 *
+	 * @param i		The position of the value
+	 * @return		The code
+	 */
+	int getCode(int i) {
+		return bits == 8 ? int8Codes[i] : float16Codes[i] & 0xffff;
+	}
+
+	/**
+	 * Returns the number of values.
+	 *
+	 * @return	The number of values
+	 */
+	int size() {
+		return bits == 8 ? int8Codes.length : float16Codes.length;
+	}
+
+	/**
+	 * Returns the number of bits per value.
+	 *
+	 * @return	8 or 16
+	 */
+	int getBits() {
+		return bits;
+	}
+
+	/**
+	 * Returns the scale factor of 8-bit codes.
+	 *
+	 * @return	The scale factor
+	 */
+	float getScale() {
+		return scale;
+	}
+
+	/**
+	 * Converts a float to half precision, rounding to the nearest value
+	 * (ties to even).
+	 *
+	 * @param value		The float
+	 * @return			The half-precision bits
+	 */
+	static short floatToHalf(float value) {
+		int floatBits = Float.floatToIntBits(value);
+		int sign = (floatBits >>> 16) & 0x8000;
+		int floatExponent = (floatBits >>> 23) & 0xff;
+		int mantissa = floatBits & 0x7fffff;
+		if (floatExponent == 0xff) {
+			// Infinity or NaN
+			return (short)(sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+		}
+		int exponent = floatExponent - 127 + 15;
+		if (exponent >= 0x1f) {
+			return (short)(sign | 0x7c00);
+		}
+		if (exponent <= 0) {
+			if (exponent < -10) {
+				return (short)sign;
+			}
+			// A subnormal half
+			mantissa |= 0x800000;
+			int shift = 14 - exponent;
+			int half = mantissa >> shift;
+			int remainder = mantissa & ((1 << shift) - 1);
+			int halfway = 1 << (shift - 1);
+			if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+				half++;
+			}
+			return (short)(sign | half);
+		}
+		int half = (exponent << 10) | (mantissa >> 13);
+		int remainder = mantissa & 0x1fff;
+		if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+			// A carry into the exponent gives the next power of two, or infinity
+			half++;
+		}
+		return (short)(sign | half);
+	}
+
+	/**
+	 * Converts a half-precision float to a float (exactly).
+	 *
+	 * @param half	The half-precision bits
+	 * @return		The float
+	 */
+	static float halfToFloat(short half) {
+		int halfBits = half & 0xffff;
+		int sign = (halfBits & 0x8000) << 16;
+		int exponent = (halfBits >>> 10) & 0x1f;
+		int mantissa = halfBits & 0x3ff;
+		if (exponent == 0) {
+			// Zero or subnormal: mantissa * 2^-24
+			float value = mantissa * (1.0f / (1 << 24));
+			return sign != 0 ? -value : value;
+		}
+		if (exponent == 0x1f) {
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		}
+		return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+	}
+}
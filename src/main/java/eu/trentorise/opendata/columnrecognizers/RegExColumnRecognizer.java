@@ -1,6 +1,5 @@
 package eu.trentorise.opendata.columnrecognizers;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -55,9 +54,20 @@ public class RegExColumnRecognizer extends RowBasedCR {
 	 * @return		Covered columns (empty if no match)
 	 */
 	public Set<Integer> applyRegEx(String row) {
+		return applyRegEx(row, getRowTable().getFormat().findColumnBoundaries(row));
+	}
+	
+	/**
+	 * Applies the reg ex to a row whose column boundaries are known and 
+	 * returns the range of covered columns.
+	 * 
+	 * @param row				The row to test
+	 * @param columnBoundaries	The positions of the column separators in the row
+	 * @return					Covered columns (empty if no match)
+	 */
+	public Set<Integer> applyRegEx(String row, int[] columnBoundaries) {
 		Set<Integer> columnSet = new HashSet<Integer>();
 		Matcher matcher = pattern.matcher(row);
-		List<Integer> columnBoundaries = getRowTable().findColumnBoundaries(row);
 		
 		while (matcher.find()) {
 			int firstColumn = getRowTable().getColumnFromCharIndex(columnBoundaries, matcher.start());
@@ -71,8 +81,8 @@ public class RegExColumnRecognizer extends RowBasedCR {
 	}
 
 	@Override
-	protected Set<Integer> computeColumnMatches(String row) {
-		return applyRegEx(row);
+	protected Set<Integer> computeColumnMatches(String row, int[] columnBoundaries) {
+		return applyRegEx(row, columnBoundaries);
 	}	
 	
 	
@@ -58,13 +58,20 @@ public abstract class RowBasedCR extends ContentBasedCR {
 	 * @param columnMatches
 	 */
 	private void countColumnMatches(int[] columnMatches) {
-		Iterator<String> it = getRowTable().getRowIterator();
-		while (it.hasNext()) {
-			String row = it.next();
+		RowTable rowTable = getRowTable();
+		for (int rowIndex = 0; rowIndex < rowTable.getRowCount(); rowIndex++) {
+			String row = rowTable.getRow(rowIndex);
+			int[] columnBoundaries = rowTable.getColumnBoundaries(rowIndex);
 			if (!caseSensitive()) {
-				row = normalize(row);			
+				String normalizedRow = normalize(row);
+				if (normalizedRow.length() != row.length()) {
+					// Normalization moved the characters, so the boundaries
+					// must be found again
+					columnBoundaries = rowTable.getFormat().findColumnBoundaries(normalizedRow);
+				}
+				row = normalizedRow;
 			}
-			Set<Integer> columnSet = computeColumnMatches(row);
+			Set<Integer> columnSet = computeColumnMatches(row, columnBoundaries);
 			
 			Iterator<Integer> itColumnNumber = columnSet.iterator();
 			while (itColumnNumber.hasNext()) {
@@ -93,10 +100,11 @@ public abstract class RowBasedCR extends ContentBasedCR {
 	 * Returns the set of matching columns given a row. Subclasses must 
 	 * override to provide the row-based heuristic.
 	 * 
-	 * @param row	The row
-	 * @return		The column numbers of any matching columns
+	 * @param row				The row
+	 * @param columnBoundaries	The positions of the column separators in the row
+	 * @return					The column numbers of any matching columns
 	 */
-	protected abstract Set<Integer> computeColumnMatches(String row);
+	protected abstract Set<Integer> computeColumnMatches(String row, int[] columnBoundaries);
 
 	/**
 	 * Computes the column-concept candidates from the column match counts.
@@ -1,13 +1,18 @@
 package eu.trentorise.opendata.columnrecognizers;
+import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -17,6 +22,10 @@ import java.util.Set;
  * The contents of a table represented as a list of rows.
  * The class is convenient for reading data from CSV files.
  * 
+ * The column boundaries of each row are kept with the row. Rows read by the
+ * CSVProcessor come with their boundaries, so they are never parsed again;
+ * the boundaries of other rows are computed when first needed.
+ * 
  * @author Simon
  *
  */
@@ -33,14 +42,25 @@ public class RowTable implements Table {
 	private ArrayList<String> rows = new ArrayList<String>();
 	
 	/**
-	 * The character used to separate columns
+	 * The column boundaries of each row, or null where not yet known
+	 */
+	private ArrayList<int[]> rowBoundaries = new ArrayList<int[]>();
+	
+	/**
+	 * The CSV format of the rows
 	 */
-	private char columnSeparator = ';';
+	private CSVFormat format = null;
 	
 	/**
 	 * Columns that have been extracted are cached for efficiency
 	 */
 	private List<Column> cachedColumns = null;
+
+	/**
+	 * The number of columns, cached because it is asked for once per column
+	 * by some callers; -1 if unknown
+	 */
+	private int cachedColumnCount = -1;
 	
 	/**
 	 * Constructs the table. 
@@ -48,8 +68,17 @@ public class RowTable implements Table {
 	 * @param columnSeparator		The column separator character
 	 */
 	public RowTable(char columnSeparator) {
+		this(new CSVFormat(columnSeparator));
+	}
+
+	/**
+	 * Constructs the table. 
+	 * 
+	 * @param format		The CSV format of the rows
+	 */
+	public RowTable(CSVFormat format) {
 		super();
-		this.columnSeparator = columnSeparator;
+		this.format = format;
 	}
 
 	/**
@@ -58,7 +87,20 @@ public class RowTable implements Table {
 	 * @param columnSeparator The columnSeparator to set
 	 */
 	public void setColumnSeparator(char columnSeparator) {
-		this.columnSeparator = columnSeparator;
+		format = format.withColumnSeparator(columnSeparator);
+		for (int i = 0; i < rowBoundaries.size(); i++) {
+			rowBoundaries.set(i, null);
+		}
+		clearCaches();
+	}
+
+	/**
+	 * Returns the CSV format of the rows.
+	 * 
+	 * @return	The format
+	 */
+	public CSVFormat getFormat() {
+		return format;
 	}
 
 	/**
@@ -67,11 +109,9 @@ public class RowTable implements Table {
 	 * @param numberOfRowsToRemove	The number of rows to remove
 	 */
 	public void removeHeaders(int numberOfRowsToRemove) {
-		Iterator<String> it = rows.iterator();
-		for (int i = 0; it.hasNext() && i < numberOfRowsToRemove; i++) {
-			it.next();
-			it.remove();
-		}
+		int rowsToRemove = Math.min(numberOfRowsToRemove, rows.size());
+		rows.subList(0, rowsToRemove).clear();
+		rowBoundaries.subList(0, rowsToRemove).clear();
 		clearCaches();
 	}
 	
@@ -91,6 +131,7 @@ public class RowTable implements Table {
 	 */
 	private void clearCaches() {
 		cachedColumns = null;
+		cachedColumnCount = -1;
 	}
 
 	/**
@@ -99,11 +140,10 @@ public class RowTable implements Table {
 	public RowTable extractRowSample() {
 		final int SAMPLE_SIZE = 10;
 
-		RowTable sample = new RowTable(getColumnSeparator());
-		Iterator<String> it = rows.iterator();		
+		RowTable sample = new RowTable(format);
 		// Just take the first elements
-		for (int i = 0; i < SAMPLE_SIZE && it.hasNext(); i++) {
-			sample.appendRow(it.next());
+		for (int i = 0; i < SAMPLE_SIZE && i < rows.size(); i++) {
+			sample.appendRow(rows.get(i), rowBoundaries.get(i));
 		}
 		
 		return sample;
@@ -115,7 +155,19 @@ public class RowTable implements Table {
 	 * @param row
 	 */
 	public void appendRow(String row) {
+		appendRow(row, null);
+	}
+
+	/**
+	 * Append a row whose column boundaries are already known
+	 * 
+	 * @param row				The row
+	 * @param columnBoundaries	The positions of the column separators in the
+	 * 							row, or null if unknown
+	 */
+	void appendRow(String row, int[] columnBoundaries) {
 		rows.add(row);
+		rowBoundaries.add(columnBoundaries);
 		clearCaches();
 	}
 
@@ -136,6 +188,32 @@ public class RowTable implements Table {
 		return rows.iterator();
 	}
 
+	/**
+	 * Returns a row.
+	 * 
+	 * @param rowIndex	The zero-based row number
+	 * @return			The row
+	 */
+	public String getRow(int rowIndex) {
+		return rows.get(rowIndex);
+	}
+
+	/**
+	 * Returns the positions of the column boundaries in a row. They are
+	 * computed (and kept) only if the row was appended without them.
+	 * 
+	 * @param rowIndex	The zero-based row number
+	 * @return			The column boundaries
+	 */
+	public int[] getColumnBoundaries(int rowIndex) {
+		int[] columnBoundaries = rowBoundaries.get(rowIndex);
+		if (columnBoundaries == null) {
+			columnBoundaries = format.findColumnBoundaries(rows.get(rowIndex));
+			rowBoundaries.set(rowIndex, columnBoundaries);
+		}
+		return columnBoundaries;
+	}
+
 	/**
 	 * @see eu.trentorise.opendata.columnrecognizers.Table#getRowCount()
 	 */
@@ -147,8 +225,10 @@ public class RowTable implements Table {
 	 * @see eu.trentorise.opendata.columnrecognizers.Table#getColumnCount()
 	 */
 	public int getColumnCount() {
-		String sampleRow = rows.get(0);
-		return CSVProcessor.computeColumnCount(sampleRow, columnSeparator);
+		if (cachedColumnCount < 0) {
+			cachedColumnCount = getColumnBoundaries(0).length + 1;
+		}
+		return cachedColumnCount;
 	}
 
 	/**
@@ -158,7 +238,7 @@ public class RowTable implements Table {
 	 * @return	The separator character
 	 */
 	public char getColumnSeparator() {
-		return columnSeparator;
+		return format.getColumnSeparator();
 	}
 
 	/**
@@ -170,7 +250,12 @@ public class RowTable implements Table {
 	 * @return		A list of column boundaries
 	 */
 	public List<Integer> findColumnBoundaries(String row) {
-		return CSVProcessor.findColumnBoundaries(row, getColumnSeparator());
+		int[] boundaries = format.findColumnBoundaries(row);
+		List<Integer> columnBoundaries = new ArrayList<Integer>(boundaries.length);
+		for (int boundary : boundaries) {
+			columnBoundaries.add(boundary);
+		}
+		return columnBoundaries;
 	}
 
 	/**
@@ -182,16 +267,55 @@ public class RowTable implements Table {
 	 * @return					The column number
 	 */
 	public int getColumnFromCharIndex(List<Integer> columnBoundaries, int charIndex) {
-		int columnNumber = 1;
-		boolean done = false;
-		while (!done && columnNumber <= columnBoundaries.size()) {
-			if (charIndex > columnBoundaries.get(columnNumber - 1)) {
-				columnNumber++;
+		int[] boundaries = new int[columnBoundaries.size()];
+		for (int i = 0; i < boundaries.length; i++) {
+			boundaries[i] = columnBoundaries.get(i);
+		}
+		return getColumnFromCharIndex(boundaries, charIndex);
+	}
+
+	/**
+	 * Returns a column number (1, ..) corresponding to a character position in
+	 * the string representing a row. The boundaries are sorted, so the column
+	 * is found by binary search, which matters for wide tables.
+	 * 
+	 * @param columnBoundaries	The column boundaries of the row
+	 * @param charIndex			The character position
+	 * @return					The column number
+	 */
+	public int getColumnFromCharIndex(int[] columnBoundaries, int charIndex) {
+		// Binary search for the first boundary at or after the position
+		int low = 0;
+		int high = columnBoundaries.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (charIndex > columnBoundaries[middle]) {
+				low = middle + 1;
 			} else {
-				done = true;
+				high = middle;
 			}
 		}
-		return columnNumber;
+		return low + 1;
+	}
+
+	/**
+	 * Extracts the value of a field, without its quotes and escapes.
+	 * 
+	 * @param rowIndex		The zero-based row number
+	 * @param columnNumber	The one-based column number
+	 * @return				The value, or an empty string if the row has no
+	 * 						such column
+	 */
+	public String getValue(int rowIndex, int columnNumber) {
+		int[] columnBoundaries = getColumnBoundaries(rowIndex);
+		if (columnNumber > columnBoundaries.length + 1) {
+			return "";
+		}
+		String row = rows.get(rowIndex);
+		int fieldStart = columnNumber == 1 ? 0 : columnBoundaries[columnNumber - 2] + 1;
+		int fieldEnd = columnNumber <= columnBoundaries.length 
+				? columnBoundaries[columnNumber - 1] : row.length();
+		return format.unescape(row, fieldStart, fieldEnd);
 	}
 		
 	/* (non-Javadoc)
@@ -199,15 +323,9 @@ public class RowTable implements Table {
 	 */
 	public Column extractColumn(int columnNumber) {
 		Column column = new Column();
-		Iterator<String> it = rows.iterator();
-		
-		while (it.hasNext()) {
-			String row = it.next();
-			String[] fields = CSVProcessor.splitRecord(row, columnSeparator);
-			String field = columnNumber <= fields.length ? fields[columnNumber - 1] : "";
-			column.appendField(field);
+		for (int rowIndex = 0; rowIndex < rows.size(); rowIndex++) {
+			column.appendField(getValue(rowIndex, columnNumber));
 		}
-		
 		return column;
 	}
 
@@ -245,13 +363,32 @@ public class RowTable implements Table {
 	}
 
 	/**
-	 * Loads a new row table from a CSV input stream.
+	 * Loads a new row table from a CSV file, keeping only some of the
+	 * columns. The fields of the other columns are not decoded.
+	 * 
+	 * @param csvFile				The input file
+	 * @param columnSeparator		The column separator character
+	 * @param projection			The columns to keep
+	 * @return						The new table, with the selected columns
+	 */
+	public static RowTable loadFromCSV(File csvFile, char columnSeparator,
+			ColumnProjection projection) {
+		RowTable rowTable = new RowTable(columnSeparator);
+		CSVProcessor csv = new CSVProcessor(csvFile, rowTable);
+		csv.setColumnProjection(projection);
+		csv.read();
+		return rowTable;
+	}
+
+	/**
+	 * Loads a new row table from a CSV input stream, for example a
+	 * decompressing stream. The stream is closed at the end.
 	 * 
 	 * @param stream				The input stream
 	 * @param columnSeparator		The column separator character
 	 * @return						The new table
 	 */
-	private static RowTable loadFromCSV(InputStream stream, char columnSeparator) {
+	public static RowTable loadFromCSV(InputStream stream, char columnSeparator) {
 		RowTable rowTable = new RowTable(columnSeparator);
 		rowTable.loadRowsFromCSV(stream);
 		return rowTable;
@@ -303,8 +440,9 @@ public class RowTable implements Table {
 	 * @return		The set of values represented in the file
 	 */
 	public static Set<String> loadValueSet(File file) {
-		RowTable table = loadFromCSV(file, DEFAULT_COLUMN_SEPARATOR);
-		return table.extractColumn(1).getValueSet();
+		ValueSetReader reader = new ValueSetReader(file);
+		reader.read();
+		return reader.values;
 	}
 
 	/**
@@ -314,14 +452,112 @@ public class RowTable implements Table {
 	 * @return		The set of values represented in the file
 	 */
 	public static Set<String> loadValueSet(InputStream stream) {
-		RowTable table = loadFromCSV(stream, DEFAULT_COLUMN_SEPARATOR);
-		return table.extractColumn(1).getValueSet();
+		ValueSetReader reader = new ValueSetReader(stream);
+		reader.read();
+		return reader.values;
+	}
+
+	/**
+	 * Loads a value set from a file into a CompactStringSet, streaming the
+	 * values into the set. The file is either a value set CSV file or a 
+	 * binary set file (see CompactStringSet.writeToFile).
+	 * 
+	 * @param file	The input file
+	 * @return		The set of values represented in the file
+	 */
+	public static CompactStringSet loadCompactValueSet(File file) {
+		InputStream stream = null;
+		try {
+			stream = new FileInputStream(file);
+			return loadCompactValueSet(stream);
+		} catch (FileNotFoundException e) {
+			throw new RuntimeException("Value set file not found: " + file.getPath(), e);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads a value set from an input stream into a CompactStringSet, 
+	 * streaming the values into the set. The stream holds either a value set
+	 * CSV file or a binary set file (see CompactStringSet.writeToFile). It is
+	 * closed at the end.
+	 * 
+	 * @param stream	The input stream
+	 * @return			The set of values represented in the stream
+	 */
+	public static CompactStringSet loadCompactValueSet(InputStream stream) {
+		BufferedInputStream bufferedStream = new BufferedInputStream(stream);
+		try {
+			bufferedStream.mark(4);
+			DataInputStream input = new DataInputStream(bufferedStream);
+			int magic;
+			try {
+				magic = input.readInt();
+			} catch (EOFException e) {
+				// Too short for a binary file
+				magic = 0;
+			}
+			bufferedStream.reset();
+			if (magic == CompactStringSet.MAGIC) {
+				CompactStringSet set = CompactStringSet.readFromStream(bufferedStream);
+				bufferedStream.close();
+				return set;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Failure reading value set", e);
+		}
+		CompactValueSetReader reader = new CompactValueSetReader(bufferedStream);
+		reader.read();
+		return reader.builder.build();
+	}
+
+	/**
+	 * Collects the values of the first column of a CSV input. Only the first
+	 * field of each record is decoded.
+	 */
+	private static class ValueSetReader extends CSVRecordReader {
+		private Set<String> values = new HashSet<String>();
+
+		ValueSetReader(File file) {
+			super(file, DEFAULT_COLUMN_SEPARATOR);
+		}
+
+		ValueSetReader(InputStream stream) {
+			super(stream, DEFAULT_COLUMN_SEPARATOR);
+		}
+
+		@Override
+		protected void processRecord(CSVRecord record) {
+			values.add(record.getValue(1));
+		}
+	}
+
+	/**
+	 * Streams the values of the first column of a CSV input into a 
+	 * CompactStringSetBuilder.
+	 */
+	private static class CompactValueSetReader extends CSVRecordReader {
+		private final CompactStringSetBuilder builder = new CompactStringSetBuilder();
+
+		CompactValueSetReader(InputStream stream) {
+			super(stream, DEFAULT_COLUMN_SEPARATOR);
+		}
+
+		@Override
+		protected void processRecord(CSVRecord record) {
+			builder.add(record.getValue(1));
+		}
 	}
 
 	/**
 	 * Extracts all the columns from the table.
-	 * This is currently very inefficient in that the column boundaries
-	 * are calculated repeatedly.
 	 * 
 	 * @return	An array of the columns
 	 */
@@ -349,9 +585,11 @@ public class RowTable implements Table {
 
 	public List<String> getHeaders() {
 		assert(!rows.isEmpty());
-		String headerRow = rows.get(0);
-		List<String> headers = new ArrayList<String>(Arrays.asList(
-					CSVProcessor.splitRecord(headerRow, columnSeparator)));
+		int columnCount = getColumnCount();
+		List<String> headers = new ArrayList<String>(columnCount);
+		for (int columnNumber = 1; columnNumber <= columnCount; columnNumber++) {
+			headers.add(getValue(0, columnNumber));
+		}
 		return headers;
 	}
 
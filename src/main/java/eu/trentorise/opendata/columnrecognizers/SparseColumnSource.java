@@ -0,0 +1,114 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A SparseColumnSource stores a column that may be mostly empty. The empty
+ * and null cells are recorded in a bitmap; only the non-empty values are
+ * stored, in row order. Recognizers can visit just the non-empty values and
+ * account for the empty cells by their count, so the work on a sparse column
+ * is proportional to the number of values it actually holds.
+ *
+ * @author Simon
+ *
+ */
+public class SparseColumnSource implements ColumnSource {
+	/**
+	 * The initial capacity of the row index array
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The rows that hold an empty or null cell
+	 */
+	private final BitSet emptyCells = new BitSet();
+
+	/**
+	 * The non-empty values, in row order
+	 */
+	private final List<String> values = new ArrayList<String>();
+
+	/**
+	 * The zero-based row number of each non-empty value, in increasing order
+	 */
+	private int[] valueRows = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The number of rows
+	 */
+	private int size = 0;
+
+	/**
+	 * Adds a cell at the bottom of the column.
+	 *
+	 * @param value		The contents of the cell; null counts as empty
+	 */
+	public void append(String value) {
+		if (value == null || value.isEmpty()) {
+			emptyCells.set(size);
+		} else {
+			if (values.size() == valueRows.length) {
+				valueRows = Arrays.copyOf(valueRows, valueRows.length * 2);
+			}
+			valueRows[values.size()] = size;
+			values.add(value);
+		}
+		size++;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.trentorise.opendata.columnrecognizers.ColumnSource#size()
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a value of the column. Empty and null cells are returned as
+	 * empty strings.
+	 *
+	 * @param index		The zero-based row number
+	 * @return			The value
+	 */
+	public CharSequence get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Row: " + index + ", size: " + size);
+		}
+		if (emptyCells.get(index)) {
+			return "";
+		}
+		return values.get(Arrays.binarySearch(valueRows, 0, values.size(), index));
+	}
+
+	/**
+	 * Returns true if a cell is empty or null.
+	 *
+	 * @param index		The zero-based row number
+	 * @return			True if the cell is empty
+	 */
+	public boolean isEmpty(int index) {
+		return emptyCells.get(index);
+	}
+
+	/**
+	 * Returns the number of empty or null cells.
+	 *
+	 * @return	The number of empty cells
+	 */
+	public int getEmptyCount() {
+		return size - values.size();
+	}
+
+	/**
+	 * Returns the non-empty values.
+	 *
+	 * @return	A read-only list of the non-empty values, in row order
+	 */
+	public List<String> getNonEmptyValues() {
+		return Collections.unmodifiableList(values);
+	}
+}
@@ -0,0 +1,27 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+/**
+ * A StringSet is a read-only set of strings that can be tested for
+ * membership with any CharSequence, such as the value sets of ValueSetCR.
+ * The sets are either held in memory (CompactStringSet) or read from disk
+ * on demand (DiskStringSet).
+ *
+ * @author Simon
+ *
+ */
+public interface StringSet {
+	/**
+	 * Tests whether a string is in the set.
+	 *
+	 * @param value		The string
+	 * @return			True if the set has the string
+	 */
+	boolean contains(CharSequence value);
+
+	/**
+	 * Returns the number of strings in the set.
+	 *
+	 * @return	The number of strings
+	 */
+	int size();
+}
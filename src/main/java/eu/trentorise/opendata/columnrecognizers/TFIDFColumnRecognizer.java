@@ -6,11 +6,11 @@ import eu.trentorise.opendata.nlprise.DataTypeGuess.Datatype;
  * @author Simon
  *
  */
-public class TFIDFColumnRecognizer extends ColumnContentBasedCR {
+public class TFIDFColumnRecognizer extends ColumnContentBasedCR implements PrototypeHolder {
 	/**
-	 * The vector representing the prototype column
+	 * The holder of the vector representing the prototype column
 	 */
-	TFIDFVector prototypeVector = null;
+	private final TFIDFPrototype prototype;
 	
 	/**
 	 * The inverse column frequencies
@@ -31,9 +31,25 @@ public class TFIDFColumnRecognizer extends ColumnContentBasedCR {
 			TFIDFVector prototypeVector, 
 			InverseColumnFrequency inverseFrequencies,
 			Table table) {
+		this(id, conceptID, new TFIDFPrototype(prototypeVector, inverseFrequencies), table);
+	}
+	
+	/**
+	 * Constructs the TFIDFColumnRecognizer on a prototype that may be 
+	 * shared (see TFIDFPrototype.getShared).
+	 * 
+	 * @param id					A unique name for the recognizer instance
+	 * @param conceptID				The knowledge base concept ID
+	 * @param prototype				The holder of the prototype vector
+	 * @param table					The table (or a not-too-small sample of rows)
+	 */
+	public TFIDFColumnRecognizer(String id,
+			long conceptID, 
+			TFIDFPrototype prototype, 
+			Table table) {
 		super(id, conceptID, table);
-		this.prototypeVector = prototypeVector;
-		this.inverseFrequencies = inverseFrequencies;
+		this.prototype = prototype;
+		this.inverseFrequencies = prototype.getInverseFrequencies();
 	}
 
 	@Override
@@ -46,8 +62,27 @@ public class TFIDFColumnRecognizer extends ColumnContentBasedCR {
 	 */
 	@Override
 	protected double computeColumnScore(Column column) {
-		TFIDFVector observationVector = new TFIDFVector(column, inverseFrequencies);
-		return observationVector.cosineSimilarity(prototypeVector);
+		TFIDFVector observationVector 
+			= TFIDFVector.makeObservationVector(column, inverseFrequencies);
+		return observationVector.cosineSimilarity(prototype.get());
+	}
+
+	/* (non-Javadoc)
+	 * @see PrototypeHolder#getPrototype(String)
+	 */
+	public TFIDFVector getPrototype(String recognizerID) {
+		return getId().equals(recognizerID) ? prototype.get() : null;
+	}
+
+	/* (non-Javadoc)
+	 * @see PrototypeHolder#foldIntoPrototype(String, Column, double)
+	 */
+	public boolean foldIntoPrototype(String recognizerID, Column column, double decay) {
+		if (!getId().equals(recognizerID)) {
+			return false;
+		}
+		prototype.foldIn(column, decay);
+		return true;
 	}
 
 }
@@ -0,0 +1,259 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import eu.trentorise.opendata.nlprise.DataTypeGuess.Datatype;
+
+/**
+ * The TFIDFCompactor compacts TF-IDF prototype files: it prunes each
+ * prototype to its heaviest terms and quantizes the components (see
+ * TFIDFVector.prune and TFIDFVector.quantize). The compacted files are read
+ * like any other prototype file.
+ *
+ * To show what the compaction costs, the columns of a held-out corpus are
+ * scored against each prototype before and after, and the mean and largest
+ * differences in cosine similarity are reported.
+ *
+ * @author Simon
+ *
+ */
+public class TFIDFCompactor {
+	/**
+	 * The number of header rows of the held-out tables
+	 */
+	private static final int NUMBER_OF_HEADER_ROWS = 1;
+
+	/**
+	 * The largest number of terms per prototype, or 0 for no limit
+	 */
+	private int maxTerms = 0;
+
+	/**
+	 * The fraction of the squared norm of each prototype to keep
+	 */
+	private double massFraction = 1;
+
+	/**
+	 * The number of bits per component: 8, 16, or 0 to keep doubles
+	 */
+	private int bits = 0;
+
+	/**
+	 * The inverse column frequencies of the prototypes
+	 */
+	private final InverseColumnFrequency inverseFrequencies;
+
+	/**
+	 * The columns of the held-out corpus
+	 */
+	private final List<Column> heldOutColumns = new ArrayList<Column>();
+
+	/**
+	 * Constructs the compactor.
+	 *
+	 * @param inverseFrequencies	The inverse column frequencies of the
+	 * 								prototypes
+	 */
+	public TFIDFCompactor(InverseColumnFrequency inverseFrequencies) {
+		super();
+		this.inverseFrequencies = inverseFrequencies;
+	}
+
+	/**
+	 * Compacts prototype files.
+	 *
+	 * @param args	The arguments: [-terms n] [-mass fraction] [-bits 8|16]
+	 * 				[-hashed] -idf inverse_freq_file -out output_directory
+	 * 				[-heldout csv_file column_separator] ... prototype_file ...
+	 */
+	public static void main(String[] args) {
+		final String USAGE = "Usage: TFIDFCompactor [-terms <n>] [-mass <fraction>] "
+				+ "[-bits <8|16>] [-hashed] -idf <inverse_freq_file> -out <output_directory> "
+				+ "[-heldout <csv_file> <column_separator>] ... <prototype_file> ...";
+
+		int maxTerms = 0;
+		double massFraction = 1;
+		int bits = 0;
+		boolean hashed = false;
+		File idfFile = null;
+		File outputDirectory = null;
+		List<File> heldOutFiles = new ArrayList<File>();
+		List<Character> heldOutSeparators = new ArrayList<Character>();
+		List<File> prototypeFiles = new ArrayList<File>();
+		try {
+			int i = 0;
+			while (i < args.length) {
+				String arg = args[i++];
+				if (arg.equals("-terms")) {
+					maxTerms = Integer.parseInt(args[i++]);
+				} else if (arg.equals("-mass")) {
+					massFraction = Double.parseDouble(args[i++]);
+				} else if (arg.equals("-bits")) {
+					bits = Integer.parseInt(args[i++]);
+				} else if (arg.equals("-hashed")) {
+					hashed = true;
+				} else if (arg.equals("-idf")) {
+					idfFile = new File(args[i++]);
+				} else if (arg.equals("-out")) {
+					outputDirectory = new File(args[i++]);
+				} else if (arg.equals("-heldout")) {
+					heldOutFiles.add(new File(args[i++]));
+					heldOutSeparators.add(args[i++].charAt(0));
+				} else {
+					prototypeFiles.add(new File(arg));
+				}
+			}
+		} catch (RuntimeException e) {
+			// A missing or malformed argument value
+			idfFile = null;
+		}
+		if (idfFile == null || outputDirectory == null || prototypeFiles.isEmpty()
+				|| (bits != 0 && bits != 8 && bits != 16)) {
+			System.out.println(USAGE);
+			System.exit(1);
+		}
+
+		TFIDFCompactor compactor = new TFIDFCompactor(hashed
+				? HashedInverseColumnFrequency.readFromFile(idfFile)
+				: InverseColumnFrequency.readFromFile(idfFile));
+		compactor.setMaxTerms(maxTerms);
+		compactor.setMassFraction(massFraction);
+		compactor.setBits(bits);
+
+		// The prototypes are read first, so that the held-out vectors keep
+		// all the terms they share with them
+		List<TFIDFVector> prototypes = new ArrayList<TFIDFVector>();
+		for (File prototypeFile : prototypeFiles) {
+			prototypes.add(compactor.readPrototype(prototypeFile));
+		}
+		for (int i = 0; i < heldOutFiles.size(); i++) {
+			compactor.addHeldOutTable(heldOutFiles.get(i), heldOutSeparators.get(i));
+		}
+
+		outputDirectory.mkdirs();
+		System.out.println("prototype\tterms\tcompacted_terms\tmean_cosine_error\tmax_cosine_error");
+		for (int i = 0; i < prototypes.size(); i++) {
+			TFIDFVector prototype = prototypes.get(i);
+			TFIDFVector compacted = compactor.compact(prototype);
+			compacted.writeToFile(new File(outputDirectory, prototypeFiles.get(i).getName()));
+			double[] errors = compactor.computeCosineErrors(prototype, compacted);
+			System.out.println(String.format(Locale.US, "%s\t%d\t%d\t%.6f\t%.6f",
+					prototypeFiles.get(i).getName(),
+					prototype.getTermCount(),
+					compacted.getTermCount(),
+					errors[0],
+					errors[1]));
+		}
+	}
+
+	/**
+	 * Sets the largest number of terms kept per prototype.
+	 *
+	 * @param maxTerms	The number of terms, or 0 for no limit (the default)
+	 */
+	public void setMaxTerms(int maxTerms) {
+		this.maxTerms = maxTerms;
+	}
+
+	/**
+	 * Sets the fraction of the squared norm of each prototype that the kept
+	 * terms must make up.
+	 *
+	 * @param massFraction	The fraction, from 0 to 1 (the default)
+	 */
+	public void setMassFraction(double massFraction) {
+		this.massFraction = massFraction;
+	}
+
+	/**
+	 * Sets the number of bits per quantized component.
+	 *
+	 * @param bits	8, 16, or 0 to keep doubles (the default)
+	 */
+	public void setBits(int bits) {
+		this.bits = bits;
+	}
+
+	/**
+	 * Reads a prototype file in the vocabulary of the inverse frequencies.
+	 *
+	 * @param file	The prototype file
+	 * @return		The prototype
+	 */
+	public TFIDFVector readPrototype(File file) {
+		InputStream stream = null;
+		try {
+			stream = new FileInputStream(file);
+			return TFIDFVector.readFromStream(stream, inverseFrequencies.getVocabulary());
+		} catch (FileNotFoundException e) {
+			throw new RuntimeException("Prototype file not found: " + file.getPath(), e);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the text columns of a CSV table to the held-out corpus.
+	 *
+	 * @param file				The CSV file
+	 * @param columnSeparator	The column separator
+	 */
+	public void addHeldOutTable(File file, char columnSeparator) {
+		RowTable table = RowTable.loadFromCSV(file, columnSeparator);
+		table.removeHeaders(NUMBER_OF_HEADER_ROWS);
+		for (Column column : table.extractColumns()) {
+			Datatype type = column.getType();
+			if (type == Datatype.STRING || type == Datatype.NL_STRING) {
+				heldOutColumns.add(column);
+			}
+		}
+	}
+
+	/**
+	 * Compacts a prototype.
+	 *
+	 * @param prototype		The prototype
+	 * @return				The compacted prototype
+	 */
+	public TFIDFVector compact(TFIDFVector prototype) {
+		TFIDFVector compacted = prototype.prune(maxTerms, massFraction);
+		return bits == 0 ? compacted : compacted.quantize(bits);
+	}
+
+	/**
+	 * Compares the scores of the held-out columns against a prototype and
+	 * its compacted form.
+	 *
+	 * @param prototype		The prototype
+	 * @param compacted		The compacted prototype
+	 * @return				The mean and the largest absolute difference in
+	 * 						cosine similarity (zero without held-out columns)
+	 */
+	public double[] computeCosineErrors(TFIDFVector prototype, TFIDFVector compacted) {
+		double sum = 0;
+		double max = 0;
+		for (Column column : heldOutColumns) {
+			TFIDFVector observation
+				= TFIDFVector.makeObservationVector(column, inverseFrequencies);
+			double error = Math.abs(observation.cosineSimilarity(prototype)
+					- observation.cosineSimilarity(compacted));
+			sum += error;
+			max = Math.max(max, error);
+		}
+		double mean = heldOutColumns.isEmpty() ? 0 : sum / heldOutColumns.size();
+		return new double[] {mean, max};
+	}
+}
@@ -0,0 +1,313 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The TFIDFIndex is an inverted index over a set of prototype TF-IDF
+ * vectors. For each term it lists the prototypes that contain the term,
+ * with the component value. The cosine similarity of a vector with every
+ * prototype is then found in a single pass over the terms of the vector,
+ * touching only the prototypes that share a term with it, instead of one
+ * inner product per prototype.
+ *
+ * When all the prototypes are quantized, the posting values are stored as
+ * floats, which hold the decoded values exactly, in half the space.
+ *
+ * The prototypes are read from their TFIDFPrototype holders. The index is
+ * compiled on first use after prototypes are added, and can then be used
+ * by several threads at once. When a prototype has changed, as when it
+ * learns from a labeled column, the next similarity computation compiles a
+ * new version of the posting arrays and publishes it in one step; readers
+ * keep using the version they started with.
+ *
+ * An index over shared prototypes (see TFIDFPrototype.getShared) is itself
+ * shared with getShared, so the recognizers built for each table from one
+ * specification use one compiled index.
+ *
+ * @author Simon
+ *
+ */
+public class TFIDFIndex {
+	/**
+	 * The indexes built with getShared, by the URLs of their prototypes
+	 */
+	private final static Map<String, TFIDFIndex> sharedIndexes
+		= new HashMap<String, TFIDFIndex>();
+
+	/**
+	 * The prototypes, in order of addition
+	 */
+	private final List<TFIDFPrototype> prototypes = new ArrayList<TFIDFPrototype>();
+
+	/**
+	 * The vocabulary of the prototypes
+	 */
+	private TermVocabulary vocabulary = null;
+
+	/**
+	 * The compiled postings, or null if prototypes were added since; they
+	 * are out of date if a prototype has changed since
+	 */
+	private volatile Postings postings = null;
+
+	/**
+	 * Returns the index over a list of shared prototypes, building it the
+	 * first time, or when one of the prototypes has been loaded again.
+	 *
+	 * @param prototypes	The prototypes, loaded with TFIDFPrototype.getShared
+	 * @return				The index
+	 */
+	public static TFIDFIndex getShared(List<TFIDFPrototype> prototypes) {
+		StringBuilder keyBuilder = new StringBuilder();
+		for (TFIDFPrototype prototype : prototypes) {
+			if (prototype.getURL() == null) {
+				throw new IllegalArgumentException("Prototype isn't shared");
+			}
+			keyBuilder.append(prototype.getURL().toExternalForm()).append('\n');
+		}
+		String key = keyBuilder.toString();
+		synchronized (sharedIndexes) {
+			TFIDFIndex shared = sharedIndexes.get(key);
+			if (shared == null || !shared.hasPrototypes(prototypes)) {
+				shared = new TFIDFIndex();
+				for (TFIDFPrototype prototype : prototypes) {
+					shared.addPrototype(prototype);
+				}
+				sharedIndexes.put(key, shared);
+			}
+			return shared;
+		}
+	}
+
+	/**
+	 * Adds a prototype to the index. All the prototypes must share one
+	 * vocabulary.
+	 *
+	 * @param prototype		The holder of the prototype vector
+	 * @return				The position (0, ..) of the prototype
+	 */
+	public synchronized int addPrototype(TFIDFPrototype prototype) {
+		TermVocabulary prototypeVocabulary = prototype.get().getVocabulary();
+		if (vocabulary == null) {
+			vocabulary = prototypeVocabulary;
+		} else if (vocabulary != prototypeVocabulary) {
+			throw new IllegalArgumentException("Prototype from a different vocabulary");
+		}
+		prototypes.add(prototype);
+		postings = null;
+		return prototypes.size() - 1;
+	}
+
+	/**
+	 * Returns a prototype.
+	 *
+	 * @param position	The position of the prototype
+	 * @return			The holder of the prototype vector
+	 */
+	public synchronized TFIDFPrototype getPrototype(int position) {
+		return prototypes.get(position);
+	}
+
+	/**
+	 * Returns true if the index holds the given prototypes, in order.
+	 *
+	 * @param otherPrototypes	The prototypes
+	 * @return					True if the same prototypes are indexed
+	 */
+	private synchronized boolean hasPrototypes(List<TFIDFPrototype> otherPrototypes) {
+		if (otherPrototypes.size() != prototypes.size()) {
+			return false;
+		}
+		for (int i = 0; i < prototypes.size(); i++) {
+			if (otherPrototypes.get(i) != prototypes.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of prototypes.
+	 *
+	 * @return	The number of prototypes
+	 */
+	public synchronized int size() {
+		return prototypes.size();
+	}
+
+	/**
+	 * Computes the cosine similarity of a vector with each prototype.
+	 *
+	 * @param vector	The vector, with terms from the vocabulary of the
+	 * 					prototypes
+	 * @return			The similarities, by prototype position
+	 */
+	public double[] computeSimilarities(TFIDFVector vector) {
+		Postings postings = this.postings;
+		if (postings == null || !postings.isCurrent()) {
+			postings = compile();
+		}
+		int[] postingStarts = postings.starts;
+		int[] postingPrototypes = postings.prototypes;
+		double[] postingComponents = postings.components;
+		float[] postingFloatComponents = postings.floatComponents;
+		double[] prototypeSquaredNorms = postings.squaredNorms;
+		int[] termIDs = vector.getTermIDs();
+		double[] components = vector.getComponents();
+		double[] similarities = new double[prototypeSquaredNorms.length];
+		int termIDLimit = postingStarts.length - 1;
+		for (int i = 0; i < termIDs.length; i++) {
+			int termID = termIDs[i];
+			if (termID < termIDLimit) {
+				double component = components[i];
+				int postingEnd = postingStarts[termID + 1];
+				if (postingComponents != null) {
+					for (int posting = postingStarts[termID]; posting < postingEnd; posting++) {
+						similarities[postingPrototypes[posting]]
+								+= component * postingComponents[posting];
+					}
+				} else {
+					for (int posting = postingStarts[termID]; posting < postingEnd; posting++) {
+						similarities[postingPrototypes[posting]]
+								+= component * postingFloatComponents[posting];
+					}
+				}
+			}
+		}
+		// As in TFIDFVector.cosineSimilarity
+		double squaredNorm = vector.squaredNorm();
+		for (int prototype = 0; prototype < similarities.length; prototype++) {
+			double denominator = Math.sqrt(squaredNorm * prototypeSquaredNorms[prototype]);
+			similarities[prototype] = denominator == 0
+					? 0 : similarities[prototype] / denominator;
+		}
+		return similarities;
+	}
+
+	/**
+	 * Builds the postings from the prototypes, unless they are up to date.
+	 *
+	 * @return	The postings
+	 */
+	private synchronized Postings compile() {
+		if (postings == null || !postings.isCurrent()) {
+			postings = new Postings(prototypes);
+		}
+		return postings;
+	}
+
+	/**
+	 * The posting arrays of one version of the prototypes. They are never
+	 * modified once built.
+	 */
+	private static class Postings {
+		/**
+		 * The start of the postings of each term ID; the postings of term t are
+		 * at [starts[t], starts[t + 1])
+		 */
+		final int[] starts;
+
+		/**
+		 * The prototype of each posting
+		 */
+		final int[] prototypes;
+
+		/**
+		 * The component value of the term in the prototype, for each posting,
+		 * unless all the prototypes are quantized
+		 */
+		final double[] components;
+
+		/**
+		 * The component value of the term in the prototype, for each posting,
+		 * if all the prototypes are quantized
+		 */
+		final float[] floatComponents;
+
+		/**
+		 * The squared norm of each prototype
+		 */
+		final double[] squaredNorms;
+
+		/**
+		 * The holders of the prototypes
+		 */
+		private final TFIDFPrototype[] holders;
+
+		/**
+		 * The prototype vectors the postings were built from
+		 */
+		private final TFIDFVector[] vectors;
+
+		Postings(List<TFIDFPrototype> prototypeHolders) {
+			holders = prototypeHolders.toArray(new TFIDFPrototype[prototypeHolders.size()]);
+			vectors = new TFIDFVector[holders.length];
+			for (int i = 0; i < holders.length; i++) {
+				vectors[i] = holders[i].get();
+			}
+			List<TFIDFVector> prototypes = Arrays.asList(vectors);
+			int termIDLimit = 0;
+			int postingCount = 0;
+			boolean allQuantized = true;
+			for (TFIDFVector prototype : prototypes) {
+				allQuantized &= prototype.isQuantized();
+				int[] termIDs = prototype.getTermIDs();
+				if (termIDs.length > 0) {
+					termIDLimit = Math.max(termIDLimit, termIDs[termIDs.length - 1] + 1);
+				}
+				postingCount += termIDs.length;
+			}
+
+			// Count the postings of each term, then turn the counts into starts
+			starts = new int[termIDLimit + 1];
+			for (TFIDFVector prototype : prototypes) {
+				for (int termID : prototype.getTermIDs()) {
+					starts[termID + 1]++;
+				}
+			}
+			for (int termID = 0; termID < termIDLimit; termID++) {
+				starts[termID + 1] += starts[termID];
+			}
+
+			int[] next = new int[termIDLimit];
+			System.arraycopy(starts, 0, next, 0, termIDLimit);
+			this.prototypes = new int[postingCount];
+			components = allQuantized ? null : new double[postingCount];
+			floatComponents = allQuantized ? new float[postingCount] : null;
+			squaredNorms = new double[prototypes.size()];
+			for (int prototype = 0; prototype < prototypes.size(); prototype++) {
+				TFIDFVector vector = prototypes.get(prototype);
+				int[] termIDs = vector.getTermIDs();
+				for (int i = 0; i < termIDs.length; i++) {
+					int posting = next[termIDs[i]]++;
+					this.prototypes[posting] = prototype;
+					if (allQuantized) {
+						floatComponents[posting] = (float)vector.getComponentAt(i);
+					} else {
+						components[posting] = vector.getComponentAt(i);
+					}
+				}
+				squaredNorms[prototype] = vector.squaredNorm();
+			}
+		}
+
+		/**
+		 * Returns true if no prototype has changed since the postings were
+		 * built.
+		 *
+		 * @return	True if the postings are up to date
+		 */
+		boolean isCurrent() {
+			for (int i = 0; i < holders.length; i++) {
+				if (holders[i].get() != vectors[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
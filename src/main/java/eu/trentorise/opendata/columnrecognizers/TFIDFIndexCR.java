@@ -0,0 +1,247 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.trentorise.opendata.nlprise.DataTypeGuess.Datatype;
+
+/**
+ * The TFIDFIndexCR does the work of many TFIDFColumnRecognizers at once. It
+ * holds the prototype vectors of all of them in a TFIDFIndex, builds the
+ * vector of each column once and scores it against every prototype in one
+ * pass over the column terms.
+ *
+ * The candidates are the same as those of the separate recognizers: each
+ * carries the concept and the recognizer ID of its prototype, and the
+ * candidates of each prototype come out together, in prototype order.
+ *
+ * The prototypes can learn from labeled columns while columns are scored
+ * (see PrototypeHolder); each update is published in one step, and the 
+ * index is compiled again before the next column is scored. Prototypes 
+ * loaded with TFIDFPrototype.getShared are shared with the recognizers of 
+ * other tables, which see the updates too. When all the prototypes are
+ * shared, so is the compiled index (see TFIDFIndex.getShared).
+ *
+ * @author Simon
+ *
+ */
+public class TFIDFIndexCR extends ColumnContentBasedCR implements PrototypeHolder {
+	/**
+	 * The holders of the prototype vectors
+	 */
+	private final List<TFIDFPrototype> prototypes = new ArrayList<TFIDFPrototype>();
+
+	/**
+	 * The index of the prototype vectors, or null if prototypes were added
+	 * since it was built
+	 */
+	private TFIDFIndex index = null;
+
+	/**
+	 * The inverse column frequencies
+	 */
+	private final InverseColumnFrequency inverseFrequencies;
+
+	/**
+	 * The recognizer ID of each prototype
+	 */
+	private final List<String> prototypeIDs = new ArrayList<String>();
+
+	/**
+	 * The concept ID of each prototype
+	 */
+	private final List<Long> prototypeConceptIDs = new ArrayList<Long>();
+
+	/**
+	 * Constructs the TFIDFIndexCR, with no prototypes.
+	 *
+	 * @param id					A unique name for the recognizer instance
+	 * @param inverseFrequencies	The inverse column frequencies
+	 * @param table					The table (or a not-too-small sample of rows)
+	 */
+	public TFIDFIndexCR(String id,
+			InverseColumnFrequency inverseFrequencies,
+			Table table) {
+		super(id, -1, table);
+		this.inverseFrequencies = inverseFrequencies;
+	}
+
+	/**
+	 * Adds a prototype, as if a TFIDFColumnRecognizer were built for it.
+	 *
+	 * @param recognizerID		The recognizer ID given to the candidates
+	 * @param conceptID			The knowledge base concept ID
+	 * @param prototypeVector	The vector representing the prototype column
+	 */
+	public void addPrototype(String recognizerID, long conceptID, TFIDFVector prototypeVector) {
+		addPrototype(recognizerID, conceptID, 
+				new TFIDFPrototype(prototypeVector, inverseFrequencies));
+	}
+
+	/**
+	 * Adds a prototype that may be shared (see TFIDFPrototype.getShared).
+	 *
+	 * @param recognizerID		The recognizer ID given to the candidates
+	 * @param conceptID			The knowledge base concept ID
+	 * @param prototype			The holder of the prototype vector, with the
+	 * 							inverse frequencies of the recognizer
+	 */
+	public void addPrototype(String recognizerID, long conceptID, TFIDFPrototype prototype) {
+		if (prototype.getInverseFrequencies() != inverseFrequencies) {
+			throw new IllegalArgumentException("Prototype with other inverse frequencies");
+		}
+		synchronized (this) {
+			prototypes.add(prototype);
+			index = null;
+		}
+		prototypeIDs.add(recognizerID);
+		prototypeConceptIDs.add(conceptID);
+	}
+
+	/**
+	 * Returns the number of prototypes.
+	 *
+	 * @return	The number of prototypes
+	 */
+	public int getPrototypeCount() {
+		return prototypeIDs.size();
+	}
+
+	/**
+	 * Returns the inverse column frequencies the prototypes must be built
+	 * with.
+	 *
+	 * @return	The inverse column frequencies
+	 */
+	InverseColumnFrequency getInverseFrequencies() {
+		return inverseFrequencies;
+	}
+
+	/* (non-Javadoc)
+	 * @see PrototypeHolder#getPrototype(String)
+	 */
+	public TFIDFVector getPrototype(String recognizerID) {
+		int position = prototypeIDs.indexOf(recognizerID);
+		return position < 0 ? null : prototypes.get(position).get();
+	}
+
+	/* (non-Javadoc)
+	 * @see PrototypeHolder#foldIntoPrototype(String, Column, double)
+	 */
+	public boolean foldIntoPrototype(String recognizerID, Column column, double decay) {
+		int position = prototypeIDs.indexOf(recognizerID);
+		if (position < 0) {
+			return false;
+		}
+		prototypes.get(position).foldIn(column, decay);
+		return true;
+	}
+
+	@Override
+	protected boolean isApplicableType(Datatype type) {
+		return type == Datatype.STRING || type == Datatype.NL_STRING;
+	}
+
+	/* (non-Javadoc)
+	 * @see ColumnContentBasedCR#computeScoredCandidates(List, int, List)
+	 */
+	@Override
+	void computeScoredCandidates(List<Column> columns,
+			int firstColumnNumber,
+			List<ColumnConceptCandidate> candidates) {
+		int prototypeCount = getPrototypeCount();
+		List<List<ColumnConceptCandidate>> prototypeCandidates
+			= new ArrayList<List<ColumnConceptCandidate>>(prototypeCount);
+		for (int prototype = 0; prototype < prototypeCount; prototype++) {
+			prototypeCandidates.add(new ArrayList<ColumnConceptCandidate>());
+		}
+		computeGroupedCandidates(columns, firstColumnNumber, prototypeCandidates);
+		for (List<ColumnConceptCandidate> list : prototypeCandidates) {
+			candidates.addAll(list);
+		}
+	}
+
+	/**
+	 * Returns one candidate list per prototype.
+	 */
+	@Override
+	int getCandidateGroupCount() {
+		return getPrototypeCount();
+	}
+
+	/* (non-Javadoc)
+	 * @see ColumnContentBasedCR#computeGroupedCandidates(List, int, List)
+	 */
+	@Override
+	void computeGroupedCandidates(List<Column> columns,
+			int firstColumnNumber,
+			List<List<ColumnConceptCandidate>> groups) {
+		int prototypeCount = groups.size();
+		int columnNumber = firstColumnNumber;
+		for (Column column : columns) {
+			if (isApplicableType(column.getType())) {
+				double[] scores = computeSimilarities(column);
+				for (int prototype = 0; prototype < prototypeCount; prototype++) {
+					if (scores[prototype] > 0) {
+						groups.get(prototype).add(
+								new ColumnConceptCandidate(columnNumber,
+										prototypeConceptIDs.get(prototype),
+										scores[prototype],
+										prototypeIDs.get(prototype)));
+					}
+				}
+			}
+			columnNumber++;
+		}
+	}
+
+	/**
+	 * Returns the best similarity of the column with any prototype.
+	 */
+	@Override
+	protected double computeColumnScore(Column column) {
+		double maxScore = 0;
+		for (double score : computeSimilarities(column)) {
+			maxScore = Math.max(maxScore, score);
+		}
+		return maxScore;
+	}
+
+	/**
+	 * Computes the similarity of a column with each prototype.
+	 *
+	 * @param column	The column
+	 * @return			The similarities, by prototype
+	 */
+	private double[] computeSimilarities(Column column) {
+		TFIDFVector observationVector
+			= TFIDFVector.makeObservationVector(column, inverseFrequencies);
+		return getIndex().computeSimilarities(observationVector);
+	}
+
+	/**
+	 * Returns the index of the prototypes, getting it the first time: the
+	 * shared index if all the prototypes are shared, otherwise one of the 
+	 * recognizer's own.
+	 *
+	 * @return	The index
+	 */
+	synchronized TFIDFIndex getIndex() {
+		if (index == null) {
+			boolean shared = true;
+			for (TFIDFPrototype prototype : prototypes) {
+				shared = shared && prototype.getURL() != null;
+			}
+			if (shared) {
+				index = TFIDFIndex.getShared(prototypes);
+			} else {
+				index = new TFIDFIndex();
+				for (TFIDFPrototype prototype : prototypes) {
+					index.addPrototype(prototype);
+				}
+			}
+		}
+		return index;
+	}
+
+}
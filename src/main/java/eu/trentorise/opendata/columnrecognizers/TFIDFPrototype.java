@@ -0,0 +1,195 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The TFIDFPrototype holds the current version of a prototype vector. The
+ * recognizers read the vector from it whenever they score columns, so once
+ * a labeled column is folded into the prototype the next columns are
+ * scored against the new version.
+ *
+ * The prototypes of model files are loaded with getShared: once per file,
+ * and shared by all the recognizers built from the file. An update (see
+ * PrototypeUpdater) therefore reaches every table recognized afterwards,
+ * without waiting for the prototype to be written back to its file.
+ *
+ * A TFIDFPrototype holds one prototype, so as a PrototypeHolder it answers
+ * for any recognizer ID.
+ *
+ * @author Simon
+ *
+ */
+public class TFIDFPrototype implements PrototypeHolder {
+	/**
+	 * The prototypes loaded with getShared, by URL
+	 */
+	private final static Map<String, TFIDFPrototype> sharedPrototypes
+		= new HashMap<String, TFIDFPrototype>();
+
+	/**
+	 * The current vector
+	 */
+	private final AtomicReference<TFIDFVector> vector;
+
+	/**
+	 * The inverse column frequencies of the vector
+	 */
+	private final InverseColumnFrequency inverseFrequencies;
+
+	/**
+	 * The location of the model file, or null if the prototype isn't shared
+	 */
+	private final URL url;
+
+	/**
+	 * The modification time of the model file when it was loaded, or 0
+	 */
+	private final long lastModified;
+
+	/**
+	 * True once a column has been folded into the prototype
+	 */
+	private volatile boolean updated = false;
+
+	/**
+	 * Constructs a prototype that isn't shared.
+	 *
+	 * @param vector				The prototype vector
+	 * @param inverseFrequencies	The inverse column frequencies, whose
+	 * 								vocabulary the vector is in
+	 */
+	public TFIDFPrototype(TFIDFVector vector, InverseColumnFrequency inverseFrequencies) {
+		this(vector, inverseFrequencies, null, 0);
+	}
+
+	/**
+	 * Constructs the prototype.
+	 *
+	 * @param vector				The prototype vector
+	 * @param inverseFrequencies	The inverse column frequencies
+	 * @param url					The location of the model file, or null
+	 * @param lastModified			The modification time of the model file
+	 */
+	private TFIDFPrototype(TFIDFVector vector, InverseColumnFrequency inverseFrequencies,
+			URL url, long lastModified) {
+		super();
+		if (vector.getVocabulary() != inverseFrequencies.getVocabulary()) {
+			throw new IllegalArgumentException("Prototype from a different vocabulary");
+		}
+		this.vector = new AtomicReference<TFIDFVector>(vector);
+		this.inverseFrequencies = inverseFrequencies;
+		this.url = url;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Returns the prototype stored at a URL, loading it the first time, or
+	 * when the file has changed since it was loaded, or when it is asked
+	 * for with other inverse frequencies. A prototype that has learned from
+	 * labeled columns isn't loaded again when its file changes, since the
+	 * change is usually the prototype being written back.
+	 *
+	 * @param url					The location of the model file
+	 * @param inverseFrequencies	The inverse column frequencies
+	 * @return						The prototype
+	 */
+	public static TFIDFPrototype getShared(URL url, InverseColumnFrequency inverseFrequencies) {
+		long lastModified = InverseColumnFrequency.getLastModified(url);
+		String key = url.toExternalForm();
+		synchronized (sharedPrototypes) {
+			TFIDFPrototype shared = sharedPrototypes.get(key);
+			if (shared == null
+					|| shared.inverseFrequencies != inverseFrequencies
+					|| (!shared.updated && shared.lastModified != lastModified)) {
+				InputStream stream = null;
+				try {
+					stream = url.openStream();
+					shared = new TFIDFPrototype(
+							TFIDFVector.readFromStream(stream, inverseFrequencies.getVocabulary()),
+							inverseFrequencies,
+							url,
+							lastModified);
+				} catch (IOException e) {
+					throw new RuntimeException("Failure reading prototype: " + key, e);
+				} finally {
+					if (stream != null) {
+						try {
+							stream.close();
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				}
+				sharedPrototypes.put(key, shared);
+			}
+			return shared;
+		}
+	}
+
+	/**
+	 * Returns the current prototype vector.
+	 *
+	 * @return	The prototype vector
+	 */
+	public TFIDFVector get() {
+		return vector.get();
+	}
+
+	/**
+	 * Returns the location of the model file of a shared prototype.
+	 *
+	 * @return	The URL of the model file, or null if the prototype isn't
+	 * 			shared
+	 */
+	public URL getURL() {
+		return url;
+	}
+
+	/**
+	 * Returns the inverse column frequencies of the prototype.
+	 *
+	 * @return	The inverse column frequencies
+	 */
+	public InverseColumnFrequency getInverseFrequencies() {
+		return inverseFrequencies;
+	}
+
+	/**
+	 * Folds a labeled column into the prototype (see TFIDFVector.foldIn)
+	 * and publishes the result in one step.
+	 *
+	 * @param column	The labeled column
+	 * @param decay		The weight (0 to 1) of the current prototype
+	 */
+	public void foldIn(Column column, double decay) {
+		TFIDFVector example = new TFIDFVector(column, inverseFrequencies);
+		TFIDFVector current;
+		TFIDFVector folded;
+		// Retry if another update was published in the meantime
+		do {
+			current = vector.get();
+			folded = current.foldIn(example, decay);
+		} while (!vector.compareAndSet(current, folded));
+		updated = true;
+	}
+
+	/* (non-Javadoc)
+	 * @see PrototypeHolder#getPrototype(String)
+	 */
+	public TFIDFVector getPrototype(String recognizerID) {
+		return get();
+	}
+
+	/* (non-Javadoc)
+	 * @see PrototypeHolder#foldIntoPrototype(String, Column, double)
+	 */
+	public boolean foldIntoPrototype(String recognizerID, Column column, double decay) {
+		foldIn(column, decay);
+		return true;
+	}
+}
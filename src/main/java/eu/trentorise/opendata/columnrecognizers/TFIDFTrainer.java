@@ -0,0 +1,344 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The TFIDFTrainer builds the TF-IDF prototypes of many models at once from
+ * labeled example columns. The prototype of a model is the TF-IDF vector of
+ * the term frequencies added up over all its example columns; with a single
+ * example it is the vector that TFIDFVector.main builds.
+ *
+ * The CSV files are read in parallel, one file per thread at a time, and
+ * each file is read and tokenized once however many example columns it
+ * holds. Each thread counts into its own term counts, which are merged at
+ * the end.
+ *
+ * @author Simon
+ *
+ */
+public class TFIDFTrainer {
+	/**
+	 * The extension of the model files
+	 */
+	private static final String MODEL_FILE_EXTENSION = ".txt";
+
+	/**
+	 * The inverse column frequencies
+	 */
+	private final InverseColumnFrequency inverseFrequencies;
+
+	/**
+	 * The example columns of each file, in order of addition
+	 */
+	private final Map<String, FileExamples> fileExamples
+		= new LinkedHashMap<String, FileExamples>();
+
+	/**
+	 * True if the first record of each file holds the column headers
+	 */
+	private boolean hasHeaderRow = true;
+
+	/**
+	 * The number of worker threads
+	 */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Constructs the trainer.
+	 *
+	 * @param inverseFrequencies	The inverse column frequencies
+	 */
+	public TFIDFTrainer(InverseColumnFrequency inverseFrequencies) {
+		super();
+		this.inverseFrequencies = inverseFrequencies;
+	}
+
+	/**
+	 * Trains the models listed in a manifest (see TrainingManifestReader)
+	 * and writes their prototype files.
+	 *
+	 * @param args	The arguments: [-threads n] [-hashed] manifest_file
+	 * 				inverse_freq_file output_directory
+	 */
+	public static void main(String[] args) {
+		final int ARG_COUNT = 3;
+
+		int argIndex = 0;
+		int threadCount = 0;
+		boolean hashed = false;
+		try {
+			while (args.length - argIndex > ARG_COUNT) {
+				if (args[argIndex].equals("-threads")) {
+					threadCount = Integer.parseInt(args[argIndex + 1]);
+					argIndex += 2;
+				} else if (args[argIndex].equals("-hashed")) {
+					hashed = true;
+					argIndex++;
+				} else {
+					break;
+				}
+			}
+		} catch (RuntimeException e) {
+			// A missing or malformed argument value
+			argIndex = -1;
+		}
+		if (argIndex < 0 || args.length - argIndex != ARG_COUNT) {
+			System.out.println("Usage: TFIDFTrainer [-threads <n>] [-hashed] <manifest_file> "
+					+ "<inverse_freq_file> <output_directory>");
+			System.exit(1);
+		}
+
+		File manifestFile = new File(args[argIndex++]);
+		File inverseFrequencyFile = new File(args[argIndex++]);
+		File outputDirectory = new File(args[argIndex++]);
+		TFIDFTrainer trainer = new TFIDFTrainer(hashed
+				? HashedInverseColumnFrequency.readFromFile(inverseFrequencyFile)
+				: InverseColumnFrequency.readFromFile(inverseFrequencyFile));
+		if (threadCount > 0) {
+			trainer.setThreadCount(threadCount);
+		}
+		new TrainingManifestReader(manifestFile, trainer).read();
+		trainer.writeModels(trainer.train(), outputDirectory);
+	}
+
+	/**
+	 * Adds an example column of a model.
+	 *
+	 * @param file				The CSV file
+	 * @param format			The CSV format of the file
+	 * @param columnNumber		The one-based column number
+	 * @param modelName			The name of the model
+	 */
+	public void addExample(File file, CSVFormat format, int columnNumber, String modelName) {
+		String key = file.getPath() + "\u0000" + format.getColumnSeparator();
+		FileExamples examples = fileExamples.get(key);
+		if (examples == null) {
+			examples = new FileExamples(file, format);
+			fileExamples.put(key, examples);
+		}
+		examples.columnNumbers.add(columnNumber);
+		examples.modelNames.add(modelName);
+	}
+
+	/**
+	 * Sets whether the first record of each file holds the headers, which
+	 * are then left out. The default is true.
+	 *
+	 * @param hasHeaderRow	True if the files have a header row
+	 */
+	public void setHasHeaderRow(boolean hasHeaderRow) {
+		this.hasHeaderRow = hasHeaderRow;
+	}
+
+	/**
+	 * Sets the number of worker threads. The default is the number of
+	 * available processors.
+	 *
+	 * @param threadCount	The number of threads
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Builds the prototypes of all the models.
+	 *
+	 * @return	The prototype of each model, by model name
+	 */
+	public Map<String, TFIDFVector> train() {
+		Map<String, TFIDFVector> prototypes = new TreeMap<String, TFIDFVector>();
+		for (Entry<String, Map<String, Integer>> modelFrequencies
+				: countTermFrequencies().entrySet()) {
+			prototypes.put(modelFrequencies.getKey(),
+					TFIDFVector.makePrototypeVector(modelFrequencies.getValue(), inverseFrequencies));
+		}
+		return prototypes;
+	}
+
+	/**
+	 * Writes out prototypes, each to the file named after its model.
+	 *
+	 * @param prototypes		The prototypes, by model name
+	 * @param outputDirectory	The directory of the model files
+	 */
+	public void writeModels(Map<String, TFIDFVector> prototypes, File outputDirectory) {
+		outputDirectory.mkdirs();
+		for (Entry<String, TFIDFVector> prototype : prototypes.entrySet()) {
+			prototype.getValue().writeToFile(
+					new File(outputDirectory, prototype.getKey() + MODEL_FILE_EXTENSION));
+		}
+	}
+
+	/**
+	 * Counts the terms of the example columns of each model, reading the
+	 * files in parallel.
+	 *
+	 * @return	The term frequencies, by model name
+	 */
+	private Map<String, Map<String, Integer>> countTermFrequencies() {
+		final List<FileExamples> files = new ArrayList<FileExamples>(fileExamples.values());
+		final AtomicInteger nextFile = new AtomicInteger();
+		int workerCount = Math.max(1, Math.min(threadCount, files.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		try {
+			List<Future<Map<String, TermCounts>>> results
+				= new ArrayList<Future<Map<String, TermCounts>>>(workerCount);
+			for (int i = 0; i < workerCount; i++) {
+				results.add(executor.submit(new Callable<Map<String, TermCounts>>() {
+					public Map<String, TermCounts> call() {
+						return countFiles(files, nextFile);
+					}
+				}));
+			}
+			Map<String, Map<String, Integer>> frequencies
+				= new HashMap<String, Map<String, Integer>>();
+			for (Future<Map<String, TermCounts>> result : results) {
+				for (Entry<String, TermCounts> modelCounts : result.get().entrySet()) {
+					Map<String, Integer> modelFrequencies = frequencies.get(modelCounts.getKey());
+					if (modelFrequencies == null) {
+						modelFrequencies = new HashMap<String, Integer>();
+						frequencies.put(modelCounts.getKey(), modelFrequencies);
+					}
+					modelCounts.getValue().addTo(modelFrequencies);
+				}
+			}
+			return frequencies;
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Prototype training interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failure reading training examples", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Counts the example columns of files, taking the files in turn from the
+	 * shared list until there are none left.
+	 *
+	 * @param files		The files
+	 * @param nextFile	The index of the next file to read
+	 * @return			The term counts of this thread, by model name
+	 */
+	private Map<String, TermCounts> countFiles(List<FileExamples> files, AtomicInteger nextFile) {
+		Map<String, TermCounts> modelCounts = new HashMap<String, TermCounts>();
+		Tokenizer tokenizer = new Tokenizer();
+		ByteBuffer buffer = null;
+		int fileIndex;
+		while ((fileIndex = nextFile.getAndIncrement()) < files.size()) {
+			FileExamples examples = files.get(fileIndex);
+			TermCounts[] columnCounts = new TermCounts[examples.columnNumbers.size()];
+			for (int i = 0; i < columnCounts.length; i++) {
+				String modelName = examples.modelNames.get(i);
+				columnCounts[i] = modelCounts.get(modelName);
+				if (columnCounts[i] == null) {
+					columnCounts[i] = new TermCounts();
+					modelCounts.put(modelName, columnCounts[i]);
+				}
+			}
+			ExampleReader reader = new ExampleReader(examples, columnCounts, hasHeaderRow, tokenizer);
+			if (buffer != null) {
+				reader.setBuffer(buffer);
+			}
+			reader.read();
+			buffer = reader.getBuffer();
+		}
+		return modelCounts;
+	}
+
+	/**
+	 * The example columns of one file.
+	 */
+	private static class FileExamples {
+		final File file;
+		final CSVFormat format;
+		final List<Integer> columnNumbers = new ArrayList<Integer>();
+		final List<String> modelNames = new ArrayList<String>();
+
+		FileExamples(File file, CSVFormat format) {
+			this.file = file;
+			this.format = format;
+		}
+	}
+
+	/**
+	 * Counts the terms of one model by token ID, so that a string is
+	 * allocated only once per distinct term.
+	 */
+	private static class TermCounts implements Tokenizer.TokenHandler {
+		private final TokenInterner interner = new TokenInterner();
+		private int[] counts = new int[64];
+
+		public void handleToken(char[] buffer, int length) {
+			if (length >= ColumnAnalysis.MINIMAL_WORD_LENGTH) {
+				int id = interner.intern(buffer, length);
+				if (id == counts.length) {
+					counts = Arrays.copyOf(counts, counts.length * 2);
+				}
+				counts[id]++;
+			}
+		}
+
+		void addTo(Map<String, Integer> frequencies) {
+			for (int id = 0; id < interner.size(); id++) {
+				String term = interner.getToken(id);
+				Integer frequency = frequencies.get(term);
+				frequencies.put(term, frequency == null ? counts[id] : frequency + counts[id]);
+			}
+		}
+	}
+
+	/**
+	 * Tokenizes the example columns of a file into the counts of their
+	 * models.
+	 */
+	private static class ExampleReader extends CSVRecordReader {
+		private final int[] columnNumbers;
+		private final TermCounts[] columnCounts;
+		private final Tokenizer tokenizer;
+		private boolean skipRecord;
+
+		ExampleReader(FileExamples examples, TermCounts[] columnCounts,
+				boolean hasHeaderRow, Tokenizer tokenizer) {
+			super(examples.file, examples.format);
+			this.columnNumbers = new int[examples.columnNumbers.size()];
+			for (int i = 0; i < columnNumbers.length; i++) {
+				columnNumbers[i] = examples.columnNumbers.get(i);
+			}
+			this.columnCounts = columnCounts;
+			this.skipRecord = hasHeaderRow;
+			this.tokenizer = tokenizer;
+		}
+
+		@Override
+		protected void processRecord(CSVRecord record) {
+			if (skipRecord) {
+				skipRecord = false;
+				return;
+			}
+			int recordColumnCount = record.getColumnCount();
+			for (int i = 0; i < columnNumbers.length; i++) {
+				int columnNumber = columnNumbers[i];
+				if (columnNumber <= recordColumnCount
+						&& record.getFieldEnd(columnNumber) > record.getFieldStart(columnNumber)) {
+					tokenizer.tokenize(record.getValue(columnNumber), columnCounts[i]);
+				}
+			}
+		}
+	}
+}
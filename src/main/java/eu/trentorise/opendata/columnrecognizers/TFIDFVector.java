@@ -1,6 +1,8 @@
 package eu.trentorise.opendata.columnrecognizers;
 import java.io.File;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -10,6 +12,28 @@ import java.util.Map.Entry;
  * The TFIDF vector represents a column as term frequency - inverse document 
  * frequency vector.
  * 
+ * The vector is stored in compiled form: the IDs of its terms in a 
+ * TermVocabulary, in increasing order, a parallel array of component values
+ * and the precomputed norm. The inner product of two vectors is a merge of
+ * their ID arrays. The terms are added to the vocabulary of the inverse 
+ * column frequencies, so vectors built with different tables can't be 
+ * compared.
+ * 
+ * With a HashedInverseColumnFrequency the terms are hashed into the buckets
+ * of a HashedTermVocabulary instead, so a vector never has more components
+ * than there are buckets, however many terms the column has. The vector of
+ * a column is summed into the buckets while the column is tokenized, with 
+ * no map of its terms on the way.
+ * 
+ * Prototype vectors can be compacted with prune and quantize: pruning keeps
+ * only the heaviest terms, and quantization stores each component in 8 or 
+ * 16 bits (see QuantizedWeights). The TFIDFCompactor tool compacts model 
+ * files.
+ * 
+ * Vectors are immutable. A prototype learns from a labeled column with
+ * foldIn, which returns the updated prototype as a new vector, so a reader
+ * holding the old one is never disturbed (see PrototypeUpdater).
+ * 
  * Consult the following Wikipedia articles for some theoretical background:
  * 
  * http://en.wikipedia.org/wiki/Vector_space_model
@@ -20,44 +44,319 @@ import java.util.Map.Entry;
  */
 public class TFIDFVector {
 	/**
-	 * The terms and their associated component values (TF * IDF)
+	 * The vocabulary that the term IDs refer to
 	 */
-	Map<String, Double> vector = null;
+	private final TermVocabulary vocabulary;
 	
 	/**
-	 * Constructs the TFIDF vector.
+	 * The IDs of the terms, in increasing order
+	 */
+	private final int[] termIDs;
+	
+	/**
+	 * The key to the extra entry in quantized vector files holding the 
+	 * number of bits per component
+	 */
+	private final static String QUANTIZATION_BITS_KEY = "___QUANTIZATION_BITS___";
+	
+	/**
+	 * The key to the extra entry in quantized vector files holding the 
+	 * bits of the float scale factor
+	 */
+	private final static String SCALE_BITS_KEY = "___SCALE_BITS___";
+	
+	/**
+	 * The component value (TF * IDF) of each term, or null if the vector is 
+	 * quantized
+	 */
+	private final double[] components;
+	
+	/**
+	 * The quantized component values, or null
+	 */
+	private final QuantizedWeights quantizedComponents;
+	
+	/**
+	 * The length of the vector
+	 */
+	private final double norm;
+	
+	/**
+	 * The sum of squares of the components, summed in the order of the 
+	 * inner product
+	 */
+	private final double squaredNorm;
+	
+	/**
+	 * True if every term of the vector is stored; false for vectors that 
+	 * leave out the terms missing from the vocabulary
+	 */
+	private final boolean complete;
+	
+	/**
+	 * The bucket sums of each thread building hashed vectors
+	 */
+	private final static ThreadLocal<BucketSums> bucketSums = new ThreadLocal<BucketSums>();
+	
+	/**
+	 * Constructs the TFIDF vector. All the terms of the column are added to 
+	 * the vocabulary of the inverse frequencies.
 	 * 
 	 * @param column				The column
 	 * @param inverseFrequencies	The inverse column frequencies
 	 */
 	public TFIDFVector(Column column, InverseColumnFrequency inverseFrequencies) {
+		this(makeVector(column, inverseFrequencies, true));
+	}
+	
+	/**
+	 * Constructs a copy of a vector.
+	 * 
+	 * @param vector	The vector
+	 */
+	private TFIDFVector(TFIDFVector vector) {
 		super();
-		Map<String, Integer> termFrequencies = column.computeWordFrequencies();
-		vector = new HashMap<String, Double>();
-		for (Entry<String, Integer> termFrequency : termFrequencies.entrySet()) {
-			String term = termFrequency.getKey();
-			Integer frequency = termFrequency.getValue();
-			double weight = inverseFrequencies.getInverseFrequency(term);
-			double component = ((double)frequency) * weight;
-			vector.put(term, component); 
-		}
+		this.vocabulary = vector.vocabulary;
+		this.termIDs = vector.termIDs;
+		this.components = vector.components;
+		this.quantizedComponents = vector.quantizedComponents;
+		this.complete = vector.complete;
+		this.squaredNorm = vector.squaredNorm;
+		this.norm = vector.norm;
 	}
 	
 	/**
 	 * Constructs the TFIDF vector.
 	 * 
-	 * @param vector	The term component values
+	 * @param vector		The terms and their component values
+	 * @param vocabulary	The vocabulary
+	 * @param addTerms		True to add the terms missing from the vocabulary;
+	 * 						false to leave them out (they still count in the 
+	 * 						norm)
+	 * @param storedKeys	True if the keys are as stored in vector files, 
+	 * 						with the components already signed
 	 */
-	private TFIDFVector(Map<String, Double> vector) {
+	private TFIDFVector(Map<String, Double> vector, TermVocabulary vocabulary, 
+			boolean addTerms, boolean storedKeys) {
 		super();
-		this.vector = vector;
+		this.vocabulary = vocabulary;
+		
+		// Sort the components by term ID, packing ID and position into a long
+		long[] keys = new long[vector.size()];
+		double[] values = new double[vector.size()];
+		double sumOfSquares = 0;
+		int count = 0;
+		for (Entry<String, Double> termComponent : vector.entrySet()) {
+			double component = termComponent.getValue();
+			String term = termComponent.getKey();
+			int id;
+			if (storedKeys) {
+				id = vocabulary.addStoredKey(term);
+			} else {
+				id = addTerms ? vocabulary.addTerm(term) : vocabulary.getID(term);
+				component *= vocabulary.getSign(term);
+			}
+			if (id >= 0) {
+				keys[count] = ((long)id << 32) | count;
+				values[count] = component;
+				count++;
+			} else {
+				sumOfSquares += component * component;
+			}
+		}
+		complete = count == vector.size();
+		Arrays.sort(keys, 0, count);
+		
+		// Terms hashed into the same bucket share a component
+		int[] sortedIDs = new int[count];
+		double[] sortedComponents = new double[count];
+		int distinctCount = 0;
+		for (int i = 0; i < count; i++) {
+			int id = (int)(keys[i] >>> 32);
+			double component = values[(int)keys[i]];
+			if (distinctCount > 0 && sortedIDs[distinctCount - 1] == id) {
+				sortedComponents[distinctCount - 1] += component;
+			} else {
+				sortedIDs[distinctCount] = id;
+				sortedComponents[distinctCount] = component;
+				distinctCount++;
+			}
+		}
+		if (distinctCount < count) {
+			sortedIDs = Arrays.copyOf(sortedIDs, distinctCount);
+			sortedComponents = Arrays.copyOf(sortedComponents, distinctCount);
+		}
+		termIDs = sortedIDs;
+		components = sortedComponents;
+		quantizedComponents = null;
+		squaredNorm = computeSquaredNorm(sumOfSquares, components, null);
+		norm = Math.sqrt(squaredNorm);
 	}
 	
 	/**
-	 * Builds a prototype model file. 
+	 * Constructs the TFIDF vector from sorted arrays, with either the 
+	 * component values or the quantized values.
+	 * 
+	 * @param vocabulary			The vocabulary
+	 * @param termIDs				The term IDs, in increasing order
+	 * @param components			The component values, or null
+	 * @param quantizedComponents	The quantized component values, or null
+	 * @param complete				True if every term is stored
+	 */
+	private TFIDFVector(TermVocabulary vocabulary, int[] termIDs, double[] components, 
+			QuantizedWeights quantizedComponents, boolean complete) {
+		super();
+		this.vocabulary = vocabulary;
+		this.termIDs = termIDs;
+		this.components = components;
+		this.quantizedComponents = quantizedComponents;
+		this.complete = complete;
+		this.squaredNorm = computeSquaredNorm(0, components, quantizedComponents);
+		this.norm = Math.sqrt(squaredNorm);
+	}
+
+	/**
+	 * Computes the squared length of a vector.
+	 * 
+	 * @param sumOfSquares			The sum of squares of the components 
+	 * 								left out of the arrays
+	 * @param components			The component values, or null
+	 * @param quantizedComponents	The quantized component values, or null
+	 * @return						The squared norm
+	 */
+	private static double computeSquaredNorm(double sumOfSquares, double[] components, 
+			QuantizedWeights quantizedComponents) {
+		int count = components != null ? components.length : quantizedComponents.size();
+		for (int i = 0; i < count; i++) {
+			// Same order as the inner product, so that the inner product of
+			// a vector with itself is exactly its squared norm
+			double component = components != null 
+					? components[i] : quantizedComponents.get(i);
+			sumOfSquares += component * component;
+		}
+		return sumOfSquares;
+	}
+	
+	/**
+	 * Constructs the vector of a column for comparison with prototype 
+	 * vectors. Terms that aren't in the vocabulary can't match a prototype 
+	 * term, so they are left out; they still count in the norm.
+	 * 
+	 * @param column				The column
+	 * @param inverseFrequencies	The inverse column frequencies
+	 * @return						The new vector
+	 */
+	static TFIDFVector makeObservationVector(Column column, 
+			InverseColumnFrequency inverseFrequencies) {
+		return makeVector(column, inverseFrequencies, false);
+	}
+	
+	/**
+	 * Constructs the vector of a column.
+	 * 
+	 * @param column				The column
+	 * @param inverseFrequencies	The inverse column frequencies
+	 * @param addTerms				True to add the terms missing from the 
+	 * 								vocabulary; false to leave them out
+	 * @return						The new vector
+	 */
+	private static TFIDFVector makeVector(Column column, 
+			InverseColumnFrequency inverseFrequencies, 
+			boolean addTerms) {
+		if (inverseFrequencies instanceof HashedInverseColumnFrequency) {
+			// Every term has a bucket, so none is left out
+			return makeHashedVector(column, (HashedInverseColumnFrequency)inverseFrequencies);
+		}
+		return new TFIDFVector(computeComponents(column, inverseFrequencies), 
+				inverseFrequencies.getVocabulary(), 
+				addTerms, 
+				false);
+	}
+	
+	/**
+	 * Constructs the vector of a column with hashed inverse frequencies. The
+	 * signed TF * IDF of each token is added to its bucket as the column is 
+	 * tokenized, so the memory taken depends on the number of buckets, not 
+	 * on the number of distinct terms.
+	 * 
+	 * @param column				The column
+	 * @param inverseFrequencies	The hashed inverse column frequencies
+	 * @return						The new vector
+	 */
+	private static TFIDFVector makeHashedVector(Column column, 
+			HashedInverseColumnFrequency inverseFrequencies) {
+		BucketSums sums = bucketSums.get();
+		if (sums == null || sums.size() != inverseFrequencies.getVocabulary().size()) {
+			sums = new BucketSums(inverseFrequencies.getVocabulary().size());
+			bucketSums.set(sums);
+		}
+		try {
+			sums.inverseFrequencies = inverseFrequencies;
+			Tokenizer tokenizer = new Tokenizer();
+			for (String field : column.getNonEmptyValues()) {
+				tokenizer.tokenize(field, sums);
+			}
+			return sums.toVector();
+		} finally {
+			sums.clear();
+		}
+	}
+	
+	/**
+	 * Constructs a prototype vector from term frequencies counted over one
+	 * or more example columns. All the terms are added to the vocabulary of
+	 * the inverse frequencies.
+	 * 
+	 * @param termFrequencies		The number of occurrences of each term
+	 * @param inverseFrequencies	The inverse column frequencies
+	 * @return						The new vector
+	 */
+	static TFIDFVector makePrototypeVector(Map<String, Integer> termFrequencies, 
+			InverseColumnFrequency inverseFrequencies) {
+		return new TFIDFVector(computeComponents(termFrequencies, inverseFrequencies), 
+				inverseFrequencies.getVocabulary(), 
+				true, 
+				false);
+	}
+	
+	/**
+	 * Computes the TF * IDF component value of each term of a column.
+	 * 
+	 * @param column				The column
+	 * @param inverseFrequencies	The inverse column frequencies
+	 * @return						The component values by term
+	 */
+	private static Map<String, Double> computeComponents(Column column, 
+			InverseColumnFrequency inverseFrequencies) {
+		return computeComponents(column.computeWordFrequencies(), inverseFrequencies);
+	}
+	
+	/**
+	 * Computes the TF * IDF component value of each term.
+	 * 
+	 * @param termFrequencies		The number of occurrences of each term
+	 * @param inverseFrequencies	The inverse column frequencies
+	 * @return						The component values by term
+	 */
+	private static Map<String, Double> computeComponents(Map<String, Integer> termFrequencies, 
+			InverseColumnFrequency inverseFrequencies) {
+		Map<String, Double> vector = new HashMap<String, Double>();
+		for (Entry<String, Integer> termFrequency : termFrequencies.entrySet()) {
+			String term = termFrequency.getKey();
+			Integer frequency = termFrequency.getValue();
+			double weight = inverseFrequencies.getInverseFrequency(term);
+			double component = ((double)frequency) * weight;
+			vector.put(term, component); 
+		}
+		return vector;
+	}
+	
+	/**
+	 * Builds a prototype model file. With -hashed, the inverse frequency file
+	 * is a hashed one and the prototype is hashed too.
 	 * <p>
 	 * The arguments:
-	 * 	<csv_file> <column_separator> <column_number> <inverse_freq_file> <output_file>
+	 * 	[-hashed] <csv_file> <column_separator> <column_number> <inverse_freq_file> <output_file>
 	 * 
 	 * @param args
 	 */
@@ -65,14 +364,19 @@ public class TFIDFVector {
 		final int MIN_ARG_COUNT = 5;
 		final int NUMBER_OF_HEADER_ROWS = 1;
 		
-		if (args.length < MIN_ARG_COUNT) {
-			System.out.println("Usage: TFIDFVector <csv_file_path> <column_separator> " +
+		int argIndex = 0;
+		boolean hashed = args.length > 0 && args[0].equals("-hashed");
+		if (hashed) {
+			argIndex++;
+		}
+		
+		if (args.length - argIndex < MIN_ARG_COUNT) {
+			System.out.println("Usage: TFIDFVector [-hashed] <csv_file_path> <column_separator> " +
 					"<column_number> <inverse_freq_file> <output_file>");
 			System.exit(1);
 		}
 		
-		int argIndex = 0;
-		
+
 		String csvPath = args[argIndex++];
 		char columnSeparator = args[argIndex++].charAt(0);
 		int columnNumber = Integer.parseInt(args[argIndex++]);
@@ -83,8 +387,9 @@ public class TFIDFVector {
 		table.removeHeaders(NUMBER_OF_HEADER_ROWS);
 		Column column = table.extractColumn(columnNumber);
 		File inverseFrequencyFile = new File(inverseFreqPath);
-		InverseColumnFrequency inverseFrequencies 
-			= InverseColumnFrequency.readFromFile(inverseFrequencyFile);
+		InverseColumnFrequency inverseFrequencies = hashed
+			? HashedInverseColumnFrequency.readFromFile(inverseFrequencyFile)
+			: InverseColumnFrequency.readFromFile(inverseFrequencyFile);
 		TFIDFVector prototype = new TFIDFVector(column, inverseFrequencies);
 		File outputFile = new File(outputPath);
 		prototype.writeToFile(outputFile);
@@ -96,36 +401,234 @@ public class TFIDFVector {
 	 * @param file	The output file
 	 */
 	public void writeToFile(File file) {
+		if (!complete) {
+			throw new IllegalStateException("Vector lacks the terms missing from the vocabulary");
+		}
+		Map<String, Double> vector = new HashMap<String, Double>();
+		if (quantizedComponents == null) {
+			for (int i = 0; i < termIDs.length; i++) {
+				vector.put(vocabulary.getStoredKey(termIDs[i]), components[i]);
+			}
+		} else {
+			// The codes and the scale bits are integers, so they are stored 
+			// exactly
+			vector.put(QUANTIZATION_BITS_KEY, (double)quantizedComponents.getBits());
+			vector.put(SCALE_BITS_KEY, 
+					(double)Float.floatToIntBits(quantizedComponents.getScale()));
+			for (int i = 0; i < termIDs.length; i++) {
+				vector.put(vocabulary.getStoredKey(termIDs[i]), 
+						(double)quantizedComponents.getCode(i));
+			}
+		}
 		WordScoreWriter writer = new WordScoreWriter(file, vector);
 		writer.write();
 	}
 	
 	/**
-	 * Loads a vector from a file.
+	 * Loads a vector from a file. The terms are added to the default 
+	 * vocabulary, so the vector can only be compared with other vectors 
+	 * read this way.
 	 * 
 	 * @param file	The input file
 	 * @return		The new vector
 	 */
 	public static TFIDFVector readFromFile(File file) {
+		return readFromFile(file, TermVocabulary.getDefault());
+	}
+
+	/**
+	 * Loads a vector from a file, in a given vocabulary, usually that of
+	 * the inverse column frequencies the vector was built with.
+	 * 
+	 * @param file			The input file
+	 * @param vocabulary	The vocabulary
+	 * @return				The new vector
+	 */
+	public static TFIDFVector readFromFile(File file, TermVocabulary vocabulary) {
 		WordScoreReader reader = new WordScoreReader(file);
 		reader.read();
-		Map<String, Double> vector = reader.getWordScores();
-		return new TFIDFVector(vector);
+		return fromStoredScores(reader.getWordScores(), vocabulary);
 	}
 
 	/**
-	 * Loads a vector from a stream.
+	 * Loads a vector from a stream. The terms are added to the default 
+	 * vocabulary, as with readFromFile(File).
 	 * 
 	 * @param stream	The input stream
 	 * @return			The new vector
 	 */
 	public static TFIDFVector readFromStream(InputStream stream) {
+		return readFromStream(stream, TermVocabulary.getDefault());
+	}
+
+	/**
+	 * Loads a vector from a stream, in a given vocabulary. A vector that is
+	 * compared with columns must be read in the vocabulary of the inverse 
+	 * column frequencies it was built with.
+	 * 
+	 * @param stream		The input stream
+	 * @param vocabulary	The vocabulary
+	 * @return				The new vector
+	 */
+	public static TFIDFVector readFromStream(InputStream stream, TermVocabulary vocabulary) {
 		WordScoreReader reader = new WordScoreReader(stream);
 		reader.read();
-		Map<String, Double> vector = reader.getWordScores();
-		return new TFIDFVector(vector);
+		return fromStoredScores(reader.getWordScores(), vocabulary);
+	}
+
+	/**
+	 * Constructs a vector from the entries of a vector file.
+	 * 
+	 * @param vector		The stored keys and their values
+	 * @param vocabulary	The vocabulary
+	 * @return				The new vector
+	 */
+	private static TFIDFVector fromStoredScores(Map<String, Double> vector, 
+			TermVocabulary vocabulary) {
+		Double bits = vector.get(QUANTIZATION_BITS_KEY);
+		if (bits == null) {
+			return new TFIDFVector(vector, vocabulary, true, true);
+		}
+		
+		Double scaleBits = vector.get(SCALE_BITS_KEY);
+		float scale = scaleBits == null ? 0 : Float.intBitsToFloat(scaleBits.intValue());
+		long[] keys = new long[vector.size()];
+		int count = 0;
+		for (Entry<String, Double> termCode : vector.entrySet()) {
+			String key = termCode.getKey();
+			if (!key.equals(QUANTIZATION_BITS_KEY) && !key.equals(SCALE_BITS_KEY)) {
+				int id = vocabulary.addStoredKey(key);
+				keys[count++] = ((long)id << 32) | (termCode.getValue().intValue() & 0xffffffffL);
+			}
+		}
+		Arrays.sort(keys, 0, count);
+		int[] termIDs = new int[count];
+		int[] codes = new int[count];
+		for (int i = 0; i < count; i++) {
+			termIDs[i] = (int)(keys[i] >>> 32);
+			codes[i] = (int)keys[i];
+		}
+		return new TFIDFVector(vocabulary, termIDs, null, 
+				QuantizedWeights.fromCodes(bits.intValue(), scale, codes), 
+				true);
+	}
+	
+	/**
+	 * Returns a copy of the vector with only its heaviest terms: at most 
+	 * maxTerms of them, and no more than needed to make up massFraction of 
+	 * the sum of squares of the components. The norm of the copy counts the
+	 * kept terms only.
+	 * 
+	 * @param maxTerms		The largest number of terms, or 0 for no limit
+	 * @param massFraction	The fraction (0 to 1) of the squared norm to keep
+	 * @return				The pruned vector
+	 */
+	public TFIDFVector prune(int maxTerms, double massFraction) {
+		final double[] values = getComponents();
+		Integer[] order = new Integer[values.length];
+		double totalMass = 0;
+		for (int i = 0; i < values.length; i++) {
+			order[i] = i;
+			totalMass += values[i] * values[i];
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i, Integer j) {
+				return Double.compare(Math.abs(values[j]), Math.abs(values[i]));
+			}
+		});
+		
+		boolean[] kept = new boolean[values.length];
+		int keptCount = 0;
+		double keptMass = 0;
+		for (int i : order) {
+			if ((maxTerms > 0 && keptCount >= maxTerms) 
+					|| (massFraction < 1 && keptCount > 0 && keptMass >= massFraction * totalMass)) {
+				break;
+			}
+			kept[i] = true;
+			keptCount++;
+			keptMass += values[i] * values[i];
+		}
+		
+		int[] keptIDs = new int[keptCount];
+		double[] keptComponents = new double[keptCount];
+		int count = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (kept[i]) {
+				keptIDs[count] = termIDs[i];
+				keptComponents[count] = values[i];
+				count++;
+			}
+		}
+		return new TFIDFVector(vocabulary, keptIDs, keptComponents, null, complete);
+	}
+	
+	/**
+	 * Returns a copy of the vector with its components quantized.
+	 * 
+	 * @param bits	The number of bits per component: 8 or 16
+	 * @return		The quantized vector
+	 */
+	public TFIDFVector quantize(int bits) {
+		return new TFIDFVector(vocabulary, termIDs, null, 
+				QuantizedWeights.quantize(getComponents(), bits), 
+				complete);
 	}
 	
+	/**
+	 * Returns the running centroid of a prototype after one more labeled
+	 * example: decay times this vector plus (1 - decay) times the example,
+	 * both scaled to unit length first, so that a long column doesn't
+	 * outweigh the prototype. The norm of the result is summed over its 
+	 * components, as for any other vector.
+	 * 
+	 * The example should be built with the public constructor, so that its
+	 * new terms are added to the vocabulary and can enter the prototype.
+	 * The result is never quantized.
+	 * 
+	 * @param example	The vector of the labeled column
+	 * @param decay		The weight (0 to 1) of the current prototype
+	 * @return			The updated prototype
+	 */
+	public TFIDFVector foldIn(TFIDFVector example, double decay) {
+		assert(vocabulary == example.vocabulary);
+		if (decay < 0 || decay > 1) {
+			throw new IllegalArgumentException("Decay out of range: " + decay);
+		}
+		if (example.norm() == 0) {
+			return this;
+		}
+		double weight = norm() == 0 ? 0 : decay / norm();
+		double exampleWeight = (1 - decay) / example.norm();
+
+		// Merge the term IDs, computing the inner product on the way
+		int[] exampleIDs = example.termIDs;
+		int[] mergedIDs = new int[termIDs.length + exampleIDs.length];
+		double[] mergedComponents = new double[mergedIDs.length];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < termIDs.length || j < exampleIDs.length) {
+			if (j == exampleIDs.length || (i < termIDs.length && termIDs[i] < exampleIDs[j])) {
+				mergedIDs[count] = termIDs[i];
+				mergedComponents[count++] = weight * getComponentAt(i++);
+			} else if (i == termIDs.length || termIDs[i] > exampleIDs[j]) {
+				mergedIDs[count] = exampleIDs[j];
+				mergedComponents[count++] = exampleWeight * example.getComponentAt(j++);
+			} else {
+				double component = getComponentAt(i++);
+				double exampleComponent = example.getComponentAt(j++);
+				mergedIDs[count] = exampleIDs[j - 1];
+				mergedComponents[count++] = weight * component + exampleWeight * exampleComponent;
+			}
+		}
+		return new TFIDFVector(vocabulary,
+				Arrays.copyOf(mergedIDs, count),
+				Arrays.copyOf(mergedComponents, count),
+				null,
+				complete && example.complete);
+	}
+
 	/**
 	 * Calculates the cosine between two vectors.
 	 * 
@@ -133,7 +636,10 @@ public class TFIDFVector {
 	 * @return			The cosine
 	 */
 	public double cosineSimilarity(TFIDFVector other) {
-		double denominator = norm() * other.norm();
+		// The root of the product of the squared norms, rather than the 
+		// product of the norms, so that a vector has exactly cosine 1 with 
+		// itself
+		double denominator = Math.sqrt(squaredNorm * other.squaredNorm);
 		return denominator == 0 ? 0 : innerProduct(other) / denominator;
 	}
 
@@ -144,28 +650,39 @@ public class TFIDFVector {
 	 * @return			The inner product
 	 */
 	public double innerProduct(TFIDFVector other) {
+		assert(vocabulary == other.vocabulary);
+		int[] otherIDs = other.termIDs;
 		double innerProduct = 0;
-		for (Entry<String, Double> termComponent : vector.entrySet()) {
-			String term = termComponent.getKey();
-			double component = termComponent.getValue();
-			if (other.contains(term)) {
-				innerProduct += component * other.getComponent(term);
+		int i = 0;
+		int j = 0;
+		while (i < termIDs.length && j < otherIDs.length) {
+			if (termIDs[i] < otherIDs[j]) {
+				i++;
+			} else if (termIDs[i] > otherIDs[j]) {
+				j++;
+			} else {
+				innerProduct += getComponentAt(i++) * other.getComponentAt(j++);
 			}
 		}
 		return innerProduct;
 	}
 
 	/**
-	 * Calculates the length of the vector.
+	 * Returns the length of the vector.
 	 * 
 	 * @return	The vector norm
 	 */
 	public double norm() {
-		double sumOfSquares = 0;
-		for (double component : vector.values()) {
-			sumOfSquares += Math.pow(component, 2);
-		}
-		return Math.sqrt(sumOfSquares);
+		return norm;
+	}
+
+	/**
+	 * Returns the sum of squares of the components.
+	 * 
+	 * @return	The squared norm
+	 */
+	double squaredNorm() {
+		return squaredNorm;
 	}
 
 	/**
@@ -175,7 +692,7 @@ public class TFIDFVector {
 	 * @return			True if component exists
 	 */
 	public boolean contains(String term) {
-		return vector.containsKey(term);
+		return findTerm(term) >= 0;
 	}
 
 	/**
@@ -185,6 +702,158 @@ public class TFIDFVector {
 	 * @return			The vector component value
 	 */
 	public double getComponent(String term) {
-		return vector.get(term);
+		return getComponentAt(findTerm(term));
+	}
+
+	/**
+	 * Returns the number of terms stored.
+	 * 
+	 * @return	The number of terms
+	 */
+	public int getTermCount() {
+		return termIDs.length;
+	}
+
+	/**
+	 * Returns true if the components are quantized.
+	 * 
+	 * @return	True if the vector is quantized
+	 */
+	public boolean isQuantized() {
+		return quantizedComponents != null;
+	}
+
+	/**
+	 * Returns the vocabulary of the term IDs.
+	 * 
+	 * @return	The vocabulary
+	 */
+	TermVocabulary getVocabulary() {
+		return vocabulary;
+	}
+
+	/**
+	 * Returns the term IDs, in increasing order. The array must not be 
+	 * modified.
+	 * 
+	 * @return	The term IDs
+	 */
+	int[] getTermIDs() {
+		return termIDs;
+	}
+
+	/**
+	 * Returns the component values, parallel to the term IDs. The array must
+	 * not be modified. The values of a quantized vector are decoded into a
+	 * new array.
+	 * 
+	 * @return	The component values
+	 */
+	double[] getComponents() {
+		if (components != null) {
+			return components;
+		}
+		double[] values = new double[termIDs.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = quantizedComponents.get(i);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns a component value by position in the term ID array.
+	 * 
+	 * @param i		The position
+	 * @return		The component value
+	 */
+	double getComponentAt(int i) {
+		return components != null ? components[i] : quantizedComponents.get(i);
+	}
+
+	/**
+	 * The sums of the components of a hashed vector by bucket, with the 
+	 * buckets touched so far, so that only those are read and cleared.
+	 */
+	private static class BucketSums implements Tokenizer.TokenHandler {
+		/**
+		 * The sum of each bucket
+		 */
+		private final double[] sums;
+		
+		/**
+		 * One bit per bucket, set once the bucket is touched
+		 */
+		private final long[] touched;
+		
+		/**
+		 * The buckets touched, in order of first touch
+		 */
+		private int[] buckets = new int[64];
+		
+		/**
+		 * The number of buckets touched
+		 */
+		private int count = 0;
+		
+		/**
+		 * The inverse frequencies of the vector being built
+		 */
+		HashedInverseColumnFrequency inverseFrequencies = null;
+		
+		BucketSums(int size) {
+			sums = new double[size];
+			touched = new long[(size + 63) >>> 6];
+		}
+		
+		int size() {
+			return sums.length;
+		}
+		
+		public void handleToken(char[] buffer, int length) {
+			if (length >= ColumnAnalysis.MINIMAL_WORD_LENGTH) {
+				int hash = HashedTermVocabulary.hash(buffer, length);
+				int bucket = inverseFrequencies.getVocabulary().getBucket(hash);
+				if ((touched[bucket >>> 6] & (1L << bucket)) == 0) {
+					touched[bucket >>> 6] |= 1L << bucket;
+					if (count == buckets.length) {
+						buckets = Arrays.copyOf(buckets, count * 2);
+					}
+					buckets[count++] = bucket;
+				}
+				// The sign of a term is the sign of its hash
+				double inverseFrequency = inverseFrequencies.getBucketInverseFrequency(bucket);
+				sums[bucket] += hash < 0 ? -inverseFrequency : inverseFrequency;
+			}
+		}
+		
+		TFIDFVector toVector() {
+			int[] termIDs = Arrays.copyOf(buckets, count);
+			Arrays.sort(termIDs);
+			double[] values = new double[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = sums[termIDs[i]];
+			}
+			return new TFIDFVector(inverseFrequencies.getVocabulary(), termIDs, values, null, true);
+		}
+		
+		void clear() {
+			for (int i = 0; i < count; i++) {
+				sums[buckets[i]] = 0;
+				touched[buckets[i] >>> 6] = 0;
+			}
+			count = 0;
+			inverseFrequencies = null;
+		}
+	}
+
+	/**
+	 * Finds the position of a term in the arrays.
+	 * 
+	 * @param term		The term
+	 * @return			The position, or a negative number if absent
+	 */
+	private int findTerm(String term) {
+		int id = vocabulary.getID(term);
+		return id < 0 ? -1 : Arrays.binarySearch(termIDs, id);
 	}
 }
@@ -0,0 +1,245 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The TermFrequencySketch estimates the term frequencies of a column in
+ * bounded memory, however many rows the column has. It combines a count-min
+ * sketch, which estimates the frequency of any term, with a list of the
+ * most frequent terms seen (the heavy hitters), whose estimates stand in for
+ * the exact term frequencies in TF-IDF vectors.
+ *
+ * The sketch is a table of depth rows of width counters. Each term adds one
+ * to a counter per row, chosen by a hash function of the row; its estimate
+ * is the smallest of these counters. With width e / epsilon and depth
+ * ln(1 / delta), an estimate exceeds the true frequency by more than
+ * epsilon times the number of terms counted with probability at most delta,
+ * and it is never below it. Only the counters that hold the smallest value
+ * are incremented (the conservative update), which makes the estimates
+ * tighter still.
+ *
+ * A term is tracked as a heavy hitter when its estimate exceeds the
+ * smallest estimate in the list, which it then replaces once the list is
+ * full. A word that can't enter the list is counted without allocating a
+ * string for it.
+ *
+ * A sketch is not thread-safe.
+ *
+ * @author Simon
+ *
+ */
+public class TermFrequencySketch implements Tokenizer.TokenHandler {
+	/**
+	 * The largest number of counters per row
+	 */
+	private static final int MAX_WIDTH = 1 << 24;
+
+	/**
+	 * The number of counters per row, a power of two
+	 */
+	private final int width;
+
+	/**
+	 * The number of rows
+	 */
+	private final int depth;
+
+	/**
+	 * The counters, row after row
+	 */
+	private final int[] counters;
+
+	/**
+	 * The counter positions of the current term, one per row
+	 */
+	private final int[] positions;
+
+	/**
+	 * The largest number of heavy hitters
+	 */
+	private final int heavyHitterCount;
+
+	/**
+	 * The estimated frequency of each heavy hitter
+	 */
+	private final Map<String, int[]> heavyHitters;
+
+	/**
+	 * A lower bound to the smallest estimate in the full heavy hitter list;
+	 * terms with an estimate up to this can't enter the list
+	 */
+	private int admissionCount = 0;
+
+	/**
+	 * The number of terms counted
+	 */
+	private long totalCount = 0;
+
+	/**
+	 * Constructs the sketch.
+	 *
+	 * @param epsilon			The error of the estimates, as a fraction of
+	 * 							the number of terms counted
+	 * @param delta				The probability that an estimate exceeds the
+	 * 							error
+	 * @param heavyHitterCount	The number of most frequent terms kept
+	 */
+	public TermFrequencySketch(double epsilon, double delta, int heavyHitterCount) {
+		super();
+		if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1 || heavyHitterCount <= 0) {
+			throw new IllegalArgumentException("Invalid sketch parameters");
+		}
+		int minWidth = (int)Math.min(MAX_WIDTH, Math.ceil(Math.E / epsilon));
+		int powerOfTwo = Integer.highestOneBit(minWidth);
+		width = powerOfTwo < minWidth ? powerOfTwo << 1 : powerOfTwo;
+		depth = Math.max(1, (int)Math.ceil(Math.log(1 / delta)));
+		counters = new int[width * depth];
+		positions = new int[depth];
+		this.heavyHitterCount = heavyHitterCount;
+		heavyHitters = new HashMap<String, int[]>(heavyHitterCount * 2);
+	}
+
+	/**
+	 * Counts a word, if it is long enough to be a term.
+	 */
+	public void handleToken(char[] buffer, int length) {
+		if (length < ColumnAnalysis.MINIMAL_WORD_LENGTH) {
+			return;
+		}
+		totalCount++;
+
+		// Double hashing: row i uses hash1 + i * hash2
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + buffer[i];
+		}
+		int hash1 = mix(hash);
+		int hash2 = mix(hash ^ 0x5bd1e995) | 1;
+		int estimate = Integer.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			positions[row] = row * width + ((hash1 + row * hash2) & (width - 1));
+			estimate = Math.min(estimate, counters[positions[row]]);
+		}
+		estimate++;
+		for (int row = 0; row < depth; row++) {
+			if (counters[positions[row]] < estimate) {
+				counters[positions[row]] = estimate;
+			}
+		}
+
+		if (estimate > admissionCount) {
+			updateHeavyHitters(new String(buffer, 0, length), estimate);
+		}
+	}
+
+	/**
+	 * Counts the terms of a column.
+	 *
+	 * @param column	The column
+	 */
+	public void addColumn(Column column) {
+		Tokenizer tokenizer = new Tokenizer();
+		for (String field : column.getNonEmptyValues()) {
+			tokenizer.tokenize(field, this);
+		}
+	}
+
+	/**
+	 * Returns the estimated frequencies of the most frequent terms.
+	 *
+	 * @return	The estimated frequency of each heavy hitter
+	 */
+	public Map<String, Integer> getHeavyHitters() {
+		Map<String, Integer> frequencies = new HashMap<String, Integer>(heavyHitters.size() * 2);
+		for (Entry<String, int[]> heavyHitter : heavyHitters.entrySet()) {
+			frequencies.put(heavyHitter.getKey(), heavyHitter.getValue()[0]);
+		}
+		return frequencies;
+	}
+
+	/**
+	 * Estimates the frequency of a term.
+	 *
+	 * @param term	The term
+	 * @return		The estimate, never below the true frequency
+	 */
+	public int estimateFrequency(String term) {
+		int hash = term.hashCode();
+		int hash1 = mix(hash);
+		int hash2 = mix(hash ^ 0x5bd1e995) | 1;
+		int estimate = Integer.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counters[row * width + ((hash1 + row * hash2) & (width - 1))]);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Returns the number of terms counted.
+	 *
+	 * @return	The number of terms
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Returns the number of counters of the sketch.
+	 *
+	 * @return	The width times the depth
+	 */
+	public int getCounterCount() {
+		return counters.length;
+	}
+
+	/**
+	 * Records a new estimate of a term that may be a heavy hitter.
+	 *
+	 * @param term		The term
+	 * @param estimate	Its estimated frequency
+	 */
+	private void updateHeavyHitters(String term, int estimate) {
+		int[] count = heavyHitters.get(term);
+		if (count != null) {
+			count[0] = estimate;
+			return;
+		}
+		if (heavyHitters.size() < heavyHitterCount) {
+			heavyHitters.put(term, new int[] {estimate});
+			return;
+		}
+
+		// Replace the least frequent heavy hitter, if this term beats it
+		String minTerm = null;
+		int minCount = Integer.MAX_VALUE;
+		for (Entry<String, int[]> heavyHitter : heavyHitters.entrySet()) {
+			if (heavyHitter.getValue()[0] < minCount) {
+				minTerm = heavyHitter.getKey();
+				minCount = heavyHitter.getValue()[0];
+			}
+		}
+		if (estimate > minCount) {
+			heavyHitters.remove(minTerm);
+			heavyHitters.put(term, new int[] {estimate});
+		}
+		// Estimates only grow, so the smallest one stays a lower bound
+		admissionCount = minCount;
+	}
+
+	/**
+	 * Mixes the bits of a hash code (the finalizer of MurmurHash3).
+	 *
+	 * @param hash	The hash code
+	 * @return		The mixed hash code
+	 */
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
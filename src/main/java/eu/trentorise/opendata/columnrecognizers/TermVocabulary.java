@@ -0,0 +1,140 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The TermVocabulary assigns int IDs to terms, so that TF-IDF vectors can
+ * store their terms as sorted arrays of IDs. IDs are 0, 1, .. in order of
+ * addition and are never reused. Vectors can only be compared if their IDs
+ * come from the same vocabulary.
+ *
+ * The terms of prototype vectors are added when the prototypes are loaded.
+ * Vectors computed from the columns being recognized only look their terms
+ * up: a term that isn't in the vocabulary can't occur in any prototype, so
+ * it adds nothing to an inner product with one.
+ *
+ * Each InverseColumnFrequency has its own vocabulary, so the terms added 
+ * for prototypes, trained vectors and labeled columns are released with 
+ * the table rather than kept for the life of the process. The default 
+ * vocabulary only holds the terms of vectors read without a table (see 
+ * TFIDFVector.readFromFile(File)).
+ *
+ * The vocabulary is thread-safe.
+ *
+ * @author Simon
+ *
+ */
+public class TermVocabulary {
+	/**
+	 * The vocabulary of the vectors read without inverse column frequencies
+	 */
+	private static final TermVocabulary DEFAULT_VOCABULARY = new TermVocabulary();
+
+	/**
+	 * The ID of each term
+	 */
+	private final ConcurrentHashMap<String, Integer> termIDs
+		= new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * The terms by ID
+	 */
+	private final List<String> terms = new ArrayList<String>();
+
+	/**
+	 * Returns the vocabulary of the vectors read without inverse column 
+	 * frequencies.
+	 *
+	 * @return	The default vocabulary
+	 */
+	public static TermVocabulary getDefault() {
+		return DEFAULT_VOCABULARY;
+	}
+
+	/**
+	 * Returns the ID of a term.
+	 *
+	 * @param term	The term
+	 * @return		The ID, or -1 if the term isn't in the vocabulary
+	 */
+	public int getID(String term) {
+		Integer id = termIDs.get(term);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the ID of a term, adding the term if it is new.
+	 *
+	 * @param term	The term
+	 * @return		The ID
+	 */
+	public int addTerm(String term) {
+		Integer id = termIDs.get(term);
+		if (id == null) {
+			synchronized (terms) {
+				id = termIDs.get(term);
+				if (id == null) {
+					id = terms.size();
+					terms.add(term);
+					termIDs.put(term, id);
+				}
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the term with a given ID.
+	 *
+	 * @param id	The ID
+	 * @return		The term
+	 */
+	public String getTerm(int id) {
+		synchronized (terms) {
+			return terms.get(id);
+		}
+	}
+
+	/**
+	 * Returns the number of terms.
+	 *
+	 * @return	The vocabulary size
+	 */
+	public int size() {
+		return termIDs.size();
+	}
+
+	/**
+	 * Returns the sign applied to the component of a term. Only hashed 
+	 * vocabularies give some terms a negative sign.
+	 *
+	 * @param term	The term
+	 * @return		1 or -1
+	 */
+	double getSign(String term) {
+		return 1;
+	}
+
+	/**
+	 * Returns the key under which a term ID is stored in vector files.
+	 *
+	 * @param id	The ID
+	 * @return		The key
+	 */
+	String getStoredKey(int id) {
+		return getTerm(id);
+	}
+
+	/**
+	 * Returns the ID of a key read from a vector file, adding the term if
+	 * it is new.
+	 *
+	 * @param key	The key
+	 * @return		The ID
+	 */
+	int addStoredKey(String key) {
+		return addTerm(key);
+	}
+}
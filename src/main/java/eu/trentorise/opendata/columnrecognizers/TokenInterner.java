@@ -0,0 +1,128 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.util.Arrays;
+
+/**
+ * The TokenInterner assigns numeric IDs to words given as char buffers, such
+ * as those produced by the Tokenizer. The IDs are 0, 1, .. in order of first
+ * occurrence. A string is allocated only the first time a word is seen;
+ * later occurrences are found by hashing the buffer directly.
+ *
+ * An interner is not thread-safe.
+ *
+ * @author Simon
+ *
+ */
+public class TokenInterner {
+	/**
+	 * The initial size of the hash table (a power of two)
+	 */
+	private static final int INITIAL_TABLE_SIZE = 64;
+
+	/**
+	 * The hash table: token ID + 1 for each slot, or 0 for free slots
+	 */
+	private int[] table = new int[INITIAL_TABLE_SIZE];
+
+	/**
+	 * The tokens by ID
+	 */
+	private String[] tokens = new String[INITIAL_TABLE_SIZE / 2];
+
+	/**
+	 * The hash code of each token, by ID
+	 */
+	private int[] hashes = new int[INITIAL_TABLE_SIZE / 2];
+
+	/**
+	 * The number of tokens
+	 */
+	private int tokenCount = 0;
+
+	/**
+	 * Returns the ID of a token, assigning a new ID to tokens not seen
+	 * before.
+	 *
+	 * @param buffer	The buffer holding the token
+	 * @param length	The length of the token
+	 * @return			The token ID
+	 */
+	public int intern(char[] buffer, int length) {
+		int hash = hash(buffer, length);
+		int mask = table.length - 1;
+		int slot = hash & mask;
+		while (table[slot] != 0) {
+			int id = table[slot] - 1;
+			if (hashes[id] == hash && matches(tokens[id], buffer, length)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int id = tokenCount++;
+		if (id == tokens.length) {
+			tokens = Arrays.copyOf(tokens, tokens.length * 2);
+			hashes = Arrays.copyOf(hashes, hashes.length * 2);
+		}
+		tokens[id] = new String(buffer, 0, length);
+		hashes[id] = hash;
+		table[slot] = id + 1;
+		if (2 * tokenCount > table.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the token with a given ID.
+	 *
+	 * @param id	The token ID
+	 * @return		The token
+	 */
+	public String getToken(int id) {
+		return tokens[id];
+	}
+
+	/**
+	 * Returns the number of distinct tokens.
+	 *
+	 * @return	The number of tokens
+	 */
+	public int size() {
+		return tokenCount;
+	}
+
+	private static int hash(char[] buffer, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + buffer[i];
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean matches(String token, char[] buffer, int length) {
+		if (token.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (token.charAt(i) != buffer[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Doubles the size of the hash table.
+	 */
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int id = 0; id < tokenCount; id++) {
+			int slot = hashes[id] & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = id + 1;
+		}
+	}
+}
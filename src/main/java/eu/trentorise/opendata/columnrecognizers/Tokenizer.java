@@ -0,0 +1,111 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+/**
+ * The Tokenizer splits text into lowercase words without regular expressions
+ * and without allocating a string per word. A word is a maximal run of word
+ * characters in the Unicode sense: letters (including accented letters such
+ * as those of Italian text), digits, combining marks and connector
+ * punctuation such as the underscore.
+ *
+ * Each word is lowercased into a buffer that the tokenizer reuses, and handed
+ * to a TokenHandler, which must copy out whatever it wants to keep. A
+ * TokenInterner turns the words into numeric IDs and shared strings.
+ *
+ * A tokenizer is not thread-safe; use one per thread.
+ *
+ * @author Simon
+ *
+ */
+public class Tokenizer {
+	/**
+	 * The initial size of the word buffer
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 64;
+
+	/**
+	 * The zero width non-joiner and joiner, which count as word characters
+	 */
+	private static final int ZERO_WIDTH_NON_JOINER = 0x200C;
+	private static final int ZERO_WIDTH_JOINER = 0x200D;
+
+	/**
+	 * Receives the words found by a tokenizer.
+	 */
+	public interface TokenHandler {
+		/**
+		 * Handles a word. The buffer is overwritten by the next word.
+		 *
+		 * @param buffer	The buffer holding the lowercased word
+		 * @param length	The length of the word in chars
+		 */
+		public void handleToken(char[] buffer, int length);
+	}
+
+	/**
+	 * The buffer holding the current word
+	 */
+	private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+
+	/**
+	 * Splits text into words and passes them to a handler, in order.
+	 *
+	 * @param text		The text
+	 * @param handler	The handler
+	 */
+	public void tokenize(CharSequence text, TokenHandler handler) {
+		int length = text.length();
+		int tokenLength = 0;
+		int i = 0;
+		while (i < length) {
+			char c = text.charAt(i++);
+			int codePoint = c;
+			if (Character.isHighSurrogate(c) && i < length
+					&& Character.isLowSurrogate(text.charAt(i))) {
+				codePoint = Character.toCodePoint(c, text.charAt(i++));
+			}
+			if (isWordCharacter(codePoint)) {
+				if (tokenLength + 2 > buffer.length) {
+					char[] newBuffer = new char[buffer.length * 2];
+					System.arraycopy(buffer, 0, newBuffer, 0, tokenLength);
+					buffer = newBuffer;
+				}
+				tokenLength += Character.toChars(
+						Character.toLowerCase(codePoint), buffer, tokenLength);
+			} else if (tokenLength > 0) {
+				handler.handleToken(buffer, tokenLength);
+				tokenLength = 0;
+			}
+		}
+		if (tokenLength > 0) {
+			handler.handleToken(buffer, tokenLength);
+		}
+	}
+
+	/**
+	 * Returns true for the characters that make up words; these are the
+	 * characters matched by \w in Unicode mode.
+	 *
+	 * @param codePoint		The character
+	 * @return				True for a word character
+	 */
+	static boolean isWordCharacter(int codePoint) {
+		if (codePoint < 0x80) {
+			return (codePoint >= 'a' && codePoint <= 'z')
+					|| (codePoint >= 'A' && codePoint <= 'Z')
+					|| (codePoint >= '0' && codePoint <= '9')
+					|| codePoint == '_';
+		}
+		if (Character.isAlphabetic(codePoint) || Character.isDigit(codePoint)) {
+			return true;
+		}
+		switch (Character.getType(codePoint)) {
+		case Character.NON_SPACING_MARK:
+		case Character.COMBINING_SPACING_MARK:
+		case Character.ENCLOSING_MARK:
+		case Character.CONNECTOR_PUNCTUATION:
+			return true;
+		default:
+			return codePoint == ZERO_WIDTH_NON_JOINER || codePoint == ZERO_WIDTH_JOINER;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import java.io.File;
+import java.util.regex.Matcher;
+
+/**
+ * The TrainingManifestReader reads the list of example columns of a
+ * TFIDFTrainer. Each line gives an example column and the model it is an
+ * example of:
+ *
+ * 	<csv_file_path> <column_separator> <column_number> <model_name>
+ *
+ * The column number is one-based. A tab separator is written \t. Paths
+ * are relative to the manifest file unless they are absolute, and can't
+ * contain spaces. Comment lines start with the hash symbol.
+ *
+ * @author Simon
+ *
+ */
+public class TrainingManifestReader extends SyntaxPatternLineReader {
+	final static String LINE_SYNTAX = "(\\S+)\\s+(\\S+)\\s+([0-9]+)\\s+(\\w+)";
+	final static int PATH_POSITION = 1;
+	final static int SEPARATOR_POSITION = 2;
+	final static int COLUMN_NUMBER_POSITION = 3;
+	final static int MODEL_NAME_POSITION = 4;
+	final static String TAB_SEPARATOR = "\\t";
+
+	/**
+	 * The directory of the manifest file
+	 */
+	private final File baseDirectory;
+
+	/**
+	 * The trainer to which the examples are added
+	 */
+	private final TFIDFTrainer trainer;
+
+	/**
+	 * Constructs the reader.
+	 *
+	 * @param file		The manifest file
+	 * @param trainer	The trainer to which the examples will be added
+	 */
+	public TrainingManifestReader(File file, TFIDFTrainer trainer) {
+		super(file, LINE_SYNTAX);
+		this.baseDirectory = file.getAbsoluteFile().getParentFile();
+		this.trainer = trainer;
+	}
+
+	/**
+	 * Processes the matched line.
+	 */
+	@Override
+	protected void processMatch(Matcher matcher) {
+		File csvFile = new File(matcher.group(PATH_POSITION));
+		if (!csvFile.isAbsolute()) {
+			csvFile = new File(baseDirectory, csvFile.getPath());
+		}
+		String separator = matcher.group(SEPARATOR_POSITION);
+		char columnSeparator = separator.equals(TAB_SEPARATOR) ? '\t' : separator.charAt(0);
+		int columnNumber = Integer.parseInt(matcher.group(COLUMN_NUMBER_POSITION));
+		trainer.addExample(csvFile,
+				new CSVFormat(columnSeparator),
+				columnNumber,
+				matcher.group(MODEL_NAME_POSITION));
+	}
+}
@@ -79,9 +79,17 @@ public class TypeDetector {
 	public static Datatype guessType(Column column) {
 		int rowCount = column.size();
 		int requiredMatchCount = (int)Math.ceil(CONFIDENCE_THRESHOLD * rowCount);
+		if (column.getSource() instanceof NumericColumnSource) {
+			return guessNumericType((NumericColumnSource)column.getSource(), requiredMatchCount);
+		}
 		Map<Datatype, Integer> matchCounts = new HashMap<Datatype, Integer>();
-		for (int rowIndex = 0; rowIndex < rowCount; rowIndex++) {
-			Datatype cellType = guessType(column.getFieldAt(rowIndex));
+		// Empty cells are counted without going through the type checkers
+		int emptyCount = column.getEmptyCount();
+		if (emptyCount > 0) {
+			matchCounts.put(Datatype.EMPTY, emptyCount);
+		}
+		for (String value : column.getNonEmptyValues()) {
+			Datatype cellType = guessType(value);
 			if (matchCounts.containsKey(cellType)) {
 				matchCounts.put(cellType, matchCounts.get(cellType) + 1);
 			} else {
@@ -97,6 +105,30 @@ public class TypeDetector {
 		}
 		return foundType ? lastType : Datatype.STRING;		
 	}
+
+	/**
+	 * Guesses the type of a column of numbers, without parsing their text.
+	 * 
+	 * @param source				The column values
+	 * @param requiredMatchCount	The number of cells that must match
+	 * @return						The datatype
+	 */
+	private static Datatype guessNumericType(NumericColumnSource source, int requiredMatchCount) {
+		int rowCount = source.size();
+		if (rowCount == 0) {
+			return Datatype.STRING;
+		}
+		int missingCount = 0;
+		for (int rowIndex = 0; rowIndex < rowCount; rowIndex++) {
+			if (source.isMissing(rowIndex)) {
+				missingCount++;
+			}
+		}
+		if (rowCount - missingCount >= requiredMatchCount) {
+			return source.isIntegral() ? Datatype.INT : Datatype.FLOAT;
+		}
+		return missingCount >= requiredMatchCount ? Datatype.EMPTY : Datatype.STRING;
+	}
 	
 	
 	
@@ -1,6 +1,7 @@
 package eu.trentorise.opendata.columnrecognizers;
-import java.util.Iterator;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 
 import eu.trentorise.opendata.nlprise.DataTypeGuess.Datatype;
 
@@ -11,6 +12,11 @@ import eu.trentorise.opendata.nlprise.DataTypeGuess.Datatype;
  * 
  * This is a column-based heuristic, i.e, it operates on one column at a time.
  * 
+ * The value set is a CompactStringSet, so that large gazetteers fit in 
+ * memory; it can be loaded from a value set CSV file or a prebuilt binary 
+ * file (see RowTable.loadCompactValueSet). The largest sets can stay on 
+ * disk instead, in a DiskStringSet.
+ * 
  * @author Simon
  *
  */
@@ -18,7 +24,7 @@ public class ValueSetCR extends ColumnContentBasedCR {
 	/**
 	 * The set of values indicating the concept we are testing for.
 	 */
-	private Set<String> valueSet = null;
+	private StringSet valueSet = null;
 	
 	/**
 	 * Creates the column recognizer.
@@ -28,11 +34,38 @@ public class ValueSetCR extends ColumnContentBasedCR {
 	 * @param valueSet		The set of values indicating the concept
 	 * @param data			The table
 	 */
-	public ValueSetCR(String id, long conceptID, Set<String> valueSet, Table table) {
+	public ValueSetCR(String id, long conceptID, StringSet valueSet, Table table) {
 		super(id, conceptID, table);
 		this.valueSet = valueSet;
 	}
 	
+	/**
+	 * Creates the column recognizer. The values are copied into a 
+	 * CompactStringSet.
+	 * 
+	 * @param id			A unique name for the recognizer instance
+	 * @param conceptID		The knowledge base concept ID
+	 * @param valueSet		The set of values indicating the concept
+	 * @param data			The table
+	 */
+	public ValueSetCR(String id, long conceptID, Set<String> valueSet, Table table) {
+		this(id, conceptID, toCompactSet(valueSet), table);
+	}
+	
+	/**
+	 * Copies a set of strings into a CompactStringSet.
+	 * 
+	 * @param values	The strings
+	 * @return			The compact set
+	 */
+	private static CompactStringSet toCompactSet(Set<String> values) {
+		CompactStringSetBuilder builder = new CompactStringSetBuilder();
+		for (String value : new TreeSet<String>(values)) {
+			builder.add(value);
+		}
+		return builder.build();
+	}
+	
 	@Override
 	protected boolean isApplicableType(Datatype type) {
 		return type == Datatype.STRING;
@@ -40,18 +73,20 @@ public class ValueSetCR extends ColumnContentBasedCR {
 
 	/**
 	 * Compute the score for the column. The score is the fraction of cells 
-	 * that match a member of the value set.
+	 * that match a member of the value set. Each distinct non-empty value is
+	 * looked up once; the empty cells match only if the set has the empty 
+	 * value.
 	 * 
 	 * @param column	The column
 	 * @return			The column score
 	 */
 	protected double computeColumnScore(Column column) {
-		int matchCount = 0;
+		int matchCount = valueSet.contains("") ? column.getEmptyCount() : 0;
 		int rowCount = column.size();
-		Iterator<String> it = column.getFieldIterator();
-		while (it.hasNext()) {
-			if (valueSet.contains(CRStringUtils.normalize(it.next()))) {
-				matchCount++;
+		for (Entry<String, Integer> valueCount 
+				: column.getAnalysis().getNormalizedValueCounts().entrySet()) {
+			if (valueSet.contains(valueCount.getKey())) {
+				matchCount += valueCount.getValue();
 			}
 		}
 		return ((double)matchCount) / rowCount;
@@ -13,8 +13,11 @@ public class WordScoreReader extends SyntaxPatternLineReader {
 	/**
 	 * The line syntax: 
 	 * word word_score
+	 * 
+	 * The separator is matched reluctantly so that it leaves the minus sign
+	 * of a negative score.
 	 */
-	private static final String LINE_SYNTAX = "(\\w+)\\W*([0-9.,e+-]+)";
+	private static final String LINE_SYNTAX = "(?U)(\\w+)\\W*?([0-9.,e+-]+)";
 	
 	/**
 	 * The position of the word field
@@ -0,0 +1,142 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the byte-level state machine of the CSVRecordReader where the
+ * parser has to wait for more input: the reader starts with tiny buffers,
+ * so that records, quotes, escapes and line breaks are cut by refills at
+ * every possible position. The test is in the package of the reader
+ * because the buffer can only be set from there.
+ *
+ * @author Simon
+ *
+ */
+public class CSVRecordReaderTest {
+	/**
+	 * The largest initial buffer size tried
+	 */
+	private static final int MAX_BUFFER_SIZE = 80;
+
+	@Test
+	public void testRFCFormat() {
+		String text = "id;text\r\n"
+				+ "1;\"a \"\"quoted\"\" word\"\r\n"
+				+ "2;\"two\r\nlines\";x\n"
+				+ "3;plain\r\n"
+				+ "4;5\" disk\r\n"
+				+ "5;\"last\"";
+		List<List<String>> expected = Arrays.asList(
+				Arrays.asList("id", "text"),
+				Arrays.asList("1", "a \"quoted\" word"),
+				Arrays.asList("2", "two\r\nlines", "x"),
+				Arrays.asList("3", "plain"),
+				Arrays.asList("4", "5\" disk"),
+				Arrays.asList("5", "last"));
+		assertReadsAtAllBufferSizes(expected, text, new CSVFormat(';'));
+	}
+
+	@Test
+	public void testBackslashEscapes() {
+		String text = "a;\"b\\\"c\\\\\";d\r\n"
+				+ "\"e\\;f\\\r\ng\";h\\";
+		List<List<String>> expected = Arrays.asList(
+				Arrays.asList("a", "b\"c\\", "d"),
+				Arrays.asList("e;f\r\ng", "h\\"));
+		assertReadsAtAllBufferSizes(expected, text, new CSVFormat(';', '"', '\\'));
+	}
+
+	@Test
+	public void testOtherQuote() {
+		String text = "'x,y','it''s'\r\n\"z\",'\n'\r";
+		List<List<String>> expected = Arrays.asList(
+				Arrays.asList("x,y", "it's"),
+				Arrays.asList("\"z\"", "\n"));
+		assertReadsAtAllBufferSizes(expected, text, new CSVFormat(',', '\'', '\''));
+	}
+
+	@Test
+	public void testCRLFAtEndOfInput() {
+		List<List<String>> expected = Arrays.asList(
+				Arrays.asList("a", "b"),
+				Arrays.asList("c", "d"));
+		assertReadsAtAllBufferSizes(expected, "a;b\r\nc;d\r\n", new CSVFormat(';'));
+		assertReadsAtAllBufferSizes(expected, "a;b\rc;d\r", new CSVFormat(';'));
+	}
+
+	@Test
+	public void testLongRecords() {
+		// Records longer than a scanner block, with special bytes on both
+		// sides of the block boundaries
+		StringBuilder text = new StringBuilder();
+		List<List<String>> expected = new ArrayList<List<String>>();
+		for (int i = 0; i < 20; i++) {
+			StringBuilder value = new StringBuilder();
+			for (int j = 0; j < 60 + i; j++) {
+				value.append((char)('a' + j % 26));
+			}
+			text.append(value).append(";\"").append(value).append("\"\"\"\r\n");
+			expected.add(Arrays.asList(value.toString(), value + "\""));
+		}
+		assertReadsAtAllBufferSizes(expected, text.toString(), new CSVFormat(';'));
+	}
+
+	/**
+	 * Reads the text from a stream with each initial buffer size, and from a
+	 * byte buffer, and checks the values.
+	 */
+	private static void assertReadsAtAllBufferSizes(List<List<String>> expected, String text,
+			CSVFormat format) {
+		byte[] data;
+		try {
+			data = text.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		for (int bufferSize = 1; bufferSize <= MAX_BUFFER_SIZE; bufferSize++) {
+			ValueReader reader = new ValueReader(new ByteArrayInputStream(data), format);
+			reader.setBuffer(ByteBuffer.allocate(bufferSize));
+			reader.read();
+			assertEquals("Buffer size " + bufferSize, expected, reader.records);
+			assertTrue(reader.endedOnRecordBoundary() || !text.endsWith("\n"));
+		}
+		ValueReader reader = new ValueReader(ByteBuffer.wrap(data), format);
+		reader.read();
+		assertEquals(expected, reader.records);
+	}
+
+	/**
+	 * Collects the values of the records.
+	 */
+	private static class ValueReader extends CSVRecordReader {
+		final List<List<String>> records = new ArrayList<List<String>>();
+
+		ValueReader(ByteArrayInputStream stream, CSVFormat format) {
+			super(stream, format);
+			setCharset(CharsetDetector.UTF_8);
+		}
+
+		ValueReader(ByteBuffer bytes, CSVFormat format) {
+			super(bytes, format);
+			setCharset(CharsetDetector.UTF_8);
+		}
+
+		@Override
+		protected void processRecord(CSVRecord record) {
+			List<String> values = new ArrayList<String>();
+			for (int i = 1; i <= record.getColumnCount(); i++) {
+				values.add(record.getValue(i));
+			}
+			records.add(values);
+		}
+	}
+}
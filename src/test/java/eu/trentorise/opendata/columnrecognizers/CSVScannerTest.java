@@ -0,0 +1,99 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the block scanner of the CSV parser against a byte-by-byte scan.
+ * The test is in the package of the scanner, which is not public.
+ *
+ * @author Simon
+ *
+ */
+public class CSVScannerTest {
+	@Test
+	public void testRFCFormat() {
+		assertScansLikeBytes(new CSVFormat(';'));
+	}
+
+	@Test
+	public void testBackslashEscape() {
+		assertScansLikeBytes(new CSVFormat(',', '"', '\\'));
+	}
+
+	@Test
+	public void testOtherQuote() {
+		assertScansLikeBytes(new CSVFormat('\t', '\'', '\''));
+	}
+
+	@Test
+	public void testAdjacentSpecials() {
+		CSVScanner scanner = new CSVScanner(new CSVFormat(';'));
+		byte[] data = new byte[CSVScanner.BLOCK_SIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte)";\"\r\n".charAt(i % 4);
+		}
+		ByteBuffer words = CSVScanner.wordView(data);
+		assertEquals(-1L, scanner.scan(data, words, 0, data.length));
+		assertEquals((1L << 13) - 1, scanner.scan(data, words, 3, 16));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonASCIIFormat() {
+		new CSVScanner(new CSVFormat('§'));
+	}
+
+	/**
+	 * Scans random bytes from every start position to several limits. The
+	 * bytes include the special characters, the same characters with the
+	 * high bit set (as in multi-byte characters), and their neighbors.
+	 */
+	private static void assertScansLikeBytes(CSVFormat format) {
+		CSVScanner scanner = new CSVScanner(format);
+		byte[] alphabet = makeAlphabet(format);
+		Random random = new Random(42);
+		byte[] data = new byte[3 * CSVScanner.BLOCK_SIZE + 5];
+		ByteBuffer words = CSVScanner.wordView(data);
+		for (int round = 0; round < 20; round++) {
+			for (int i = 0; i < data.length; i++) {
+				data[i] = random.nextInt(4) == 0
+						? alphabet[random.nextInt(alphabet.length)]
+						: (byte)random.nextInt(256);
+			}
+			for (int start = 0; start < data.length; start++) {
+				for (int limit = start + 1; limit <= data.length; limit += 1 + limit % 7) {
+					assertEquals("start " + start + ", limit " + limit,
+							scanBytes(scanner, data, start, limit),
+							scanner.scan(data, words, start, limit));
+				}
+			}
+		}
+	}
+
+	private static long scanBytes(CSVScanner scanner, byte[] data, int start, int limit) {
+		long bitmap = 0;
+		for (int i = 0; i < CSVScanner.blockLength(start, limit); i++) {
+			if (scanner.isSpecial(data[start + i])) {
+				bitmap |= 1L << i;
+			}
+		}
+		return bitmap;
+	}
+
+	private static byte[] makeAlphabet(CSVFormat format) {
+		char[] specials = { format.getColumnSeparator(), format.getQuoteChar(),
+				format.getEscapeChar(), '\n', '\r' };
+		byte[] alphabet = new byte[specials.length * 4];
+		for (int i = 0; i < specials.length; i++) {
+			alphabet[4 * i] = (byte)specials[i];
+			alphabet[4 * i + 1] = (byte)(specials[i] | 0x80);
+			alphabet[4 * i + 2] = (byte)(specials[i] + 1);
+			alphabet[4 * i + 3] = (byte)(specials[i] - 1);
+		}
+		return alphabet;
+	}
+}
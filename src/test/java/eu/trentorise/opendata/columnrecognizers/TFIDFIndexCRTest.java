@@ -0,0 +1,74 @@
+package eu.trentorise.opendata.columnrecognizers;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests that the recognizers built for each table share the prototypes and
+ * the compiled index of the model files. The test is in the package of the
+ * recognizer, whose index is not public.
+ *
+ * @author Simon
+ *
+ */
+public class TFIDFIndexCRTest {
+	private static final List<String> MODELS = Arrays.asList(
+			"prodotti_caratteristiche_tfidf.txt",
+			"prodotti_riferimenti_tfidf.txt",
+			"prodotti_zona_tfidf.txt");
+
+	@Test
+	public void testSharedIndex() {
+		TFIDFIndexCR first = makeIndexRecognizer(makeTable("Trento", "Rovereto"));
+		TFIDFIndexCR second = makeIndexRecognizer(makeTable("Via Roma", "Via Verdi"));
+		first.computeScoredCandidates(new ArrayList<ColumnConceptCandidate>());
+		second.computeScoredCandidates(new ArrayList<ColumnConceptCandidate>());
+		assertSame(first.getIndex(), second.getIndex());
+		for (int position = 0; position < MODELS.size(); position++) {
+			assertSame(first.getIndex().getPrototype(position),
+					second.getIndex().getPrototype(position));
+		}
+
+		// Another run of lines gets its own index
+		TFIDFIndexCR other = ColumnRecognizerFactory.makeTFIDFIndexRecognizer(
+				"other", null, makeTable("Trento"), false);
+		ColumnRecognizerFactory.addTFIDFPrototype(other, "zona", 3, MODELS.get(2), null);
+		assertNotSame(first.getIndex(), other.getIndex());
+		assertSame(first.getIndex().getPrototype(2), other.getIndex().getPrototype(0));
+	}
+
+	@Test
+	public void testOwnIndex() {
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		frequencies.put("via", 5);
+		InverseColumnFrequency inverseFrequencies = new InverseColumnFrequency(frequencies, 10);
+		Table table = makeTable("Via Roma");
+		TFIDFIndexCR first = new TFIDFIndexCR("first", inverseFrequencies, table);
+		TFIDFIndexCR second = new TFIDFIndexCR("second", inverseFrequencies, table);
+		TFIDFVector street = new TFIDFVector(
+				new Column(Arrays.asList("Via Roma", "Via Verdi")), inverseFrequencies);
+		first.addPrototype("street", 100, street);
+		second.addPrototype("street", 100, street);
+		assertNotSame(first.getIndex(), second.getIndex());
+	}
+
+	private static TFIDFIndexCR makeIndexRecognizer(Table table) {
+		TFIDFIndexCR indexRecognizer
+			= ColumnRecognizerFactory.makeTFIDFIndexRecognizer("index", null, table, false);
+		for (String model : MODELS) {
+			ColumnRecognizerFactory.addTFIDFPrototype(indexRecognizer, model, 3, model, null);
+		}
+		return indexRecognizer;
+	}
+
+	private static Table makeTable(String... values) {
+		return new ColumnTable(null, Arrays.asList(new Column(Arrays.asList(values))));
+	}
+}
@@ -3,10 +3,13 @@ package eu.trentorise.opendata.columnrecognizers.test;
 import eu.trentorise.opendata.columnrecognizers.CRSpecificationReader;
 import eu.trentorise.opendata.columnrecognizers.CompositeColumnRecognizer;
 import eu.trentorise.opendata.columnrecognizers.RowTable;
+import eu.trentorise.opendata.columnrecognizers.TFIDFIndexCR;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
 
 import org.junit.Test;
@@ -39,7 +42,8 @@ public class CRSpecificationReaderTest {
 
 	@Test
 	public void test() {
-		final int NUMBER_OF_COMPONENT_RECOGNIZERS = 12;
+		// The three consecutive TF_IDF lines make one TFIDFIndexCR
+		final int NUMBER_OF_COMPONENT_RECOGNIZERS = 10;
 		
 		RowTable rowTable = loadTable(PRODOTTI_CSV_RESOURCE_PATH, PRODOTTI_COLUMN_SEPARATOR);
 		CompositeColumnRecognizer compositeCR = new CompositeColumnRecognizer("composite");
@@ -55,4 +59,45 @@ public class CRSpecificationReaderTest {
 		assertTrue(compositeCR.getComponentCount() == NUMBER_OF_COMPONENT_RECOGNIZERS);
 	}
 
+	/**
+	 * Tests that each run of consecutive TF_IDF lines makes one TFIDFIndexCR,
+	 * which keeps the recognizer ID of each line for its prototype, and that
+	 * any other line ends the run.
+	 */
+	@Test
+	public void testTFIDFIndexGroups() throws UnsupportedEncodingException {
+		String specification = 
+				"zona_a	10001	TF_IDF	prodotti_zona_tfidf.txt\n"
+				+ "riferimenti_a	9001	TF_IDF	prodotti_riferimenti_tfidf.txt\n"
+				+ "url_regex	7001	REGEX_S	http\\://\\S+\n"
+				+ "zona_b	10001	TF_IDF	prodotti_zona_tfidf.txt\n"
+				+ "one_best	0	ONE_BEST\n"
+				+ "riferimenti_b	9001	TF_IDF	prodotti_riferimenti_tfidf.txt\n";
+		RowTable rowTable = loadTable(PRODOTTI_CSV_RESOURCE_PATH, PRODOTTI_COLUMN_SEPARATOR);
+		CompositeColumnRecognizer compositeCR = new CompositeColumnRecognizer("composite");
+		new CRSpecificationReader(
+				new ByteArrayInputStream(specification.getBytes("UTF-8")),
+				null,
+				compositeCR,
+				rowTable,
+				rowTable.extractRowSample()).read();
+
+		assertEquals(5, compositeCR.getComponentCount());
+		TFIDFIndexCR firstIndex = (TFIDFIndexCR)compositeCR.get("tf_idf_index_0");
+		assertEquals(2, firstIndex.getPrototypeCount());
+		assertNotNull(firstIndex.getPrototype("zona_a"));
+		assertNotNull(firstIndex.getPrototype("riferimenti_a"));
+		assertNotNull(compositeCR.get("url_regex"));
+		// The reg ex line ends the first run
+		TFIDFIndexCR secondIndex = (TFIDFIndexCR)compositeCR.get("tf_idf_index_2");
+		assertEquals(1, secondIndex.getPrototypeCount());
+		assertNotNull(secondIndex.getPrototype("zona_b"));
+		assertNull(secondIndex.getPrototype("zona_a"));
+		// So does the fusion line
+		assertNotNull(compositeCR.get("one_best"));
+		TFIDFIndexCR thirdIndex = (TFIDFIndexCR)compositeCR.get("tf_idf_index_4");
+		assertEquals(1, thirdIndex.getPrototypeCount());
+		assertNotNull(thirdIndex.getPrototype("riferimenti_b"));
+	}
+
 }
@@ -0,0 +1,96 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import eu.trentorise.opendata.columnrecognizers.CSVFormat;
+import eu.trentorise.opendata.columnrecognizers.CSVRecord;
+import eu.trentorise.opendata.columnrecognizers.CSVRecordReader;
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.ColumnTable;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the CSV state machine on strings and on input bytes.
+ *
+ * @author Simon
+ *
+ */
+public class CSVFormatTest {
+	private static final CSVFormat RFC_FORMAT = new CSVFormat(';');
+	private static final CSVFormat BACKSLASH_FORMAT = new CSVFormat(';', '"', '\\');
+
+	@Test
+	public void testSplitRecord() {
+		assertEquals(Arrays.asList("a", "\"b;c\"", " \"d\"\"e\""),
+				RFC_FORMAT.splitRecord("a;\"b;c\"; \"d\"\"e\""));
+		// A quote inside an unquoted field is an ordinary character
+		assertEquals(Arrays.asList("5\" disk", "x"), RFC_FORMAT.splitRecord("5\" disk;x"));
+		assertEquals(Arrays.asList("\"a\\\";b\"", "c"), BACKSLASH_FORMAT.splitRecord("\"a\\\";b\";c"));
+	}
+
+	@Test
+	public void testUnescape() {
+		String record = "\"d\"\"e\";  \"f\"g;h\"";
+		int[] boundaries = RFC_FORMAT.findColumnBoundaries(record);
+		assertEquals(2, boundaries.length);
+		assertEquals("d\"e", RFC_FORMAT.unescape(record, 0, boundaries[0]));
+		// Text after the closing quote is kept
+		assertEquals("fg", RFC_FORMAT.unescape(record, boundaries[0] + 1, boundaries[1]));
+		assertEquals("h\"", RFC_FORMAT.unescape(record, boundaries[1] + 1, record.length()));
+		assertEquals("a\"b", BACKSLASH_FORMAT.unescape("\"a\\\"b\"", 0, 6));
+	}
+
+	@Test
+	public void testUnquotedFormat() {
+		CSVFormat format = CSVFormat.makeUnquotedFormat('\0');
+		String record = "\"a\0b\"\0 \"c\"\"";
+		int[] boundaries = format.findColumnBoundaries(record);
+		assertEquals(2, boundaries.length);
+		assertEquals("\"a", format.unescape(record, 0, boundaries[0]));
+		assertEquals(" \"c\"\"", format.unescape(record, boundaries[1] + 1, record.length()));
+
+		ColumnTable table = new ColumnTable(Arrays.asList("name"),
+				Arrays.asList(new Column(Arrays.asList("\"Trento\" centro"))));
+		assertEquals("\"Trento\" centro", table.extractRowSample().getValue(0, 1));
+	}
+
+	@Test
+	public void testReadRecords() throws UnsupportedEncodingException {
+		List<List<String>> records = readValues(
+				"id;text\r\n1;\"two\nlines\"\n2;\"say \"\"hi\"\"\"\n3;5\" disk\n4;\"unclosed",
+				RFC_FORMAT);
+		assertEquals(5, records.size());
+		assertEquals(Arrays.asList("1", "two\nlines"), records.get(1));
+		assertEquals(Arrays.asList("2", "say \"hi\""), records.get(2));
+		assertEquals(Arrays.asList("3", "5\" disk"), records.get(3));
+		assertEquals(Arrays.asList("4", "unclosed"), records.get(4));
+
+		records = readValues("\"a\\\"\nb\";c\n", BACKSLASH_FORMAT);
+		assertEquals(1, records.size());
+		assertEquals(Arrays.asList("a\"\nb", "c"), records.get(0));
+	}
+
+	private static List<List<String>> readValues(String text, CSVFormat format)
+			throws UnsupportedEncodingException {
+		final List<List<String>> records = new ArrayList<List<String>>();
+		CSVRecordReader reader = new CSVRecordReader(
+				new ByteArrayInputStream(text.getBytes("UTF-8")), format) {
+			@Override
+			protected void processRecord(CSVRecord record) {
+				List<String> values = new ArrayList<String>();
+				for (int i = 1; i <= record.getColumnCount(); i++) {
+					values.add(record.getValue(i));
+				}
+				records.add(values);
+			}
+		};
+		reader.read();
+		return records;
+	}
+}
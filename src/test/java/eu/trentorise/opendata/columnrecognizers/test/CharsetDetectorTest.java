@@ -0,0 +1,123 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import eu.trentorise.opendata.columnrecognizers.CSVRecord;
+import eu.trentorise.opendata.columnrecognizers.CSVRecordReader;
+import eu.trentorise.opendata.columnrecognizers.CharsetDetector;
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.ColumnTable;
+import eu.trentorise.opendata.columnrecognizers.FileUtils;
+import eu.trentorise.opendata.columnrecognizers.ParallelCSVParser;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the detection of the encoding of CSV input.
+ *
+ * @author Simon
+ *
+ */
+public class CharsetDetectorTest {
+	private static final String CSV_TEXT = "citt\u00e0;perch\u00e9\n\"Trent\u00f2; Alto Adige\";\u20ac\n";
+
+	@Test
+	public void testDetection() throws UnsupportedEncodingException {
+		assertEquals(CharsetDetector.UTF_8, detect("plain ascii;text".getBytes("US-ASCII")));
+		assertEquals(CharsetDetector.UTF_8, detect(CSV_TEXT.getBytes("UTF-8")));
+		assertEquals(CharsetDetector.WINDOWS_1252, detect(CSV_TEXT.getBytes("windows-1252")));
+		byte[] undefinedInWindows1252 = { 'a', (byte)0x81, 'b' };
+		assertEquals(CharsetDetector.ISO_8859_1, detect(undefinedInWindows1252));
+	}
+
+	@Test
+	public void testReadLatinFile() throws UnsupportedEncodingException {
+		List<String> fields = readFields(CSV_TEXT.getBytes("windows-1252"));
+		assertEquals("citt\u00e0", fields.get(0));
+		assertEquals("\"Trent\u00f2; Alto Adige\"", fields.get(2));
+		assertEquals("\u20ac", fields.get(3));
+	}
+
+	@Test
+	public void testSkipByteOrderMark() throws UnsupportedEncodingException {
+		byte[] text = CSV_TEXT.getBytes("UTF-8");
+		byte[] textWithBOM = new byte[text.length + 3];
+		textWithBOM[0] = (byte)0xEF;
+		textWithBOM[1] = (byte)0xBB;
+		textWithBOM[2] = (byte)0xBF;
+		System.arraycopy(text, 0, textWithBOM, 3, text.length);
+		assertEquals(readFields(text), readFields(textWithBOM));
+	}
+
+	/**
+	 * Tests UTF-8 input longer than the detected prefix, with a character
+	 * that straddles the end of the prefix.
+	 */
+	@Test
+	public void testCharacterAcrossPrefixEnd() throws IOException {
+		byte[] data = makeStraddlingText();
+		assertEquals(CharsetDetector.UTF_8, detect(data));
+		assertEquals(CharsetDetector.UTF_8,
+				CharsetDetector.detect(data, 0, CharsetDetector.PREFIX_SIZE, false));
+		// A character cut off by the real end of the input is an error
+		assertEquals(CharsetDetector.WINDOWS_1252,
+				CharsetDetector.detect(data, 0, CharsetDetector.PREFIX_SIZE, true));
+
+		List<String> fields = readFields(data);
+		assertEquals("perch\u00e9", fields.get(fields.size() - 1));
+
+		File csvFile = FileUtils.getTmpFile("charset-detector-test.csv");
+		csvFile.deleteOnExit();
+		FileOutputStream stream = new FileOutputStream(csvFile);
+		try {
+			stream.write(data);
+		} finally {
+			stream.close();
+		}
+		ColumnTable table = new ParallelCSVParser(csvFile, ';', false).parse();
+		List<List<String>> columns = Column.toStringLists(table.extractColumns());
+		List<String> lastColumn = columns.get(columns.size() - 1);
+		assertEquals("perch\u00e9", lastColumn.get(lastColumn.size() - 1));
+	}
+
+	/**
+	 * Makes UTF-8 text with the two bytes of an accented letter at positions
+	 * PREFIX_SIZE - 1 and PREFIX_SIZE.
+	 */
+	private static byte[] makeStraddlingText() throws UnsupportedEncodingException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < CharsetDetector.PREFIX_SIZE - 1; i++) {
+			builder.append(i % 80 == 79 ? '\n' : 'a');
+		}
+		builder.append("\u00e0\nperch\u00e9\n");
+		byte[] data = builder.toString().getBytes("UTF-8");
+		assertEquals((byte)0xC3, data[CharsetDetector.PREFIX_SIZE - 1]);
+		return data;
+	}
+
+	private static Charset detect(byte[] data) {
+		return CharsetDetector.detect(data, 0, data.length, true);
+	}
+
+	private static List<String> readFields(byte[] data) {
+		final List<String> fields = new ArrayList<String>();
+		CSVRecordReader reader = new CSVRecordReader(new ByteArrayInputStream(data), ';') {
+			@Override
+			protected void processRecord(CSVRecord record) {
+				for (int i = 1; i <= record.getColumnCount(); i++) {
+					fields.add(record.getField(i));
+				}
+			}
+		};
+		reader.read();
+		return fields;
+	}
+}
@@ -0,0 +1,121 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.ColumnAnalysis;
+import eu.trentorise.opendata.columnrecognizers.TermFrequencySketch;
+import eu.trentorise.opendata.columnrecognizers.TokenInterner;
+import eu.trentorise.opendata.columnrecognizers.Tokenizer;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests the column analysis shared by the recognizers.
+ *
+ * @author Simon
+ *
+ */
+public class ColumnAnalysisTest {
+
+	@Test
+	public void testSharedAnalysis() {
+		Column column = new Column(new ArrayList<String>(
+				Arrays.asList("Via Roma", "via Verdi", "", "Piazza Duomo")));
+		ColumnAnalysis.resetStatistics();
+
+		Map<String, Integer> frequencies = column.computeWordFrequencies();
+		assertEquals(Integer.valueOf(2), frequencies.get("via"));
+		assertEquals(Integer.valueOf(1), frequencies.get("duomo"));
+		assertEquals(6, column.extractWords().size());
+		assertSame(frequencies, column.computeWordFrequencies());
+		assertEquals(2, ColumnAnalysis.getMissCount());
+		assertEquals(1, ColumnAnalysis.getHitCount());
+
+		Map<String, Integer> valueCounts = column.getAnalysis().getNormalizedValueCounts();
+		assertEquals(3, valueCounts.size());
+		assertEquals(4, column.getValueSet().size());
+
+		ColumnAnalysis analysis = column.getAnalysis();
+		assertSame(analysis, column.getAnalysis());
+		column.appendField("Via Roma");
+		column.appendField("Via Manci");
+		assertNotSame(analysis, column.getAnalysis());
+		assertEquals(Integer.valueOf(4), column.computeWordFrequencies().get("via"));
+	}
+
+	@Test
+	public void testTokenizer() {
+		final List<String> tokens = new ArrayList<String>();
+		final TokenInterner interner = new TokenInterner();
+		new Tokenizer().tokenize("Città di CASTELLO -- perché_no? È vero, città!", 
+				new Tokenizer.TokenHandler() {
+			public void handleToken(char[] buffer, int length) {
+				tokens.add(interner.getToken(interner.intern(buffer, length)));
+			}
+		});
+		assertEquals(Arrays.asList("città", "di", "castello", "perché_no", "è", "vero", "città"), 
+				tokens);
+		assertEquals(6, interner.size());
+		assertSame(tokens.get(0), tokens.get(6));
+	}
+
+	@Test
+	public void testTermFrequencySketch() {
+		List<String> values = new ArrayList<String>();
+		for (int row = 0; row < 5000; row++) {
+			String rare = "word" + row;
+			values.add(row % 2 == 0 ? "Via " + rare : row % 5 == 0 ? "Piazza " + rare : rare);
+		}
+		Column column = new Column(values);
+		TermFrequencySketch sketch = new TermFrequencySketch(0.001, 0.01, 10);
+		sketch.addColumn(column);
+		long termCount = sketch.getTotalCount();
+		assertEquals(5000 + 2500 + 500, termCount);
+
+		Map<String, Integer> heavyHitters = sketch.getHeavyHitters();
+		assertTrue(heavyHitters.size() <= 10);
+		assertTrue(heavyHitters.get("via") >= 2500);
+		assertTrue(heavyHitters.get("via") <= 2500 + 0.001 * termCount);
+		assertTrue(heavyHitters.get("piazza") >= 500);
+		assertTrue(sketch.estimateFrequency("word7") >= 1);
+
+		ColumnAnalysis.setApproximateTermFrequencies(1000, 0.001, 0.01, 10);
+		try {
+			Map<String, Integer> frequencies = new Column(values).computeWordFrequencies();
+			assertEquals(heavyHitters, frequencies);
+			assertEquals(3, new Column(Arrays.asList("Via Roma", "Via Verdi"))
+					.computeWordFrequencies().size());
+		} finally {
+			ColumnAnalysis.setExactTermFrequencies();
+		}
+	}
+
+	/**
+	 * Tests that the word set has every term, also when the term 
+	 * frequencies are estimated.
+	 */
+	@Test
+	public void testWordSetWithSketch() {
+		List<String> values = new ArrayList<String>();
+		for (int row = 0; row < 2000; row++) {
+			values.add(row % 2 == 0 ? "Via word" + row : "word" + row);
+		}
+		Set<String> exactWordSet = new Column(values).extractWordSet();
+		assertEquals(2001, exactWordSet.size());
+
+		ColumnAnalysis.setApproximateTermFrequencies(1000, 0.001, 0.01, 10);
+		try {
+			Column column = new Column(values);
+			assertTrue(column.computeWordFrequencies().size() <= 10);
+			assertEquals(exactWordSet, column.extractWordSet());
+		} finally {
+			ColumnAnalysis.setExactTermFrequencies();
+		}
+	}
+}
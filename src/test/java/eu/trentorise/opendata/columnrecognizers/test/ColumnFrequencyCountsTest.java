@@ -0,0 +1,96 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import eu.trentorise.opendata.columnrecognizers.CSVFormat;
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.ColumnFrequencyCounter;
+import eu.trentorise.opendata.columnrecognizers.ColumnFrequencyCounts;
+import eu.trentorise.opendata.columnrecognizers.FileUtils;
+import eu.trentorise.opendata.columnrecognizers.InverseColumnFrequency;
+
+public class ColumnFrequencyCountsTest {
+
+	/**
+	 * Tests that files counted in parallel give the counts of their columns.
+	 */
+	@Test
+	public void testCounter() throws IOException {
+		File firstFile = writeTmpFile("counter-1.csv",
+				"Nome;Indirizzo\nPizzeria Roma;Via Roma 1\nBar Trento;\"Via Verdi; 2\"\n");
+		File secondFile = writeTmpFile("counter-2.csv",
+				"Comune;Note\nTrento;\nRovereto;Via Roma\n");
+
+		ColumnFrequencyCounter counter = new ColumnFrequencyCounter();
+		counter.addFile(firstFile, new CSVFormat(';'));
+		counter.addFile(secondFile, new CSVFormat(';'));
+		counter.setThreadCount(2);
+		ColumnFrequencyCounts counts = counter.count();
+
+		ColumnFrequencyCounts expected = new ColumnFrequencyCounts();
+		expected.addColumn(new Column(Arrays.asList("Pizzeria Roma", "Bar Trento")));
+		expected.addColumn(new Column(Arrays.asList("Via Roma 1", "Via Verdi; 2")));
+		expected.addColumn(new Column(Arrays.asList("Trento", "Rovereto")));
+		expected.addColumn(new Column(Arrays.asList("", "Via Roma")));
+
+		assertEquals(4, counts.getColumnCount());
+		assertEquals(expected.getWordCount(), counts.getWordCount());
+		for (String word : Arrays.asList("roma", "trento", "via", "verdi", "rovereto")) {
+			assertEquals(expected.getFrequency(word), counts.getFrequency(word));
+		}
+		assertEquals(3, counts.getFrequency("roma"));
+		assertEquals(0, counts.getFrequency("nome"));
+	}
+
+	/**
+	 * Tests that counts merged from a file give the IDF of the whole corpus.
+	 */
+	@Test
+	public void testMerge() {
+		ColumnFrequencyCounts oldCounts = new ColumnFrequencyCounts();
+		oldCounts.addColumn(new Column(Arrays.asList("Via Roma", "Via Verdi")));
+		oldCounts.addColumn(new Column(Arrays.asList("Trento")));
+		File countFile = FileUtils.getTmpFile("column-frequencies-test.txt");
+		countFile.deleteOnExit();
+		oldCounts.writeToFile(countFile);
+
+		ColumnFrequencyCounts counts = new ColumnFrequencyCounts();
+		counts.addColumn(new Column(Arrays.asList("Via Manci", "Trento")));
+		counts.merge(ColumnFrequencyCounts.readFromFile(countFile));
+
+		ColumnFrequencyCounts allCounts = new ColumnFrequencyCounts();
+		allCounts.addColumn(new Column(Arrays.asList("Via Roma", "Via Verdi")));
+		allCounts.addColumn(new Column(Arrays.asList("Trento")));
+		allCounts.addColumn(new Column(Arrays.asList("Via Manci", "Trento")));
+
+		assertEquals(3, counts.getColumnCount());
+		assertEquals(2, counts.getFrequency("via"));
+		InverseColumnFrequency merged = counts.toInverseColumnFrequency();
+		InverseColumnFrequency whole = allCounts.toInverseColumnFrequency();
+		for (String word : Arrays.asList("via", "roma", "trento", "manci", "unseen")) {
+			assertEquals(whole.getInverseFrequency(word), merged.getInverseFrequency(word), 1e-12);
+		}
+	}
+
+	private static File writeTmpFile(String name, String contents) throws IOException {
+		File file = FileUtils.getTmpFile(name);
+		file.deleteOnExit();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(contents);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+}
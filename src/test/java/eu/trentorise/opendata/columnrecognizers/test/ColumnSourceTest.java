@@ -0,0 +1,109 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.ColumnConceptCandidate;
+import eu.trentorise.opendata.columnrecognizers.ColumnSource;
+import eu.trentorise.opendata.columnrecognizers.ColumnTable;
+import eu.trentorise.opendata.columnrecognizers.NumericColumnSource;
+import eu.trentorise.opendata.columnrecognizers.ValueSetCR;
+import eu.trentorise.opendata.nlprise.DataTypeGuess.Datatype;
+import static org.junit.Assert.*;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests columns that read their values from caller-owned sources.
+ *
+ * @author Simon
+ *
+ */
+public class ColumnSourceTest {
+
+	@Test
+	public void testTextSource() {
+		final char[] text = "TrentoRoveretoTrento".toCharArray();
+		final int[] offsets = { 0, 6, 14, 20 };
+		ColumnSource source = new ColumnSource() {
+			public int size() {
+				return offsets.length - 1;
+			}
+
+			public CharSequence get(int index) {
+				return CharBuffer.wrap(text, offsets[index], offsets[index + 1] - offsets[index]);
+			}
+		};
+		ColumnTable table = ColumnTable.makeColumnTableFromSources(Arrays.asList("city"), 
+				Arrays.asList(source));
+		Column column = table.extractColumn(1);
+		assertEquals(3, table.getRowCount());
+		assertEquals("Rovereto", column.getFieldAt(1));
+		assertEquals(Arrays.asList("Trento", "Rovereto", "Trento"), column.getContents());
+		assertEquals(2, column.getValueSet().size());
+	}
+
+	@Test
+	public void testNumericSource() {
+		final long[] values = { 3, 14, 15, 92, 65 };
+		NumericColumnSource source = new NumericColumnSource() {
+			public int size() {
+				return values.length;
+			}
+
+			public CharSequence get(int index) {
+				return Long.toString(values[index]);
+			}
+
+			public boolean isIntegral() {
+				return true;
+			}
+
+			public boolean isMissing(int index) {
+				return false;
+			}
+
+			public double getDouble(int index) {
+				return values[index];
+			}
+		};
+		Column column = new Column(source);
+		assertEquals(Datatype.INT, column.getType());
+		List<String> contents = column.getContents();
+		assertEquals("92", contents.get(3));
+		try {
+			column.appendField("1");
+			fail("Columns backed by a source are read-only");
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testSparseColumn() {
+		Column column = new Column();
+		for (int i = 0; i < 20; i++) {
+			column.appendField(i % 5 == 0 ? "Trento" : i % 5 == 1 ? null : "");
+		}
+		assertEquals(20, column.size());
+		assertEquals(16, column.getEmptyCount());
+		assertEquals(Arrays.asList("Trento", "Trento", "Trento", "Trento"), 
+				column.getNonEmptyValues());
+		assertEquals("Trento", column.getFieldAt(15));
+		assertEquals("", column.getFieldAt(16));
+		assertEquals(Datatype.STRING, column.getType());
+		assertEquals(2, column.getValueSet().size());
+
+		ColumnTable table = new ColumnTable(null, Arrays.asList(column));
+		ValueSetCR recognizer = new ValueSetCR("city", 1, 
+				new HashSet<String>(Arrays.asList("trento")), table);
+		List<ColumnConceptCandidate> candidates = new ArrayList<ColumnConceptCandidate>();
+		recognizer.computeScoredCandidates(candidates);
+		assertEquals(1, candidates.size());
+		assertEquals(0.2, candidates.get(0).getScore(), 1e-9);
+	}
+}
@@ -0,0 +1,127 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import eu.trentorise.opendata.columnrecognizers.CompactStringSet;
+import eu.trentorise.opendata.columnrecognizers.CompactStringSetBuilder;
+import eu.trentorise.opendata.columnrecognizers.DiskStringSet;
+import eu.trentorise.opendata.columnrecognizers.FileUtils;
+import eu.trentorise.opendata.columnrecognizers.RowTable;
+
+public class CompactStringSetTest {
+	private static final String VALUE_SET_PATH = "/models/comune.txt";
+
+	/**
+	 * Tests membership against a HashSet, for strings added out of order.
+	 */
+	@Test
+	public void testMembership() {
+		Random random = new Random(42);
+		Set<String> expected = new HashSet<String>();
+		CompactStringSetBuilder builder = new CompactStringSetBuilder();
+		for (int i = 0; i < 2000; i++) {
+			String value = makeString(random);
+			expected.add(value);
+			builder.add(value);
+		}
+		builder.add("");
+		expected.add("");
+		builder.add("via roma");
+		builder.add("via roma");
+		expected.add("via roma");
+		CompactStringSet set = builder.build();
+
+		assertEquals(expected.size(), set.size());
+		for (String value : expected) {
+			assertTrue(set.contains(value));
+			assertTrue(set.contains(new StringBuilder(value)));
+		}
+		for (int i = 0; i < 2000; i++) {
+			String value = makeString(random);
+			assertEquals(expected.contains(value), set.contains(value));
+		}
+		assertFalse(set.contains("via rom"));
+		assertFalse(set.contains("via romana"));
+	}
+
+	/**
+	 * Tests that a value set file loads into the same set, and that the
+	 * binary file loads back into an equal set.
+	 */
+	@Test
+	public void testLoading() {
+		File valueSetFile = FileUtils.getResourceFile(VALUE_SET_PATH);
+		Set<String> expected = RowTable.loadValueSet(valueSetFile);
+		CompactStringSet set = RowTable.loadCompactValueSet(valueSetFile);
+		assertEquals(expected.size(), set.size());
+		for (String value : expected) {
+			assertTrue(set.contains(value));
+		}
+
+		File binaryFile = FileUtils.getTmpFile("compact-string-set-test.bin");
+		binaryFile.deleteOnExit();
+		set.writeToFile(binaryFile);
+		CompactStringSet readSet = RowTable.loadCompactValueSet(binaryFile);
+		assertEquals(set.size(), readSet.size());
+		assertEquals(set.getStateCount(), readSet.getStateCount());
+		for (String value : expected) {
+			assertTrue(readSet.contains(value));
+		}
+		assertFalse(readSet.contains("not a municipality"));
+	}
+
+	/**
+	 * Tests that the disk set answers exactly and counts its lookups.
+	 */
+	@Test
+	public void testDiskSet() {
+		Random random = new Random(7);
+		Set<String> expected = new HashSet<String>();
+		for (int i = 0; i < 5000; i++) {
+			expected.add(makeString(random));
+		}
+		expected.add("via roma");
+		File setFile = FileUtils.getTmpFile("disk-string-set-test.bin");
+		setFile.deleteOnExit();
+		DiskStringSet.writeToFile(expected, 0.01, setFile);
+		DiskStringSet set = DiskStringSet.getShared(setFile);
+		assertSame(set, DiskStringSet.getShared(setFile));
+		assertEquals(expected.size(), set.size());
+
+		for (String value : expected) {
+			assertTrue(set.contains(value));
+		}
+		int negativeCount = 0;
+		for (int i = 0; i < 5000; i++) {
+			String value = "x" + makeString(random);
+			assertFalse(set.contains(value));
+			negativeCount++;
+		}
+		assertFalse(set.contains(new StringBuilder("via rom")));
+		negativeCount++;
+
+		assertEquals(expected.size() + negativeCount, set.getLookupCount());
+		assertEquals(negativeCount, set.getRejectedCount() + set.getFalsePositiveCount());
+		assertEquals(expected.size() + set.getFalsePositiveCount(), set.getDiskLookupCount());
+		assertTrue(set.getProbeCount() >= set.getDiskLookupCount());
+		assertTrue(set.getFalsePositiveRate() < 0.05);
+		assertEquals(0.01, set.getExpectedFalsePositiveRate(), 0.005);
+	}
+
+	private static String makeString(Random random) {
+		final String ALPHABET = "abcde ";
+		int length = 1 + random.nextInt(8);
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,193 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.ColumnConceptCandidate;
+import eu.trentorise.opendata.columnrecognizers.ColumnContentBasedCR;
+import eu.trentorise.opendata.columnrecognizers.ColumnTable;
+import eu.trentorise.opendata.columnrecognizers.CompositeColumnRecognizer;
+import eu.trentorise.opendata.columnrecognizers.InverseColumnFrequency;
+import eu.trentorise.opendata.columnrecognizers.RegExColumnRecognizer;
+import eu.trentorise.opendata.columnrecognizers.RowTable;
+import eu.trentorise.opendata.columnrecognizers.TFIDFIndexCR;
+import eu.trentorise.opendata.columnrecognizers.TFIDFVector;
+import eu.trentorise.opendata.columnrecognizers.Table;
+import eu.trentorise.opendata.columnrecognizers.ValueSetCR;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests that column-batched execution gives the same candidates, in the
+ * same order, as running the components one after the other.
+ *
+ * @author Simon
+ *
+ */
+public class CompositeColumnRecognizerTest {
+	private static final int COLUMN_COUNT = 23;
+	private static final int WIDE_COLUMN_COUNT = 3000;
+	private static final int WIDE_ROW_COUNT = 20;
+	private static final int VALUE_SET_RECOGNIZER_COUNT = 4;
+
+	@Test
+	public void testColumnBatching() {
+		ColumnTable table = makeTable();
+		List<ColumnConceptCandidate> expected = computeCandidates(table, 0);
+		assertTrue(expected.size() > COLUMN_COUNT);
+		for (int batchSize : new int[] { 1, 2, 5, COLUMN_COUNT, 64 }) {
+			assertEquals("Batch size " + batchSize,
+					expected.toString(), computeCandidates(table, batchSize).toString());
+		}
+	}
+
+	@Test
+	public void testWideTableBatching() {
+		byte[] csv = makeWideCSV();
+		List<ColumnConceptCandidate> expected = computeWideTableCandidates(csv, 0);
+		assertTrue(expected.size() > WIDE_COLUMN_COUNT);
+		assertEquals(expected.toString(), computeWideTableCandidates(csv, 64).toString());
+	}
+
+	@Test
+	public void testBatchesShareColumns() {
+		RowTable table = new RowTable(';');
+		for (int i = 0; i < 10; i++) {
+			table.appendRow("a" + i + ";b;c;d;e");
+		}
+		ColumnRecorder first = new ColumnRecorder("first", table);
+		ColumnRecorder second = new ColumnRecorder("second", table);
+		ColumnRecorder third = new ColumnRecorder("third", table);
+		CompositeColumnRecognizer compositeCR = new CompositeColumnRecognizer("composite");
+		compositeCR.add(first);
+		compositeCR.add(second);
+		compositeCR.add(new RegExColumnRecognizer("letter", 102, "b", table));
+		compositeCR.add(third);
+		compositeCR.setColumnBatchSize(2);
+		compositeCR.computeScoredCandidates(new ArrayList<ColumnConceptCandidate>());
+		
+		// Every component sees the columns the table extracted once
+		List<Column> columns = table.extractColumns();
+		for (ColumnRecorder recorder : Arrays.asList(first, second, third)) {
+			assertEquals(columns.size(), recorder.columns.size());
+			for (int i = 0; i < columns.size(); i++) {
+				assertSame(columns.get(i), recorder.columns.get(i));
+			}
+		}
+	}
+
+	private static List<ColumnConceptCandidate> computeCandidates(Table table, int batchSize) {
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		frequencies.put("via", 5);
+		frequencies.put("trento", 3);
+		InverseColumnFrequency inverseFrequencies = new InverseColumnFrequency(frequencies, 10);
+		TFIDFIndexCR indexRecognizer = new TFIDFIndexCR("tf_idf_index", inverseFrequencies, table);
+		indexRecognizer.addPrototype("street", 100, new TFIDFVector(
+				new Column(Arrays.asList("Via Roma", "Via Verdi")), inverseFrequencies));
+		indexRecognizer.addPrototype("city", 101, new TFIDFVector(
+				new Column(Arrays.asList("Trento", "Rovereto")), inverseFrequencies));
+
+		CompositeColumnRecognizer compositeCR = new CompositeColumnRecognizer("composite");
+		compositeCR.add(new ValueSetCR("city_set", 101,
+				new HashSet<String>(Arrays.asList("trento", "rovereto")), table));
+		compositeCR.add(indexRecognizer);
+		compositeCR.add(new RegExColumnRecognizer("number", 102, "\\d+", table.extractRowSample()));
+		compositeCR.setColumnBatchSize(batchSize);
+		List<ColumnConceptCandidate> candidates = new ArrayList<ColumnConceptCandidate>();
+		compositeCR.computeScoredCandidates(candidates);
+		return candidates;
+	}
+
+	/**
+	 * Runs value set recognizers and a reg ex recognizer on a wide table 
+	 * loaded from CSV.
+	 */
+	private static List<ColumnConceptCandidate> computeWideTableCandidates(byte[] csv, 
+			int batchSize) {
+		RowTable table = RowTable.loadFromCSV(new ByteArrayInputStream(csv), ',');
+		CompositeColumnRecognizer compositeCR = new CompositeColumnRecognizer("composite");
+		for (int i = 0; i < VALUE_SET_RECOGNIZER_COUNT; i++) {
+			compositeCR.add(new ValueSetCR("values" + i, 200 + i, makeValueSet(i), table));
+		}
+		compositeCR.add(new RegExColumnRecognizer("code", 210, "a1\\d\\d", table));
+		compositeCR.setColumnBatchSize(batchSize);
+		List<ColumnConceptCandidate> candidates = new ArrayList<ColumnConceptCandidate>();
+		compositeCR.computeScoredCandidates(candidates);
+		return candidates;
+	}
+
+	/**
+	 * Generates codes like a123 in every field.
+	 */
+	private static byte[] makeWideCSV() {
+		Random random = new Random(0);
+		StringBuilder builder = new StringBuilder();
+		for (int rowIndex = 0; rowIndex < WIDE_ROW_COUNT; rowIndex++) {
+			for (int columnNumber = 1; columnNumber <= WIDE_COLUMN_COUNT; columnNumber++) {
+				if (columnNumber > 1) {
+					builder.append(',');
+				}
+				builder.append('a').append(100 + random.nextInt(900));
+			}
+			builder.append('\n');
+		}
+		try {
+			return builder.toString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static Set<String> makeValueSet(int index) {
+		Set<String> valueSet = new HashSet<String>();
+		for (int value = 100 + index * 100; value < 200 + index * 100; value++) {
+			valueSet.add("a" + value);
+		}
+		return valueSet;
+	}
+
+	private static ColumnTable makeTable() {
+		List<Column> columns = new ArrayList<Column>();
+		for (int i = 0; i < COLUMN_COUNT; i++) {
+			switch (i % 3) {
+			case 0:
+				columns.add(new Column(Arrays.asList("Via Manci " + i, "Piazza Duomo")));
+				break;
+			case 1:
+				columns.add(new Column(Arrays.asList("Trento", "Rovereto", "Via Roma")));
+				break;
+			default:
+				columns.add(new Column(Arrays.asList(Integer.toString(i), "7")));
+				break;
+			}
+		}
+		return new ColumnTable(null, columns);
+	}
+
+	/**
+	 * Records the columns it is asked to score.
+	 */
+	private static class ColumnRecorder extends ColumnContentBasedCR {
+		final List<Column> columns = new ArrayList<Column>();
+
+		ColumnRecorder(String id, Table table) {
+			super(id, 103, table);
+		}
+
+		@Override
+		protected double computeColumnScore(Column column) {
+			columns.add(column);
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.CompressedCSVLoader;
+import eu.trentorise.opendata.columnrecognizers.FileUtils;
+import eu.trentorise.opendata.columnrecognizers.RowTable;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests loading tables from compressed files and archives.
+ *
+ * @author Simon
+ *
+ */
+public class CompressedCSVLoaderTest {
+	private static final char COLUMN_SEPARATOR = ';';
+
+	@Test
+	public void testLoadFromGzip() throws IOException {
+		File gzipFile = FileUtils.getTmpFile("compressed_csv_loader_test.csv.gz");
+		gzipFile.deleteOnExit();
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipFile));
+		out.write(makeCSV(200).getBytes("UTF-8"));
+		out.close();
+
+		RowTable table = CompressedCSVLoader.loadFromGzip(gzipFile, COLUMN_SEPARATOR);
+		assertEquals(Arrays.asList("id", "name"), table.popHeaders());
+		assertEquals(200, table.getRowCount());
+		assertEquals("name\n199", table.getValue(199, 2));
+	}
+
+	@Test
+	public void testCloseStreamOfBadGzip() {
+		final boolean[] closed = { false };
+		ByteArrayInputStream stream = new ByteArrayInputStream(makeCSV(3).getBytes()) {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		try {
+			CompressedCSVLoader.loadFromGzip(stream, COLUMN_SEPARATOR);
+			fail("Loaded a file that isn't gzip data");
+		} catch (IOException e) {
+			// Expected
+		}
+		assertTrue(closed[0]);
+	}
+
+	@Test
+	public void testLoadFromZip() throws IOException {
+		final int ENTRY_COUNT = 5;
+		final int THREAD_COUNT = 2;
+
+		File zipFile = FileUtils.getTmpFile("compressed_csv_loader_test.zip");
+		zipFile.deleteOnExit();
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+		out.putNextEntry(new ZipEntry("readme.txt"));
+		out.write("not a table".getBytes("UTF-8"));
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			out.putNextEntry(new ZipEntry("data/table" + i + ".csv"));
+			out.write(makeCSV(10 + 1000 * i).getBytes("UTF-8"));
+		}
+		out.close();
+
+		Map<String, RowTable> tables
+				= CompressedCSVLoader.loadFromZip(zipFile, COLUMN_SEPARATOR, THREAD_COUNT);
+		assertEquals(ENTRY_COUNT, tables.size());
+		List<String> names = new ArrayList<String>(tables.keySet());
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			assertEquals("data/table" + i + ".csv", names.get(i));
+			RowTable table = tables.get(names.get(i));
+			table.removeHeaders();
+			assertEquals(10 + 1000 * i, table.getRowCount());
+			List<Column> columns = table.extractColumns();
+			assertEquals("0", columns.get(0).getFieldAt(0));
+		}
+	}
+
+	private static String makeCSV(int rowCount) {
+		StringBuilder csv = new StringBuilder("id;name\n");
+		for (int i = 0; i < rowCount; i++) {
+			csv.append(i).append(";\"name\n").append(i).append("\"\n");
+		}
+		return csv.toString();
+	}
+}
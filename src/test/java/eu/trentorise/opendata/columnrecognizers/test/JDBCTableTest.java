@@ -0,0 +1,90 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.JDBCTable;
+import eu.trentorise.opendata.columnrecognizers.RowTable;
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the JDBCTable on an in-memory H2 database.
+ *
+ * @author Simon
+ *
+ */
+public class JDBCTableTest {
+	private static final int ROW_COUNT = 250;
+	private static final String QUOTED_REMARK = "\"Trento\" centro";
+
+	private Connection connection = null;
+
+	@Before
+	public void createDatabase() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:jdbc_table_test");
+		Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE PLACES (ID INT, NAME VARCHAR(100), REMARK VARCHAR(100))");
+		statement.close();
+		PreparedStatement insert = connection.prepareStatement("INSERT INTO PLACES VALUES (?, ?, ?)");
+		for (int i = 0; i < ROW_COUNT; i++) {
+			insert.setInt(1, i);
+			insert.setString(2, "Place " + i);
+			insert.setString(3, i == 2 ? QUOTED_REMARK : (i % 2 == 0 ? null : "odd"));
+			insert.executeUpdate();
+		}
+		insert.close();
+	}
+
+	@After
+	public void closeDatabase() throws SQLException {
+		connection.close();
+	}
+
+	@Test
+	public void testLoadLevels() throws SQLException {
+		final int SAMPLE_SIZE = 10;
+		final int FETCH_SIZE = 16;
+
+		JDBCTable table = new JDBCTable(connection, "PLACES");
+		assertEquals(JDBCTable.Dialect.LIMIT, 
+				JDBCTable.Dialect.fromProductName(connection.getMetaData().getDatabaseProductName()));
+		table.setFetchSize(FETCH_SIZE);
+		assertEquals(Arrays.asList("ID", "NAME", "REMARK"), table.getHeaders());
+		RowTable sample = table.extractRowSample();
+		assertEquals(SAMPLE_SIZE, sample.getRowCount());
+		assertEquals("Place 0", sample.getValue(0, 2));
+		// Database values are not CSV fields: their quotes are kept
+		assertEquals(QUOTED_REMARK, sample.getValue(2, 3));
+		assertFalse(table.areColumnsLoaded());
+
+		List<Column> columns = table.extractColumns();
+		assertTrue(table.areColumnsLoaded());
+		assertEquals(ROW_COUNT, table.getRowCount());
+		assertEquals("Place 249", columns.get(1).getFieldAt(ROW_COUNT - 1));
+		assertEquals("", columns.get(2).getFieldAt(0));
+		assertEquals("odd", columns.get(2).getFieldAt(1));
+	}
+
+	@Test
+	public void testRowLimitAndProjection() throws SQLException {
+		final int ROW_LIMIT = 40;
+
+		JDBCTable table = new JDBCTable(connection, "PLACES");
+		table.setColumnNames(Arrays.asList("NAME"));
+		table.setRowLimit(ROW_LIMIT);
+		assertEquals(1, table.getColumnCount());
+		assertEquals(ROW_LIMIT, table.getRowCount());
+		assertEquals("Place 0", table.extractColumn(1).getFieldAt(0));
+	}
+
+}
@@ -0,0 +1,54 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import eu.trentorise.opendata.columnrecognizers.CSVFormat;
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.FileUtils;
+import eu.trentorise.opendata.columnrecognizers.LazyCSVTable;
+import eu.trentorise.opendata.columnrecognizers.RowTable;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that a LazyCSVTable reads only as much of the file as is needed.
+ *
+ * @author Simon
+ *
+ */
+public class LazyCSVTableTest {
+	private static final char COLUMN_SEPARATOR = ';';
+
+	@Test
+	public void testLoadLevels() {
+		final int ROW_COUNT = 50;
+		final int SAMPLE_SIZE = 10;
+
+		List<String> rows = new ArrayList<String>();
+		rows.add("id;\"name; full\"");
+		for (int i = 0; i < ROW_COUNT; i++) {
+			rows.add(i + ";\"name " + i + "\"");
+		}
+		File csvFile = FileUtils.getTmpFile("lazy_csv_table_test.csv");
+		csvFile.deleteOnExit();
+		RowTable.writeStringsToFile(rows.iterator(), csvFile);
+
+		LazyCSVTable table = new LazyCSVTable(csvFile, new CSVFormat(COLUMN_SEPARATOR), true);
+		assertEquals(Arrays.asList("id", "name; full"), table.getHeaders());
+		assertEquals(2, table.getColumnCount());
+		RowTable sample = table.extractRowSample();
+		assertEquals(SAMPLE_SIZE, sample.getRowCount());
+		assertEquals("name 0", sample.getValue(0, 2));
+		assertFalse(table.areColumnsLoaded());
+
+		List<Column> columns = table.extractColumns();
+		assertTrue(table.areColumnsLoaded());
+		assertEquals(ROW_COUNT, table.getRowCount());
+		assertEquals("name 49", columns.get(1).getFieldAt(ROW_COUNT - 1));
+	}
+
+}
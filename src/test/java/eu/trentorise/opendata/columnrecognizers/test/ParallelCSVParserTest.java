@@ -0,0 +1,140 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import eu.trentorise.opendata.columnrecognizers.CSVFormat;
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.ColumnProjection;
+import eu.trentorise.opendata.columnrecognizers.ColumnTable;
+import eu.trentorise.opendata.columnrecognizers.FileUtils;
+import eu.trentorise.opendata.columnrecognizers.ParallelCSVParser;
+import eu.trentorise.opendata.columnrecognizers.RowTable;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that parallel parsing gives the same columns as sequential parsing.
+ *
+ * @author Simon
+ *
+ */
+public class ParallelCSVParserTest {
+	private static final char COLUMN_SEPARATOR = ';';
+
+	@Test
+	public void testQuotedLineBreaksAcrossChunks() {
+		final int ROW_COUNT = 500;
+		// Tiny chunks so that many records span chunk boundaries
+		final long CHUNK_SIZE = 7;
+		final int THREAD_COUNT = 3;
+
+		File csvFile = writeTestFile(ROW_COUNT);
+
+		RowTable rowTable = RowTable.loadFromCSV(csvFile, COLUMN_SEPARATOR);
+		List<String> expectedHeaders = rowTable.popHeaders();
+		List<Column> expectedColumns = rowTable.extractColumns();
+
+		ParallelCSVParser parser = new ParallelCSVParser(csvFile, COLUMN_SEPARATOR, true);
+		parser.setChunkSize(CHUNK_SIZE);
+		parser.setThreadCount(THREAD_COUNT);
+		ColumnTable columnTable = parser.parse();
+
+		assertEquals(expectedHeaders, columnTable.getHeaders());
+		assertEquals(ROW_COUNT, columnTable.getRowCount());
+		assertEquals(Column.toStringLists(expectedColumns),
+				Column.toStringLists(columnTable.extractColumns()));
+	}
+
+	@Test
+	public void testColumnProjection() {
+		final int ROW_COUNT = 100;
+		final long CHUNK_SIZE = 11;
+		final int THREAD_COUNT = 2;
+
+		File csvFile = writeTestFile(ROW_COUNT);
+		ColumnProjection projection = new ColumnProjection(Arrays.asList(3, 2));
+		assertEquals(2, projection.getColumnCount());
+		assertEquals(2, projection.getColumnNumber(1));
+		assertEquals(2, projection.getProjectedColumnNumber(3));
+		assertFalse(projection.contains(1));
+
+		RowTable rowTable = RowTable.loadFromCSV(csvFile, COLUMN_SEPARATOR);
+		List<String> expectedHeaders = projection.project(rowTable.popHeaders());
+		List<List<String>> expectedColumns
+				= projection.project(Column.toStringLists(rowTable.extractColumns()));
+
+		RowTable projectedRowTable = RowTable.loadFromCSV(csvFile, COLUMN_SEPARATOR, projection);
+		assertEquals(expectedHeaders, projectedRowTable.popHeaders());
+		assertEquals(expectedColumns, Column.toStringLists(projectedRowTable.extractColumns()));
+
+		ParallelCSVParser parser = new ParallelCSVParser(csvFile, COLUMN_SEPARATOR, true);
+		parser.setChunkSize(CHUNK_SIZE);
+		parser.setThreadCount(THREAD_COUNT);
+		parser.setColumnProjection(projection);
+		ColumnTable columnTable = parser.parse();
+		assertEquals(expectedHeaders, columnTable.getHeaders());
+		assertEquals(expectedColumns, Column.toStringLists(columnTable.extractColumns()));
+	}
+
+	/**
+	 * Tests fields that span many chunks and contain escaped quotes, which
+	 * throw off the guessed record boundaries of the chunks they cover.
+	 */
+	@Test
+	public void testMisalignedChunks() {
+		final int ROW_COUNT = 20;
+		final long CHUNK_SIZE = 16;
+		final int THREAD_COUNT = 3;
+		CSVFormat format = new CSVFormat(',', '"', '\\');
+
+		List<String> rows = new ArrayList<String>();
+		List<String> expectedDescriptions = new ArrayList<String>();
+		rows.add("name,description,count");
+		for (int i = 0; i < ROW_COUNT; i++) {
+			StringBuilder description = new StringBuilder();
+			StringBuilder escapedDescription = new StringBuilder();
+			for (int j = 0; j < 50 + i; j++) {
+				description.append("a \"quote,\nline ").append(j).append(' ');
+				escapedDescription.append("a \\\"quote,\nline ").append(j).append(' ');
+			}
+			expectedDescriptions.add(description.toString());
+			rows.add("row " + i + ",\"" + escapedDescription + "\"," + i);
+		}
+		File csvFile = FileUtils.getTmpFile("parallel_csv_parser_escape_test.csv");
+		csvFile.deleteOnExit();
+		RowTable.writeStringsToFile(rows.iterator(), csvFile);
+
+		ParallelCSVParser parser = new ParallelCSVParser(csvFile, format, true);
+		parser.setChunkSize(CHUNK_SIZE);
+		parser.setThreadCount(THREAD_COUNT);
+		ColumnTable columnTable = parser.parse();
+		assertEquals(Arrays.asList("name", "description", "count"), columnTable.getHeaders());
+		assertEquals(ROW_COUNT, columnTable.getRowCount());
+		List<List<String>> columns = Column.toStringLists(columnTable.extractColumns());
+		assertEquals(expectedDescriptions, columns.get(1));
+		for (int i = 0; i < ROW_COUNT; i++) {
+			assertEquals("row " + i, columns.get(0).get(i));
+			assertEquals(Integer.toString(i), columns.get(2).get(i));
+		}
+	}
+
+	private static File writeTestFile(int rowCount) {
+		List<String> rows = new ArrayList<String>();
+		rows.add("name;description;count");
+		for (int i = 0; i < rowCount; i++) {
+			String description = i % 3 == 0
+					? "\"line one\nline \"\"two\"\"; and three\""
+					: "plain " + i;
+			rows.add("row " + i + ";" + description + (i % 5 == 4 ? "" : ";" + i));
+		}
+		File csvFile = FileUtils.getTmpFile("parallel_csv_parser_test.csv");
+		csvFile.deleteOnExit();
+		RowTable.writeStringsToFile(rows.iterator(), csvFile);
+		return csvFile;
+	}
+
+}
@@ -0,0 +1,103 @@
+package eu.trentorise.opendata.columnrecognizers.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import eu.trentorise.opendata.columnrecognizers.CSVFormat;
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.ColumnFrequencyCounts;
+import eu.trentorise.opendata.columnrecognizers.FileUtils;
+import eu.trentorise.opendata.columnrecognizers.HashedInverseColumnFrequency;
+import eu.trentorise.opendata.columnrecognizers.InverseColumnFrequency;
+import eu.trentorise.opendata.columnrecognizers.RowTable;
+import eu.trentorise.opendata.columnrecognizers.TFIDFTrainer;
+import eu.trentorise.opendata.columnrecognizers.TFIDFVector;
+import eu.trentorise.opendata.columnrecognizers.TrainingManifestReader;
+
+public class TFIDFTrainerTest {
+	private static final String TABLE_PATH = "/tables/prodotti_protetti.csv";
+	private static final String IDF_PATH = "/models/inverse-frequencies.txt";
+
+	/**
+	 * Tests that the trainer builds the prototypes TFIDFVector.main builds,
+	 * and adds up the examples of a model.
+	 */
+	@Test
+	public void testTrainer() throws IOException {
+		File tableFile = FileUtils.getResourceFile(TABLE_PATH);
+		File manifestFile = FileUtils.getTmpFile("training-manifest-test.txt");
+		manifestFile.deleteOnExit();
+		FileWriter writer = new FileWriter(manifestFile);
+		try {
+			writer.write("# Example columns\n");
+			writer.write(tableFile.getAbsolutePath() + " , 2 caratteristiche\n");
+			writer.write(tableFile.getAbsolutePath() + " , 4 zona_riferimenti\n");
+			writer.write(tableFile.getAbsolutePath() + " , 3 zona_riferimenti\n");
+		} finally {
+			writer.close();
+		}
+
+		InverseColumnFrequency inverseFrequencies
+			= InverseColumnFrequency.readFromFile(FileUtils.getResourceFile(IDF_PATH));
+		TFIDFTrainer trainer = new TFIDFTrainer(inverseFrequencies);
+		trainer.setThreadCount(2);
+		new TrainingManifestReader(manifestFile, trainer).read();
+		Map<String, TFIDFVector> prototypes = trainer.train();
+		assertEquals(2, prototypes.size());
+
+		RowTable table = RowTable.loadFromCSV(tableFile, ',');
+		table.removeHeaders(1);
+		TFIDFVector expected = new TFIDFVector(table.extractColumn(2), inverseFrequencies);
+		TFIDFVector prototype = prototypes.get("caratteristiche");
+		assertEquals(expected.getTermCount(), prototype.getTermCount());
+		assertEquals(expected.norm(), prototype.norm(), 1e-9);
+		assertEquals(1.0, expected.cosineSimilarity(prototype), 1e-12);
+
+		List<String> values = new ArrayList<String>();
+		for (int row = 0; row < table.getRowCount(); row++) {
+			values.add(table.getValue(row, 3));
+			values.add(table.getValue(row, 4));
+		}
+		expected = new TFIDFVector(new Column(values), inverseFrequencies);
+		prototype = prototypes.get("zona_riferimenti");
+		assertEquals(expected.getTermCount(), prototype.getTermCount());
+		assertEquals(expected.norm(), prototype.norm(), 1e-9);
+	}
+
+	/**
+	 * Tests that the vector of a column summed straight into the hash 
+	 * buckets is the one built from the term frequencies of the column, as
+	 * the trainer builds it.
+	 */
+	@Test
+	public void testHashedTrainer() throws IOException {
+		File tableFile = FileUtils.getResourceFile(TABLE_PATH);
+		RowTable table = RowTable.loadFromCSV(tableFile, ',');
+		table.removeHeaders(1);
+		ColumnFrequencyCounts counts = new ColumnFrequencyCounts();
+		for (Column column : table.extractColumns()) {
+			counts.addColumn(column);
+		}
+		// Few buckets, so that words collide
+		HashedInverseColumnFrequency inverseFrequencies 
+			= new HashedInverseColumnFrequency(counts, 6);
+		TFIDFTrainer trainer = new TFIDFTrainer(inverseFrequencies);
+		trainer.addExample(tableFile, new CSVFormat(','), 2, "caratteristiche");
+		TFIDFVector prototype = trainer.train().get("caratteristiche");
+
+		TFIDFVector expected = new TFIDFVector(table.extractColumn(2), inverseFrequencies);
+		assertTrue(expected.getTermCount() <= 64);
+		assertEquals(expected.getTermCount(), prototype.getTermCount());
+		assertEquals(expected.norm(), prototype.norm(), 1e-9);
+		assertEquals(1.0, expected.cosineSimilarity(prototype), 1e-12);
+	}
+
+}
@@ -1,10 +1,30 @@
 package eu.trentorise.opendata.columnrecognizers.test;
 
+import eu.trentorise.opendata.columnrecognizers.Column;
+import eu.trentorise.opendata.columnrecognizers.ColumnFrequencyCounts;
+import eu.trentorise.opendata.columnrecognizers.ColumnRecognizer;
+import eu.trentorise.opendata.columnrecognizers.ColumnConceptCandidate;
+import eu.trentorise.opendata.columnrecognizers.ColumnTable;
 import eu.trentorise.opendata.columnrecognizers.FileUtils;
+import eu.trentorise.opendata.columnrecognizers.HashedInverseColumnFrequency;
+import eu.trentorise.opendata.columnrecognizers.InverseColumnFrequency;
+import eu.trentorise.opendata.columnrecognizers.PrototypeUpdater;
+import eu.trentorise.opendata.columnrecognizers.TFIDFColumnRecognizer;
+import eu.trentorise.opendata.columnrecognizers.TFIDFIndexCR;
 import eu.trentorise.opendata.columnrecognizers.TFIDFVector;
+import eu.trentorise.opendata.columnrecognizers.TermVocabulary;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -35,4 +55,327 @@ public class TFIDFVectorTest {
 		assertTrue(vector.cosineSimilarity(differentVector) > 0);
 	}
 
+	/**
+	 * Tests that leaving out the terms unknown to the prototypes doesn't 
+	 * change the similarity.
+	 */
+	@Test
+	public void testObservationVector() {
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		frequencies.put("via", 5);
+		frequencies.put("piazza", 2);
+		InverseColumnFrequency inverseFrequencies = new InverseColumnFrequency(frequencies, 10);
+		TFIDFVector prototype = new TFIDFVector(
+				new Column(Arrays.asList("Via Roma", "Piazza Duomo", "Via Verdi")), 
+				inverseFrequencies);
+		Column column = new Column(Arrays.asList("Via Manci", "via Belenzani", "Vicolo Orsoline"));
+		
+		// The recognizer leaves out the terms that aren't in any prototype
+		TFIDFColumnRecognizer recognizer = new TFIDFColumnRecognizer("street", 1, 
+				prototype, inverseFrequencies, 
+				new ColumnTable(null, Arrays.asList(column)));
+		List<ColumnConceptCandidate> candidates = new ArrayList<ColumnConceptCandidate>();
+		recognizer.computeScoredCandidates(candidates);
+		
+		double similarity = prototype.cosineSimilarity(
+				new TFIDFVector(column, inverseFrequencies));
+		assertTrue(similarity > 0 && similarity < 1);
+		assertEquals(similarity, candidates.get(0).getScore(), 1e-12);
+	}
+
+	/**
+	 * Tests that the index gives the same candidates as separate recognizers.
+	 */
+	@Test
+	public void testIndex() {
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		frequencies.put("via", 5);
+		frequencies.put("trento", 3);
+		InverseColumnFrequency inverseFrequencies = new InverseColumnFrequency(frequencies, 10);
+		List<TFIDFVector> prototypes = Arrays.asList(
+				new TFIDFVector(new Column(Arrays.asList("Via Roma", "Via Verdi")), inverseFrequencies),
+				new TFIDFVector(new Column(Arrays.asList("Trento", "Rovereto")), inverseFrequencies),
+				new TFIDFVector(new Column(Arrays.asList("Pizzeria Roma")), inverseFrequencies));
+		ColumnTable table = new ColumnTable(null, Arrays.asList(
+				new Column(Arrays.asList("Via Roma", "Via Manci")),
+				new Column(Arrays.asList("Trento", "Trento", "Roma")),
+				new Column(Arrays.asList("1", "2"))));
+		
+		List<ColumnConceptCandidate> expected = new ArrayList<ColumnConceptCandidate>();
+		TFIDFIndexCR indexRecognizer = new TFIDFIndexCR("index", inverseFrequencies, table);
+		for (int i = 0; i < prototypes.size(); i++) {
+			new TFIDFColumnRecognizer("tfidf" + i, 100 + i, prototypes.get(i), 
+					inverseFrequencies, table).computeScoredCandidates(expected);
+			indexRecognizer.addPrototype("tfidf" + i, 100 + i, prototypes.get(i));
+		}
+		List<ColumnConceptCandidate> candidates = new ArrayList<ColumnConceptCandidate>();
+		indexRecognizer.computeScoredCandidates(candidates);
+		
+		assertEquals(5, expected.size());
+		assertEquals(expected.toString(), candidates.toString());
+	}
+
+	/**
+	 * Tests that a confirmed column moves a prototype towards it, the same
+	 * way in the index and in a separate recognizer, and that the updated
+	 * prototype is written back.
+	 */
+	@Test
+	public void testPrototypeUpdate() {
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		frequencies.put("via", 5);
+		frequencies.put("trento", 3);
+		InverseColumnFrequency inverseFrequencies = new InverseColumnFrequency(frequencies, 10);
+		TFIDFVector street = new TFIDFVector(
+				new Column(Arrays.asList("Via Roma", "Via Verdi")), inverseFrequencies);
+		TFIDFVector city = new TFIDFVector(
+				new Column(Arrays.asList("Trento", "Rovereto")), inverseFrequencies);
+		Column labeledColumn = new Column(Arrays.asList("Via Manci", "Via Belenzani"));
+		ColumnTable table = new ColumnTable(null, Arrays.asList(
+				new Column(Arrays.asList("Via Manci", "Piazza Duomo")),
+				new Column(Arrays.asList("Trento", "Roma"))));
+
+		TFIDFIndexCR indexRecognizer = new TFIDFIndexCR("index", inverseFrequencies, table);
+		indexRecognizer.addPrototype("street", 100, street);
+		indexRecognizer.addPrototype("city", 101, city);
+		TFIDFColumnRecognizer recognizer
+			= new TFIDFColumnRecognizer("street", 100, street, inverseFrequencies, table);
+		double scoreBefore = street.cosineSimilarity(
+				new TFIDFVector(table.extractColumn(1), inverseFrequencies));
+
+		File modelFile = FileUtils.getTmpFile("updated_street_tfidf_tmp.txt");
+		modelFile.deleteOnExit();
+		PrototypeUpdater updater = new PrototypeUpdater(0.5);
+		updater.register("street", indexRecognizer, modelFile);
+		assertTrue(updater.confirmLabel("street", labeledColumn));
+		assertFalse(updater.confirmLabel("square", labeledColumn));
+		assertTrue(recognizer.foldIntoPrototype("street", labeledColumn, 0.5));
+
+		TFIDFVector updated = indexRecognizer.getPrototype("street");
+		assertNotSame(street, updated);
+		assertSame(city, indexRecognizer.getPrototype("city"));
+		assertEquals(1.0, updated.cosineSimilarity(recognizer.getPrototype("street")), 1e-12);
+		assertTrue(updated.cosineSimilarity(
+				new TFIDFVector(table.extractColumn(1), inverseFrequencies)) > scoreBefore);
+
+		List<ColumnConceptCandidate> expected = new ArrayList<ColumnConceptCandidate>();
+		recognizer.computeScoredCandidates(expected);
+		List<ColumnConceptCandidate> candidates = new ArrayList<ColumnConceptCandidate>();
+		indexRecognizer.computeScoredCandidates(candidates);
+		assertEquals(expected.get(0).getScore(), candidates.get(0).getScore(), 1e-12);
+
+		assertEquals(1, updater.persist());
+		assertEquals(0, updater.persist());
+		TFIDFVector readVector = TFIDFVector.readFromFile(modelFile, 
+				inverseFrequencies.getVocabulary());
+		assertEquals(updated.norm(), readVector.norm(), 1e-6);
+		assertEquals(1.0, updated.cosineSimilarity(readVector), 1e-9);
+	}
+
+	/**
+	 * Tests that a label confirmed on one table changes the scores of the
+	 * next table recognized from the same specification.
+	 */
+	@Test
+	public void testSharedPrototypeUpdate() throws IOException {
+		File modelDirectory = FileUtils.getTmpFile("prototype-update-" + System.nanoTime());
+		assertTrue(modelDirectory.mkdirs());
+		File modelFile = new File(modelDirectory, "street_tfidf.txt");
+		modelFile.deleteOnExit();
+		modelDirectory.deleteOnExit();
+		InverseColumnFrequency inverseFrequencies = InverseColumnFrequency.getShared(
+				FileUtils.getModelURL("inverse-frequencies.txt", null));
+		new TFIDFVector(new Column(Arrays.asList("Via Roma", "Via Verdi")), inverseFrequencies)
+			.writeToFile(modelFile);
+		String specification = "street 100 TF_IDF street_tfidf.txt\n";
+		List<File> modelDirectories = Arrays.asList(modelDirectory);
+		ColumnTable table = new ColumnTable(null, Arrays.asList(
+				new Column(Arrays.asList("Via Manci", "Piazza Duomo"))));
+
+		double scoreBefore = computeStreetScore(table, specification, modelDirectories);
+		PrototypeUpdater updater = new PrototypeUpdater(0.5);
+		assertEquals(1, updater.registerSpecification(
+				new ByteArrayInputStream(specification.getBytes("UTF-8")), modelDirectories));
+		assertTrue(updater.confirmLabel("street", 
+				new Column(Arrays.asList("Via Manci", "Via Belenzani"))));
+		double scoreAfter = computeStreetScore(table, specification, modelDirectories);
+		assertTrue(scoreAfter > scoreBefore);
+
+		// Writing the prototype back doesn't undo the update
+		assertEquals(1, updater.persist());
+		assertEquals(scoreAfter, 
+				computeStreetScore(table, specification, modelDirectories), 1e-12);
+	}
+
+	private static double computeStreetScore(ColumnTable table, String specification,
+			List<File> modelDirectories) throws IOException {
+		List<ColumnConceptCandidate> candidates = ColumnRecognizer.computeScoredCandidates(table,
+				new ByteArrayInputStream(specification.getBytes("UTF-8")), modelDirectories);
+		assertEquals(1, candidates.size());
+		assertEquals("street", candidates.get(0).getOriginator());
+		return candidates.get(0).getScore();
+	}
+
+	/**
+	 * Tests that each table keeps the terms of its vectors in its own 
+	 * vocabulary, and that the cosine of a vector with itself is exactly 1
+	 * without being capped.
+	 */
+	@Test
+	public void testVocabularyPerTable() {
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		frequencies.put("via", 5);
+		InverseColumnFrequency inverseFrequencies = new InverseColumnFrequency(frequencies, 10);
+		InverseColumnFrequency otherFrequencies = new InverseColumnFrequency(frequencies, 10);
+		assertNotSame(inverseFrequencies.getVocabulary(), otherFrequencies.getVocabulary());
+		int defaultSize = TermVocabulary.getDefault().size();
+		
+		TFIDFVector vector = new TFIDFVector(new Column(Arrays.asList(
+				"Via Roma", "Via Verdi", "Vicolo dell'Ora", "Piazza Duomo")), inverseFrequencies);
+		assertEquals(vector.getTermCount(), inverseFrequencies.getVocabulary().size());
+		assertEquals(0, otherFrequencies.getVocabulary().size());
+		assertEquals(defaultSize, TermVocabulary.getDefault().size());
+		assertEquals(1.0, vector.cosineSimilarity(vector), 0);
+		
+		TFIDFVector folded = vector.foldIn(new TFIDFVector(
+				new Column(Arrays.asList("Via Manci", "Via Belenzani")), inverseFrequencies), 0.3);
+		assertEquals(1.0, folded.cosineSimilarity(folded), 0);
+	}
+
+	/**
+	 * Tests that a shared table is read once, and again when its file changes.
+	 */
+	@Test
+	public void testSharedInverseFrequencies() throws IOException {
+		File idfFile = FileUtils.getTmpFile("shared-inverse-frequencies.txt");
+		idfFile.deleteOnExit();
+		writeFile(idfFile, "trento 1.5\n");
+		idfFile.setLastModified(1000000000000L);
+		
+		InverseColumnFrequency table = InverseColumnFrequency.getShared(idfFile.toURI().toURL());
+		assertSame(table, InverseColumnFrequency.getShared(idfFile.toURI().toURL()));
+		assertEquals(1.5, table.getInverseFrequency("trento"), 1e-12);
+		
+		writeFile(idfFile, "trento 2.5\n");
+		idfFile.setLastModified(1000000001000L);
+		InverseColumnFrequency reloadedTable 
+			= InverseColumnFrequency.getShared(idfFile.toURI().toURL());
+		assertNotSame(table, reloadedTable);
+		assertEquals(2.5, reloadedTable.getInverseFrequency("trento"), 1e-12);
+	}
+
+	/**
+	 * Tests hashed vectors, stored and indexed like the others.
+	 */
+	@Test
+	public void testHashedVectors() throws IOException {
+		ColumnFrequencyCounts counts = new ColumnFrequencyCounts();
+		counts.addColumn(new Column(Arrays.asList("Via Roma", "Via Verdi")));
+		counts.addColumn(new Column(Arrays.asList("Trento", "Rovereto")));
+		counts.addColumn(new Column(Arrays.asList("Pizzeria Roma")));
+		// Few buckets, so that words collide
+		HashedInverseColumnFrequency inverseFrequencies 
+			= new HashedInverseColumnFrequency(counts, 3);
+		assertEquals(8, inverseFrequencies.getVocabulary().size());
+		
+		File idfFile = FileUtils.getTmpFile("hashed-inverse-frequencies-test.txt");
+		idfFile.deleteOnExit();
+		inverseFrequencies.writeToFile(idfFile);
+		HashedInverseColumnFrequency readFrequencies 
+			= HashedInverseColumnFrequency.readFromFile(idfFile);
+		for (String word : Arrays.asList("via", "roma", "trento", "unseen")) {
+			assertEquals(inverseFrequencies.getInverseFrequency(word), 
+					readFrequencies.getInverseFrequency(word), 1e-6);
+		}
+		
+		Column column = new Column(Arrays.asList("Via Roma", "Via Manci", "Via Verdi"));
+		TFIDFVector prototype = new TFIDFVector(column, inverseFrequencies);
+		assertEquals(1.0, prototype.cosineSimilarity(prototype), 1e-12);
+		
+		File vectorFile = FileUtils.getTmpFile("hashed-vector-test.txt");
+		vectorFile.deleteOnExit();
+		prototype.writeToFile(vectorFile);
+		FileInputStream stream = new FileInputStream(vectorFile);
+		TFIDFVector readPrototype;
+		try {
+			readPrototype = TFIDFVector.readFromStream(stream, inverseFrequencies.getVocabulary());
+		} finally {
+			stream.close();
+		}
+		assertEquals(1.0, prototype.cosineSimilarity(readPrototype), 1e-6);
+		
+		ColumnTable table = new ColumnTable(null, Arrays.asList(
+				new Column(Arrays.asList("Via Roma", "Via Manci")),
+				new Column(Arrays.asList("Trento", "Roma"))));
+		List<ColumnConceptCandidate> expected = new ArrayList<ColumnConceptCandidate>();
+		new TFIDFColumnRecognizer("hashed", 100, readPrototype, 
+				inverseFrequencies, table).computeScoredCandidates(expected);
+		TFIDFIndexCR indexRecognizer = new TFIDFIndexCR("index", inverseFrequencies, table);
+		indexRecognizer.addPrototype("hashed", 100, readPrototype);
+		List<ColumnConceptCandidate> candidates = new ArrayList<ColumnConceptCandidate>();
+		indexRecognizer.computeScoredCandidates(candidates);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected.toString(), candidates.toString());
+	}
+
+	/**
+	 * Tests pruned and quantized vectors, stored and indexed like the others.
+	 */
+	@Test
+	public void testCompaction() throws IOException {
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		frequencies.put("via", 5);
+		frequencies.put("roma", 2);
+		InverseColumnFrequency inverseFrequencies = new InverseColumnFrequency(frequencies, 10);
+		TFIDFVector prototype = new TFIDFVector(new Column(Arrays.asList(
+				"Via Roma", "Via Verdi", "Via Manci", "Piazza Duomo")), inverseFrequencies);
+		
+		// The common words are the lightest
+		TFIDFVector pruned = prototype.prune(4, 1);
+		assertEquals(6, prototype.getTermCount());
+		assertEquals(4, pruned.getTermCount());
+		assertTrue(pruned.contains("verdi"));
+		assertFalse(pruned.contains("via"));
+		assertFalse(pruned.contains("roma"));
+		assertEquals(1, prototype.prune(0, 0.01).getTermCount());
+		
+		ColumnTable table = new ColumnTable(null, Arrays.asList(
+				new Column(Arrays.asList("Via Roma", "Via Manci")),
+				new Column(Arrays.asList("Piazza Verdi"))));
+		for (int bits : new int[] {8, 16}) {
+			TFIDFVector quantized = prototype.quantize(bits);
+			assertTrue(quantized.isQuantized());
+			assertEquals(prototype.getComponent("verdi"), quantized.getComponent("verdi"), 
+					bits == 8 ? 0.02 : 0.002);
+			assertEquals(1.0, quantized.cosineSimilarity(prototype), 1e-3);
+			
+			File vectorFile = FileUtils.getTmpFile("quantized-vector-test.txt");
+			vectorFile.deleteOnExit();
+			quantized.writeToFile(vectorFile);
+			TFIDFVector readVector = TFIDFVector.readFromFile(vectorFile, 
+					inverseFrequencies.getVocabulary());
+			assertTrue(readVector.isQuantized());
+			assertEquals(quantized.getComponent("verdi"), readVector.getComponent("verdi"), 0);
+			
+			List<ColumnConceptCandidate> expected = new ArrayList<ColumnConceptCandidate>();
+			new TFIDFColumnRecognizer("quantized", 100, readVector, 
+					inverseFrequencies, table).computeScoredCandidates(expected);
+			TFIDFIndexCR indexRecognizer = new TFIDFIndexCR("index", inverseFrequencies, table);
+			indexRecognizer.addPrototype("quantized", 100, readVector);
+			List<ColumnConceptCandidate> candidates = new ArrayList<ColumnConceptCandidate>();
+			indexRecognizer.computeScoredCandidates(candidates);
+			assertEquals(2, expected.size());
+			assertEquals(expected.toString(), candidates.toString());
+		}
+	}
+
+	private static void writeFile(File file, String contents) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(contents);
+		} finally {
+			writer.close();
+		}
+	}
+
 }